@@ -0,0 +1,18 @@
+package fr.studi.bloc3jo2024.analytique;
+
+/**
+ * Dimensions de l'entrepôt de ventes, utilisables pour regrouper ou filtrer les lignes vendues.
+ */
+public enum DimensionVente {
+    /** Jour de la transaction (format ISO yyyy-MM-dd). */
+    JOUR,
+    /** Heure de la transaction (00 à 23). */
+    HEURE,
+    TYPE_OFFRE,
+    DISCIPLINE,
+    /** Ville du site de la discipline. */
+    VILLE,
+    /** Pays de l'adresse de l'acheteur. */
+    PAYS_ACHETEUR,
+    METHODE_PAIEMENT
+}
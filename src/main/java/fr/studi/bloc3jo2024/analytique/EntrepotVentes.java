@@ -0,0 +1,128 @@
+package fr.studi.bloc3jo2024.analytique;
+
+import fr.studi.bloc3jo2024.concurrence.ClasseCharge;
+import fr.studi.bloc3jo2024.concurrence.Cloison;
+import fr.studi.bloc3jo2024.dto.statistiques.LigneAnalyseDto;
+import fr.studi.bloc3jo2024.dto.statistiques.ResultatAnalyseDto;
+import fr.studi.bloc3jo2024.entity.enums.StatutPaiement;
+import fr.studi.bloc3jo2024.entity.enums.StatutTransaction;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Entrepôt analytique des ventes, en mémoire.
+ * <p>
+ * Les lignes de panier payées (date, type d'offre, discipline, ville du site, pays de l'acheteur, méthode de paiement,
+ * quantité, montant) sont extraites périodiquement en une seule requête parcourue en flux, puis figées dans une
+ * {@link TableVentes} colonnaire. Les analyses ad hoc s'exécutent ensuite sur cette table sans solliciter PostgreSQL ;
+ * la nouvelle table remplace l'ancienne d'un bloc une fois construite.
+ * </p>
+ */
+@Component
+public class EntrepotVentes {
+
+    private static final Logger log = LoggerFactory.getLogger(EntrepotVentes.class);
+
+    private static final String REQUETE_EXTRACTION = "SELECT t.dateTransaction, o.typeOffre, d.nomDiscipline, ad.ville, " +
+            "pa.nomPays, mp.nomMethodePaiement, cp.quantiteCommandee, o.prix " +
+            "FROM Paiement p " +
+            "JOIN p.transaction t " +
+            "JOIN p.panier pn " +
+            "JOIN pn.contenuPaniers cp " +
+            "JOIN cp.offre o " +
+            "JOIN o.discipline d " +
+            "JOIN d.adresse ad " +
+            "JOIN p.utilisateur u " +
+            "JOIN u.adresse ua " +
+            "JOIN ua.pays pa " +
+            "JOIN p.methodePaiement mp " +
+            "WHERE p.statutPaiement = :statutPaiement " +
+            "AND t.statutTransaction = :statutTransaction";
+
+    private static final int TAILLE_LOT_LECTURE = 5000;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final TransactionTemplate transactionLecture;
+
+    private volatile TableVentes table = TableVentes.vide();
+    private volatile Instant construiteLe;
+
+    public EntrepotVentes(PlatformTransactionManager transactionManager) {
+        this.transactionLecture = new TransactionTemplate(transactionManager);
+        this.transactionLecture.setReadOnly(true);
+    }
+
+    /**
+     * Exécute une analyse sur la dernière table construite.
+     *
+     * @param requete Regroupement, filtres et période.
+     * @return Les groupes non vides, avec la durée du calcul et la date des données.
+     */
+    public ResultatAnalyseDto analyser(RequeteVentes requete) {
+        TableVentes courante = table;
+        long debut = System.nanoTime();
+        List<LigneAnalyseDto> lignes = courante.executer(requete);
+        long dureeMicros = (System.nanoTime() - debut) / 1_000;
+        log.debug("Analyse des ventes par {} : {} lignes parcourues en {} µs.", requete.groupePar(), courante.taille(), dureeMicros);
+        return new ResultatAnalyseDto(requete.groupePar().name(), courante.taille(), dureeMicros, construiteLe, lignes);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialiser() {
+        reconstruire();
+    }
+
+    @Cloison(ClasseCharge.PLANIFICATION)
+    @Scheduled(initialDelayString = "${app.analytique.reconstruction-ms:600000}",
+            fixedDelayString = "${app.analytique.reconstruction-ms:600000}")
+    public void reconstruire() {
+        long debut = System.nanoTime();
+        try {
+            TableVentes nouvelle = transactionLecture.execute(status -> extraire());
+            if (nouvelle != null) {
+                table = nouvelle;
+                construiteLe = Instant.now();
+                log.info("Entrepôt des ventes reconstruit : {} lignes en {} ms.", nouvelle.taille(),
+                        (System.nanoTime() - debut) / 1_000_000);
+            }
+        } catch (DataAccessException e) {
+            log.warn("Impossible de reconstruire l'entrepôt des ventes, l'ancienne table est conservée : {}", e.getMessage());
+        }
+    }
+
+    private TableVentes extraire() {
+        TableVentes.Constructeur constructeur = new TableVentes.Constructeur();
+        try (Stream<Object[]> lignes = entityManager.createQuery(REQUETE_EXTRACTION, Object[].class)
+                .setParameter("statutPaiement", StatutPaiement.ACCEPTE)
+                .setParameter("statutTransaction", StatutTransaction.REUSSI)
+                .setHint("org.hibernate.fetchSize", TAILLE_LOT_LECTURE)
+                .setHint("org.hibernate.readOnly", true)
+                .getResultStream()) {
+            lignes.forEach(ligne -> {
+                int quantite = ((Number) ligne[6]).intValue();
+                BigDecimal prix = (BigDecimal) ligne[7];
+                long montantCentimes = prix.movePointRight(2).longValue() * quantite;
+                constructeur.ajouter((LocalDateTime) ligne[0], String.valueOf(ligne[1]), (String) ligne[2],
+                        (String) ligne[3], (String) ligne[4], String.valueOf(ligne[5]), quantite, montantCentimes);
+            });
+        }
+        return constructeur.construire();
+    }
+}
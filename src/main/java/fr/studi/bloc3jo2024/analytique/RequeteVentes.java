@@ -0,0 +1,26 @@
+package fr.studi.bloc3jo2024.analytique;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Question posée à l'entrepôt de ventes : un regroupement, des filtres par valeurs et une période facultative.
+ *
+ * @param groupePar Dimension de regroupement.
+ * @param filtres   Valeurs acceptées par dimension (une dimension absente n'est pas filtrée).
+ * @param du        Premier jour inclus, ou {@code null}.
+ * @param au        Dernier jour inclus, ou {@code null}.
+ */
+public record RequeteVentes(DimensionVente groupePar,
+                            Map<DimensionVente, Set<String>> filtres,
+                            LocalDate du,
+                            LocalDate au) {
+
+    public RequeteVentes {
+        if (groupePar == null) {
+            throw new IllegalArgumentException("La dimension de regroupement est obligatoire.");
+        }
+        filtres = filtres != null ? Map.copyOf(filtres) : Map.of();
+    }
+}
@@ -0,0 +1,250 @@
+package fr.studi.bloc3jo2024.analytique;
+
+import fr.studi.bloc3jo2024.dto.statistiques.LigneAnalyseDto;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Table de ventes immuable stockée en colonnes de types primitifs.
+ * <p>
+ * Chaque dimension est encodée par dictionnaire : la colonne ne contient que des codes {@code int}, les libellés
+ * étant stockés une seule fois. Le jour est codé par son écart au premier jour de la table. Une requête parcourt
+ * les colonnes par blocs de {@link #TAILLE_BLOC} lignes en parallèle ; chaque bloc agrège dans des tableaux indexés
+ * par code, puis les résultats partiels sont additionnés. Les filtres sont pré-calculés en tableaux de booléens par code.
+ * </p>
+ */
+public final class TableVentes {
+
+    static final int TAILLE_BLOC = 1 << 16;
+
+    private static final DimensionVente[] DIMENSIONS = DimensionVente.values();
+
+    private final int taille;
+    private final int[][] codes;
+    private final String[][] libelles;
+    private final int[] quantites;
+    private final long[] montantsCentimes;
+    private final LocalDate premierJour;
+
+    private TableVentes(int taille, int[][] codes, String[][] libelles, int[] quantites, long[] montantsCentimes,
+                        LocalDate premierJour) {
+        this.taille = taille;
+        this.codes = codes;
+        this.libelles = libelles;
+        this.quantites = quantites;
+        this.montantsCentimes = montantsCentimes;
+        this.premierJour = premierJour;
+    }
+
+    public static TableVentes vide() {
+        return new Constructeur().construire();
+    }
+
+    public int taille() {
+        return taille;
+    }
+
+    /**
+     * Exécute un regroupement filtré.
+     *
+     * @return Les groupes non vides, triés par libellé pour le jour et l'heure, par montant décroissant sinon.
+     */
+    public List<LigneAnalyseDto> executer(RequeteVentes requete) {
+        int dimensionGroupe = requete.groupePar().ordinal();
+        int cardinalite = libelles[dimensionGroupe].length;
+        int[] groupe = codes[dimensionGroupe];
+        Filtre[] filtres = compilerFiltres(requete);
+
+        int nbBlocs = (taille + TAILLE_BLOC - 1) / TAILLE_BLOC;
+        Partiel total = IntStream.range(0, nbBlocs).parallel()
+                .mapToObj(bloc -> agregerBloc(bloc * TAILLE_BLOC, Math.min(taille, (bloc + 1) * TAILLE_BLOC),
+                        groupe, cardinalite, filtres))
+                .reduce(Partiel::fusionner)
+                .orElseGet(() -> new Partiel(cardinalite));
+
+        List<LigneAnalyseDto> lignes = new ArrayList<>();
+        for (int code = 0; code < cardinalite; code++) {
+            if (total.lignes[code] > 0) {
+                lignes.add(new LigneAnalyseDto(libelles[dimensionGroupe][code], total.lignes[code], total.quantites[code],
+                        BigDecimal.valueOf(total.montants[code], 2)));
+            }
+        }
+        if (requete.groupePar() != DimensionVente.JOUR && requete.groupePar() != DimensionVente.HEURE) {
+            lignes.sort(Comparator.comparing(LigneAnalyseDto::getMontant).reversed());
+        }
+        return lignes;
+    }
+
+    private Partiel agregerBloc(int debut, int fin, int[] groupe, int cardinalite, Filtre[] filtres) {
+        Partiel partiel = new Partiel(cardinalite);
+        lignes:
+        for (int i = debut; i < fin; i++) {
+            for (Filtre filtre : filtres) {
+                if (!filtre.acceptes[filtre.colonne[i]]) {
+                    continue lignes;
+                }
+            }
+            int code = groupe[i];
+            partiel.lignes[code]++;
+            partiel.quantites[code] += quantites[i];
+            partiel.montants[code] += montantsCentimes[i];
+        }
+        return partiel;
+    }
+
+    private Filtre[] compilerFiltres(RequeteVentes requete) {
+        List<Filtre> filtres = new ArrayList<>();
+        requete.filtres().forEach((dimension, valeurs) -> {
+            String[] dictionnaire = libelles[dimension.ordinal()];
+            boolean[] acceptes = new boolean[dictionnaire.length];
+            for (int code = 0; code < dictionnaire.length; code++) {
+                acceptes[code] = valeurs.contains(dictionnaire[code]);
+            }
+            filtres.add(new Filtre(codes[dimension.ordinal()], acceptes));
+        });
+        if (requete.du() != null || requete.au() != null) {
+            String[] jours = libelles[DimensionVente.JOUR.ordinal()];
+            boolean[] acceptes = new boolean[jours.length];
+            for (int code = 0; code < jours.length; code++) {
+                LocalDate jour = premierJour.plusDays(code);
+                acceptes[code] = (requete.du() == null || !jour.isBefore(requete.du()))
+                        && (requete.au() == null || !jour.isAfter(requete.au()));
+            }
+            filtres.add(new Filtre(codes[DimensionVente.JOUR.ordinal()], acceptes));
+        }
+        return filtres.toArray(Filtre[]::new);
+    }
+
+    private record Filtre(int[] colonne, boolean[] acceptes) {
+    }
+
+    /** Agrégats d'un bloc, indexés par code de la dimension de regroupement. */
+    private static final class Partiel {
+        private final long[] lignes;
+        private final long[] quantites;
+        private final long[] montants;
+
+        private Partiel(int cardinalite) {
+            this.lignes = new long[cardinalite];
+            this.quantites = new long[cardinalite];
+            this.montants = new long[cardinalite];
+        }
+
+        private Partiel fusionner(Partiel autre) {
+            for (int code = 0; code < lignes.length; code++) {
+                lignes[code] += autre.lignes[code];
+                quantites[code] += autre.quantites[code];
+                montants[code] += autre.montants[code];
+            }
+            return this;
+        }
+    }
+
+    /**
+     * Accumule les lignes vendues puis produit une {@link TableVentes} immuable.
+     * Non thread-safe : utilisé par un seul thread pendant l'extraction.
+     */
+    public static final class Constructeur {
+
+        // JOUR et HEURE (deux premières dimensions) sont calculées ; les suivantes passent par un dictionnaire.
+        private static final int DIMENSIONS_DICTIONNAIRE = DIMENSIONS.length - 2;
+
+        private int taille;
+        private long[] jours = new long[1024];
+        private int[][] codes = new int[DIMENSIONS.length][1024];
+        private int[] quantites = new int[1024];
+        private long[] montantsCentimes = new long[1024];
+        @SuppressWarnings("unchecked")
+        private final Map<String, Integer>[] dictionnaires = new Map[DIMENSIONS_DICTIONNAIRE];
+
+        public Constructeur() {
+            for (int d = 0; d < DIMENSIONS_DICTIONNAIRE; d++) {
+                dictionnaires[d] = new HashMap<>();
+            }
+        }
+
+        /**
+         * Ajoute une ligne de panier payée.
+         *
+         * @param montantCentimes Montant de la ligne (prix × quantité) en centimes.
+         */
+        public Constructeur ajouter(LocalDateTime date, String typeOffre, String discipline, String ville,
+                                    String paysAcheteur, String methodePaiement, int quantite, long montantCentimes) {
+            if (taille == quantites.length) {
+                agrandir();
+            }
+            jours[taille] = date.toLocalDate().toEpochDay();
+            codes[DimensionVente.HEURE.ordinal()][taille] = date.getHour();
+            coder(DimensionVente.TYPE_OFFRE, typeOffre);
+            coder(DimensionVente.DISCIPLINE, discipline);
+            coder(DimensionVente.VILLE, ville);
+            coder(DimensionVente.PAYS_ACHETEUR, paysAcheteur);
+            coder(DimensionVente.METHODE_PAIEMENT, methodePaiement);
+            quantites[taille] = quantite;
+            montantsCentimes[taille] = montantCentimes;
+            taille++;
+            return this;
+        }
+
+        private void coder(DimensionVente dimension, String valeur) {
+            Map<String, Integer> dictionnaire = dictionnaires[dimension.ordinal() - 2];
+            String libelle = valeur != null ? valeur : "INCONNU";
+            codes[dimension.ordinal()][taille] = dictionnaire.computeIfAbsent(libelle, v -> dictionnaire.size());
+        }
+
+        private void agrandir() {
+            int capacite = quantites.length * 2;
+            jours = Arrays.copyOf(jours, capacite);
+            for (int d = 0; d < codes.length; d++) {
+                codes[d] = Arrays.copyOf(codes[d], capacite);
+            }
+            quantites = Arrays.copyOf(quantites, capacite);
+            montantsCentimes = Arrays.copyOf(montantsCentimes, capacite);
+        }
+
+        public TableVentes construire() {
+            int[][] colonnes = new int[DIMENSIONS.length][];
+            String[][] libelles = new String[DIMENSIONS.length][];
+
+            long premier = taille == 0 ? LocalDate.now().toEpochDay() : Long.MAX_VALUE;
+            long dernier = taille == 0 ? premier : Long.MIN_VALUE;
+            for (int i = 0; i < taille; i++) {
+                premier = Math.min(premier, jours[i]);
+                dernier = Math.max(dernier, jours[i]);
+            }
+            int[] colonneJour = new int[taille];
+            for (int i = 0; i < taille; i++) {
+                colonneJour[i] = (int) (jours[i] - premier);
+            }
+            LocalDate premierJour = LocalDate.ofEpochDay(premier);
+            colonnes[DimensionVente.JOUR.ordinal()] = colonneJour;
+            libelles[DimensionVente.JOUR.ordinal()] = IntStream.rangeClosed(0, (int) (dernier - premier))
+                    .mapToObj(j -> premierJour.plusDays(j).toString())
+                    .toArray(String[]::new);
+
+            colonnes[DimensionVente.HEURE.ordinal()] = Arrays.copyOf(codes[DimensionVente.HEURE.ordinal()], taille);
+            libelles[DimensionVente.HEURE.ordinal()] = IntStream.range(0, 24)
+                    .mapToObj(h -> String.format("%02d", h))
+                    .toArray(String[]::new);
+
+            for (int d = 0; d < DIMENSIONS_DICTIONNAIRE; d++) {
+                int dimension = d + 2;
+                colonnes[dimension] = Arrays.copyOf(codes[dimension], taille);
+                String[] dictionnaire = new String[dictionnaires[d].size()];
+                dictionnaires[d].forEach((libelle, code) -> dictionnaire[code] = libelle);
+                libelles[dimension] = dictionnaire;
+            }
+            return new TableVentes(taille, colonnes, libelles, Arrays.copyOf(quantites, taille),
+                    Arrays.copyOf(montantsCentimes, taille), premierJour);
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package fr.studi.bloc3jo2024.changements;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Bus de changements entre instances, sur LISTEN/NOTIFY de PostgreSQL.
+ * <p>
+ * Les services qui modifient des données mises en cache ({@link TypeChangement}) appellent {@link #publier} dans leur
+ * transaction. Après le commit, le changement rejoint une file locale que {@link #envoyer()} vide toutes les
+ * {@code app.bus-changements.envoi-ms} par quelques {@code pg_notify} groupés sur le canal
+ * {@code app.bus-changements.canal} : un NOTIFY émis dans la transaction métier prendrait au commit le verrou global
+ * des notifications et sérialiserait les achats concurrents. Rien n'est envoyé en cas de rollback.
+ * </p>
+ * <p>
+ * Chaque instance écoute le canal sur une connexion dédiée, hors du pool, et diffuse les changements des autres
+ * instances comme événements {@link Changement}. Après une perte de la connexion d'écoute, ou si la file locale a
+ * débordé, un changement {@link TypeChangement#TOUT} vide les caches : les notifications manquées ne sont pas
+ * rejouées. Hors PostgreSQL (tests sur H2), le bus est inactif.
+ * </p>
+ */
+@Component
+public class BusChangements implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(BusChangements.class);
+
+    private static final String SQL_NOTIFY = "SELECT pg_notify(?, ?)";
+    private static final Pattern CANAL_VALIDE = Pattern.compile("[a-z_][a-z0-9_]*");
+    private static final String SEPARATEUR_LIGNES = "\n";
+    private static final String SEPARATEUR_CHAMPS = "|";
+    /** Taille maximale d'une notification : 8000 octets sous PostgreSQL, marge comprise. */
+    private static final int TAILLE_MAX_NOTIFICATION = 7000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DataSource sourceEcoute;
+    private final ApplicationEventPublisher publicateur;
+    private final boolean active;
+    private final String canal;
+    private final long attenteMs;
+    private final long reconnexionMs;
+    private final int tailleMax;
+    private final String origine = UUID.randomUUID().toString();
+    private final ConcurrentLinkedQueue<Changement> aEnvoyer = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger enAttente = new AtomicInteger();
+    private final AtomicBoolean perdus = new AtomicBoolean();
+    private volatile boolean enCours;
+    private Thread ecoute;
+
+    @Autowired
+    public BusChangements(JdbcTemplate jdbcTemplate,
+                          DataSourceProperties dataSourceProperties,
+                          ApplicationEventPublisher publicateur,
+                          @Value("${app.bus-changements.active:true}") boolean active,
+                          @Value("${app.bus-changements.canal:jo2024_changements}") String canal,
+                          @Value("${app.bus-changements.attente-ms:500}") long attenteMs,
+                          @Value("${app.bus-changements.reconnexion-ms:5000}") long reconnexionMs,
+                          @Value("${app.bus-changements.taille-max:10000}") int tailleMax) {
+        this(jdbcTemplate, sourceEcoute(dataSourceProperties), publicateur,
+                active && estPostgresql(dataSourceProperties), canal, attenteMs, reconnexionMs, tailleMax);
+    }
+
+    BusChangements(JdbcTemplate jdbcTemplate, DataSource sourceEcoute, ApplicationEventPublisher publicateur,
+                   boolean active, String canal, long attenteMs, long reconnexionMs, int tailleMax) {
+        if (!CANAL_VALIDE.matcher(canal).matches()) {
+            throw new IllegalArgumentException("Nom de canal invalide : " + canal);
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.sourceEcoute = sourceEcoute;
+        this.publicateur = publicateur;
+        this.active = active;
+        this.canal = canal;
+        this.attenteMs = attenteMs;
+        this.reconnexionMs = reconnexionMs;
+        this.tailleMax = tailleMax;
+    }
+
+    private static boolean estPostgresql(DataSourceProperties dataSourceProperties) {
+        String url = dataSourceProperties.determineUrl();
+        return url != null && url.startsWith("jdbc:postgresql:");
+    }
+
+    /** Connexion d'écoute ouverte hors du pool : elle reste occupée tant que l'instance tourne. */
+    private static DataSource sourceEcoute(DataSourceProperties dataSourceProperties) {
+        return new DriverManagerDataSource(dataSourceProperties.determineUrl(),
+                dataSourceProperties.determineUsername(), dataSourceProperties.determinePassword());
+    }
+
+    /**
+     * Annonce aux autres instances un changement de la transaction courante, après son commit ; immédiatement
+     * hors transaction.
+     *
+     * @param type Le type de la donnée modifiée.
+     * @param id   L'identifiant de la donnée, ou {@code null} pour toutes les données du type.
+     */
+    public void publier(TypeChangement type, Object id) {
+        if (!active) {
+            return;
+        }
+        Changement changement = new Changement(type, id != null ? id.toString() : null);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    empiler(changement);
+                }
+            });
+        } else {
+            empiler(changement);
+        }
+    }
+
+    private void empiler(Changement changement) {
+        if (enAttente.incrementAndGet() > tailleMax) {
+            enAttente.decrementAndGet();
+            perdus.set(true);
+            return;
+        }
+        aEnvoyer.add(changement);
+    }
+
+    /** Envoie les changements validés depuis le dernier passage, dédoublonnés, en un minimum de notifications. */
+    @Scheduled(fixedDelayString = "${app.bus-changements.envoi-ms:100}")
+    public void envoyer() {
+        if (!active) {
+            return;
+        }
+        boolean tout = perdus.getAndSet(false);
+        Set<Changement> changements = new LinkedHashSet<>();
+        Changement changement;
+        while ((changement = aEnvoyer.poll()) != null) {
+            enAttente.decrementAndGet();
+            changements.add(changement);
+        }
+        if (tout) {
+            changements = Set.of(new Changement(TypeChangement.TOUT, null));
+        }
+        if (changements.isEmpty()) {
+            return;
+        }
+        try {
+            for (String notification : notifications(changements)) {
+                jdbcTemplate.queryForList(SQL_NOTIFY, canal, notification);
+            }
+        } catch (DataAccessException e) {
+            // Une partie des changements n'a pas été annoncée : les autres instances videront leurs caches
+            perdus.set(true);
+            log.warn("Envoi de {} changement(s) impossible : {}", changements.size(), e.getMessage());
+        }
+    }
+
+    /** Format : l'origine sur la première ligne, puis un changement par ligne ({@code TYPE|id} ou {@code TYPE}). */
+    private List<String> notifications(Set<Changement> changements) {
+        List<String> notifications = new ArrayList<>();
+        StringBuilder notification = new StringBuilder(origine);
+        for (Changement changement : changements) {
+            String ligne = changement.id() != null
+                    ? changement.type().name() + SEPARATEUR_CHAMPS + changement.id()
+                    : changement.type().name();
+            if (notification.length() + ligne.length() + 1 > TAILLE_MAX_NOTIFICATION) {
+                notifications.add(notification.toString());
+                notification = new StringBuilder(origine);
+            }
+            notification.append(SEPARATEUR_LIGNES).append(ligne);
+        }
+        notifications.add(notification.toString());
+        return notifications;
+    }
+
+    /**
+     * Diffuse les changements d'une notification reçue, sauf ceux émis par cette instance (déjà appliqués localement).
+     *
+     * @param notification Le contenu de la notification.
+     */
+    void recevoir(String notification) {
+        if (notification == null) {
+            return;
+        }
+        String[] lignes = notification.split(SEPARATEUR_LIGNES);
+        if (lignes[0].equals(origine)) {
+            return;
+        }
+        for (int i = 1; i < lignes.length; i++) {
+            String ligne = lignes[i];
+            int separateur = ligne.indexOf(SEPARATEUR_CHAMPS);
+            String type = separateur < 0 ? ligne : ligne.substring(0, separateur);
+            String id = separateur < 0 ? null : ligne.substring(separateur + 1);
+            try {
+                diffuser(new Changement(TypeChangement.valueOf(type), id));
+            } catch (IllegalArgumentException e) {
+                log.warn("Changement inconnu ignoré : {}", ligne);
+            }
+        }
+    }
+
+    private void diffuser(Changement changement) {
+        try {
+            publicateur.publishEvent(changement);
+        } catch (RuntimeException e) {
+            log.warn("Invalidation {} en échec : {}", changement, e.getMessage());
+        }
+    }
+
+    /** Démarre l'écoute du canal une fois l'application prête. */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void demarrer() {
+        if (!active || enCours) {
+            return;
+        }
+        enCours = true;
+        ecoute = new Thread(this::ecouter, "bus-changements");
+        ecoute.setDaemon(true);
+        ecoute.start();
+    }
+
+    private void ecouter() {
+        boolean reconnexion = false;
+        while (enCours) {
+            try (Connection connexion = sourceEcoute.getConnection(); Statement statement = connexion.createStatement()) {
+                statement.execute("LISTEN " + canal);
+                if (reconnexion) {
+                    // Des notifications ont pu être émises pendant la coupure
+                    diffuser(new Changement(TypeChangement.TOUT, null));
+                }
+                reconnexion = true;
+                log.info("Écoute des changements sur le canal {}.", canal);
+                PGConnection pgConnexion = connexion.unwrap(PGConnection.class);
+                while (enCours) {
+                    PGNotification[] notifications = pgConnexion.getNotifications((int) attenteMs);
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            recevoir(notification.getParameter());
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                if (enCours) {
+                    log.warn("Écoute des changements interrompue, reconnexion dans {} ms : {}", reconnexionMs, e.getMessage());
+                    pause();
+                }
+            }
+        }
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(reconnexionMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            enCours = false;
+        }
+    }
+
+    @Override
+    public synchronized void destroy() {
+        enCours = false;
+        if (ecoute != null) {
+            ecoute.interrupt();
+        }
+    }
+
+    int enAttente() {
+        return enAttente.get();
+    }
+}
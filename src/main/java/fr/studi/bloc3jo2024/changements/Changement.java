@@ -0,0 +1,19 @@
+package fr.studi.bloc3jo2024.changements;
+
+/**
+ * Modification validée sur une autre instance, diffusée localement par {@link BusChangements} comme événement
+ * Spring : les caches en mémoire l'écoutent par {@code @EventListener} pour invalider leurs entrées.
+ *
+ * @param type Le type de la donnée modifiée.
+ * @param id   L'identifiant de la donnée, ou {@code null} si le changement concerne toutes les données du type.
+ */
+public record Changement(TypeChangement type, String id) {
+
+    /**
+     * @param autre Le type de données d'un cache.
+     * @return {@code true} si le changement touche les données de ce type (ou toutes les données).
+     */
+    public boolean concerne(TypeChangement autre) {
+        return type == TypeChangement.TOUT || type == autre;
+    }
+}
@@ -0,0 +1,19 @@
+package fr.studi.bloc3jo2024.changements;
+
+/**
+ * Nature d'une donnée modifiée, portée par un {@link Changement}.
+ */
+public enum TypeChangement {
+    /** Offre créée, modifiée, supprimée ou épuisée ; identifiant : l'id de l'offre. */
+    OFFRE,
+    /** Discipline ou ses places disponibles ; identifiant : l'id de la discipline. */
+    DISCIPLINE,
+    /** Épreuve (mise en vedette) ; identifiant : l'id de l'épreuve. */
+    EPREUVE,
+    /** Compte utilisateur (activation, mot de passe) ; identifiant : l'UUID de l'utilisateur. */
+    UTILISATEUR,
+    /** Panier d'un utilisateur ; identifiant : l'UUID de l'utilisateur. */
+    PANIER,
+    /** Changements possiblement perdus (reconnexion, débordement) : tout cache local doit être vidé. */
+    TOUT
+}
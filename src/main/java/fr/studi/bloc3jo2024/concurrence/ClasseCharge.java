@@ -0,0 +1,48 @@
+package fr.studi.bloc3jo2024.concurrence;
+
+/**
+ * Classe de charge d'une méthode {@link Cloison}, avec son budget par défaut de connexions simultanées
+ * (0 : pas de limite, seulement mesurée) et son attente maximale d'un permis. Le budget d'une classe en lecture seule
+ * ne s'applique que lorsque ses transactions sont servies par le primaire : sur la réplique, elles n'empruntent pas
+ * ses connexions.
+ */
+public enum ClasseCharge {
+    /** Contrôle des billets aux portes : jamais limité. */
+    SCAN(0, 0, false),
+    /** Finalisation des achats et paiements : jamais limité (la salle d'attente régule déjà l'admission). */
+    PAIEMENT(0, 0, false),
+    /** Consultation du catalogue des offres. */
+    CATALOGUE(2, 200, true),
+    /** Tableaux de bord et statistiques d'administration. */
+    STATISTIQUES(1, 2_000, true),
+    /** Tâches planifiées (expiration des offres, purges, recalages, partitions). */
+    PLANIFICATION(1, 60_000, false);
+
+    private final int permisParDefaut;
+    private final long attenteParDefautMs;
+    private final boolean lectureSeule;
+
+    ClasseCharge(int permisParDefaut, long attenteParDefautMs, boolean lectureSeule) {
+        this.permisParDefaut = permisParDefaut;
+        this.attenteParDefautMs = attenteParDefautMs;
+        this.lectureSeule = lectureSeule;
+    }
+
+    public int getPermisParDefaut() {
+        return permisParDefaut;
+    }
+
+    public long getAttenteParDefautMs() {
+        return attenteParDefautMs;
+    }
+
+    /** @return {@code true} si les méthodes de la classe sont des transactions en lecture seule (routables vers la réplique). */
+    public boolean isLectureSeule() {
+        return lectureSeule;
+    }
+
+    /** @return La clé de configuration de la classe ({@code app.cloisons.<cle>.permis}). */
+    public String cle() {
+        return name().toLowerCase();
+    }
+}
@@ -0,0 +1,23 @@
+package fr.studi.bloc3jo2024.concurrence;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Range la méthode annotée (ou toutes les méthodes publiques de la classe annotée) dans une classe de charge : elle
+ * ne s'exécute qu'avec un permis du budget de sa classe, pris avant l'ouverture de la transaction. Une classe ne peut
+ * donc pas occuper plus de connexions que son budget, quel que soit son débit. Voir {@link CloisonAspect}.
+ * <p>
+ * Une méthode appelée depuis une méthode déjà cloisonnée s'exécute sous le permis de l'appelante.
+ * </p>
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface Cloison {
+
+    ClasseCharge value();
+}
@@ -0,0 +1,47 @@
+package fr.studi.bloc3jo2024.concurrence;
+
+import fr.studi.bloc3jo2024.service.CloisonsService;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Exécution des méthodes {@link Cloison} sous un permis de leur classe de charge.
+ * <p>
+ * L'aspect s'exécute autour du réessai sur conflit et de l'intercepteur transactionnel : le permis est pris avant
+ * l'emprunt d'une connexion et couvre toutes les tentatives.
+ * </p>
+ */
+@Aspect
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 2)
+public class CloisonAspect {
+
+    private final CloisonsService cloisonsService;
+
+    public CloisonAspect(CloisonsService cloisonsService) {
+        this.cloisonsService = cloisonsService;
+    }
+
+    @Around("@annotation(fr.studi.bloc3jo2024.concurrence.Cloison) || @within(fr.studi.bloc3jo2024.concurrence.Cloison)")
+    public Object executer(ProceedingJoinPoint joinPoint) throws Throwable {
+        MethodSignature signature = (MethodSignature) joinPoint.getSignature();
+        Cloison cloison = AnnotatedElementUtils.findMergedAnnotation(signature.getMethod(), Cloison.class);
+        if (cloison == null) {
+            cloison = AnnotatedElementUtils.findMergedAnnotation(joinPoint.getTarget().getClass(), Cloison.class);
+        }
+        if (cloison == null || !cloisonsService.entrer(cloison.value())) {
+            return joinPoint.proceed();
+        }
+        try {
+            return joinPoint.proceed();
+        } finally {
+            cloisonsService.sortir(cloison.value());
+        }
+    }
+}
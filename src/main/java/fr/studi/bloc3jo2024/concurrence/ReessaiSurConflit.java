@@ -0,0 +1,24 @@
+package fr.studi.bloc3jo2024.concurrence;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Réexécute la méthode transactionnelle annotée quand sa transaction échoue sur un conflit de version (@Version).
+ * <p>
+ * La transaction en échec est entièrement annulée avant le réessai : seules les méthodes dont les effets se limitent
+ * à la base (ou sont différés au commit, comme le cache des paniers) peuvent être annotées. Voir
+ * {@link ReessaiSurConflitAspect}.
+ * </p>
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface ReessaiSurConflit {
+
+    /** Nombre maximal d'exécutions, première comprise ; 0 pour {@code app.contention.tentatives-max}. */
+    int tentatives() default 0;
+}
@@ -0,0 +1,76 @@
+package fr.studi.bloc3jo2024.concurrence;
+
+import fr.studi.bloc3jo2024.metrics.VenteMetrics;
+import fr.studi.bloc3jo2024.metrics.VerrouOptimisteMetricsAspect;
+import fr.studi.bloc3jo2024.service.ContentionService;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+
+/**
+ * Réessai des méthodes {@link ReessaiSurConflit} après un conflit de verrouillage optimiste.
+ * <p>
+ * L'aspect s'exécute autour de l'intercepteur transactionnel (ordre plus prioritaire) : chaque tentative ouvre une
+ * nouvelle transaction et relit donc l'état courant, y compris quand le conflit n'apparaît qu'au commit. Appelée
+ * depuis une transaction déjà ouverte, la méthode n'est pas réessayée : la transaction englobante est condamnée, c'est
+ * à la méthode la plus externe de réessayer. Chaque conflit est signalé au {@link ContentionService}, qui bascule les
+ * lignes disputées sur un verrou pessimiste.
+ * </p>
+ */
+@Aspect
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 1)
+public class ReessaiSurConflitAspect {
+
+    private static final Logger log = LoggerFactory.getLogger(ReessaiSurConflitAspect.class);
+
+    private final ContentionService contentionService;
+    private final VenteMetrics venteMetrics;
+
+    public ReessaiSurConflitAspect(ContentionService contentionService, VenteMetrics venteMetrics) {
+        this.contentionService = contentionService;
+        this.venteMetrics = venteMetrics;
+    }
+
+    @Around("@annotation(reessai)")
+    public Object executer(ProceedingJoinPoint joinPoint, ReessaiSurConflit reessai) throws Throwable {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return joinPoint.proceed();
+        }
+        int tentativesMax = reessai.tentatives() > 0 ? reessai.tentatives() : contentionService.getTentativesMax();
+        String operation = joinPoint.getSignature().getName();
+        for (int tentative = 1; ; tentative++) {
+            try {
+                return joinPoint.proceed();
+            } catch (OptimisticLockingFailureException exception) {
+                String entite = VerrouOptimisteMetricsAspect.entiteEnConflit(exception);
+                contentionService.signalerConflit(entite, identifiant(exception));
+                if (tentative >= tentativesMax) {
+                    log.warn("Conflit de version persistant sur {} ({}) après {} tentative(s).", entite, operation, tentative);
+                    throw exception;
+                }
+                venteMetrics.reessaiVerrouOptimiste(entite, operation);
+                Duration delai = contentionService.delaiAvantReessai(tentative);
+                log.debug("Conflit de version sur {} ({}), tentative {}/{} : réessai dans {} ms.",
+                        entite, operation, tentative, tentativesMax, delai.toMillis());
+                Thread.sleep(delai.toMillis());
+            }
+        }
+    }
+
+    private static Object identifiant(OptimisticLockingFailureException exception) {
+        return exception instanceof ObjectOptimisticLockingFailureException objectException
+                ? objectException.getIdentifier()
+                : null;
+    }
+}
@@ -0,0 +1,103 @@
+package fr.studi.bloc3jo2024.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.function.LongSupplier;
+
+/**
+ * Source des transactions en lecture seule : la réplique tant que son retard est acceptable, le primaire sinon.
+ * <p>
+ * Le retard de réplication est mesuré toutes les {@code app.replique.verification-ms} sur la réplique. Au-delà de
+ * {@code app.replique.retard-max-ms}, si la mesure échoue ou si aucune mesure n'a réussi depuis trois périodes, les
+ * lectures repassent sur le primaire : un utilisateur qui vient de payer ne doit pas voir une liste de billets en
+ * retard de plusieurs secondes. Une réplique dont le flux WAL n'est pas en cours ({@code pg_stat_wal_receiver}) est
+ * indisponible quel que soit son retard apparent : déconnectée du primaire, elle a rejoué tout ce qu'elle a reçu et
+ * paraîtrait à jour. L'utilisateur de la réplique doit pouvoir lire ce statut (rôle {@code pg_read_all_stats}).
+ * </p>
+ */
+public class GardeReplique extends DelegatingDataSource {
+
+    private static final Logger log = LoggerFactory.getLogger(GardeReplique.class);
+
+    /**
+     * Retard en secondes ; nul sur un serveur qui n'est pas en réplication ou qui a rejoué tout ce qu'il reçoit,
+     * {@code NULL} sur une réplique qui ne reçoit plus le flux WAL du primaire.
+     */
+    static final String SQL_RETARD = "SELECT CASE WHEN NOT pg_is_in_recovery() THEN 0 "
+            + "WHEN NOT EXISTS (SELECT 1 FROM pg_stat_wal_receiver WHERE status = 'streaming') THEN NULL "
+            + "WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 "
+            + "ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()), 0) END";
+
+    private final DataSource primaire;
+    private final JdbcTemplate jdbcReplique;
+    private final long retardMaxMs;
+    private final long verificationMs;
+    private final LongSupplier horlogeMs;
+    private volatile long retardMs = Long.MAX_VALUE;
+    private volatile long derniereMesure;
+    private volatile boolean utilisee;
+
+    public GardeReplique(DataSource replique, DataSource primaire, long retardMaxMs, long verificationMs) {
+        this(replique, primaire, new JdbcTemplate(replique), retardMaxMs, verificationMs, System::currentTimeMillis);
+    }
+
+    GardeReplique(DataSource replique, DataSource primaire, JdbcTemplate jdbcReplique, long retardMaxMs,
+                  long verificationMs, LongSupplier horlogeMs) {
+        super(replique);
+        this.primaire = primaire;
+        this.jdbcReplique = jdbcReplique;
+        this.retardMaxMs = retardMaxMs;
+        this.verificationMs = verificationMs;
+        this.horlogeMs = horlogeMs;
+    }
+
+    /** Mesure le retard de la réplique. */
+    @Scheduled(fixedDelayString = "${app.replique.verification-ms:1000}")
+    public void verifier() {
+        try {
+            Double secondes = jdbcReplique.queryForObject(SQL_RETARD, Double.class);
+            if (secondes == null) {
+                retardMs = Long.MAX_VALUE;
+                log.debug("Réplique sans flux WAL en cours depuis le primaire.");
+            } else {
+                retardMs = Math.round(secondes * 1000);
+                derniereMesure = horlogeMs.getAsLong();
+            }
+        } catch (DataAccessException e) {
+            retardMs = Long.MAX_VALUE;
+            log.debug("Mesure du retard de la réplique impossible : {}", e.getMessage());
+        }
+        boolean disponible = estDisponible();
+        if (disponible != utilisee) {
+            utilisee = disponible;
+            if (disponible) {
+                log.info("Lectures servies par la réplique (retard {} ms).", retardMs);
+            } else {
+                log.warn("Réplique en retard, déconnectée du primaire ou injoignable : lectures servies par le primaire.");
+            }
+        }
+    }
+
+    /** @return {@code true} si les transactions en lecture seule peuvent être servies par la réplique. */
+    public boolean estDisponible() {
+        return retardMs <= retardMaxMs && horlogeMs.getAsLong() - derniereMesure <= 3 * verificationMs;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return estDisponible() ? super.getConnection() : primaire.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return estDisponible() ? super.getConnection(username, password) : primaire.getConnection(username, password);
+    }
+}
@@ -0,0 +1,45 @@
+package fr.studi.bloc3jo2024.config;
+
+import fr.studi.bloc3jo2024.service.PanierService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Planificateur pour la purge périodique des paniers abandonnés (EN_ATTENTE, inactifs et sans paiement).
+ * Ce composant est activé ou désactivé via la propriété de configuration
+ * 'app.scheduling.panier-cleanup.enabled'.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+@ConditionalOnProperty(
+        name = "app.scheduling.panier-cleanup.enabled",
+        havingValue = "true",
+        matchIfMissing = true
+)
+@Profile("!test")
+public class PanierCleanupScheduler {
+
+    private final PanierService panierService;
+
+    /**
+     * Tâche planifiée pour purger les paniers abandonnés et leur contenu.
+     * S'exécute selon l'expression CRON définie dans la propriété 'application.scheduling.panierCleanupCron'.
+     * Par défaut, s'exécute tous les jours à 0h30, après la purge des tokens.
+     * Chaque instance déclenche la tâche, une seule exécute la purge.
+     */
+    @Scheduled(cron = "${application.scheduling.panierCleanupCron:0 30 0 * * ?}")
+    public void purgeAbandonedCartsJob() {
+        log.info("Début de la tâche planifiée : purge des paniers abandonnés.");
+        try {
+            long count = panierService.purgerPaniersAbandonnes();
+            log.info("Tâche de purge terminée. Nombre de paniers abandonnés supprimés : {}", count);
+        } catch (Exception e) {
+            log.error("Erreur lors de la purge des paniers abandonnés.", e);
+        }
+    }
+}
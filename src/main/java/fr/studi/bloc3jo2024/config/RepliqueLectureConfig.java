@@ -0,0 +1,76 @@
+package fr.studi.bloc3jo2024.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+
+/**
+ * Envoie les transactions en lecture seule ({@code @Transactional(readOnly = true)} : catalogue des offres, billets,
+ * adresses, paiements) vers une réplique PostgreSQL, chacune avec son pool Hikari : la navigation dans le catalogue
+ * n'emprunte plus les connexions du pool primaire dont dépend le paiement. Activé par {@code app.replique.active}.
+ * <p>
+ * La source de données de l'application est un {@link LazyConnectionDataSourceProxy} : la connexion physique n'est
+ * prise qu'à la première requête, une fois le caractère lecture seule de la transaction connu, dans le pool primaire
+ * ({@code spring.datasource.hikari}) ou le pool de la réplique ({@code app.replique.hikari}) via
+ * {@link GardeReplique}. Flyway, les écritures et tout accès hors transaction en lecture seule restent sur le
+ * primaire. En développement, la réplique est par défaut la base primaire elle-même.
+ * </p>
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.replique.active", havingValue = "true")
+public class RepliqueLectureConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaireDataSource(DataSourceProperties dataSourceProperties) {
+        return dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    @ConfigurationProperties("app.replique.hikari")
+    public HikariDataSource repliqueDataSource(DataSourceProperties dataSourceProperties,
+                                               @Value("${app.replique.url}") String url,
+                                               @Value("${app.replique.username:${spring.datasource.username:}}") String username,
+                                               @Value("${app.replique.password:${spring.datasource.password:}}") String password) {
+        HikariDataSource pool = DataSourceBuilder.create()
+                .type(HikariDataSource.class)
+                .driverClassName(dataSourceProperties.determineDriverClassName())
+                .url(url)
+                .username(username)
+                .password(password)
+                .build();
+        pool.setPoolName("Jo2024RepliqueHikariPool");
+        pool.setReadOnly(true);
+        return pool;
+    }
+
+    @Bean
+    public GardeReplique gardeReplique(@Qualifier("repliqueDataSource") DataSource replique,
+                                       @Qualifier("primaireDataSource") DataSource primaire,
+                                       @Value("${app.replique.retard-max-ms:1000}") long retardMaxMs,
+                                       @Value("${app.replique.verification-ms:1000}") long verificationMs) {
+        return new GardeReplique(replique, primaire, retardMaxMs, verificationMs);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaireDataSource") DataSource primaire, GardeReplique gardeReplique) {
+        return routage(primaire, gardeReplique);
+    }
+
+    static LazyConnectionDataSourceProxy routage(DataSource primaire, DataSource lecture) {
+        LazyConnectionDataSourceProxy routage = new LazyConnectionDataSourceProxy(primaire);
+        routage.setReadOnlyDataSource(lecture);
+        return routage;
+    }
+}
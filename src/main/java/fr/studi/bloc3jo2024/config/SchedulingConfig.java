@@ -0,0 +1,15 @@
+package fr.studi.bloc3jo2024.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Active l'exécution des méthodes annotées {@code @Scheduled} (purge des tokens, expiration des offres,
+ * rafraîchissement des métriques…). Peut être désactivée via 'app.scheduling.enabled=false'.
+ */
+@Configuration
+@EnableScheduling
+@ConditionalOnProperty(name = "app.scheduling.enabled", havingValue = "true", matchIfMissing = true)
+public class SchedulingConfig {
+}
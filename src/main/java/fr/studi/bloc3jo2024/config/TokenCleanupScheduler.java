@@ -37,6 +37,8 @@ public class TokenCleanupScheduler {
      * - * : jour du mois (tous les jours)
      * - * : mois (tous les mois)
      * - ? : jour de la semaine (pas de jour spécifique, car 'jour du mois' est déjà spécifié avec '*')
+     * Chaque instance déclenche la tâche, une seule exécute la purge ; ses lots prennent chacun un permis de la
+     * classe de charge PLANIFICATION, plutôt qu'un permis pour toute la durée de la purge.
      */
     @Scheduled(cron = "${application.scheduling.tokenCleanupCron:0 0 0 * * ?}")
     public void purgeExpiredTokensJob() {
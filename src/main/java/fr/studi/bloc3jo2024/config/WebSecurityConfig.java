@@ -1,7 +1,12 @@
 package fr.studi.bloc3jo2024.config;
 
 import fr.studi.bloc3jo2024.filter.AdminSessionFilter;
+import fr.studi.bloc3jo2024.filter.FileAttenteFilter;
 import fr.studi.bloc3jo2024.filter.JwtAuthenticationFilter;
+import fr.studi.bloc3jo2024.filter.LimitationDebitFilter;
+import fr.studi.bloc3jo2024.service.FileAttenteService;
+import fr.studi.bloc3jo2024.service.IdempotenceService;
+import jakarta.servlet.DispatcherType;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
@@ -20,6 +25,7 @@ import org.springframework.security.web.context.RequestAttributeSecurityContextR
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
+import org.springframework.web.filter.CorsFilter;
 
 import java.util.Arrays;
 import java.util.List;
@@ -30,6 +36,8 @@ public class WebSecurityConfig {
 
     private final JwtAuthenticationFilter jwtFilter;
     private final AdminSessionFilter adminFilter;
+    private final FileAttenteFilter fileAttenteFilter;
+    private final LimitationDebitFilter limitationDebitFilter;
     private final JwtAuthenticationEntryPoint unauthorizedHandler;
 
     /**
@@ -37,13 +45,19 @@ public class WebSecurityConfig {
      *
      * @param jwtFilter Filtre pour l'authentification JWT des utilisateurs.
      * @param adminFilter Filtre pour la gestion de session/authentification administrateur.
+     * @param fileAttenteFilter Salle d'attente devant le panier et le paiement.
+     * @param limitationDebitFilter Limitation de débit des routes d'authentification et de scan.
      * @param unauthorizedHandler Gestionnaire pour les échecs d'authentification (réponse 401).
      */
     public WebSecurityConfig(JwtAuthenticationFilter jwtFilter,
                              AdminSessionFilter adminFilter,
+                             FileAttenteFilter fileAttenteFilter,
+                             LimitationDebitFilter limitationDebitFilter,
                              JwtAuthenticationEntryPoint unauthorizedHandler) {
         this.jwtFilter = jwtFilter;
         this.adminFilter = adminFilter;
+        this.fileAttenteFilter = fileAttenteFilter;
+        this.limitationDebitFilter = limitationDebitFilter;
         this.unauthorizedHandler = unauthorizedHandler;
     }
 
@@ -79,10 +93,12 @@ public class WebSecurityConfig {
         config.setAllowedMethods(List.of("GET", "POST", "PUT", "DELETE", "OPTIONS", "PATCH"));
         config.setAllowedHeaders(List.of(
                 "Authorization", "Content-Type", "X-Requested-With", "accept", "Origin",
-                "Access-Control-Request-Method", "Access-Control-Request-Headers", "X-XSRF-TOKEN"
+                "Access-Control-Request-Method", "Access-Control-Request-Headers", "X-XSRF-TOKEN",
+                IdempotenceService.EN_TETE, FileAttenteService.EN_TETE
         ));
         config.setExposedHeaders(List.of(
-                "Access-Control-Allow-Origin", "Access-Control-Allow-Credentials", "Authorization"
+                "Access-Control-Allow-Origin", "Access-Control-Allow-Credentials", "Authorization",
+                IdempotenceService.EN_TETE_REJEU, FileAttenteService.EN_TETE, "Retry-After"
         ));
         config.setAllowCredentials(true);
         config.setMaxAge(3600L);
@@ -113,6 +129,9 @@ public class WebSecurityConfig {
                 .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
                 .authorizeHttpRequests(auth -> auth
 
+                        // Re-dispatch asynchrone (flux SSE) : la requête initiale a déjà été autorisée
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
+
                         // Endpoints publics divers
                         .requestMatchers("/management/health", "/management/info", "/app-status").permitAll()
 
@@ -129,6 +148,7 @@ public class WebSecurityConfig {
 
                         // Endpoints sécurisés pour le rôle ADMIN
                         .requestMatchers("/management/env", "/api/admin/**", "/pages/home-admin.html").hasRole("ADMIN")
+                        .requestMatchers("/management/metrics", "/management/metrics/**", "/management/prometheus").hasRole("ADMIN")
 
                         // Endpoints sécurisés pour les tests authentifiés
                         .requestMatchers("/api/test/secured").hasAnyRole("USER", "ADMIN")
@@ -137,6 +157,10 @@ public class WebSecurityConfig {
                         .anyRequest().authenticated()
                 )
 
+                // Limitation de débit puis salle d'attente, après CORS (réponses 429/503 lisibles par le navigateur)
+                // et avant toute lecture en base
+                .addFilterAfter(limitationDebitFilter, CorsFilter.class)
+                .addFilterAfter(fileAttenteFilter, CorsFilter.class)
                 .addFilterBefore(jwtFilter, UsernamePasswordAuthenticationFilter.class)
                 .addFilterBefore(adminFilter, BasicAuthenticationFilter.class);
 
@@ -1,5 +1,7 @@
 package fr.studi.bloc3jo2024.controller;
 
+import fr.studi.bloc3jo2024.concurrence.ClasseCharge;
+import fr.studi.bloc3jo2024.concurrence.Cloison;
 import fr.studi.bloc3jo2024.dto.billets.BilletVerificationDto;
 import fr.studi.bloc3jo2024.entity.Billet;
 import fr.studi.bloc3jo2024.entity.Offre;
@@ -64,6 +66,7 @@ public class BilletController {
      * un statut 409 CONFLICT si le billet a déjà été scanné,
      * ou un statut 500 INTERNAL_SERVER_ERROR pour toute autre erreur.
      */
+    @Cloison(ClasseCharge.SCAN)
     @GetMapping("/verifier/{cleFinaleBillet}")
     public ResponseEntity<BilletVerificationDto> verifierBillet(@PathVariable String cleFinaleBillet) {
         try {
@@ -113,6 +116,7 @@ public class BilletController {
      * @return Une ResponseEntity contenant la liste des clés valides (200 OK) ou un statut
      * 500 INTERNAL_SERVER_ERROR en cas d'erreur.
      */
+    @Cloison(ClasseCharge.SCAN)
     @GetMapping("/sync/valid-keys")
     public ResponseEntity<List<String>> getValidTicketKeys() {
         try {
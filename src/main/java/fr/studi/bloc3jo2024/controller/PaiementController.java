@@ -4,7 +4,9 @@ import fr.studi.bloc3jo2024.dto.paiement.PaiementDto;
 import fr.studi.bloc3jo2024.dto.paiement.PaiementSimulationResultDto;
 import fr.studi.bloc3jo2024.entity.enums.MethodePaiementEnum;
 import fr.studi.bloc3jo2024.exception.ResourceNotFoundException;
+import fr.studi.bloc3jo2024.service.IdempotenceService;
 import fr.studi.bloc3jo2024.service.PaiementService;
+import fr.studi.bloc3jo2024.service.impl.DetailUtilisateurServiceImpl;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -24,9 +26,15 @@ import java.util.UUID;
 public class PaiementController {
 
     private final PaiementService paiementService;
+    private final IdempotenceService idempotenceService;
 
     private UUID getAuthenticatedUserId() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        // Le filtre JWT place un DetailUtilisateurServiceImpl dont le username est l'email : l'ID est lu sur l'entité.
+        if (authentication != null && authentication.getPrincipal() instanceof DetailUtilisateurServiceImpl details
+                && details.utilisateur().getIdUtilisateur() != null) {
+            return details.utilisateur().getIdUtilisateur();
+        }
         if (authentication != null && authentication.getPrincipal() instanceof UserDetails userDetails) {
             String username = userDetails.getUsername();
             try {
@@ -41,18 +49,23 @@ public class PaiementController {
     @PostMapping("/panier/{idPanier}")
     public ResponseEntity<PaiementDto> effectuerPaiement(
             @PathVariable Long idPanier,
-            @RequestParam MethodePaiementEnum methodePaiement) {
+            @RequestParam MethodePaiementEnum methodePaiement,
+            @RequestHeader(value = IdempotenceService.EN_TETE, required = false) String cleIdempotence) {
         UUID utilisateurId = getAuthenticatedUserId();
-        try {
-            PaiementDto paiementDto = paiementService.effectuerPaiement(utilisateurId, idPanier, methodePaiement);
-            return ResponseEntity.status(HttpStatus.CREATED).body(paiementDto);
-        } catch (ResourceNotFoundException e) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage());
-        } catch (IllegalStateException e) {
-            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage());
-        } catch (IllegalArgumentException e) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
-        }
+        // Un nouvel envoi avec la même clé renvoie le paiement déjà créé, sans relire le panier
+        return idempotenceService.executer(cleIdempotence, "POST /api/paiements/panier|" + utilisateurId,
+                idPanier + "|" + methodePaiement, () -> {
+                    try {
+                        PaiementDto paiementDto = paiementService.effectuerPaiement(utilisateurId, idPanier, methodePaiement);
+                        return ResponseEntity.status(HttpStatus.CREATED).body(paiementDto);
+                    } catch (ResourceNotFoundException e) {
+                        throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage());
+                    } catch (IllegalStateException e) {
+                        throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage());
+                    } catch (IllegalArgumentException e) {
+                        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+                    }
+                });
     }
 
     @PostMapping("/{idPaiement}/simuler")
@@ -66,6 +79,8 @@ public class PaiementController {
             return ResponseEntity.ok(resultDto);
         } catch (ResourceNotFoundException e) {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage());
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage());
         }
     }
 
@@ -4,6 +4,9 @@ import fr.studi.bloc3jo2024.dto.panier.AjouterOffrePanierDto;
 import fr.studi.bloc3jo2024.dto.panier.ModifierContenuPanierDto;
 import fr.studi.bloc3jo2024.dto.panier.PanierDto;
 import fr.studi.bloc3jo2024.exception.ResourceNotFoundException;
+import fr.studi.bloc3jo2024.service.CachePaniersService;
+import fr.studi.bloc3jo2024.service.IdempotenceService;
+import fr.studi.bloc3jo2024.service.OffresEpuiseesService;
 import fr.studi.bloc3jo2024.service.PanierService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
@@ -21,6 +24,9 @@ import java.util.UUID;
 @Validated
 public class PanierController {
     private final PanierService panierService;
+    private final IdempotenceService idempotenceService;
+    private final OffresEpuiseesService offresEpuiseesService;
+    private final CachePaniersService cachePaniersService;
 
     /**
      * Récupère le panier en cours de l'utilisateur.
@@ -42,23 +48,30 @@ public class PanierController {
      * Ajoute une offre au panier de l'utilisateur.
      * @param userId L'ID de l'utilisateur.
      * @param request DTO contenant l'ID de l'offre et la quantité à ajouter.
+     * @param cleIdempotence Clé d'idempotence optionnelle : un nouvel envoi avec la même clé n'ajoute pas l'offre une seconde fois.
      * @return ResponseEntity contenant le PanierDto mis à jour et le statut HTTP 201 CREATED,
-     * ou le statut HTTP 400 BAD_REQUEST en cas de données invalides.
+     * ou le statut HTTP 400 BAD_REQUEST en cas de données invalides,
+     * ou le statut HTTP 409 CONFLICT si l'offre est épuisée (refusé sans transaction si elle est connue comme telle).
      */
     @PostMapping("/{userId}/offres")
     public ResponseEntity<PanierDto> ajouterOffre(
             @PathVariable UUID userId,
-            @Valid @RequestBody AjouterOffrePanierDto request) {
-        try {
-            PanierDto dto = panierService.ajouterOffreAuPanier(userId.toString(), request); // Convertir UUID en String
-            return new ResponseEntity<>(dto, HttpStatus.CREATED);
-        } catch (ResourceNotFoundException e) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage());
-        } catch (IllegalArgumentException e) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
-        } catch (IllegalStateException e) {
-            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage()); // Conflit si stock insuffisant
-        }
+            @Valid @RequestBody AjouterOffrePanierDto request,
+            @RequestHeader(value = IdempotenceService.EN_TETE, required = false) String cleIdempotence) {
+        String empreinte = request.getIdOffre() + "x" + request.getQuantite();
+        return idempotenceService.executer(cleIdempotence, "POST /api/paniers/offres|" + userId, empreinte, () -> {
+            try {
+                offresEpuiseesService.verifierDisponible(request.getIdOffre());
+                PanierDto dto = panierService.ajouterOffreAuPanier(userId.toString(), request); // Convertir UUID en String
+                return new ResponseEntity<>(dto, HttpStatus.CREATED);
+            } catch (ResourceNotFoundException e) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage());
+            } catch (IllegalArgumentException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+            } catch (IllegalStateException e) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage()); // Conflit si stock insuffisant
+            }
+        });
     }
 
     /**
@@ -107,19 +120,28 @@ public class PanierController {
     /**
      * Valide (paie) le panier de l'utilisateur.
      * @param userId L'ID de l'utilisateur.
+     * @param cleIdempotence Clé d'idempotence optionnelle : un nouvel envoi avec la même clé renvoie la réponse du
+     *                       premier paiement sans le rejouer.
      * @return ResponseEntity contenant le PanierDto mis à jour (avec statut PAYE) et le statut HTTP 200 OK,
      * ou le statut HTTP 404 NOT_FOUND si le panier n'existe pas,
-     * ou le statut HTTP 409 CONFLICT si le panier ne peut pas être payé.
+     * ou le statut HTTP 409 CONFLICT si le panier ne peut pas être payé (refusé sans transaction si le panier en cache
+     * contient une offre connue comme épuisée).
      */
     @PostMapping("/{userId}/payer")
-    public ResponseEntity<PanierDto> payerPanier(@PathVariable UUID userId) {
-        try {
-            PanierDto dto = panierService.finaliserAchat(userId.toString()); // Modifier la signature de finaliserAchat pour prendre l'ID utilisateur
-            return ResponseEntity.ok(dto);
-        } catch (ResourceNotFoundException e) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage());
-        } catch (IllegalStateException e) {
-            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage());
-        }
+    public ResponseEntity<PanierDto> payerPanier(
+            @PathVariable UUID userId,
+            @RequestHeader(value = IdempotenceService.EN_TETE, required = false) String cleIdempotence) {
+        return idempotenceService.executer(cleIdempotence, "POST /api/paniers/payer|" + userId, userId.toString(), () -> {
+            try {
+                cachePaniersService.lire(userId).ifPresent(panier -> panier.getContenuPaniers()
+                        .forEach(contenu -> offresEpuiseesService.verifierDisponible(contenu.getIdOffre())));
+                PanierDto dto = panierService.finaliserAchat(userId.toString()); // Modifier la signature de finaliserAchat pour prendre l'ID utilisateur
+                return ResponseEntity.ok(dto);
+            } catch (ResourceNotFoundException e) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage());
+            } catch (IllegalStateException e) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage());
+            }
+        });
     }
 }
\ No newline at end of file
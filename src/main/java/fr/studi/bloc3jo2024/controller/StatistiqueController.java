@@ -1,26 +1,33 @@
 package fr.studi.bloc3jo2024.controller;
 
+import fr.studi.bloc3jo2024.analytique.DimensionVente;
+import fr.studi.bloc3jo2024.analytique.EntrepotVentes;
+import fr.studi.bloc3jo2024.analytique.RequeteVentes;
 import fr.studi.bloc3jo2024.dto.offres.VenteParOffreDto;
-import fr.studi.bloc3jo2024.entity.enums.StatutPaiement;
-import fr.studi.bloc3jo2024.entity.enums.StatutTransaction;
-import fr.studi.bloc3jo2024.repository.PaiementRepository;
-import fr.studi.bloc3jo2024.repository.UtilisateurRepository;
+import fr.studi.bloc3jo2024.dto.statistiques.ResultatAnalyseDto;
+import fr.studi.bloc3jo2024.service.CompteursVentesService;
+import fr.studi.bloc3jo2024.service.DiffusionStatsService;
 import fr.studi.bloc3jo2024.service.StatistiqueService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.time.LocalDate;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/api/admin/stats")
@@ -29,18 +36,21 @@ public class StatistiqueController {
 
     private static final Logger log = LoggerFactory.getLogger(StatistiqueController.class);
 
-    private final PaiementRepository paiementRepository;
-    private final UtilisateurRepository utilisateurRepository;
+    private final CompteursVentesService compteursVentesService;
     private final StatistiqueService statistiqueService;
+    private final DiffusionStatsService diffusionStatsService;
+    private final EntrepotVentes entrepotVentes;
 
     @Autowired
     public StatistiqueController(
-                                  PaiementRepository paiementRepository,
-                                  UtilisateurRepository utilisateurRepository,
-                                  StatistiqueService statistiqueService) {
-        this.paiementRepository = paiementRepository;
-        this.utilisateurRepository = utilisateurRepository;
+                                  CompteursVentesService compteursVentesService,
+                                  StatistiqueService statistiqueService,
+                                  DiffusionStatsService diffusionStatsService,
+                                  EntrepotVentes entrepotVentes) {
+        this.compteursVentesService = compteursVentesService;
         this.statistiqueService = statistiqueService;
+        this.diffusionStatsService = diffusionStatsService;
+        this.entrepotVentes = entrepotVentes;
     }
 
     /**
@@ -73,6 +83,7 @@ public class StatistiqueController {
 
     /**
      * Récupère les statistiques globales (nombre total d'utilisateurs, nombre total de paiements réussis).
+     * Les valeurs proviennent des compteurs en mémoire, recalés périodiquement sur la base.
      *
      * @return A {@link ResponseEntity} contenant une {@link Map} avec des statistiques globales.
      */
@@ -80,8 +91,57 @@ public class StatistiqueController {
     public ResponseEntity<Map<String, Long>> getStatsGlobales() {
         log.info("Request to get global statistics.");
         Map<String, Long> stats = new HashMap<>();
-        stats.put("utilisateurs", utilisateurRepository.count());
-        stats.put("paiementsReussis", paiementRepository.countByStatutPaiementAndTransaction_StatutTransaction(StatutPaiement.ACCEPTE, StatutTransaction.REUSSI));
+        stats.put("utilisateurs", compteursVentesService.getUtilisateurs());
+        stats.put("paiementsReussis", compteursVentesService.getPaiementsReussis());
         return ResponseEntity.ok(stats);
     }
+
+    /**
+     * Ouvre un flux SSE des ventes par type d'offre et des stocks restants (offres et disciplines).
+     * Un instantané complet est envoyé d'abord, puis uniquement les valeurs modifiées à chaque tick.
+     *
+     * @return Un {@link SseEmitter} émettant des événements "instantane" et "delta".
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamStats() {
+        log.info("Request to open the live statistics stream.");
+        return diffusionStatsService.abonner();
+    }
+
+    /**
+     * Analyse ad hoc des ventes sur l'entrepôt colonnaire en mémoire (reconstruit périodiquement).
+     * Exemple : {@code /analyse?groupePar=PAYS_ACHETEUR&filtre=TYPE_OFFRE:SOLO&filtre=VILLE:Paris&du=2024-07-26}.
+     *
+     * @param groupePar Dimension de regroupement ({@link DimensionVente}).
+     * @param filtres   Filtres au format {@code DIMENSION:valeur} ; plusieurs valeurs d'une même dimension sont combinées en OU.
+     * @param du        Premier jour inclus (optionnel).
+     * @param au        Dernier jour inclus (optionnel).
+     * @return A {@link ResponseEntity} contenant un {@link ResultatAnalyseDto}.
+     */
+    @GetMapping("/analyse")
+    public ResponseEntity<ResultatAnalyseDto> analyserVentes(
+            @RequestParam("groupePar") DimensionVente groupePar,
+            @RequestParam(value = "filtre", required = false) List<String> filtres,
+            @RequestParam(value = "du", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate du,
+            @RequestParam(value = "au", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate au) {
+        log.info("Request to analyse sales grouped by {} with filters {}.", groupePar, filtres);
+        RequeteVentes requete = new RequeteVentes(groupePar, lireFiltres(filtres), du, au);
+        return ResponseEntity.ok(entrepotVentes.analyser(requete));
+    }
+
+    private static Map<DimensionVente, Set<String>> lireFiltres(List<String> filtres) {
+        Map<DimensionVente, Set<String>> resultat = new EnumMap<>(DimensionVente.class);
+        if (filtres == null) {
+            return resultat;
+        }
+        for (String filtre : filtres) {
+            int separateur = filtre.indexOf(':');
+            if (separateur <= 0) {
+                throw new IllegalArgumentException("Filtre invalide (format attendu DIMENSION:valeur) : " + filtre);
+            }
+            DimensionVente dimension = DimensionVente.valueOf(filtre.substring(0, separateur));
+            resultat.computeIfAbsent(dimension, d -> new HashSet<>()).add(filtre.substring(separateur + 1));
+        }
+        return resultat;
+    }
 }
@@ -1,6 +1,8 @@
 package fr.studi.bloc3jo2024.controller.offres;
 
 import fr.studi.bloc3jo2024.dto.offres.OffreDto;
+import fr.studi.bloc3jo2024.exception.ResourceNotFoundException;
+import fr.studi.bloc3jo2024.service.OffresEpuiseesService;
 import fr.studi.bloc3jo2024.service.offres.UtilisateurOffreService;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
@@ -23,7 +25,9 @@ import org.springframework.web.bind.annotation.RestController;
 public class UtilisateurOffreController {
 
     private static final Logger log = LoggerFactory.getLogger(UtilisateurOffreController.class);
+    private static final String OFFRE_EPUISEE_ID_MSG = "L'offre avec l'ID %d n'est plus disponible ou n'existe pas.";
     private final UtilisateurOffreService utilisateurOffreService;
+    private final OffresEpuiseesService offresEpuiseesService;
 
     /**
      * Récupère une page d'offres actuellement disponibles pour les utilisateurs.
@@ -47,11 +51,14 @@ public class UtilisateurOffreController {
      * @param id L'ID de l'offre à récupérer.
      * @return Une {@link ResponseEntity} contenant l'{@link OffreDto} si trouvée et disponible.
      * Lève ResourceNotFoundException (gérée par GlobalExceptionHandler pour un statut 404)
-     * si l'offre n'est pas trouvée ou pas disponible.
+     * si l'offre n'est pas trouvée ou pas disponible, sans accès à la base si elle est connue comme épuisée.
      */
     @GetMapping("/{id}")
     public ResponseEntity<OffreDto> obtenirOffreDisponibleParId(@PathVariable Long id) {
         log.info("Requête pour obtenir l'offre disponible avec ID : {}", id);
+        if (offresEpuiseesService.estEpuisee(id)) {
+            throw new ResourceNotFoundException(String.format(OFFRE_EPUISEE_ID_MSG, id));
+        }
         OffreDto offreDisponible = utilisateurOffreService.obtenirOffreDisponibleParId(id);
         return ResponseEntity.ok(offreDisponible);
     }
@@ -4,6 +4,9 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -11,4 +14,6 @@ public class PaiementSimulationResultDto {
     private PaiementDto paiement;
     private Long billetId;
     private String cleFinaleBillet;
+    private List<Long> billetIds = new ArrayList<>();
+    private List<String> clesFinalesBillets = new ArrayList<>();
 }
\ No newline at end of file
@@ -0,0 +1,23 @@
+package fr.studi.bloc3jo2024.dto.statistiques;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * Un groupe du résultat d'une analyse de ventes.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LigneAnalyseDto {
+
+    private String valeur;
+    // Nombre de lignes de panier payées.
+    private long nombreLignes;
+    // Somme des quantités commandées.
+    private long quantite;
+    private BigDecimal montant;
+}
@@ -0,0 +1,25 @@
+package fr.studi.bloc3jo2024.dto.statistiques;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Résultat d'une analyse de ventes exécutée sur l'entrepôt en mémoire.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ResultatAnalyseDto {
+
+    private String groupePar;
+    // Nombre total de lignes parcourues (taille de l'entrepôt).
+    private long lignesParcourues;
+    private long dureeMicros;
+    // Date de la dernière reconstruction de l'entrepôt.
+    private Instant donneesDu;
+    private List<LigneAnalyseDto> lignes;
+}
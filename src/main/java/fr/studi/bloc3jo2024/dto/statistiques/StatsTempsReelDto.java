@@ -0,0 +1,30 @@
+package fr.studi.bloc3jo2024.dto.statistiques;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Événement du flux SSE des statistiques administrateur.
+ * <p>
+ * Un instantané ({@code complet = true}) contient toutes les valeurs ; un delta ne contient que les clés modifiées
+ * depuis le tick précédent. Dans un delta, une valeur {@code null} signale une offre ou une discipline supprimée.
+ * </p>
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StatsTempsReelDto {
+
+    private Instant horodatage;
+    private boolean complet;
+    // Billets vendus par type d'offre (SOLO, DUO, FAMILIALE).
+    private Map<String, Long> ventesParType;
+    // Quantité restante par ID d'offre.
+    private Map<Long, Integer> quantitesOffres;
+    // Places restantes par ID de discipline.
+    private Map<Long, Integer> placesDisciplines;
+}
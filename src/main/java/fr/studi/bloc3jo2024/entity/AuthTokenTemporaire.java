@@ -14,7 +14,9 @@ import java.util.UUID;
 @Entity
 @Table(name = "auth_tokens_temporaire", indexes = {
         @Index(name = "idx_authtokentemp_token_identifier", columnList = "token_identifier", unique = true),
-        @Index(name = "idx_authtokentemp_token_hache", columnList = "token_hache", unique = true)
+        @Index(name = "idx_authtokentemp_token_hache", columnList = "token_hache", unique = true),
+        @Index(name = "idx_authtokentemp_date_expiration", columnList = "date_expiration"),
+        @Index(name = "idx_authtokentemp_utilisateur_type", columnList = "id_utilisateur_uuid, type_token")
 })
 @Getter
 @Setter
@@ -10,6 +10,7 @@ import java.util.List;
 import java.util.Objects;
 
 @Entity
+// Index partiel idx_billets_non_scannes (billets non scannés) : non exprimable en JPA, voir la migration V7
 @Table(name = "billets")
 @Getter
 @Setter
@@ -18,7 +19,8 @@ import java.util.Objects;
 @Builder
 public class Billet {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "billets_seq")
+    @SequenceGenerator(name = "billets_seq", sequenceName = "billets_id_billet_seq", allocationSize = 50)
     @Column(name = "id_billet")
     private Long idBillet;
 
@@ -12,7 +12,9 @@ import java.util.Objects;
 @AllArgsConstructor
 @Builder
 @IdClass(ContenuPanierId.class)
-@Table(name = "contenu_panier")
+@Table(name = "contenu_panier", indexes = {
+        @Index(name = "idx_contenu_panier_offre", columnList = "id_offre")
+})
 public class ContenuPanier {
 
     @Id
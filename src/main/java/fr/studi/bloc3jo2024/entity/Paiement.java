@@ -18,7 +18,8 @@ import java.time.LocalDateTime;
 @AllArgsConstructor
 public class Paiement {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "paiements_seq")
+    @SequenceGenerator(name = "paiements_seq", sequenceName = "paiements_id_paiement_seq", allocationSize = 50)
     @Column(name = "id_paiement")
     private Long idPaiement;
 
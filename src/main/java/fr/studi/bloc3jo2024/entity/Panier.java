@@ -20,12 +20,14 @@ import java.util.Set;
 @AllArgsConstructor
 @Builder
 @Table(name = "paniers", indexes = {
-        @Index(name = "idx_paniers_statut", columnList = "statut_panier")
+        @Index(name = "idx_paniers_statut", columnList = "statut_panier"),
+        @Index(name = "idx_paniers_utilisateur_statut", columnList = "id_utilisateur_uuid, statut_panier")
 })
 public class Panier {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "paniers_seq")
+    @SequenceGenerator(name = "paniers_seq", sequenceName = "paniers_id_panier_seq", allocationSize = 50)
     @Column(name = "id_panier")
     private Long idPanier;
 
@@ -42,6 +44,10 @@ public class Panier {
     @Builder.Default
     private LocalDateTime dateAjout = LocalDateTime.now();
 
+    // Dernière modification du panier : un panier EN_ATTENTE inactif trop longtemps est purgé.
+    @Column(name = "date_modification")
+    private LocalDateTime dateModification;
+
     // Relation Many-to-One vers l'entité Utilisateur. Chaque panier appartient à un utilisateur.
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "id_utilisateur_uuid", nullable = false)
@@ -59,10 +65,21 @@ public class Panier {
     @Version
     private Long version;
 
+    // Totaux courants tenus à jour par delta pendant la transaction (non persistés, voir TotauxPanier).
+    @Transient
+    private TotauxPanier totaux;
+
     // Méthode exécutée avant la persistance pour s'assurer que la date d'ajout est initialisée.
     @PrePersist
     public void prePersist() {
         if (dateAjout == null) dateAjout = LocalDateTime.now();
+        dateModification = LocalDateTime.now();
+    }
+
+    // Méthode exécutée avant chaque mise à jour : le panier est encore utilisé.
+    @PreUpdate
+    public void preUpdate() {
+        dateModification = LocalDateTime.now();
     }
 
     @Override
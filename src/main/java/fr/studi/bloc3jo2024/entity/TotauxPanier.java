@@ -0,0 +1,112 @@
+package fr.studi.bloc3jo2024.entity;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Totaux courants d'un panier : montant en centimes et places occupées par discipline.
+ * <p>
+ * Initialisés une fois au chargement du panier (montant repris de {@code montant_total}, places cumulées en un passage
+ * sur les lignes déjà chargées), puis mis à jour par delta à chaque mutation : aucune ligne n'est reparcourue et le
+ * montant se cumule en {@code long}, sans allocation. {@link #calculer(Panier)} refait le calcul complet pour vérification.
+ * </p>
+ */
+public final class TotauxPanier {
+
+    private long montantCentimes;
+    private final Map<Long, Integer> placesParDiscipline;
+
+    private TotauxPanier(long montantCentimes, Map<Long, Integer> placesParDiscipline) {
+        this.montantCentimes = montantCentimes;
+        this.placesParDiscipline = placesParDiscipline;
+    }
+
+    /** Totaux d'un panier chargé : montant persisté, places des lignes. */
+    public static TotauxPanier initialiser(Panier panier) {
+        if (panier.getMontantTotal() == null) {
+            return calculer(panier);
+        }
+        TotauxPanier totaux = new TotauxPanier(enCentimes(panier.getMontantTotal()), new HashMap<>());
+        if (panier.getContenuPaniers() != null) {
+            for (ContenuPanier contenu : panier.getContenuPaniers()) {
+                if (contenu != null && contenu.getOffre() != null) {
+                    totaux.cumulerPlaces(contenu.getOffre(), contenu.getQuantiteCommandee());
+                }
+            }
+        }
+        return totaux;
+    }
+
+    /** Recalcul complet depuis les lignes et les prix courants des offres. */
+    public static TotauxPanier calculer(Panier panier) {
+        TotauxPanier totaux = new TotauxPanier(0, new HashMap<>());
+        if (panier.getContenuPaniers() != null) {
+            for (ContenuPanier contenu : panier.getContenuPaniers()) {
+                if (contenu != null && contenu.getOffre() != null) {
+                    totaux.appliquer(contenu.getOffre(), contenu.getQuantiteCommandee());
+                }
+            }
+        }
+        return totaux;
+    }
+
+    /** Applique une variation de quantité d'une offre (négative pour un retrait). */
+    public void appliquer(Offre offre, int deltaQuantite) {
+        montantCentimes += prixCentimes(offre) * deltaQuantite;
+        cumulerPlaces(offre, deltaQuantite);
+    }
+
+    public void reinitialiser() {
+        montantCentimes = 0;
+        placesParDiscipline.clear();
+    }
+
+    public long getMontantCentimes() {
+        return montantCentimes;
+    }
+
+    public BigDecimal getMontant() {
+        return BigDecimal.valueOf(montantCentimes, 2);
+    }
+
+    /** Places occupées dans la discipline par les lignes du panier. */
+    public int getPlaces(Long idDiscipline) {
+        return placesParDiscipline.getOrDefault(idDiscipline, 0);
+    }
+
+    /** Même montant et mêmes places par discipline (une discipline à zéro équivaut à une discipline absente). */
+    public boolean concordeAvec(TotauxPanier autre) {
+        if (montantCentimes != autre.montantCentimes) {
+            return false;
+        }
+        return sansZeros(placesParDiscipline).equals(sansZeros(autre.placesParDiscipline));
+    }
+
+    public static long enCentimes(BigDecimal montant) {
+        return montant.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact();
+    }
+
+    private static long prixCentimes(Offre offre) {
+        return offre.getPrix() != null ? enCentimes(offre.getPrix()) : 0L;
+    }
+
+    private void cumulerPlaces(Offre offre, int quantite) {
+        Discipline discipline = offre.getDiscipline();
+        if (discipline != null && discipline.getIdDiscipline() != null) {
+            placesParDiscipline.merge(discipline.getIdDiscipline(), offre.getCapacite() * quantite, Integer::sum);
+        }
+    }
+
+    private static Map<Long, Integer> sansZeros(Map<Long, Integer> places) {
+        Map<Long, Integer> resultat = new HashMap<>(places);
+        resultat.values().removeIf(valeur -> valeur == 0);
+        return resultat;
+    }
+
+    @Override
+    public String toString() {
+        return "TotauxPanier{montantCentimes=" + montantCentimes + ", places=" + placesParDiscipline + '}';
+    }
+}
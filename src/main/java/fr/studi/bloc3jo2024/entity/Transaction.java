@@ -21,7 +21,8 @@ import java.util.Objects;
 public class Transaction {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "transactions_seq")
+    @SequenceGenerator(name = "transactions_seq", sequenceName = "transactions_id_transaction_seq", allocationSize = 50)
     @Column(name = "id_transaction")
     private Long idTransaction;
 
@@ -29,7 +30,8 @@ public class Transaction {
     @Min(value = 0, message = "Le montant doit être positif.")
     private BigDecimal montant;
 
-    @Column(name = "date_transaction", nullable = false)
+    // Clé de partitionnement de la table (partitions mensuelles) : fixée à la création, jamais modifiée
+    @Column(name = "date_transaction", nullable = false, updatable = false)
     @Builder.Default
     private LocalDateTime dateTransaction = LocalDateTime.now();
 
@@ -53,7 +55,8 @@ public class Transaction {
     @Builder.Default
     private boolean isTest = false;
 
-    // Relation One-to-One vers l'entité Payement. Chaque transaction est liée à un paiement unique.
+    // Relation One-to-One vers l'entité Payement. Chaque transaction est liée à un paiement unique
+    // (garanti en base par le déclencheur transactions_une_par_paiement, la table partitionnée ne le permettant pas).
     @OneToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "id_payement", nullable = false, unique = true, foreignKey = @ForeignKey(name = "fk_payement_transaction"))
     private Paiement paiement;
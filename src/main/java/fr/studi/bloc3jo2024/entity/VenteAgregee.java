@@ -0,0 +1,57 @@
+package fr.studi.bloc3jo2024.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.util.Objects;
+
+/**
+ * Agrégat des ventes réussies par jour, type d'offre, offre et discipline.
+ * <p>
+ * Les lignes sont cumulées par {@code INSERT ... ON CONFLICT} dans la transaction qui valide le paiement
+ * (voir {@link fr.studi.bloc3jo2024.repository.VenteAgregeeRepository#cumulerVentesPanier}) : les statistiques
+ * se lisent ici au lieu de rejouer la jointure Paiement → Transaction → Panier → ContenuPanier → Offre sur tout l'historique.
+ * </p>
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Table(name = "ventes_agregees")
+public class VenteAgregee {
+
+    @EmbeddedId
+    private VenteAgregeeKey id;
+
+    // Nombre de lignes de panier payées (une par offre et par panier).
+    @Column(name = "nb_ventes", nullable = false)
+    private long nbVentes;
+
+    // Somme des quantités commandées.
+    @Column(name = "quantite_vendue", nullable = false)
+    private long quantiteVendue;
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        VenteAgregee that = (VenteAgregee) o;
+        return Objects.equals(id, that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id);
+    }
+
+    @Override
+    public String toString() {
+        return "VenteAgregee{" +
+                "id=" + id +
+                ", nbVentes=" + nbVentes +
+                ", quantiteVendue=" + quantiteVendue +
+                '}';
+    }
+}
@@ -0,0 +1,43 @@
+package fr.studi.bloc3jo2024.entity;
+
+import fr.studi.bloc3jo2024.entity.enums.TypeOffre;
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.JdbcType;
+import org.hibernate.dialect.PostgreSQLEnumJdbcType;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.time.LocalDate;
+
+@Embeddable
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class VenteAgregeeKey implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    // Jour de la transaction (date_transaction tronquée au jour).
+    @Column(name = "jour")
+    private LocalDate jour;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "type_offre")
+    @JdbcType(PostgreSQLEnumJdbcType.class)
+    private TypeOffre typeOffre;
+
+    @Column(name = "id_offre")
+    private Long idOffre;
+
+    @Column(name = "id_discipline")
+    private Long idDiscipline;
+}
@@ -0,0 +1,10 @@
+package fr.studi.bloc3jo2024.exception;
+
+/**
+ * Levée quand le budget de connexions d'une classe de charge est épuisé au-delà de son attente maximale.
+ */
+public class CloisonSatureeException extends RuntimeException {
+    public CloisonSatureeException(String message) {
+        super(message);
+    }
+}
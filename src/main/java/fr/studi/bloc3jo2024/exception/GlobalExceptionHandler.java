@@ -3,7 +3,10 @@ package fr.studi.bloc3jo2024.exception;
 import fr.studi.bloc3jo2024.dto.authentification.AuthReponseDto;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.CannotAcquireLockException;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.mail.MailException;
@@ -25,6 +28,9 @@ public class GlobalExceptionHandler {
 
   private static final Logger log = LoggerFactory.getLogger(GlobalExceptionHandler.class);
 
+  /** Période de purge par défaut des clés d'idempotence expirées ({@code app.idempotence.purge-ms}), en secondes. */
+  private static final String DELAI_REESSAI_IDEMPOTENCE = "60";
+
   /**
    * Gère les erreurs de validation des DTO annotés avec @Valid.
    * @param ex L'exception levée lors de la validation.
@@ -111,6 +117,60 @@ public class GlobalExceptionHandler {
     return new ResponseEntity<>(specificUserMessage, HttpStatus.CONFLICT);
   }
 
+  /**
+   * Gère les conflits de version (@Version) qui persistent après les réessais du service.
+   * L'opération n'a eu aucun effet : le client peut la renvoyer.
+   * @param ex L'exception OptimisticLockingFailureException.
+   * @return Une ResponseEntity avec un statut 409 CONFLICT, un en-tête Retry-After et un message d'erreur.
+   */
+  @ExceptionHandler(OptimisticLockingFailureException.class)
+  public ResponseEntity<AuthReponseDto> handleOptimisticLockingFailure(OptimisticLockingFailureException ex) {
+    log.warn("Conflit de version non résolu : {}", ex.getMessage());
+    return ResponseEntity.status(HttpStatus.CONFLICT)
+            .header(HttpHeaders.RETRY_AFTER, "1")
+            .body(new AuthReponseDto(null, "La ressource a été modifiée simultanément par une autre requête. Veuillez réessayer."));
+  }
+
+  /**
+   * Gère les réservations d'offres très demandées qui n'ont pas été traitées à temps par leur file.
+   * La réservation a été abandonnée sans effet : le client peut la renvoyer.
+   * @param ex L'exception CannotAcquireLockException.
+   * @return Une ResponseEntity avec un statut 409 CONFLICT, un en-tête Retry-After et un message d'erreur.
+   */
+  @ExceptionHandler(CannotAcquireLockException.class)
+  public ResponseEntity<AuthReponseDto> handleCannotAcquireLock(CannotAcquireLockException ex) {
+    log.warn("Réservation non traitée à temps : {}", ex.getMessage());
+    return ResponseEntity.status(HttpStatus.CONFLICT)
+            .header(HttpHeaders.RETRY_AFTER, "1")
+            .body(new AuthReponseDto(null, ex.getMessage()));
+  }
+
+  /**
+   * Gère les exécutions refusées faute de permis dans le budget de leur classe de charge (statistiques, catalogue...).
+   * Les autres classes, dont le contrôle des billets, ne sont pas affectées : le client peut réessayer plus tard.
+   * @param ex L'exception CloisonSatureeException.
+   * @return Une ResponseEntity avec un statut 503 SERVICE_UNAVAILABLE, un en-tête Retry-After et un message d'erreur.
+   */
+  @ExceptionHandler(CloisonSatureeException.class)
+  public ResponseEntity<AuthReponseDto> handleCloisonSaturee(CloisonSatureeException ex) {
+    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+            .header(HttpHeaders.RETRY_AFTER, "1")
+            .body(new AuthReponseDto(null, ex.getMessage()));
+  }
+
+  /**
+   * Gère les requêtes refusées parce que le stockage des clés d'idempotence est plein.
+   * Les clés expirées sont purgées chaque minute : le client réessaie avec la même clé après ce délai.
+   * @param ex L'exception IdempotenceSatureeException.
+   * @return Une ResponseEntity avec un statut 503 SERVICE_UNAVAILABLE, un en-tête Retry-After et un message d'erreur.
+   */
+  @ExceptionHandler(IdempotenceSatureeException.class)
+  public ResponseEntity<AuthReponseDto> handleIdempotenceSaturee(IdempotenceSatureeException ex) {
+    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+            .header(HttpHeaders.RETRY_AFTER, DELAI_REESSAI_IDEMPOTENCE)
+            .body(new AuthReponseDto(null, ex.getMessage()));
+  }
+
   /**
    * Gère les exceptions de type IllegalArgumentException.
    * @param ex L'exception IllegalArgumentException.
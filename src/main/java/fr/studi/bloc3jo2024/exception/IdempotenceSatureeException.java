@@ -0,0 +1,10 @@
+package fr.studi.bloc3jo2024.exception;
+
+/**
+ * Levée quand le stockage des clés d'idempotence est plein : la requête est refusée plutôt qu'exécutée sans rejeu.
+ */
+public class IdempotenceSatureeException extends RuntimeException {
+    public IdempotenceSatureeException(String message) {
+        super(message);
+    }
+}
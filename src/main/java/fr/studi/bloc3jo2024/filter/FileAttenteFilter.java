@@ -0,0 +1,133 @@
+package fr.studi.bloc3jo2024.filter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.studi.bloc3jo2024.service.FileAttenteService;
+import fr.studi.bloc3jo2024.service.JwtService;
+import io.jsonwebtoken.JwtException;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Place les requêtes de modification du panier et de paiement derrière la salle d'attente ({@link FileAttenteService}).
+ * <p>
+ * Placé avant l'authentification JWT : une requête en attente ne touche pas la base. Seul le porteur d'un jeton JWT
+ * valide (signature et expiration vérifiées sans requête) reçoit un ticket, lié à l'utilisateur du jeton ; les autres
+ * requêtes poursuivent la chaîne, qui les refuse (401). Le ticket est renvoyé dans l'en-tête
+ * {@value FileAttenteService#EN_TETE} ; tant qu'il n'est pas admis, la réponse est un 503 avec
+ * {@code Retry-After}, la position dans la file et l'attente estimée. Les lectures (GET) ne sont pas filtrées.
+ * </p>
+ */
+@Component
+public class FileAttenteFilter extends OncePerRequestFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(FileAttenteFilter.class);
+
+    private static final String PREFIXE_PANIERS = "/api/paniers/";
+    private static final String PREFIXE_PAIEMENT_PANIER = "/api/paiements/panier/";
+    private static final String SUFFIXE_VALIDATION_PANIER = "/payer";
+    private static final String BEARER_PREFIX = "Bearer ";
+    private static final long RETRY_AFTER_MAX_SECONDES = 30;
+
+    private final FileAttenteService fileAttenteService;
+    private final JwtService jwtService;
+    private final ObjectMapper objectMapper;
+
+    public FileAttenteFilter(FileAttenteService fileAttenteService, JwtService jwtService, ObjectMapper objectMapper) {
+        this.fileAttenteService = fileAttenteService;
+        this.jwtService = jwtService;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(@NonNull HttpServletRequest request) {
+        if (!fileAttenteService.isActive()) {
+            return true;
+        }
+        String methode = request.getMethod();
+        if (HttpMethod.GET.matches(methode) || HttpMethod.HEAD.matches(methode) || HttpMethod.OPTIONS.matches(methode)) {
+            return true;
+        }
+        String uri = request.getRequestURI();
+        return !uri.startsWith(PREFIXE_PANIERS) && !uri.startsWith(PREFIXE_PAIEMENT_PANIER);
+    }
+
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request,
+                                    @NonNull HttpServletResponse response,
+                                    @NonNull FilterChain filterChain)
+            throws ServletException, IOException {
+        String sujet = sujet(request);
+        if (sujet == null) {
+            // Pas de ticket sans authentification : la chaîne de sécurité répond 401 sans toucher la base
+            filterChain.doFilter(request, response);
+            return;
+        }
+        FileAttenteService.Admission admission = fileAttenteService.admettre(
+                request.getHeader(FileAttenteService.EN_TETE), sujet);
+        response.setHeader(FileAttenteService.EN_TETE, admission.ticket());
+
+        if (!admission.admis()) {
+            log.debug("Requête {} en file d'attente : position {}, attente estimée {} s.",
+                    request.getRequestURI(), admission.position(), admission.attenteSecondes());
+            repondreEnAttente(response, admission);
+            return;
+        }
+
+        fileAttenteService.debuterRequete();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            fileAttenteService.terminerRequete(estAchat(request) && response.getStatus() < 300);
+        }
+    }
+
+    /** @return L'email du jeton JWT s'il est valide, sinon {@code null}. */
+    private String sujet(HttpServletRequest request) {
+        String authorization = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (authorization == null || !authorization.startsWith(BEARER_PREFIX)) {
+            return null;
+        }
+        try {
+            return jwtService.extractEmail(authorization.substring(BEARER_PREFIX.length()));
+        } catch (JwtException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static boolean estAchat(HttpServletRequest request) {
+        String uri = request.getRequestURI();
+        return uri.startsWith(PREFIXE_PAIEMENT_PANIER) || uri.endsWith(SUFFIXE_VALIDATION_PANIER);
+    }
+
+    private void repondreEnAttente(HttpServletResponse response, FileAttenteService.Admission admission) throws IOException {
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER,
+                String.valueOf(Math.clamp(admission.attenteSecondes(), 1, RETRY_AFTER_MAX_SECONDES)));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+
+        Map<String, Object> corps = new LinkedHashMap<>();
+        corps.put("statut", "EN_ATTENTE");
+        corps.put("position", admission.position());
+        corps.put("attenteEstimeeSecondes", admission.attenteSecondes());
+        corps.put("ticket", admission.ticket());
+        corps.put("message", "Forte affluence : votre demande sera traitée à votre tour. Renvoyez-la avec l'en-tête "
+                + FileAttenteService.EN_TETE + ".");
+        response.getWriter().write(objectMapper.writeValueAsString(corps));
+    }
+}
@@ -1,8 +1,9 @@
 package fr.studi.bloc3jo2024.filter;
 
+import fr.studi.bloc3jo2024.logging.MdcCles;
 import fr.studi.bloc3jo2024.service.DetailUtilisateurService;
 import fr.studi.bloc3jo2024.service.JwtService;
-import fr.studi.bloc3jo2024.service.impl.DetailUtilisateurServiceImpl; // Assurez-vous que cet import est correct
+import fr.studi.bloc3jo2024.service.impl.DetailUtilisateurServiceImpl;
 import io.jsonwebtoken.ExpiredJwtException;
 import io.jsonwebtoken.JwtException;
 import io.jsonwebtoken.MalformedJwtException;
@@ -14,6 +15,7 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
 import org.springframework.http.MediaType;
 import org.springframework.lang.NonNull;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
@@ -64,21 +66,15 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
                 if (jwtService.isTokenValid(token, email)) {
                     UserDetails userDetails = detailUtilisateurService.loadUserByUsername(email);
 
-                    if (userDetails instanceof DetailUtilisateurServiceImpl) {
-                        // Cast pour accéder à l'entité Utilisateur sous-jacente si votre UserDetails l'encapsule
-                        fr.studi.bloc3jo2024.entity.Utilisateur underlyingUser = ((DetailUtilisateurServiceImpl) userDetails).utilisateur();
-                        log.info("[FILTRE DEBUG] Pour la requête {}: Utilisateur: {}, isVerified de l'entité: {}, userDetails.isEnabled(): {}",
-                                request.getRequestURI(), email, underlyingUser.isVerified(), userDetails.isEnabled());
-                    } else {
-                        // Log générique si le cast n'est pas possible ou si vous utilisez une autre implémentation de UserDetails
-                        log.info("[FILTRE DEBUG] Pour la requête {}: Utilisateur: {}, userDetails.isEnabled(): {}",
-                                request.getRequestURI(), email, userDetails.isEnabled());
+                    if (userDetails instanceof DetailUtilisateurServiceImpl detail && detail.utilisateur().getIdUtilisateur() != null) {
+                        MDC.put(MdcCles.USER_ID, detail.utilisateur().getIdUtilisateur().toString());
                     }
 
                     UsernamePasswordAuthenticationToken authentication =
                             new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
                     SecurityContextHolder.getContext().setAuthentication(authentication);
-                    log.debug("Utilisateur '{}' authentifié avec succès via JWT par le filtre pour la requête : {}", email, request.getRequestURI());
+                    log.debug("Utilisateur '{}' (actif : {}) authentifié avec succès via JWT par le filtre pour la requête : {}",
+                            email, userDetails.isEnabled(), request.getRequestURI());
                 } else {
                     log.warn("Token JWT marqué comme invalide par jwtService.isTokenValid() pour l'email (potentiel) '{}' et la requête : {}. La chaîne de filtres continue.", email, request.getRequestURI());
                 }
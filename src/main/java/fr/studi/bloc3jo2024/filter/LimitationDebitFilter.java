@@ -0,0 +1,235 @@
+package fr.studi.bloc3jo2024.filter;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.studi.bloc3jo2024.service.LimitationDebitService;
+import fr.studi.bloc3jo2024.service.LimitationDebitService.Limite;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limite le débit des routes coûteuses ouvertes aux anonymes (BCrypt, envoi de mail) et du scan des billets.
+ * <p>
+ * Chaque route a un seau par adresse du client et, pour les routes d'authentification, un seau par email visé :
+ * un client isolé ne peut ni monopoliser le CPU ni s'acharner sur un compte depuis plusieurs adresses. Les limites
+ * se règlent par route ({@code app.limitation-debit.<route>.ip} et {@code .email}, format {@code 5/1m}). Un refus
+ * est un 429 avec {@code Retry-After}.
+ * </p>
+ */
+@Component
+public class LimitationDebitFilter extends OncePerRequestFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(LimitationDebitFilter.class);
+
+    private static final String PREFIXE_PROPRIETE = "app.limitation-debit.";
+    private static final int TAILLE_MAX_CORPS = 16 * 1024;
+
+    /** Route limitée : seaux par adresse et, si {@code parEmail} est défini, par email. */
+    record RouteLimitee(String nom, HttpMethod methode, String chemin, boolean prefixe, Limite parIp, Limite parEmail) {
+
+        boolean correspond(HttpServletRequest request) {
+            String uri = request.getRequestURI();
+            return methode.matches(request.getMethod()) && (prefixe ? uri.startsWith(chemin) : uri.equals(chemin));
+        }
+    }
+
+    private final LimitationDebitService limitationDebitService;
+    private final ObjectMapper objectMapper;
+    private final boolean active;
+    private final List<RouteLimitee> routes;
+
+    public LimitationDebitFilter(LimitationDebitService limitationDebitService, ObjectMapper objectMapper, Environment environment) {
+        this.limitationDebitService = limitationDebitService;
+        this.objectMapper = objectMapper;
+        this.active = environment.getProperty(PREFIXE_PROPRIETE + "active", Boolean.class, true);
+        this.routes = List.of(
+                route(environment, "login", HttpMethod.POST, "/api/auth/login", false, "20/1m", "5/1m"),
+                route(environment, "register", HttpMethod.POST, "/api/auth/register", false, "5/10m", "3/1h"),
+                route(environment, "password-reset-request", HttpMethod.POST, "/api/auth/password-reset-request", false, "5/10m", "3/1h"),
+                route(environment, "admin-login", HttpMethod.POST, "/api/admin/auth/login", false, "10/1m", "5/5m"),
+                route(environment, "staff-login", HttpMethod.POST, "/api/staff/login", false, "20/1m", "5/1m"),
+                route(environment, "scan", HttpMethod.GET, "/api/billets/verifier/", true, "50/1s", null));
+    }
+
+    private static RouteLimitee route(Environment environment, String nom, HttpMethod methode, String chemin, boolean prefixe,
+                                      String parIpDefaut, String parEmailDefaut) {
+        String parIp = environment.getProperty(PREFIXE_PROPRIETE + nom + ".ip", parIpDefaut);
+        String parEmail = environment.getProperty(PREFIXE_PROPRIETE + nom + ".email", parEmailDefaut);
+        return new RouteLimitee(nom, methode, chemin, prefixe, Limite.lire(parIp),
+                parEmail != null ? Limite.lire(parEmail) : null);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(@NonNull HttpServletRequest request) {
+        return !active || routeDe(request) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request,
+                                    @NonNull HttpServletResponse response,
+                                    @NonNull FilterChain filterChain)
+            throws ServletException, IOException {
+        RouteLimitee route = routeDe(request);
+        HttpServletRequest requete = request;
+
+        long attente = limitationDebitService.consommer(route.nom() + "|ip|" + request.getRemoteAddr(), route.parIp());
+        if (attente == 0 && route.parEmail() != null) {
+            CorpsRelisible corpsRelisible = CorpsRelisible.lire(request);
+            if (corpsRelisible != null) {
+                requete = corpsRelisible;
+            }
+            String email = email(requete, corpsRelisible);
+            if (email != null) {
+                attente = limitationDebitService.consommer(route.nom() + "|email|" + email, route.parEmail());
+            }
+        }
+
+        if (attente > 0) {
+            log.warn("Débit dépassé sur la route {} pour {} : requête refusée.", route.nom(), request.getRemoteAddr());
+            refuser(response, attente);
+            return;
+        }
+        filterChain.doFilter(requete, response);
+    }
+
+    private RouteLimitee routeDe(HttpServletRequest request) {
+        for (RouteLimitee route : routes) {
+            if (route.correspond(request)) {
+                return route;
+            }
+        }
+        return null;
+    }
+
+    /** Email visé : champ {@code email} du corps JSON, sinon paramètre {@code email} de la requête. */
+    private String email(HttpServletRequest request, CorpsRelisible corps) {
+        String email = null;
+        if (corps != null) {
+            try {
+                JsonNode noeud = objectMapper.readTree(corps.octets);
+                email = noeud != null ? noeud.path("email").asText(null) : null;
+            } catch (IOException e) {
+                log.trace("Corps JSON illisible pour la limitation par email : {}", e.getMessage());
+            }
+        } else if (!estJson(request)) {
+            email = request.getParameter("email");
+        }
+        return email == null || email.isBlank() ? null : email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static boolean estJson(HttpServletRequest request) {
+        String contentType = request.getContentType();
+        return contentType != null && contentType.toLowerCase(Locale.ROOT).startsWith(MediaType.APPLICATION_JSON_VALUE);
+    }
+
+    private void refuser(HttpServletResponse response, long attenteNanos) throws IOException {
+        long secondes = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(attenteNanos + TimeUnit.SECONDS.toNanos(1) - 1));
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(secondes));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+        Map<String, Object> corps = Map.of(
+                "timestamp", System.currentTimeMillis(),
+                "status", HttpStatus.TOO_MANY_REQUESTS.value(),
+                "error", HttpStatus.TOO_MANY_REQUESTS.getReasonPhrase(),
+                "message", "Trop de tentatives. Réessayez dans " + secondes + " seconde(s).");
+        response.getWriter().write(objectMapper.writeValueAsString(corps));
+    }
+
+    /** Requête JSON dont le corps, lu une fois pour en extraire l'email, est relu par le contrôleur. */
+    static final class CorpsRelisible extends HttpServletRequestWrapper {
+
+        private final byte[] octets;
+
+        private CorpsRelisible(HttpServletRequest request, byte[] octets) {
+            super(request);
+            this.octets = octets;
+        }
+
+        /** @return La requête au corps relisible, ou {@code null} si elle n'est pas JSON ou trop volumineuse. */
+        static CorpsRelisible lire(HttpServletRequest request) throws IOException {
+            if (!estJson(request) || request.getContentLengthLong() > TAILLE_MAX_CORPS) {
+                return null;
+            }
+            byte[] octets = request.getInputStream().readNBytes(TAILLE_MAX_CORPS + 1);
+            if (octets.length > TAILLE_MAX_CORPS) {
+                return null;
+            }
+            return new CorpsRelisible(request, octets);
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream flux = new ByteArrayInputStream(octets);
+            return new ServletInputStream() {
+                @Override
+                public boolean isFinished() {
+                    return flux.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener readListener) {
+                    throw new UnsupportedOperationException("Lecture asynchrone non prise en charge.");
+                }
+
+                @Override
+                public int read() {
+                    return flux.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    return flux.read(b, off, len);
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            String encodage = getCharacterEncoding();
+            return new BufferedReader(new InputStreamReader(getInputStream(),
+                    encodage != null ? Charset.forName(encodage) : StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public int getContentLength() {
+            return octets.length;
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return octets.length;
+        }
+    }
+}
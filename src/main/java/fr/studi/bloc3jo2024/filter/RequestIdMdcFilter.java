@@ -0,0 +1,54 @@
+package fr.studi.bloc3jo2024.filter;
+
+import fr.studi.bloc3jo2024.logging.MdcCles;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.MDC;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * Alimente le MDC avec l'identifiant de corrélation de la requête.
+ * <p>
+ * L'en-tête {@code X-Request-Id} fourni par le client ou le proxy est réutilisé s'il est raisonnable,
+ * sinon un identifiant est généré. Il est renvoyé dans la réponse et toutes les clés MDC posées
+ * pendant la requête ({@link MdcCles}) sont retirées à la fin, le thread pouvant être réutilisé.
+ * </p>
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class RequestIdMdcFilter extends OncePerRequestFilter {
+
+    public static final String REQUEST_ID_HEADER = "X-Request-Id";
+
+    private static final Pattern REQUEST_ID_VALIDE = Pattern.compile("[A-Za-z0-9._-]{1,64}");
+
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request,
+                                    @NonNull HttpServletResponse response,
+                                    @NonNull FilterChain filterChain)
+            throws ServletException, IOException {
+        String requestId = request.getHeader(REQUEST_ID_HEADER);
+        if (requestId == null || !REQUEST_ID_VALIDE.matcher(requestId).matches()) {
+            requestId = UUID.randomUUID().toString();
+        }
+        MDC.put(MdcCles.REQUEST_ID, requestId);
+        response.setHeader(REQUEST_ID_HEADER, requestId);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            MDC.remove(MdcCles.REQUEST_ID);
+            MDC.remove(MdcCles.USER_ID);
+            MDC.remove(MdcCles.PANIER_ID);
+        }
+    }
+}
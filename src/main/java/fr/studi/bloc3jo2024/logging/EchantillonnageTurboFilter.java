@@ -0,0 +1,75 @@
+package fr.studi.bloc3jo2024.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.Marker;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TurboFilter logback qui échantillonne les événements fréquents par préfixe de logger.
+ * <p>
+ * Chaque règle {@code <regle>prefixe=N</regle>} ne conserve qu'un événement sur {@code N}
+ * pour les loggers dont le nom commence par {@code prefixe} (la règle au préfixe le plus long l'emporte).
+ * Seuls les niveaux inférieurs ou égaux à {@code niveauMax} (INFO par défaut) sont échantillonnés :
+ * les WARN et ERROR passent toujours. Le filtre intervient avant la création de l'événement,
+ * les messages écartés ne coûtent donc ni formatage ni allocation.
+ * </p>
+ */
+public class EchantillonnageTurboFilter extends TurboFilter {
+
+    private record Regle(String prefixe, long taux, AtomicLong compteur) {
+    }
+
+    private final List<Regle> regles = new ArrayList<>();
+    private Level niveauMax = Level.INFO;
+
+    /**
+     * Ajoute une règle au format {@code prefixe=N} (appelée par logback pour chaque élément {@code <regle>}).
+     */
+    public void addRegle(String regle) {
+        int separateur = regle == null ? -1 : regle.lastIndexOf('=');
+        if (separateur <= 0) {
+            addError("Règle d'échantillonnage invalide (format attendu prefixe=N) : " + regle);
+            return;
+        }
+        String prefixe = regle.substring(0, separateur).trim();
+        long taux;
+        try {
+            taux = Long.parseLong(regle.substring(separateur + 1).trim());
+        } catch (NumberFormatException e) {
+            addError("Taux d'échantillonnage invalide pour " + prefixe + " : " + regle);
+            return;
+        }
+        if (taux > 1) {
+            regles.add(new Regle(prefixe, taux, new AtomicLong()));
+            regles.sort(Comparator.comparingInt((Regle r) -> r.prefixe().length()).reversed());
+        }
+    }
+
+    public void setNiveauMax(String niveau) {
+        this.niveauMax = Level.toLevel(niveau, Level.INFO);
+    }
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        // Les appels isXxxEnabled() (format nul) ne sont pas comptés pour ne pas fausser l'échantillonnage.
+        if (format == null || regles.isEmpty() || level.isGreaterOrEqual(Level.WARN)
+                || level.toInt() > niveauMax.toInt()
+                || !level.isGreaterOrEqual(logger.getEffectiveLevel())) {
+            return FilterReply.NEUTRAL;
+        }
+        String nom = logger.getName();
+        for (Regle regle : regles) {
+            if (nom.startsWith(regle.prefixe())) {
+                return regle.compteur().getAndIncrement() % regle.taux() == 0 ? FilterReply.NEUTRAL : FilterReply.DENY;
+            }
+        }
+        return FilterReply.NEUTRAL;
+    }
+}
@@ -0,0 +1,23 @@
+package fr.studi.bloc3jo2024.logging;
+
+/**
+ * Clés du contexte de diagnostic (MDC) ajoutées à chaque événement de log.
+ * <p>
+ * Elles sont reprises telles quelles dans les champs JSON de l'encodeur structuré,
+ * ce qui permet de corréler toutes les lignes d'une même requête, d'un utilisateur ou d'un panier.
+ * </p>
+ */
+public final class MdcCles {
+
+    /** Identifiant de corrélation de la requête HTTP (en-tête {@code X-Request-Id}). */
+    public static final String REQUEST_ID = "requestId";
+
+    /** Identifiant de l'utilisateur authentifié par JWT. */
+    public static final String USER_ID = "userId";
+
+    /** Identifiant du panier manipulé par la requête. */
+    public static final String PANIER_ID = "panierId";
+
+    private MdcCles() {
+    }
+}
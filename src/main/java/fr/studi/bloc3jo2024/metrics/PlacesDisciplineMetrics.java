@@ -0,0 +1,56 @@
+package fr.studi.bloc3jo2024.metrics;
+
+import fr.studi.bloc3jo2024.concurrence.ClasseCharge;
+import fr.studi.bloc3jo2024.concurrence.Cloison;
+import fr.studi.bloc3jo2024.repository.DisciplineRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Jauges des places restantes par discipline ("jo2024.discipline.places.restantes").
+ * <p>
+ * Les valeurs sont relues périodiquement via une projection légère plutôt qu'à chaque collecte,
+ * afin que la fréquence de scraping n'ait aucun impact sur la base. Les disciplines supprimées
+ * disparaissent des jauges au rafraîchissement suivant.
+ * </p>
+ */
+@Component
+@Slf4j
+public class PlacesDisciplineMetrics {
+
+    public static final String PLACES_RESTANTES = "jo2024.discipline.places.restantes";
+
+    private final DisciplineRepository disciplineRepository;
+    private final MultiGauge placesRestantes;
+
+    public PlacesDisciplineMetrics(DisciplineRepository disciplineRepository, MeterRegistry meterRegistry) {
+        this.disciplineRepository = disciplineRepository;
+        this.placesRestantes = MultiGauge.builder(PLACES_RESTANTES)
+                .description("Places restantes par discipline")
+                .baseUnit("places")
+                .register(meterRegistry);
+    }
+
+    @Cloison(ClasseCharge.PLANIFICATION)
+    @Scheduled(initialDelayString = "${app.metrics.places-disciplines.delai-initial-ms:10000}",
+            fixedDelayString = "${app.metrics.places-disciplines.rafraichissement-ms:30000}")
+    public void rafraichir() {
+        try {
+            List<MultiGauge.Row<?>> lignes = disciplineRepository.findPlacesRestantes().stream()
+                    .<MultiGauge.Row<?>>map(p -> MultiGauge.Row.of(
+                            Tags.of("discipline", p.getNomDiscipline(), "id", String.valueOf(p.getIdDiscipline())),
+                            p.getNbPlaceDispo()))
+                    .toList();
+            placesRestantes.register(lignes, true);
+        } catch (DataAccessException e) {
+            log.warn("Impossible de rafraîchir les jauges de places restantes : {}", e.getMessage());
+        }
+    }
+}
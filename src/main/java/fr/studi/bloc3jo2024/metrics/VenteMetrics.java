@@ -0,0 +1,71 @@
+package fr.studi.bloc3jo2024.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+/**
+ * Compteurs métier du tunnel de vente, exposés via Actuator sous /management/metrics et /management/prometheus.
+ */
+@Component
+public class VenteMetrics {
+
+    public static final String REJETS_SURVENTE = "jo2024.ventes.rejets.survente";
+    public static final String ECHECS_VERROU_OPTIMISTE = "jo2024.verrou.optimiste.echecs";
+    public static final String REESSAIS_VERROU_OPTIMISTE = "jo2024.verrou.optimiste.reessais";
+
+    public static final String MOTIF_STOCK_OFFRE = "stock_offre";
+    public static final String MOTIF_PLACES_DISCIPLINE = "places_discipline";
+
+    private final MeterRegistry meterRegistry;
+
+    public VenteMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Comptabilise une demande refusée parce qu'elle aurait dépassé le stock d'une offre
+     * ou les places restantes d'une discipline.
+     *
+     * @param motif     {@link #MOTIF_STOCK_OFFRE} ou {@link #MOTIF_PLACES_DISCIPLINE}.
+     * @param operation Opération du panier à l'origine du refus (ajout, modification, finalisation).
+     */
+    public void rejetSurvente(String motif, String operation) {
+        Counter.builder(REJETS_SURVENTE)
+                .description("Demandes refusées pour stock ou places insuffisants")
+                .tag("motif", motif)
+                .tag("operation", operation)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * Comptabilise un conflit de version (@Version) remonté jusqu'à la couche web.
+     *
+     * @param entite    Nom simple de l'entité en conflit ("inconnue" si non déterminée).
+     * @param operation Méthode du contrôleur ayant reçu l'échec.
+     */
+    public void echecVerrouOptimiste(String entite, String operation) {
+        Counter.builder(ECHECS_VERROU_OPTIMISTE)
+                .description("Échecs de verrouillage optimiste")
+                .tag("entite", entite)
+                .tag("operation", operation)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * Comptabilise un conflit de version absorbé par un réessai de la transaction.
+     *
+     * @param entite    Nom simple de l'entité en conflit ("inconnue" si non déterminée).
+     * @param operation Méthode du service réessayée.
+     */
+    public void reessaiVerrouOptimiste(String entite, String operation) {
+        Counter.builder(REESSAIS_VERROU_OPTIMISTE)
+                .description("Conflits de verrouillage optimiste absorbés par un réessai")
+                .tag("entite", entite)
+                .tag("operation", operation)
+                .register(meterRegistry)
+                .increment();
+    }
+}
@@ -0,0 +1,47 @@
+package fr.studi.bloc3jo2024.metrics;
+
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.annotation.AfterThrowing;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+
+/**
+ * Compte les échecs de verrouillage optimiste à la frontière des contrôleurs.
+ * <p>
+ * Les conflits de version surviennent généralement au commit, donc en dehors du code des services :
+ * les intercepter au niveau des contrôleurs garantit qu'ils ne sont comptés qu'une seule fois par requête.
+ * </p>
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class VerrouOptimisteMetricsAspect {
+
+    private final VenteMetrics venteMetrics;
+
+    public VerrouOptimisteMetricsAspect(VenteMetrics venteMetrics) {
+        this.venteMetrics = venteMetrics;
+    }
+
+    @AfterThrowing(pointcut = "within(fr.studi.bloc3jo2024.controller..*)", throwing = "exception")
+    public void compterEchec(JoinPoint joinPoint, OptimisticLockingFailureException exception) {
+        venteMetrics.echecVerrouOptimiste(entiteEnConflit(exception), joinPoint.getSignature().getName());
+    }
+
+    /**
+     * @param exception Le conflit de version.
+     * @return Le nom simple de l'entité en conflit, ou "inconnue".
+     */
+    public static String entiteEnConflit(OptimisticLockingFailureException exception) {
+        if (exception instanceof ObjectOptimisticLockingFailureException objectException
+                && objectException.getPersistentClassName() != null) {
+            String nomComplet = objectException.getPersistentClassName();
+            return nomComplet.substring(nomComplet.lastIndexOf('.') + 1);
+        }
+        return "inconnue";
+    }
+}
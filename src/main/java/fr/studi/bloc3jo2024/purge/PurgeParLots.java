@@ -0,0 +1,158 @@
+package fr.studi.bloc3jo2024.purge;
+
+import fr.studi.bloc3jo2024.concurrence.ClasseCharge;
+import fr.studi.bloc3jo2024.exception.CloisonSatureeException;
+import fr.studi.bloc3jo2024.service.CloisonsService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Purges par lots des lignes devenues inutiles (tokens expirés, paniers abandonnés).
+ * <p>
+ * Une purge est une requête de suppression d'au plus {@code app.purges.taille-lot} lignes, dont le dernier paramètre
+ * est la taille du lot ; sous PostgreSQL, la forme {@code DELETE FROM t WHERE ctid IN (SELECT ctid FROM t WHERE ...
+ * LIMIT ?)} supprime le lot par adresse physique, sans repasser par un index. Chaque lot est une transaction courte,
+ * exécutée sous un permis de la classe de charge PLANIFICATION ; la requête est rejouée jusqu'à renvoyer un lot
+ * incomplet, avec entre deux lots une pause d'au moins {@code app.purges.pause-ms} et au moins la durée du lot
+ * précédent : une base chargée ralentit d'elle-même la purge. Au-delà de {@code app.purges.duree-max-ms}, la purge
+ * s'arrête et reprend à la prochaine exécution.
+ * </p>
+ * <p>
+ * Une seule instance exécute une purge donnée ({@link VerrouTaches}). Par purge sont publiés les lignes supprimées
+ * ({@code jo2024.purges.lignes}), les lots ({@code jo2024.purges.lots}) et la durée ({@code jo2024.purges.duree}).
+ * L'appelant ne doit pas être transactionnel : tous les lots seraient sinon validés ensemble.
+ * </p>
+ */
+@Component
+public class PurgeParLots {
+
+    private static final Logger log = LoggerFactory.getLogger(PurgeParLots.class);
+
+    public static final String LIGNES = "jo2024.purges.lignes";
+    public static final String LOTS = "jo2024.purges.lots";
+    public static final String DUREE = "jo2024.purges.duree";
+
+    /** Marge du verrou au-delà de la durée maximale, le temps que le dernier lot se termine. */
+    private static final long MARGE_VERROU_MS = 60_000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final VerrouTaches verrouTaches;
+    private final CloisonsService cloisonsService;
+    private final MeterRegistry meterRegistry;
+    private final int tailleLot;
+    private final long pauseMs;
+    private final long dureeMaxMs;
+    private final LongSupplier horlogeMs;
+
+    @Autowired
+    public PurgeParLots(JdbcTemplate jdbcTemplate, VerrouTaches verrouTaches, CloisonsService cloisonsService,
+                        MeterRegistry meterRegistry,
+                        @Value("${app.purges.taille-lot:1000}") int tailleLot,
+                        @Value("${app.purges.pause-ms:200}") long pauseMs,
+                        @Value("${app.purges.duree-max-ms:1800000}") long dureeMaxMs) {
+        this(jdbcTemplate, verrouTaches, cloisonsService, meterRegistry, tailleLot, pauseMs, dureeMaxMs, System::currentTimeMillis);
+    }
+
+    PurgeParLots(JdbcTemplate jdbcTemplate, VerrouTaches verrouTaches, CloisonsService cloisonsService,
+                 MeterRegistry meterRegistry, int tailleLot, long pauseMs, long dureeMaxMs, LongSupplier horlogeMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.verrouTaches = verrouTaches;
+        this.cloisonsService = cloisonsService;
+        this.meterRegistry = meterRegistry;
+        this.tailleLot = tailleLot;
+        this.pauseMs = pauseMs;
+        this.dureeMaxMs = dureeMaxMs;
+        this.horlogeMs = horlogeMs;
+    }
+
+    /**
+     * Exécute une purge jusqu'à épuisement des lignes à supprimer, si aucune autre instance ne l'exécute déjà.
+     *
+     * @param nom        Le nom de la purge (verrou et métriques).
+     * @param requeteLot La requête de suppression d'un lot ; son dernier paramètre est la taille du lot.
+     * @param parametres Les autres paramètres de la requête, dans l'ordre.
+     * @return Le nombre de lignes supprimées.
+     */
+    public long executer(String nom, String requeteLot, Object... parametres) {
+        if (!verrouTaches.acquerir(nom, Duration.ofMillis(dureeMaxMs + MARGE_VERROU_MS))) {
+            log.info("Purge {} ignorée : elle est en cours sur une autre instance.", nom);
+            return 0;
+        }
+        Object[] arguments = Arrays.copyOf(parametres, parametres.length + 1);
+        arguments[parametres.length] = tailleLot;
+        Counter lignes = Counter.builder(LIGNES).description("Lignes supprimées par les purges").tag("purge", nom)
+                .register(meterRegistry);
+        Counter lots = Counter.builder(LOTS).description("Lots exécutés par les purges").tag("purge", nom)
+                .register(meterRegistry);
+        long debut = horlogeMs.getAsLong();
+        long total = 0;
+        int nombreLots = 0;
+        try {
+            while (true) {
+                long debutLot = horlogeMs.getAsLong();
+                int supprimees = lot(requeteLot, arguments);
+                long dureeLot = horlogeMs.getAsLong() - debutLot;
+                total += supprimees;
+                nombreLots++;
+                lignes.increment(supprimees);
+                lots.increment();
+                log.debug("Purge {} : lot {} de {} ligne(s) en {} ms.", nom, nombreLots, supprimees, dureeLot);
+                if (supprimees < tailleLot) {
+                    break;
+                }
+                if (horlogeMs.getAsLong() - debut >= dureeMaxMs) {
+                    log.warn("Purge {} interrompue après {} ms, reprise à la prochaine exécution.", nom, dureeMaxMs);
+                    break;
+                }
+                if (!pause(Math.max(pauseMs, dureeLot))) {
+                    break;
+                }
+            }
+        } catch (DataAccessException | CloisonSatureeException e) {
+            log.warn("Purge {} interrompue après {} ligne(s) supprimée(s) : {}", nom, total, e.getMessage());
+        } finally {
+            verrouTaches.liberer(nom);
+            Timer.builder(DUREE).description("Durée des purges").tag("purge", nom).register(meterRegistry)
+                    .record(horlogeMs.getAsLong() - debut, TimeUnit.MILLISECONDS);
+        }
+        log.info("Purge {} : {} ligne(s) supprimée(s) en {} lot(s).", nom, total, nombreLots);
+        return total;
+    }
+
+    private int lot(String requeteLot, Object[] arguments) {
+        boolean permis = cloisonsService.entrer(ClasseCharge.PLANIFICATION);
+        try {
+            return jdbcTemplate.update(requeteLot, arguments);
+        } finally {
+            if (permis) {
+                cloisonsService.sortir(ClasseCharge.PLANIFICATION);
+            }
+        }
+    }
+
+    private static boolean pause(long ms) {
+        if (ms <= 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(ms);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package fr.studi.bloc3jo2024.purge;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Verrous des tâches planifiées, tenus dans la table {@code verrous_taches} : chaque instance déclenche la tâche,
+ * une seule la prend et l'exécute.
+ * <p>
+ * Un verrou est pris pour une durée maximale ; s'il n'est pas libéré (instance arrêtée en cours de tâche), il expire
+ * de lui-même à cette échéance. À la libération, il est conservé au moins {@code app.purges.verrou-min-ms} après sa
+ * prise : une instance dont l'horloge retarde un peu ne relance pas la tâche juste après sa fin. Les instants sont
+ * ceux de l'horloge des instances, supposées synchronisées à la seconde près.
+ * </p>
+ */
+@Component
+public class VerrouTaches {
+
+    private static final Logger log = LoggerFactory.getLogger(VerrouTaches.class);
+
+    private static final String PRISE = "UPDATE verrous_taches SET verrouille_jusqua = ?, verrouille_le = ?, verrouille_par = ? " +
+            "WHERE nom = ? AND verrouille_jusqua <= ?";
+    private static final String CREATION = "INSERT INTO verrous_taches (nom, verrouille_jusqua, verrouille_le, verrouille_par) " +
+            "VALUES (?, ?, ?, ?)";
+    private static final String LIBERATION = "UPDATE verrous_taches SET verrouille_jusqua = ? WHERE nom = ? AND verrouille_par = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String instance;
+    private final long dureeMinMs;
+    private final LongSupplier horlogeMs;
+    /** Instant de prise des verrous détenus par cette instance. */
+    private final Map<String, Long> detenus = new ConcurrentHashMap<>();
+
+    @Autowired
+    public VerrouTaches(JdbcTemplate jdbcTemplate, @Value("${app.purges.verrou-min-ms:60000}") long dureeMinMs) {
+        this(jdbcTemplate, nomInstance(), dureeMinMs, System::currentTimeMillis);
+    }
+
+    VerrouTaches(JdbcTemplate jdbcTemplate, String instance, long dureeMinMs, LongSupplier horlogeMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.instance = instance;
+        this.dureeMinMs = dureeMinMs;
+        this.horlogeMs = horlogeMs;
+    }
+
+    /**
+     * Prend le verrou d'une tâche s'il est libre ou expiré.
+     *
+     * @param nom   Le nom de la tâche.
+     * @param duree La durée au-delà de laquelle le verrou expire s'il n'est pas libéré.
+     * @return {@code true} si le verrou a été pris par cette instance.
+     */
+    public boolean acquerir(String nom, Duration duree) {
+        long maintenant = horlogeMs.getAsLong();
+        LocalDateTime prise = versDate(maintenant);
+        LocalDateTime jusqua = versDate(maintenant + duree.toMillis());
+        boolean obtenu;
+        if (jdbcTemplate.update(PRISE, jusqua, prise, instance, nom, prise) == 1) {
+            obtenu = true;
+        } else {
+            try {
+                obtenu = jdbcTemplate.update(CREATION, nom, jusqua, prise, instance) == 1;
+            } catch (DuplicateKeyException e) {
+                obtenu = false; // Verrou en cours, ou créé au même instant par une autre instance
+            }
+        }
+        if (obtenu) {
+            detenus.put(nom, maintenant);
+            log.debug("Verrou {} pris par {} jusqu'au {}.", nom, instance, jusqua);
+        }
+        return obtenu;
+    }
+
+    /**
+     * Libère le verrou d'une tâche pris par cette instance, en le conservant au moins la durée minimale après sa prise.
+     *
+     * @param nom Le nom de la tâche.
+     */
+    public void liberer(String nom) {
+        Long prise = detenus.remove(nom);
+        if (prise == null) {
+            return;
+        }
+        long jusqua = Math.max(horlogeMs.getAsLong(), prise + dureeMinMs);
+        try {
+            jdbcTemplate.update(LIBERATION, versDate(jusqua), nom, instance);
+        } catch (DataAccessException e) {
+            log.warn("Libération du verrou {} impossible, il expirera de lui-même : {}", nom, e.getMessage());
+        }
+    }
+
+    private static String nomInstance() {
+        String hote;
+        try {
+            hote = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            hote = "inconnu";
+        }
+        return hote + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    private static LocalDateTime versDate(long ms) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(ms), ZoneId.systemDefault());
+    }
+}
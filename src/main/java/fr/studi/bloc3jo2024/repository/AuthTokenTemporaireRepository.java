@@ -6,7 +6,6 @@ import fr.studi.bloc3jo2024.entity.enums.TypeAuthTokenTemp;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
-import java.time.LocalDateTime;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -38,12 +37,4 @@ public interface AuthTokenTemporaireRepository extends JpaRepository<AuthTokenTe
      * @return Un Optional contenant le token s'il est trouvé, sinon vide.
      */
     Optional<AuthTokenTemporaire> findByUtilisateurAndTypeToken(Utilisateur utilisateur, TypeAuthTokenTemp typeToken);
-
-    /**
-     * Supprime tous les tokens d'authentification temporaires dont la date d'expiration est antérieure à la date donnée.
-     *
-     * @param dateExpiration La date et l'heure limites pour l'expiration.
-     * @return Le nombre de tokens supprimés.
-     */
-    long deleteByDateExpirationBefore(LocalDateTime dateExpiration);
 }
\ No newline at end of file
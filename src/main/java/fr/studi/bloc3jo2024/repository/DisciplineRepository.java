@@ -14,6 +14,21 @@ import java.util.Set;
 
 public interface DisciplineRepository extends JpaRepository<Discipline, Long> {
 
+    /**
+     * Projection légère des places restantes d'une discipline (utilisée par les métriques).
+     */
+    interface PlacesRestantes {
+        Long getIdDiscipline();
+
+        String getNomDiscipline();
+
+        int getNbPlaceDispo();
+    }
+
+    // Places restantes de toutes les disciplines, sans charger les entités ni leurs associations
+    @Query("SELECT d.idDiscipline AS idDiscipline, d.nomDiscipline AS nomDiscipline, d.nbPlaceDispo AS nbPlaceDispo FROM Discipline d")
+    List<PlacesRestantes> findPlacesRestantes();
+
     // Disciplines futures avec l'adresse (pour éviter N+1)
     @Query("SELECT d FROM Discipline d JOIN FETCH d.adresse WHERE d.dateDiscipline > :now ORDER BY d.dateDiscipline ASC")
     Page<Discipline> findFutureDisciplinesWithAdresse(@Param("now") LocalDateTime now, Pageable pageable);
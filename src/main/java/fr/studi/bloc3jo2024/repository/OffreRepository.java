@@ -2,55 +2,109 @@ package fr.studi.bloc3jo2024.repository;
 
 import fr.studi.bloc3jo2024.entity.Offre;
 import fr.studi.bloc3jo2024.entity.enums.StatutOffre;
+import fr.studi.bloc3jo2024.entity.enums.TypeOffre;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
-import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface OffreRepository extends JpaRepository<Offre, Long> {
 
+    /** Nombre de billets émis pour une offre, avec son type et sa discipline. */
+    interface BilletsParOffre {
+        Long getIdOffre();
+
+        TypeOffre getTypeOffre();
+
+        Long getIdDiscipline();
+
+        Long getNombreBillets();
+    }
+
+    /** Quantité restante d'une offre (projection légère pour le flux temps réel). */
+    interface QuantiteRestante {
+        Long getIdOffre();
+
+        int getQuantite();
+    }
+
+    /** Échéance d'une offre disponible (voir ExpirationOffresService). */
+    interface EcheanceOffre {
+        Long getIdOffre();
+
+        LocalDateTime getEcheance();
+    }
+
+    // Offre avec sa discipline en une requête (contrôle des places lors de l'ajout au panier)
+    @Query("SELECT o FROM Offre o LEFT JOIN FETCH o.discipline WHERE o.idOffre = :idOffre")
+    Optional<Offre> findByIdWithDiscipline(@Param("idOffre") Long idOffre);
+
+    // Offre verrouillée (SELECT ... FOR UPDATE) pour les lignes disputées : voir ContentionService
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT o FROM Offre o WHERE o.idOffre = :idOffre")
+    Optional<Offre> findByIdPourMiseAJour(@Param("idOffre") Long idOffre);
+
     @Query("SELECT o FROM Offre o LEFT JOIN FETCH o.discipline d WHERE o.statutOffre = :statutOffre")
     Page<Offre> findByStatutOffreWithDiscipline(@Param("statutOffre") StatutOffre statutOffre, Pageable pageable);
 
     Page<Offre> findByStatutOffre(StatutOffre statutOffre, Pageable pageable);
 
-    @Query("SELECT o.idOffre, COUNT(b.idBillet) FROM Offre o LEFT JOIN o.billets b GROUP BY o.idOffre")
-    List<Object> countBilletsByOffreId();
+    @Query("SELECT o.idOffre AS idOffre, o.typeOffre AS typeOffre, d.idDiscipline AS idDiscipline, " +
+            "COUNT(b.idBillet) AS nombreBillets " +
+            "FROM Offre o JOIN o.discipline d LEFT JOIN o.billets b " +
+            "GROUP BY o.idOffre, o.typeOffre, d.idDiscipline")
+    List<BilletsParOffre> countBilletsParOffre();
 
-    @Query("SELECT o.typeOffre, COUNT(b.idBillet) FROM Offre o LEFT JOIN o.billets b GROUP BY o.typeOffre")
-    List<Object> countBilletsByTypeOffre();
+    @Query("SELECT o.idOffre AS idOffre, o.quantite AS quantite FROM Offre o")
+    List<QuantiteRestante> findQuantitesRestantes();
 
+    // Offres épuisées par leur stock ou par les places de leur discipline : voir OffresEpuiseesService
+    @Query("SELECT o.idOffre FROM Offre o JOIN o.discipline d WHERE o.quantite <= 0 OR d.nbPlaceDispo <= 0")
+    List<Long> findIdsEpuisees();
+
+    // Échéances des offres disponibles par leur propre date (index partiel idx_offres_disponibles_date_expiration)
+    @Query("SELECT o.idOffre AS idOffre, o.dateExpiration AS echeance FROM Offre o " +
+            "WHERE o.statutOffre = :statut AND o.quantite > 0 AND o.dateExpiration <= :limite " +
+            "ORDER BY o.dateExpiration")
+    List<EcheanceOffre> findEcheancesParDateExpiration(@Param("statut") StatutOffre statut,
+                                                       @Param("limite") LocalDateTime limite,
+                                                       Pageable pageable);
+
+    // Échéances des offres disponibles par la date de leur discipline (index idx_discipline_date puis idx_offre_discipline)
+    @Query("SELECT o.idOffre AS idOffre, d.dateDiscipline AS echeance FROM Offre o JOIN o.discipline d " +
+            "WHERE o.statutOffre = :statut AND o.quantite > 0 AND d.dateDiscipline <= :limite " +
+            "ORDER BY d.dateDiscipline")
+    List<EcheanceOffre> findEcheancesParDateDiscipline(@Param("statut") StatutOffre statut,
+                                                       @Param("limite") LocalDateTime limite,
+                                                       Pageable pageable);
+
+    // Expiration d'un lot d'offres, limitée à celles encore disponibles et réellement échues à l'instant donné.
+    // La version est incrémentée pour qu'un achat concurrent ne réécrive pas le statut DISPONIBLE.
     @Modifying
-    @Query("UPDATE Offre o SET o.statutOffre = :newStatus " +
-            "WHERE o.statutOffre = :currentStatus " +
+    @Query("UPDATE Offre o SET o.statutOffre = :nouveauStatut, o.version = COALESCE(o.version, 0) + 1 " +
+            "WHERE o.idOffre IN :ids " +
+            "AND o.statutOffre = :statutActuel " +
             "AND o.quantite > 0 " +
-            "AND (" +
-            "  (o.dateExpiration IS NOT NULL AND o.dateExpiration < :nowDateTime) " +
-            "  OR " +
-            "  (o.discipline IS NOT NULL AND o.discipline.dateDiscipline IS NOT NULL AND FUNCTION('DATE', o.discipline.dateDiscipline) <= :currentDate)" +
-            ")")
-    int updateStatusForEffectivelyExpiredOffersWithParameters(
-            @Param("newStatus") StatutOffre newStatus,
-            @Param("currentStatus") StatutOffre currentStatus,
-            @Param("nowDateTime") LocalDateTime nowDateTime,
-            @Param("currentDate") LocalDate currentDate
-    );
-
-    default int updateStatusForEffectivelyExpiredOffers(LocalDateTime nowDateTime, LocalDate currentDate) {
-        return updateStatusForEffectivelyExpiredOffersWithParameters(
-                fr.studi.bloc3jo2024.entity.enums.StatutOffre.EXPIRE,
-                fr.studi.bloc3jo2024.entity.enums.StatutOffre.DISPONIBLE,
-                nowDateTime,
-                currentDate
-        );
+            "AND (o.dateExpiration <= :maintenant " +
+            "  OR o.discipline.idDiscipline IN (SELECT d.idDiscipline FROM Discipline d WHERE d.dateDiscipline <= :maintenant))")
+    int updateStatutOffresEchues(@Param("ids") Collection<Long> ids,
+                                 @Param("nouveauStatut") StatutOffre nouveauStatut,
+                                 @Param("statutActuel") StatutOffre statutActuel,
+                                 @Param("maintenant") LocalDateTime maintenant);
+
+    default int expirerOffresEchues(Collection<Long> ids, LocalDateTime maintenant) {
+        return updateStatutOffresEchues(ids, StatutOffre.EXPIRE, StatutOffre.DISPONIBLE, maintenant);
     }
 
     @Query(value = "SELECT o FROM Offre o LEFT JOIN FETCH o.discipline d",
@@ -3,8 +3,12 @@ package fr.studi.bloc3jo2024.repository;
 import fr.studi.bloc3jo2024.entity.Panier;
 import fr.studi.bloc3jo2024.entity.enums.StatutPanier;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -13,4 +17,46 @@ public interface PanierRepository extends JpaRepository<Panier, Long> {
 
     Optional<Panier> findByIdPanierAndUtilisateur_idUtilisateur(Long idPanier, UUID utilisateurId);
     Optional<Panier> findByUtilisateur_idUtilisateurAndStatut(UUID utilisateurId, StatutPanier statut);
+
+    // Panier avec ses lignes, leurs offres et leurs disciplines en une seule requête (évite le N+1)
+    @Query("SELECT p FROM Panier p LEFT JOIN FETCH p.contenuPaniers cp LEFT JOIN FETCH cp.offre o "
+            + "LEFT JOIN FETCH o.discipline WHERE p.utilisateur.idUtilisateur = :utilisateurId AND p.statut = :statut")
+    Optional<Panier> findCompletByUtilisateurAndStatut(@Param("utilisateurId") UUID utilisateurId,
+                                                        @Param("statut") StatutPanier statut);
+
+    /**
+     * Verrouille la ligne du panier ({@code SELECT ... FOR UPDATE}) jusqu'à la fin de la transaction.
+     *
+     * @return La version courante du panier, à comparer à celle de l'entité chargée.
+     */
+    @Query(value = "SELECT COALESCE(version, 0) FROM paniers WHERE id_panier = :idPanier FOR UPDATE", nativeQuery = true)
+    Long verrouillerEtLireVersion(@Param("idPanier") Long idPanier);
+
+    /**
+     * Répercute un changement de prix d'une offre sur le montant des paniers en cours qui la contiennent,
+     * en une seule requête. La version est incrémentée : une mutation concurrente sur l'ancien montant échoue.
+     *
+     * @return Le nombre de paniers mis à jour.
+     */
+    @Modifying
+    @Query(value = "UPDATE paniers p SET montant_total = p.montant_total + CAST(:ecartPrix AS NUMERIC) * cp.quantite_commandee, " +
+            "version = COALESCE(p.version, 0) + 1 " +
+            "FROM contenu_panier cp " +
+            "WHERE cp.id_panier = p.id_panier AND cp.id_offre = :idOffre AND p.statut_panier = 'EN_ATTENTE'",
+            nativeQuery = true)
+    int reporterChangementPrix(@Param("idOffre") Long idOffre, @Param("ecartPrix") BigDecimal ecartPrix);
+
+    /**
+     * Retire du montant des paniers en cours les lignes d'une offre sur le point d'être supprimées (prix courant de
+     * l'offre multiplié par la quantité), en une seule requête. La version est incrémentée comme pour un changement de prix.
+     *
+     * @return Le nombre de paniers mis à jour.
+     */
+    @Modifying
+    @Query(value = "UPDATE paniers p SET montant_total = p.montant_total - o.prix * cp.quantite_commandee, " +
+            "version = COALESCE(p.version, 0) + 1 " +
+            "FROM contenu_panier cp JOIN offres o ON o.id_offre = cp.id_offre " +
+            "WHERE cp.id_panier = p.id_panier AND cp.id_offre = :idOffre AND p.statut_panier = 'EN_ATTENTE'",
+            nativeQuery = true)
+    int retirerOffreDesMontants(@Param("idOffre") Long idOffre);
 }
\ No newline at end of file
@@ -5,6 +5,7 @@ import fr.studi.bloc3jo2024.entity.Transaction;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.Optional;
 
 @Repository
@@ -17,5 +18,15 @@ public interface TransactionRepository extends JpaRepository<Transaction, Long>
      * @return Un Optional contenant la transaction correspondante si elle est trouvée, sinon un Optional vide.
      */
     Optional<Transaction> findByPaiement(Paiement paiement);
-    Optional<Transaction> findByPaiementIdPaiement(Long payementId);
+
+    /**
+     * Recherche la transaction d'un paiement en bornant la date de transaction : seules les partitions mensuelles
+     * couvrant la période sont parcourues.
+     *
+     * @param payementId L'identifiant du paiement.
+     * @param debut      Borne basse (incluse) de la date de transaction.
+     * @param fin        Borne haute (incluse) de la date de transaction.
+     * @return Un Optional contenant la transaction correspondante si elle est trouvée, sinon un Optional vide.
+     */
+    Optional<Transaction> findByPaiementIdPaiementAndDateTransactionBetween(Long payementId, LocalDateTime debut, LocalDateTime fin);
 }
\ No newline at end of file
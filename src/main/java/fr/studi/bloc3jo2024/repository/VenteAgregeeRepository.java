@@ -0,0 +1,57 @@
+package fr.studi.bloc3jo2024.repository;
+
+import fr.studi.bloc3jo2024.entity.VenteAgregee;
+import fr.studi.bloc3jo2024.entity.VenteAgregeeKey;
+import fr.studi.bloc3jo2024.entity.enums.TypeOffre;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface VenteAgregeeRepository extends JpaRepository<VenteAgregee, VenteAgregeeKey> {
+
+    /** Ventes d'un jour pour un type d'offre, sommées sur les offres et disciplines. */
+    interface VenteJourParType {
+        LocalDate getJour();
+
+        TypeOffre getTypeOffre();
+
+        Long getNombreVentes();
+    }
+
+    /**
+     * Cumule les lignes d'un panier payé dans l'agrégat du jour (une ligne par offre), en une seule requête.
+     * Doit être appelée dans la transaction qui valide le paiement, une seule fois par panier.
+     *
+     * @return Le nombre de lignes d'agrégat créées ou mises à jour.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO ventes_agregees (jour, type_offre, id_offre, id_discipline, nb_ventes, quantite_vendue) " +
+            "SELECT CAST(:jour AS DATE), o.type_offre, o.id_offre, o.id_discipline, COUNT(*), SUM(cp.quantite_commandee) " +
+            "FROM contenu_panier cp JOIN offres o ON o.id_offre = cp.id_offre " +
+            "WHERE cp.id_panier = :idPanier " +
+            "GROUP BY o.type_offre, o.id_offre, o.id_discipline " +
+            "ON CONFLICT (jour, type_offre, id_offre, id_discipline) DO UPDATE SET " +
+            "nb_ventes = ventes_agregees.nb_ventes + EXCLUDED.nb_ventes, " +
+            "quantite_vendue = ventes_agregees.quantite_vendue + EXCLUDED.quantite_vendue",
+            nativeQuery = true)
+    int cumulerVentesPanier(@Param("idPanier") Long idPanier, @Param("jour") LocalDate jour);
+
+    @Query("SELECT v.id.jour AS jour, v.id.typeOffre AS typeOffre, SUM(v.nbVentes) AS nombreVentes " +
+            "FROM VenteAgregee v " +
+            "GROUP BY v.id.jour, v.id.typeOffre " +
+            "ORDER BY v.id.jour ASC, v.id.typeOffre ASC")
+    List<VenteJourParType> sommerVentesParJourEtType();
+
+    @Query("SELECT v.id.jour AS jour, v.id.typeOffre AS typeOffre, SUM(v.nbVentes) AS nombreVentes " +
+            "FROM VenteAgregee v " +
+            "WHERE v.id.jour = :jour " +
+            "GROUP BY v.id.jour, v.id.typeOffre " +
+            "ORDER BY v.id.typeOffre ASC")
+    List<VenteJourParType> sommerVentesParTypePourJour(@Param("jour") LocalDate jour);
+}
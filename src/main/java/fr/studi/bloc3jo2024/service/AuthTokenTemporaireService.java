@@ -3,6 +3,7 @@ package fr.studi.bloc3jo2024.service;
 import fr.studi.bloc3jo2024.entity.AuthTokenTemporaire;
 import fr.studi.bloc3jo2024.entity.Utilisateur;
 import fr.studi.bloc3jo2024.entity.enums.TypeAuthTokenTemp;
+import fr.studi.bloc3jo2024.purge.PurgeParLots;
 import fr.studi.bloc3jo2024.repository.AuthTokenTemporaireRepository;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
@@ -26,9 +27,14 @@ public class AuthTokenTemporaireService {
 
     private static final Logger logger = LoggerFactory.getLogger(AuthTokenTemporaireService.class);
     private static final int TOKEN_LOG_PREFIX_LENGTH = 8; // Pour tronquer les tokens dans les logs
+    private static final String PURGE_TOKENS_EXPIRES = "tokens-expires";
+    // Un lot de tokens expirés, supprimé par adresse physique (index idx_authtokentemp_date_expiration)
+    public static final String LOT_TOKENS_EXPIRES = "DELETE FROM auth_tokens_temporaire WHERE ctid IN (" +
+            "SELECT ctid FROM auth_tokens_temporaire WHERE date_expiration < ? LIMIT ?)";
 
     private final AuthTokenTemporaireRepository tokenRepository;
     private final PasswordEncoder passwordEncoder;
+    private final PurgeParLots purgeParLots;
 
     /**
      * Crée un nouveau token temporaire pour un utilisateur.
@@ -189,14 +195,14 @@ public class AuthTokenTemporaireService {
 
     /**
      * Supprime tous les tokens temporaires qui ont expiré de la base de données.
-     * Cette opération est effectuée directement en base de données pour plus d'efficacité.
+     * Cette opération est effectuée directement en base de données, par lots courts (voir {@link PurgeParLots}) ;
+     * elle n'est donc pas transactionnelle.
      *
      * @return Le nombre de tokens purgés.
      */
-    @Transactional
     public long purgeExpiredTokens() {
         LocalDateTime now = LocalDateTime.now();
-        long count = tokenRepository.deleteByDateExpirationBefore(now);
+        long count = purgeParLots.executer(PURGE_TOKENS_EXPIRES, LOT_TOKENS_EXPIRES, now);
         if (count > 0) {
             logger.info("{} tokens expirés avant {} ont été purgés.", count, now);
         } else {
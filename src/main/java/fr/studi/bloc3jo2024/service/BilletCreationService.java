@@ -3,13 +3,16 @@ package fr.studi.bloc3jo2024.service;
 import fr.studi.bloc3jo2024.entity.Billet;
 import fr.studi.bloc3jo2024.entity.Paiement;
 
+import java.util.List;
+
 public interface BilletCreationService {
 
     /**
-     * Génère et finalise un billet après une transaction de paiement réussie.
+     * Génère et finalise les billets après une transaction de paiement réussie :
+     * un billet par place achetée (quantité commandée × capacité de l'offre) pour chaque ligne du panier.
      *
      * @param paiement L'entité Paiement à succès.
-     * @return L'entité Billet finalisée.
+     * @return Les billets finalisés, ou une liste vide si aucun billet ne peut être émis.
      */
-    Billet genererBilletApresTransactionReussie(Paiement paiement);
+    List<Billet> genererBilletsApresTransactionReussie(Paiement paiement);
 }
\ No newline at end of file
@@ -6,18 +6,25 @@ import fr.studi.bloc3jo2024.entity.Utilisateur;
 import fr.studi.bloc3jo2024.exception.BilletAlreadyScannedException;
 import fr.studi.bloc3jo2024.exception.BilletNotFoundException;
 import fr.studi.bloc3jo2024.repository.BilletRepository;
+import io.micrometer.core.annotation.Timed;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 /**
  * Service principal pour la gestion des opérations transactionnelles
- * liées aux billets (création, finalisation, vérification et scan).
+ * liées aux billets (émission, vérification et scan).
  */
 @Service
 @RequiredArgsConstructor
@@ -34,6 +41,8 @@ public class BilletService {
     @Value("${app.email.contenu.billet}")
     private String contenuEmailBillet;
 
+    private static final SecureRandom ALEATOIRE = new SecureRandom();
+
     /**
      * Génère une clé d'achat unique sous forme d'UUID.
      * @return La clé d'achat générée.
@@ -42,6 +51,25 @@ public class BilletService {
         return UUID.randomUUID().toString();
     }
 
+    /**
+     * Génère en une fois les clés d'achat de toute une commande (UUID version 4).
+     * Un seul tirage aléatoire couvre l'ensemble des clés, au lieu d'un appel à {@link UUID#randomUUID()} par billet.
+     * @param nombre Le nombre de clés à générer.
+     * @return Les clés d'achat générées.
+     */
+    public List<String> genererClesAchat(int nombre) {
+        byte[] octets = new byte[nombre * 16];
+        ALEATOIRE.nextBytes(octets);
+        ByteBuffer tampon = ByteBuffer.wrap(octets);
+        List<String> cles = new ArrayList<>(nombre);
+        for (int i = 0; i < nombre; i++) {
+            long poidsFort = (tampon.getLong() & ~0xF000L) | 0x4000L; // version 4
+            long poidsFaible = (tampon.getLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L; // variante IETF
+            cles.add(new UUID(poidsFort, poidsFaible).toString());
+        }
+        return cles;
+    }
+
     /**
      * Génère la clé finale d'un billet en combinant la clé utilisateur et la clé d'achat.
      * @param cleUtilisateur La clé de l'utilisateur.
@@ -53,63 +81,54 @@ public class BilletService {
     }
 
     /**
-     * Crée et enregistre un billet en base de données.
-     * L'opération est transactionnelle.
-     * @param utilisateur L'utilisateur associé au billet.
-     * @param offres La liste des offres incluses dans le billet.
-     * @param cleFinaleBillet La clé finale unique du billet.
-     * @param purchaseDate La date d'achat du billet.
-     * @return Le billet sauvegardé.
+     * Émet les billets d'une commande, un par place achetée.
+     * Les clés sont générées en une fois, les QR codes rendus en parallèle, puis tous les billets
+     * sont insérés avec saveAll (INSERT groupés en batch JDBC) et envoyés dans un seul e-mail.
+     * @param utilisateur L'utilisateur associé aux billets.
+     * @param offresParPlace L'offre de chaque place achetée (une entrée par billet à émettre).
+     * @param purchaseDate La date d'achat des billets.
+     * @return Les billets sauvegardés, dans l'ordre des places.
      */
     @Transactional
-    public Billet creerEtEnregistrerBillet(Utilisateur utilisateur, List<Offre> offres, String cleFinaleBillet, LocalDateTime purchaseDate) {
-        Billet billet = Billet.builder()
-                .utilisateur(utilisateur)
-                .offres(offres)
-                .cleFinaleBillet(cleFinaleBillet)
-                .purchaseDate(purchaseDate)
-                .build();
-        return billetRepository.save(billet);
-    }
+    public List<Billet> emettreBillets(Utilisateur utilisateur, List<Offre> offresParPlace, LocalDateTime purchaseDate) {
+        if (offresParPlace.isEmpty()) {
+            return List.of();
+        }
+        List<String> cles = genererClesAchat(offresParPlace.size()).stream()
+                .map(cleAchat -> genererCleFinaleBillet(utilisateur.getCleUtilisateur(), cleAchat))
+                .toList();
+        List<byte[]> qrCodes = qrCodeService.generateQRCodes(cles);
+
+        List<Billet> billets = new ArrayList<>(offresParPlace.size());
+        for (int i = 0; i < offresParPlace.size(); i++) {
+            billets.add(Billet.builder()
+                    .utilisateur(utilisateur)
+                    .offres(List.of(offresParPlace.get(i)))
+                    .cleFinaleBillet(cles.get(i))
+                    .purchaseDate(purchaseDate)
+                    .qrCodeImage(qrCodes.get(i))
+                    .build());
+        }
+        List<Billet> billetsSauvegardes = billetRepository.saveAll(billets);
 
-    /**
-     * Finalise la création d'un billet en générant son QR code et en l'associant,
-     * puis envoie le billet par e-mail à l'utilisateur.
-     * L'opération est transactionnelle.
-     * @param billet Le billet à finaliser.
-     * @return Le billet finalisé et sauvegardé.
-     */
-    @Transactional
-    public Billet finaliserBilletAvecQrCode(Billet billet) {
-        byte[] qrCodeImage = qrCodeService.generateQRCode(billet.getCleFinaleBillet());
-        billet.setQrCodeImage(qrCodeImage);
-        Billet billetSauvegarde = billetRepository.save(billet);
-
-        // Envoyer l'e-mail après la sauvegarde du billet et la génération du QR code
-        envoyerBilletParEmail(billetSauvegarde);
-        return billetSauvegarde;
+        envoyerBilletsParEmail(utilisateur, billetsSauvegardes);
+        return billetsSauvegardes;
     }
 
     /**
-     * Envoie le billet (avec QR code intégré) par e-mail à l'utilisateur.
-     * Cette méthode est privée car elle est une étape interne de la finalisation du billet.
-     * @param billet Le billet à envoyer.
+     * Envoie tous les billets d'une commande dans un seul e-mail, un QR code en pièce jointe par billet.
+     * @param utilisateur Le destinataire.
+     * @param billets Les billets à envoyer.
      */
-    private void envoyerBilletParEmail(Billet billet) {
-        Utilisateur utilisateur = billet.getUtilisateur();
-        byte[] qrCodeImage = billet.getQrCodeImage();
-        String nomFichierQrCode = "billet_" + billet.getCleFinaleBillet() + ".png";
-
-        // Remplacer les placeholders dans le contenu de l'e-mail
-        String contenuPersonnalise = String.format(contenuEmailBillet, utilisateur.getPrenom(), billet.getCleFinaleBillet());
-
-        emailService.envoyerEmailAvecQrCode(
-                utilisateur.getEmail(),
-                sujetEmailBillet,
-                contenuPersonnalise,
-                qrCodeImage,
-                nomFichierQrCode
-        );
+    private void envoyerBilletsParEmail(Utilisateur utilisateur, List<Billet> billets) {
+        Map<String, byte[]> piecesJointes = new LinkedHashMap<>();
+        for (Billet billet : billets) {
+            piecesJointes.put("billet_" + billet.getCleFinaleBillet() + ".png", billet.getQrCodeImage());
+        }
+        String cles = billets.stream().map(Billet::getCleFinaleBillet).collect(Collectors.joining("<br>"));
+        String contenuPersonnalise = String.format(contenuEmailBillet, utilisateur.getPrenom(), cles);
+
+        emailService.envoyerEmailAvecQrCodes(utilisateur.getEmail(), sujetEmailBillet, contenuPersonnalise, piecesJointes);
     }
 
     /**
@@ -122,6 +141,7 @@ public class BilletService {
      * @throws BilletAlreadyScannedException si le billet a déjà été utilisé.
      */
     @Transactional
+    @Timed(value = "jo2024.billet.scan", description = "Vérification et marquage d'un billet au scan")
     public Billet verifierEtMarquerCommeScanne(String cleFinaleBillet) {
         Billet billet = billetQueryService.recupererBilletParCleFinale(cleFinaleBillet);
 
@@ -0,0 +1,248 @@
+package fr.studi.bloc3jo2024.service;
+
+import fr.studi.bloc3jo2024.changements.Changement;
+import fr.studi.bloc3jo2024.changements.TypeChangement;
+import fr.studi.bloc3jo2024.dto.panier.ContenuPanierDto;
+import fr.studi.bloc3jo2024.dto.panier.PanierDto;
+import fr.studi.bloc3jo2024.entity.ContenuPanier;
+import fr.studi.bloc3jo2024.entity.Offre;
+import fr.studi.bloc3jo2024.entity.Panier;
+import fr.studi.bloc3jo2024.entity.enums.StatutPanier;
+import fr.studi.bloc3jo2024.entity.enums.TypeOffre;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache en mémoire du panier en cours de chaque utilisateur, servi par {@code GET /api/paniers/{userId}} sans accès
+ * à la base.
+ * <p>
+ * Chaque entrée est un instantané immuable (lignes, prix unitaires, places par discipline) écrit après le commit de
+ * chaque mutation du panier. Un instantané n'en remplace un autre que s'il est au moins aussi récent : panier plus
+ * récent (identifiant supérieur, après un paiement) ou même panier avec une {@code version} supérieure ou égale ; à
+ * version égale, un panier payé n'est jamais remplacé par son état en cours, un paiement étant irréversible.
+ * Une lecture commencée avant une mutation ne peut donc pas réinstaller un état périmé. Les opérations qui touchent
+ * plusieurs paniers (retrait ou modification d'une offre) vident le cache ; une génération empêche les écritures
+ * commencées avant le vidage d'y revenir.
+ * </p>
+ * <p>
+ * Les mutations validées sur une autre instance arrivent par le bus de changements : le panier de l'utilisateur
+ * concerné est oublié, et tout le cache est vidé quand une offre change.
+ * </p>
+ * <p>
+ * Le cache est borné : au-delà de {@code app.paniers.cache.taille-max} entrées, les nouveaux paniers ne sont plus
+ * conservés, et les entrées non relues depuis {@code app.paniers.cache.ttl-ms} sont purgées périodiquement.
+ * </p>
+ */
+@Service
+public class CachePaniersService {
+
+    private static final Logger log = LoggerFactory.getLogger(CachePaniersService.class);
+
+    private final ConcurrentHashMap<UUID, Entree> entrees = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    private final int tailleMax;
+    private final long ttlMs;
+
+    public CachePaniersService(@Value("${app.paniers.cache.taille-max:50000}") int tailleMax,
+                               @Value("${app.paniers.cache.ttl-ms:900000}") long ttlMs) {
+        this.tailleMax = tailleMax;
+        this.ttlMs = ttlMs;
+    }
+
+    /** Une ligne du panier, figée au moment de l'écriture. */
+    public record LignePanier(Long idOffre, TypeOffre typeOffre, Long idDiscipline, int capacite,
+                              BigDecimal prixUnitaire, int quantite) {
+
+        public BigDecimal prixTotal() {
+            return prixUnitaire.multiply(BigDecimal.valueOf(quantite));
+        }
+    }
+
+    /** Panier d'un utilisateur à une version donnée. */
+    public record InstantanePanier(Long idPanier, long version, StatutPanier statut, LocalDateTime dateAjout,
+                                   UUID idUtilisateur, BigDecimal montantTotal, List<LignePanier> lignes,
+                                   Map<Long, Integer> placesParDiscipline) {
+
+        boolean auMoinsAussiRecentQue(InstantanePanier autre) {
+            int comparaisonPanier = idPanier.compareTo(autre.idPanier);
+            if (comparaisonPanier != 0 || version != autre.version) {
+                return comparaisonPanier > 0 || (comparaisonPanier == 0 && version > autre.version);
+            }
+            return statut != StatutPanier.EN_ATTENTE || autre.statut == StatutPanier.EN_ATTENTE;
+        }
+
+        /** Construit un DTO neuf (les DTO sont mutables, l'instantané ne doit pas l'être). */
+        public PanierDto versDto() {
+            return PanierDto.builder()
+                    .idPanier(idPanier)
+                    .montantTotal(montantTotal)
+                    .statut(statut)
+                    .dateAjout(dateAjout)
+                    .idUtilisateur(idUtilisateur)
+                    .contenuPaniers(lignes.stream()
+                            .map(ligne -> ContenuPanierDto.builder()
+                                    .idOffre(ligne.idOffre())
+                                    .typeOffre(ligne.typeOffre())
+                                    .prixUnitaire(ligne.prixUnitaire())
+                                    .quantiteCommandee(ligne.quantite())
+                                    .prixTotalOffre(ligne.prixTotal())
+                                    .build())
+                            .toList())
+                    .build();
+        }
+    }
+
+    private static final class Entree {
+        private final InstantanePanier instantane;
+        private volatile long derniereLecture;
+
+        private Entree(InstantanePanier instantane, long derniereLecture) {
+            this.instantane = instantane;
+            this.derniereLecture = derniereLecture;
+        }
+    }
+
+    /**
+     * Retourne le panier en cours de l'utilisateur s'il est en cache.
+     *
+     * @return Le DTO du panier, ou vide si l'utilisateur n'a pas de panier EN_ATTENTE en cache.
+     */
+    public Optional<PanierDto> lire(UUID idUtilisateur) {
+        Entree entree = entrees.get(idUtilisateur);
+        if (entree == null || entree.instantane.statut() != StatutPanier.EN_ATTENTE) {
+            return Optional.empty();
+        }
+        entree.derniereLecture = System.currentTimeMillis();
+        return Optional.of(entree.instantane.versDto());
+    }
+
+    /**
+     * Fige le panier (chargé dans la transaction courante) et l'écrit dans le cache après le commit,
+     * avec la version attribuée par le flush. Sans commit (rollback), le cache n'est pas modifié.
+     */
+    public void ecrire(Panier panier) {
+        if (panier == null || panier.getIdPanier() == null || panier.getUtilisateur() == null
+                || panier.getUtilisateur().getIdUtilisateur() == null) {
+            return;
+        }
+        long generationLecture = generation.get();
+        UUID idUtilisateur = panier.getUtilisateur().getIdUtilisateur();
+        List<LignePanier> lignes = figerLignes(panier);
+        Map<Long, Integer> places = new HashMap<>();
+        for (LignePanier ligne : lignes) {
+            if (ligne.idDiscipline() != null) {
+                places.merge(ligne.idDiscipline(), ligne.capacite() * ligne.quantite(), Integer::sum);
+            }
+        }
+        Long idPanier = panier.getIdPanier();
+        StatutPanier statut = panier.getStatut();
+        LocalDateTime dateAjout = panier.getDateAjout();
+        BigDecimal montantTotal = panier.getMontantTotal();
+
+        apresCommit(() -> stocker(idUtilisateur, new InstantanePanier(idPanier,
+                panier.getVersion() != null ? panier.getVersion() : 0L, statut, dateAjout, idUtilisateur,
+                montantTotal, lignes, Map.copyOf(places)), generationLecture));
+    }
+
+    /** Vide le cache après le commit de la transaction courante (opération touchant plusieurs paniers). */
+    public void vider() {
+        apresCommit(() -> {
+            generation.incrementAndGet();
+            entrees.clear();
+            log.debug("Cache des paniers vidé.");
+        });
+    }
+
+    /** Oublie le panier d'un utilisateur, modifié sur une autre instance ; la prochaine lecture le recharge. */
+    public void oublier(UUID idUtilisateur) {
+        // Une écriture concurrente, lue avant la modification distante, ne doit pas réinstaller l'ancien panier
+        generation.incrementAndGet();
+        entrees.remove(idUtilisateur);
+    }
+
+    /** Invalide les paniers modifiés sur une autre instance, ou tout le cache si une offre a changé. */
+    @EventListener
+    public void surChangement(Changement changement) {
+        if (changement.type() == TypeChangement.PANIER && changement.id() != null) {
+            oublier(UUID.fromString(changement.id()));
+        } else if (changement.concerne(TypeChangement.PANIER) || changement.concerne(TypeChangement.OFFRE)) {
+            vider();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.paniers.cache.purge-ms:60000}")
+    public void purger() {
+        long maintenant = System.currentTimeMillis();
+        entrees.values().removeIf(entree -> maintenant - entree.derniereLecture >= ttlMs);
+    }
+
+    int taille() {
+        return entrees.size();
+    }
+
+    private void stocker(UUID idUtilisateur, InstantanePanier instantane, long generationLecture) {
+        if (generation.get() != generationLecture) {
+            return;
+        }
+        Entree nouvelle = new Entree(instantane, System.currentTimeMillis());
+        Entree retenue = entrees.compute(idUtilisateur, (cle, actuelle) -> {
+            if (actuelle == null) {
+                return entrees.size() < tailleMax ? nouvelle : null;
+            }
+            return instantane.auMoinsAussiRecentQue(actuelle.instantane) ? nouvelle : actuelle;
+        });
+        // Un vidage concurrent a pu passer entre le contrôle de génération et l'insertion
+        if (retenue == nouvelle && generation.get() != generationLecture) {
+            entrees.remove(idUtilisateur, nouvelle);
+        }
+    }
+
+    private static List<LignePanier> figerLignes(Panier panier) {
+        if (panier.getContenuPaniers() == null) {
+            return List.of();
+        }
+        return panier.getContenuPaniers().stream()
+                .filter(contenu -> contenu != null && contenu.getOffre() != null && contenu.getOffre().getPrix() != null)
+                .map(CachePaniersService::figerLigne)
+                .sorted(Comparator.comparing(LignePanier::idOffre, Comparator.nullsLast(Comparator.naturalOrder())))
+                .toList();
+    }
+
+    private static LignePanier figerLigne(ContenuPanier contenu) {
+        Offre offre = contenu.getOffre();
+        Long idDiscipline = offre.getDiscipline() != null ? offre.getDiscipline().getIdDiscipline() : null;
+        return new LignePanier(offre.getIdOffre(), offre.getTypeOffre(), idDiscipline, offre.getCapacite(),
+                offre.getPrix(), contenu.getQuantiteCommandee());
+    }
+
+    /** Exécute l'action après le commit de la transaction courante, ou immédiatement hors transaction. */
+    private static void apresCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package fr.studi.bloc3jo2024.service;
+
+import fr.studi.bloc3jo2024.concurrence.ClasseCharge;
+import fr.studi.bloc3jo2024.config.GardeReplique;
+import fr.studi.bloc3jo2024.concurrence.Cloison;
+import fr.studi.bloc3jo2024.exception.CloisonSatureeException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Budgets de connexions simultanées par classe de charge ({@link ClasseCharge}), appliqués par {@link Cloison}.
+ * <p>
+ * Chaque classe limitée dispose de {@code app.cloisons.<classe>.permis} permis ; une méthode cloisonnée attend au plus
+ * {@code app.cloisons.<classe>.attente-ms} qu'un permis se libère, puis est refusée ({@link CloisonSatureeException},
+ * 503 côté web). Les budgets par défaut (catalogue 2, statistiques 1, planification 1) bornent à 4 des 5 connexions
+ * du pool primaire ce que ces classes peuvent occuper ensemble : un tableau de bord lent ou une purge ne peut plus à lui
+ * seul affamer le contrôle des billets et le paiement. Ce n'est pas une réserve garantie : les modifications du panier,
+ * l'authentification, l'administration et le rafraîchissement des offres épuisées empruntent le même pool sans budget.
+ * </p>
+ * <p>
+ * Les classes en lecture seule ({@link ClasseCharge#isLectureSeule()}) ne sont limitées que lorsque la réplique est
+ * indisponible ou absente ({@link GardeReplique}) : leurs transactions sont alors servies par le primaire. Sur la
+ * réplique, elles ne prennent rien au pool primaire et seul le pool de la réplique les borne.
+ * </p>
+ * <p>
+ * Par classe sont publiés : l'occupation ({@code jo2024.cloisons.occupation}), l'attente d'un permis
+ * ({@code jo2024.cloisons.attente}) et les refus ({@code jo2024.cloisons.refus}).
+ * </p>
+ */
+@Service
+public class CloisonsService {
+
+    private static final Logger log = LoggerFactory.getLogger(CloisonsService.class);
+
+    public static final String OCCUPATION = "jo2024.cloisons.occupation";
+    public static final String ATTENTE = "jo2024.cloisons.attente";
+    public static final String REFUS = "jo2024.cloisons.refus";
+
+    private static final String PREFIXE_PROPRIETE = "app.cloisons.";
+    private static final String CLOISON_SATUREE = "Capacité de la classe %s saturée, réessayez dans un instant.";
+
+    /** Budget d'une classe ; sans sémaphore si la classe n'est pas limitée. */
+    private record Budget(Semaphore permis, long attenteMs, AtomicInteger occupation, Timer attente, Counter refus) {
+    }
+
+    /** Classe sous laquelle s'exécute le thread courant, et si un permis de son budget a été pris. */
+    private record Entree(ClasseCharge classe, boolean permisPris) {
+    }
+
+    private final Map<ClasseCharge, Budget> budgets = new EnumMap<>(ClasseCharge.class);
+    /** Entrée du thread courant (appels imbriqués). */
+    private final ThreadLocal<Entree> entreeCourante = new ThreadLocal<>();
+    /** Garde de la réplique de lecture, {@code null} sans réplique. */
+    private final GardeReplique gardeReplique;
+
+    @Autowired
+    public CloisonsService(Environment environment, MeterRegistry meterRegistry, ObjectProvider<GardeReplique> gardeReplique) {
+        this(environment, meterRegistry, gardeReplique.getIfAvailable());
+    }
+
+    CloisonsService(Environment environment, MeterRegistry meterRegistry, GardeReplique gardeReplique) {
+        this.gardeReplique = gardeReplique;
+        boolean active = environment.getProperty(PREFIXE_PROPRIETE + "active", Boolean.class, true);
+        for (ClasseCharge classe : ClasseCharge.values()) {
+            int permis = active
+                    ? environment.getProperty(PREFIXE_PROPRIETE + classe.cle() + ".permis", Integer.class, classe.getPermisParDefaut())
+                    : 0;
+            long attenteMs = environment.getProperty(PREFIXE_PROPRIETE + classe.cle() + ".attente-ms", Long.class,
+                    classe.getAttenteParDefautMs());
+            AtomicInteger occupation = new AtomicInteger();
+            Gauge.builder(OCCUPATION, occupation, AtomicInteger::get)
+                    .description("Méthodes cloisonnées en cours d'exécution")
+                    .tag("classe", classe.cle())
+                    .register(meterRegistry);
+            budgets.put(classe, new Budget(permis > 0 ? new Semaphore(permis, true) : null, attenteMs, occupation,
+                    Timer.builder(ATTENTE)
+                            .description("Attente d'un permis de la classe de charge")
+                            .tag("classe", classe.cle())
+                            .register(meterRegistry),
+                    Counter.builder(REFUS)
+                            .description("Exécutions refusées faute de permis")
+                            .tag("classe", classe.cle())
+                            .register(meterRegistry)));
+        }
+    }
+
+    /**
+     * Prend un permis de la classe pour le thread courant.
+     *
+     * @param classe La classe de charge de la méthode.
+     * @return {@code true} si le thread est entré dans la classe (à quitter par {@link #sortir}), {@code false} s'il
+     * s'exécute déjà sous une classe.
+     * @throws CloisonSatureeException Si aucun permis ne s'est libéré dans l'attente maximale de la classe.
+     */
+    public boolean entrer(ClasseCharge classe) {
+        if (entreeCourante.get() != null) {
+            return false;
+        }
+        Budget budget = budgets.get(classe);
+        boolean limitee = budget.permis() != null && !(classe.isLectureSeule() && gardeReplique != null && gardeReplique.estDisponible());
+        if (limitee) {
+            long debut = System.nanoTime();
+            boolean obtenu;
+            try {
+                obtenu = budget.permis().tryAcquire(budget.attenteMs(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                obtenu = false;
+            }
+            budget.attente().record(System.nanoTime() - debut, TimeUnit.NANOSECONDS);
+            if (!obtenu) {
+                budget.refus().increment();
+                log.warn("Classe de charge {} saturée : exécution refusée après {} ms d'attente.", classe, budget.attenteMs());
+                throw new CloisonSatureeException(String.format(CLOISON_SATUREE, classe.cle()));
+            }
+        }
+        budget.occupation().incrementAndGet();
+        entreeCourante.set(new Entree(classe, limitee));
+        return true;
+    }
+
+    /**
+     * Quitte la classe et rend le permis éventuellement pris par {@link #entrer}.
+     *
+     * @param classe La classe de charge de la méthode.
+     */
+    public void sortir(ClasseCharge classe) {
+        Budget budget = budgets.get(classe);
+        Entree entree = entreeCourante.get();
+        entreeCourante.remove();
+        budget.occupation().decrementAndGet();
+        if (entree != null && entree.permisPris()) {
+            budget.permis().release();
+        }
+    }
+
+    /** @return Le nombre de permis libres de la classe, ou -1 si elle n'est pas limitée. */
+    int permisDisponibles(ClasseCharge classe) {
+        Semaphore permis = budgets.get(classe).permis();
+        return permis != null ? permis.availablePermits() : -1;
+    }
+}
@@ -0,0 +1,204 @@
+package fr.studi.bloc3jo2024.service;
+
+import fr.studi.bloc3jo2024.concurrence.ClasseCharge;
+import fr.studi.bloc3jo2024.concurrence.Cloison;
+import fr.studi.bloc3jo2024.entity.Billet;
+import fr.studi.bloc3jo2024.entity.Offre;
+import fr.studi.bloc3jo2024.entity.enums.StatutPaiement;
+import fr.studi.bloc3jo2024.entity.enums.StatutTransaction;
+import fr.studi.bloc3jo2024.entity.enums.TypeOffre;
+import fr.studi.bloc3jo2024.repository.OffreRepository;
+import fr.studi.bloc3jo2024.repository.PaiementRepository;
+import fr.studi.bloc3jo2024.repository.UtilisateurRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compteurs de ventes en mémoire pour les tableaux de bord administrateur.
+ * <p>
+ * Les billets émis sont comptés par offre, par type d'offre et par discipline, avec le nombre d'utilisateurs inscrits
+ * et de paiements réussis. Les compteurs ({@link LongAdder}, sans contention entre threads d'achat) sont chargés depuis
+ * la base au démarrage, incrémentés après le commit de chaque paiement réussi ou inscription, puis recalés
+ * périodiquement sur la base : une lecture de tableau de bord ne touche plus PostgreSQL.
+ * </p>
+ */
+@Service
+public class CompteursVentesService {
+
+    private static final Logger log = LoggerFactory.getLogger(CompteursVentesService.class);
+
+    private final OffreRepository offreRepository;
+    private final UtilisateurRepository utilisateurRepository;
+    private final PaiementRepository paiementRepository;
+
+    private final Map<Long, LongAdder> billetsParOffre = new ConcurrentHashMap<>();
+    private final Map<TypeOffre, LongAdder> billetsParType = new ConcurrentHashMap<>();
+    private final Map<Long, LongAdder> billetsParDiscipline = new ConcurrentHashMap<>();
+    private final LongAdder utilisateurs = new LongAdder();
+    private final LongAdder paiementsReussis = new LongAdder();
+
+    public CompteursVentesService(OffreRepository offreRepository,
+                                  UtilisateurRepository utilisateurRepository,
+                                  PaiementRepository paiementRepository) {
+        this.offreRepository = offreRepository;
+        this.utilisateurRepository = utilisateurRepository;
+        this.paiementRepository = paiementRepository;
+    }
+
+    /**
+     * Comptabilise un paiement réussi et les billets émis pour celui-ci, une fois la transaction courante validée.
+     * Les identifiants sont extraits immédiatement : les entités ne sont plus lues après le commit.
+     *
+     * @param billets Les billets émis (un par place), chacun rattaché à son offre.
+     */
+    public void enregistrerPaiementReussi(List<Billet> billets) {
+        List<Offre> offres = new ArrayList<>();
+        for (Billet billet : billets) {
+            if (billet.getOffres() != null) {
+                offres.addAll(billet.getOffres());
+            }
+        }
+        List<long[]> offresVendues = new ArrayList<>(offres.size());
+        List<TypeOffre> types = new ArrayList<>(offres.size());
+        for (Offre offre : offres) {
+            long idDiscipline = offre.getDiscipline() != null ? offre.getDiscipline().getIdDiscipline() : -1L;
+            offresVendues.add(new long[]{offre.getIdOffre(), idDiscipline});
+            types.add(offre.getTypeOffre());
+        }
+        apresCommit(() -> {
+            paiementsReussis.increment();
+            for (int i = 0; i < offresVendues.size(); i++) {
+                long[] ids = offresVendues.get(i);
+                compteur(billetsParOffre, ids[0]).increment();
+                if (types.get(i) != null) {
+                    compteur(billetsParType, types.get(i)).increment();
+                }
+                if (ids[1] >= 0) {
+                    compteur(billetsParDiscipline, ids[1]).increment();
+                }
+            }
+        });
+    }
+
+    /** Comptabilise une inscription, une fois la transaction courante validée. */
+    public void enregistrerInscription() {
+        apresCommit(utilisateurs::increment);
+    }
+
+    /** Fait apparaître une nouvelle offre (à zéro) sans attendre le prochain recalage. */
+    public void declarerOffre(Offre offre) {
+        Long idOffre = offre.getIdOffre();
+        TypeOffre type = offre.getTypeOffre();
+        apresCommit(() -> {
+            compteur(billetsParOffre, idOffre);
+            if (type != null) {
+                compteur(billetsParType, type);
+            }
+        });
+    }
+
+    public Map<Long, Long> getBilletsParOffre() {
+        return instantane(billetsParOffre);
+    }
+
+    public Map<String, Long> getBilletsParType() {
+        Map<String, Long> resultat = new HashMap<>();
+        billetsParType.forEach((type, compteur) -> resultat.put(type.name(), compteur.sum()));
+        return resultat;
+    }
+
+    public Map<Long, Long> getBilletsParDiscipline() {
+        return instantane(billetsParDiscipline);
+    }
+
+    public long getUtilisateurs() {
+        return utilisateurs.sum();
+    }
+
+    public long getPaiementsReussis() {
+        return paiementsReussis.sum();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialiser() {
+        recaler();
+    }
+
+    /**
+     * Recale les compteurs sur la base (une requête agrégée pour les billets, deux comptages).
+     * Les incréments arrivés pendant la lecture peuvent être comptés une fois de trop ou de moins ;
+     * l'écart est corrigé au passage suivant.
+     */
+    @Cloison(ClasseCharge.PLANIFICATION)
+    @Scheduled(initialDelayString = "${app.stats.compteurs.recalage-ms:300000}",
+            fixedDelayString = "${app.stats.compteurs.recalage-ms:300000}")
+    public void recaler() {
+        try {
+            Map<Long, Long> parOffre = new HashMap<>();
+            Map<TypeOffre, Long> parType = new HashMap<>();
+            Map<Long, Long> parDiscipline = new HashMap<>();
+            for (OffreRepository.BilletsParOffre ligne : offreRepository.countBilletsParOffre()) {
+                long nombre = ligne.getNombreBillets() != null ? ligne.getNombreBillets() : 0L;
+                parOffre.put(ligne.getIdOffre(), nombre);
+                parType.merge(ligne.getTypeOffre(), nombre, Long::sum);
+                parDiscipline.merge(ligne.getIdDiscipline(), nombre, Long::sum);
+            }
+            recaler(billetsParOffre, parOffre);
+            recaler(billetsParType, parType);
+            recaler(billetsParDiscipline, parDiscipline);
+            recaler(utilisateurs, utilisateurRepository.count());
+            recaler(paiementsReussis, paiementRepository.countByStatutPaiementAndTransaction_StatutTransaction(
+                    StatutPaiement.ACCEPTE, StatutTransaction.REUSSI));
+            log.debug("Compteurs de ventes recalés : {} offres, {} paiements réussis.", parOffre.size(), paiementsReussis.sum());
+        } catch (DataAccessException e) {
+            log.warn("Impossible de recaler les compteurs de ventes : {}", e.getMessage());
+        }
+    }
+
+    private static <K> void recaler(Map<K, LongAdder> compteurs, Map<K, Long> reference) {
+        compteurs.keySet().retainAll(reference.keySet());
+        reference.forEach((cle, valeur) -> recaler(compteur(compteurs, cle), valeur));
+    }
+
+    private static void recaler(LongAdder compteur, long valeur) {
+        compteur.add(valeur - compteur.sum());
+    }
+
+    private static <K> LongAdder compteur(Map<K, LongAdder> compteurs, K cle) {
+        return compteurs.computeIfAbsent(cle, k -> new LongAdder());
+    }
+
+    private static Map<Long, Long> instantane(Map<Long, LongAdder> compteurs) {
+        Map<Long, Long> resultat = new HashMap<>();
+        compteurs.forEach((cle, compteur) -> resultat.put(cle, compteur.sum()));
+        return resultat;
+    }
+
+    /** Exécute l'action après le commit de la transaction courante, ou immédiatement hors transaction. */
+    private static void apresCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
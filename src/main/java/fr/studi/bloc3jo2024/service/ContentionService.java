@@ -0,0 +1,148 @@
+package fr.studi.bloc3jo2024.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Suivi des conflits de version (@Version) par ligne et politique de réessai associée.
+ * <p>
+ * Chaque conflit signalé augmente le score de la ligne concernée ({@code Offre#42}, {@code Panier#7}) ; le score
+ * décroît de moitié toutes les {@code app.contention.demi-vie-ms}. Une ligne dont le score atteint
+ * {@code app.contention.seuil} est « disputée » : les services la verrouillent alors par {@code SELECT ... FOR UPDATE}
+ * au lieu de compter sur le verrou optimiste, ce qui sérialise les écritures sur cette seule ligne plutôt que de
+ * multiplier les réessais voués à l'échec. Les autres lignes restent en verrouillage optimiste.
+ * </p>
+ * <p>
+ * La table est bornée à {@code app.contention.taille-max} lignes : au-delà, les nouveaux conflits ne sont plus suivis
+ * par ligne (les réessais continuent). Les lignes redevenues calmes sont purgées périodiquement.
+ * </p>
+ */
+@Service
+public class ContentionService {
+
+    private static final Logger log = LoggerFactory.getLogger(ContentionService.class);
+
+    /** Score en dessous duquel une ligne est oubliée par la purge. */
+    private static final double SCORE_NEGLIGEABLE = 0.05;
+
+    private final ConcurrentHashMap<String, Score> scores = new ConcurrentHashMap<>();
+    private final int tentativesMax;
+    private final long delaiInitialMs;
+    private final long delaiMaxMs;
+    private final double seuil;
+    private final long demiVieNanos;
+    private final int tailleMax;
+    private final LongSupplier horloge;
+
+    @Autowired
+    public ContentionService(@Value("${app.contention.tentatives-max:4}") int tentativesMax,
+                             @Value("${app.contention.delai-initial-ms:20}") long delaiInitialMs,
+                             @Value("${app.contention.delai-max-ms:500}") long delaiMaxMs,
+                             @Value("${app.contention.seuil:3}") double seuil,
+                             @Value("${app.contention.demi-vie-ms:10000}") long demiVieMs,
+                             @Value("${app.contention.taille-max:10000}") int tailleMax) {
+        this(tentativesMax, delaiInitialMs, delaiMaxMs, seuil, demiVieMs, tailleMax, System::nanoTime);
+    }
+
+    ContentionService(int tentativesMax, long delaiInitialMs, long delaiMaxMs, double seuil, long demiVieMs,
+                      int tailleMax, LongSupplier horloge) {
+        this.tentativesMax = tentativesMax;
+        this.delaiInitialMs = delaiInitialMs;
+        this.delaiMaxMs = delaiMaxMs;
+        this.seuil = seuil;
+        this.demiVieNanos = TimeUnit.MILLISECONDS.toNanos(demiVieMs);
+        this.tailleMax = tailleMax;
+        this.horloge = horloge;
+    }
+
+    /** Score de conflit d'une ligne, à l'instant de sa dernière mise à jour. */
+    private record Score(double valeur, long instant) {
+
+        Score vieilli(long maintenant, long demiVieNanos) {
+            double ecoule = Math.max(0, maintenant - instant);
+            return new Score(valeur * Math.pow(0.5, ecoule / demiVieNanos), maintenant);
+        }
+    }
+
+    /** @return Le nombre maximal d'exécutions d'une méthode annotée {@code @ReessaiSurConflit}, première comprise. */
+    public int getTentativesMax() {
+        return tentativesMax;
+    }
+
+    /**
+     * Délai à observer avant le réessai suivant : tirage uniforme entre 0 et un plafond qui double à chaque tentative
+     * (« full jitter »), pour que les transactions en conflit ne se retrouvent pas au même instant.
+     *
+     * @param tentative Le numéro de la tentative qui vient d'échouer (1 pour la première).
+     * @return Le délai avant la tentative suivante.
+     */
+    public Duration delaiAvantReessai(int tentative) {
+        long plafond = Math.min(delaiMaxMs, delaiInitialMs << Math.min(tentative - 1, 20));
+        return Duration.ofMillis(plafond > 0 ? ThreadLocalRandom.current().nextLong(plafond + 1) : 0);
+    }
+
+    /**
+     * Enregistre un conflit de version sur une ligne.
+     *
+     * @param entite Le nom simple de l'entité ({@code Offre}, {@code Panier}...).
+     * @param id     L'identifiant de la ligne, ou {@code null} s'il est inconnu (conflit non suivi par ligne).
+     */
+    public void signalerConflit(String entite, Object id) {
+        if (id == null) {
+            return;
+        }
+        String cle = cle(entite, id);
+        if (!scores.containsKey(cle) && scores.size() >= tailleMax) {
+            purger();
+            if (scores.size() >= tailleMax) {
+                return;
+            }
+        }
+        long maintenant = horloge.getAsLong();
+        Score score = scores.compute(cle, (k, actuel) -> actuel == null
+                ? new Score(1, maintenant)
+                : new Score(actuel.vieilli(maintenant, demiVieNanos).valeur() + 1, maintenant));
+        if (score.valeur() >= seuil && score.valeur() - 1 < seuil) {
+            log.info("Ligne {} disputée (score {}) : écritures sous verrou pessimiste jusqu'au retour au calme.",
+                    cle, String.format("%.1f", score.valeur()));
+        }
+    }
+
+    /**
+     * @param type Le type de l'entité.
+     * @param id   L'identifiant de la ligne.
+     * @return {@code true} si les conflits récents sur la ligne justifient un verrou pessimiste.
+     */
+    public boolean estDisputee(Class<?> type, Object id) {
+        if (id == null) {
+            return false;
+        }
+        Score score = scores.get(cle(type.getSimpleName(), id));
+        return score != null && score.vieilli(horloge.getAsLong(), demiVieNanos).valeur() >= seuil;
+    }
+
+    /** Oublie les lignes dont le score est redevenu négligeable. */
+    @Scheduled(fixedDelayString = "${app.contention.purge-ms:60000}")
+    public void purger() {
+        long maintenant = horloge.getAsLong();
+        scores.values().removeIf(score -> score.vieilli(maintenant, demiVieNanos).valeur() < SCORE_NEGLIGEABLE);
+    }
+
+    int taille() {
+        return scores.size();
+    }
+
+    private static String cle(String entite, Object id) {
+        return entite + "#" + id;
+    }
+}
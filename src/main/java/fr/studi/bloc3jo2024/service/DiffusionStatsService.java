@@ -0,0 +1,226 @@
+package fr.studi.bloc3jo2024.service;
+
+import fr.studi.bloc3jo2024.dto.statistiques.StatsTempsReelDto;
+import fr.studi.bloc3jo2024.repository.DisciplineRepository;
+import fr.studi.bloc3jo2024.repository.OffreRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Diffuse en SSE les ventes par type d'offre, les quantités restantes des offres et les places restantes des disciplines.
+ * <p>
+ * Un seul calcul est fait par tick, quel que soit le nombre de tableaux de bord connectés : les ventes viennent des
+ * compteurs en mémoire, les stocks de deux projections légères. Seules les valeurs modifiées depuis le tick précédent
+ * sont envoyées. Chaque abonné dispose d'une file bornée vidée par son propre thread virtuel : un client lent ne
+ * ralentit ni le tick ni les autres abonnés. Si sa file déborde, elle est vidée et remplacée par un instantané complet.
+ * Sans abonné, le tick ne fait rien.
+ * </p>
+ */
+@Service
+public class DiffusionStatsService {
+
+    private static final Logger log = LoggerFactory.getLogger(DiffusionStatsService.class);
+
+    static final String EVENEMENT_INSTANTANE = "instantane";
+    static final String EVENEMENT_DELTA = "delta";
+
+    private final CompteursVentesService compteursVentesService;
+    private final OffreRepository offreRepository;
+    private final DisciplineRepository disciplineRepository;
+    private final long delaiExpirationMs;
+    private final int capaciteFile;
+
+    private final List<Abonne> abonnes = new CopyOnWriteArrayList<>();
+    private StatsTempsReelDto dernierEtat;
+
+    /** Envoi d'un événement nommé à un client (abstraction de {@link SseEmitter} pour les tests). */
+    @FunctionalInterface
+    interface Emetteur {
+        void envoyer(String nom, StatsTempsReelDto donnees) throws IOException;
+    }
+
+    public DiffusionStatsService(CompteursVentesService compteursVentesService,
+                                 OffreRepository offreRepository,
+                                 DisciplineRepository disciplineRepository,
+                                 @Value("${app.stats.flux.expiration-ms:1800000}") long delaiExpirationMs,
+                                 @Value("${app.stats.flux.capacite-file:16}") int capaciteFile) {
+        this.compteursVentesService = compteursVentesService;
+        this.offreRepository = offreRepository;
+        this.disciplineRepository = disciplineRepository;
+        this.delaiExpirationMs = delaiExpirationMs;
+        this.capaciteFile = capaciteFile;
+    }
+
+    /**
+     * Ouvre un flux SSE. Le premier événement (instantané complet) part au tick suivant.
+     *
+     * @return L'émetteur à retourner par le contrôleur.
+     */
+    public SseEmitter abonner() {
+        SseEmitter emitter = new SseEmitter(delaiExpirationMs);
+        Abonne abonne = abonner((nom, donnees) -> emitter.send(SseEmitter.event()
+                .name(nom)
+                .data(donnees, MediaType.APPLICATION_JSON)));
+        emitter.onCompletion(abonne::fermer);
+        emitter.onTimeout(abonne::fermer);
+        emitter.onError(e -> abonne.fermer());
+        abonne.surErreurEnvoi = emitter::completeWithError;
+        return emitter;
+    }
+
+    Abonne abonner(Emetteur emetteur) {
+        Abonne abonne = new Abonne(emetteur, capaciteFile);
+        abonnes.add(abonne);
+        abonne.demarrer();
+        log.info("Nouvel abonné au flux de statistiques ({} au total).", abonnes.size());
+        return abonne;
+    }
+
+    int nombreAbonnes() {
+        return abonnes.size();
+    }
+
+    @Scheduled(fixedDelayString = "${app.stats.flux.intervalle-ms:1000}")
+    public void diffuser() {
+        if (abonnes.isEmpty()) {
+            dernierEtat = null;
+            return;
+        }
+        StatsTempsReelDto etat;
+        try {
+            etat = lireEtat();
+        } catch (DataAccessException e) {
+            log.warn("Impossible de lire l'état des stocks pour le flux de statistiques : {}", e.getMessage());
+            return;
+        }
+        StatsTempsReelDto delta = dernierEtat != null ? delta(dernierEtat, etat) : null;
+        dernierEtat = etat;
+
+        for (Abonne abonne : abonnes) {
+            if (abonne.besoinInstantane || delta == null) {
+                abonne.besoinInstantane = false;
+                abonne.publier(EVENEMENT_INSTANTANE, etat);
+            } else if (!estVide(delta)) {
+                abonne.publier(EVENEMENT_DELTA, delta);
+            }
+        }
+    }
+
+    @PreDestroy
+    void arreter() {
+        abonnes.forEach(Abonne::fermer);
+    }
+
+    private StatsTempsReelDto lireEtat() {
+        Map<Long, Integer> quantites = new HashMap<>();
+        offreRepository.findQuantitesRestantes().forEach(q -> quantites.put(q.getIdOffre(), q.getQuantite()));
+        Map<Long, Integer> places = new HashMap<>();
+        disciplineRepository.findPlacesRestantes().forEach(p -> places.put(p.getIdDiscipline(), p.getNbPlaceDispo()));
+        return new StatsTempsReelDto(Instant.now(), true, compteursVentesService.getBilletsParType(), quantites, places);
+    }
+
+    static StatsTempsReelDto delta(StatsTempsReelDto avant, StatsTempsReelDto apres) {
+        return new StatsTempsReelDto(apres.getHorodatage(), false,
+                differences(avant.getVentesParType(), apres.getVentesParType()),
+                differences(avant.getQuantitesOffres(), apres.getQuantitesOffres()),
+                differences(avant.getPlacesDisciplines(), apres.getPlacesDisciplines()));
+    }
+
+    private static <K, V> Map<K, V> differences(Map<K, V> avant, Map<K, V> apres) {
+        Map<K, V> resultat = new HashMap<>();
+        apres.forEach((cle, valeur) -> {
+            if (!Objects.equals(avant.get(cle), valeur)) {
+                resultat.put(cle, valeur);
+            }
+        });
+        avant.keySet().stream().filter(cle -> !apres.containsKey(cle)).forEach(cle -> resultat.put(cle, null));
+        return resultat;
+    }
+
+    private static boolean estVide(StatsTempsReelDto delta) {
+        return delta.getVentesParType().isEmpty() && delta.getQuantitesOffres().isEmpty()
+                && delta.getPlacesDisciplines().isEmpty();
+    }
+
+    /** Un tableau de bord connecté : file bornée d'événements vidée par un thread virtuel dédié. */
+    final class Abonne {
+
+        private record Evenement(String nom, StatsTempsReelDto donnees) {
+        }
+
+        private final Emetteur emetteur;
+        private final BlockingQueue<Evenement> file;
+        private volatile boolean besoinInstantane = true;
+        private volatile boolean ferme;
+        private volatile Consumer<Throwable> surErreurEnvoi = e -> { };
+        private volatile Thread thread;
+
+        private Abonne(Emetteur emetteur, int capacite) {
+            this.emetteur = emetteur;
+            this.file = new ArrayBlockingQueue<>(capacite);
+        }
+
+        private void demarrer() {
+            thread = Thread.ofVirtual().name("stats-sse").start(this::vider);
+        }
+
+        /** Dépose un événement sans jamais bloquer le tick ; en cas de débordement, resynchronise par un instantané. */
+        private void publier(String nom, StatsTempsReelDto donnees) {
+            if (!file.offer(new Evenement(nom, donnees))) {
+                // dernierEtat est l'état complet du tick en cours : il remplace tous les deltas abandonnés
+                file.clear();
+                file.offer(new Evenement(EVENEMENT_INSTANTANE, dernierEtat));
+                log.debug("File d'un abonné saturée : resynchronisation par instantané.");
+            }
+        }
+
+        private void vider() {
+            try {
+                while (!ferme) {
+                    Evenement evenement = file.take();
+                    emetteur.envoyer(evenement.nom(), evenement.donnees());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException | RuntimeException e) {
+                log.debug("Abonné déconnecté du flux de statistiques : {}", e.getMessage());
+                surErreurEnvoi.accept(e);
+            } finally {
+                fermer();
+            }
+        }
+
+        void fermer() {
+            if (ferme) {
+                return;
+            }
+            ferme = true;
+            abonnes.remove(this);
+            if (thread != null && thread != Thread.currentThread()) {
+                thread.interrupt();
+            }
+        }
+
+        boolean estFerme() {
+            return ferme;
+        }
+    }
+}
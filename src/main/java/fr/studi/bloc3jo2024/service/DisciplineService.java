@@ -1,5 +1,7 @@
 package fr.studi.bloc3jo2024.service;
 
+import fr.studi.bloc3jo2024.changements.BusChangements;
+import fr.studi.bloc3jo2024.changements.TypeChangement;
 import fr.studi.bloc3jo2024.dto.disciplines.CreerDisciplineDto;
 import fr.studi.bloc3jo2024.dto.disciplines.MettreAJourDisciplineDto;
 import fr.studi.bloc3jo2024.entity.Adresse;
@@ -7,6 +9,7 @@ import fr.studi.bloc3jo2024.entity.Discipline;
 import fr.studi.bloc3jo2024.entity.Epreuve;
 import fr.studi.bloc3jo2024.repository.AdresseRepository;
 import fr.studi.bloc3jo2024.repository.DisciplineRepository;
+import fr.studi.bloc3jo2024.service.offres.ExpirationOffresService;
 import jakarta.persistence.EntityNotFoundException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -23,11 +26,16 @@ public class DisciplineService {
     private final DisciplineRepository disciplineRepository;
     private final AdresseRepository adresseRepository;
     private final EpreuveService epreuveService;
+    private final BusChangements busChangements;
+    private final ExpirationOffresService expirationOffresService;
 
-    public DisciplineService(DisciplineRepository disciplineRepository, AdresseRepository adresseRepository, EpreuveService epreuveService) {
+    public DisciplineService(DisciplineRepository disciplineRepository, AdresseRepository adresseRepository, EpreuveService epreuveService,
+                             BusChangements busChangements, ExpirationOffresService expirationOffresService) {
         this.disciplineRepository = disciplineRepository;
         this.adresseRepository = adresseRepository;
         this.epreuveService = epreuveService;
+        this.busChangements = busChangements;
+        this.expirationOffresService = expirationOffresService;
     }
 
     public Discipline creerDiscipline(CreerDisciplineDto creerDisciplineDto) {
@@ -39,7 +47,9 @@ public class DisciplineService {
         discipline.setDateDiscipline(creerDisciplineDto.getDateDiscipline());
         discipline.setNbPlaceDispo(creerDisciplineDto.getNbPlaceDispo());
         discipline.setAdresse(adresse);
-        return disciplineRepository.save(discipline);
+        Discipline disciplineCreee = disciplineRepository.save(discipline);
+        busChangements.publier(TypeChangement.DISCIPLINE, disciplineCreee.getIdDiscipline());
+        return disciplineCreee;
     }
 
     public Discipline mettreAJourDiscipline(MettreAJourDisciplineDto mettreAJourDisciplineDto) {
@@ -53,6 +63,8 @@ public class DisciplineService {
         discipline.setDateDiscipline(mettreAJourDisciplineDto.getDateDiscipline());
         discipline.setNbPlaceDispo(mettreAJourDisciplineDto.getNbPlaceDispo());
         discipline.setAdresse(adresse);
+        busChangements.publier(TypeChangement.DISCIPLINE, discipline.getIdDiscipline());
+        expirationOffresService.rechargerApresCommit(); // La date de la discipline borne l'échéance de ses offres
         return disciplineRepository.save(discipline);
     }
 
@@ -61,6 +73,7 @@ public class DisciplineService {
             throw new EntityNotFoundException("Discipline non trouvée avec l'id " + id);
         }
         disciplineRepository.deleteById(id);
+        busChangements.publier(TypeChangement.DISCIPLINE, id);
     }
 
     public Discipline retirerPlaces(Long idDiscipline, int nb) {
@@ -72,6 +85,7 @@ public class DisciplineService {
             // Puisque getDisciplineOrThrow() est appelé avant, c'est forcément un problème de places.
             throw new IllegalStateException("Impossible de retirer les places. Vérifiez le nombre de places disponibles.");
         }
+        busChangements.publier(TypeChangement.DISCIPLINE, idDiscipline);
         return getDisciplineOrThrow(idDiscipline); // Récupérer l'entité mise à jour
     }
 
@@ -79,6 +93,7 @@ public class DisciplineService {
         Discipline discipline = getDisciplineOrThrow(idDiscipline);
         if (nb <= 0) throw new IllegalArgumentException("Le nombre à ajouter doit être positif.");
         discipline.setNbPlaceDispo(discipline.getNbPlaceDispo() + nb);
+        busChangements.publier(TypeChangement.DISCIPLINE, idDiscipline);
         return disciplineRepository.save(discipline);
     }
 
@@ -88,6 +103,8 @@ public class DisciplineService {
         }
         Discipline disciplineToUpdate = getDisciplineOrThrow(idDiscipline);
         disciplineToUpdate.setDateDiscipline(nouvelleDate);
+        busChangements.publier(TypeChangement.DISCIPLINE, idDiscipline);
+        expirationOffresService.rechargerApresCommit();
         return disciplineRepository.save(disciplineToUpdate);
     }
 
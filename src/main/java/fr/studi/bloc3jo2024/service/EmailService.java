@@ -1,5 +1,6 @@
 package fr.studi.bloc3jo2024.service;
 
+import io.micrometer.core.annotation.Timed;
 import jakarta.mail.MessagingException;
 import jakarta.mail.internet.MimeMessage;
 import org.slf4j.Logger;
@@ -10,6 +11,8 @@ import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.stereotype.Service;
 
+import java.util.Map;
+
 @Service
 public class EmailService {
 
@@ -21,7 +24,18 @@ public class EmailService {
         this.javaMailSender = javaMailSender;
     }
 
+    @Timed(value = "jo2024.email.envoi", description = "Envoi SMTP d'un e-mail avec QR code")
     public void envoyerEmailAvecQrCode(String destinataire, String sujet, String contenu, byte[] qrCodeImage, String nomFichierQrCode) {
+        envoyerEmailAvecQrCodes(destinataire, sujet, contenu, Map.of(nomFichierQrCode, qrCodeImage));
+    }
+
+    /**
+     * Envoie un seul e-mail portant plusieurs QR codes en pièces jointes (un par billet d'une même commande).
+     *
+     * @param piecesJointes Les images PNG indexées par nom de fichier, dans l'ordre d'ajout au message.
+     */
+    @Timed(value = "jo2024.email.envoi", description = "Envoi SMTP d'un e-mail avec QR code")
+    public void envoyerEmailAvecQrCodes(String destinataire, String sujet, String contenu, Map<String, byte[]> piecesJointes) {
         try {
             MimeMessage message = javaMailSender.createMimeMessage();
             MimeMessageHelper helper = new MimeMessageHelper(message, true);
@@ -30,14 +44,13 @@ public class EmailService {
             helper.setSubject(sujet);
             helper.setText(contenu, true); // true indique que le contenu est HTML
 
-            // Convertir le byte[] en ByteArrayResource
-            ByteArrayResource resource = new ByteArrayResource(qrCodeImage);
-
-            // Ajouter le QR code en pièce jointe en utilisant la ByteArrayResource
-            helper.addAttachment(nomFichierQrCode, resource);
+            // Ajouter chaque QR code en pièce jointe via une ByteArrayResource
+            for (Map.Entry<String, byte[]> pieceJointe : piecesJointes.entrySet()) {
+                helper.addAttachment(pieceJointe.getKey(), new ByteArrayResource(pieceJointe.getValue()));
+            }
 
             javaMailSender.send(message);
-            logger.info("E-mail avec QR code envoyé à : {}", destinataire);
+            logger.info("E-mail avec {} QR code(s) envoyé à : {}", piecesJointes.size(), destinataire);
 
         } catch (MessagingException e) {
             logger.error("Erreur lors de l'envoi de l'e-mail à : {}", destinataire, e);
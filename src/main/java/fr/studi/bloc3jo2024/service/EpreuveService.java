@@ -1,5 +1,7 @@
 package fr.studi.bloc3jo2024.service;
 
+import fr.studi.bloc3jo2024.changements.BusChangements;
+import fr.studi.bloc3jo2024.changements.TypeChangement;
 import fr.studi.bloc3jo2024.dto.epreuves.MettreAJourEpreuveVedetteDto;
 import fr.studi.bloc3jo2024.entity.Epreuve;
 import fr.studi.bloc3jo2024.repository.EpreuveRepository;
@@ -14,9 +16,11 @@ import java.util.List;
 public class EpreuveService {
 
     private final EpreuveRepository epreuveRepository;
+    private final BusChangements busChangements;
 
-    public EpreuveService(EpreuveRepository epreuveRepository) {
+    public EpreuveService(EpreuveRepository epreuveRepository, BusChangements busChangements) {
         this.epreuveRepository = epreuveRepository;
+        this.busChangements = busChangements;
     }
 
     public List<Epreuve> getEpreuvesEnVedette() {
@@ -27,6 +31,7 @@ public class EpreuveService {
         Epreuve epreuve = epreuveRepository.findById(dto.getIdEpreuve())
                 .orElseThrow(() -> new EntityNotFoundException("Épreuve non trouvée avec l'id : " + dto.getIdEpreuve()));
         epreuve.setFeatured(dto.getIsFeatured());
+        busChangements.publier(TypeChangement.EPREUVE, epreuve.getIdEpreuve());
         return epreuveRepository.save(epreuve);
     }
 
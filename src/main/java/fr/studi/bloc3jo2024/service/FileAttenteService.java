@@ -0,0 +1,310 @@
+package fr.studi.bloc3jo2024.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.sql.Timestamp;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Salle d'attente virtuelle devant le panier et le paiement.
+ * <p>
+ * Chaque acheteur authentifié reçoit un ticket numéroté et signé (HMAC), un seul par compte tant qu'il est valide :
+ * renvoyer une requête sans ticket rend le ticket déjà émis au lieu d'en créer un. Les tickets sont admis dans l'ordre, jusqu'à un curseur
+ * d'admission que {@link #cadencer()} avance au débit mesuré des achats réussis, majoré de {@code marge} (au moins
+ * {@code debit-min} par seconde). L'admission s'arrête tant que {@code concurrence-max} requêtes protégées sont en
+ * cours : les connexions du pool servent les acheteurs déjà admis au lieu d'être disputées par tous. Quand personne
+ * n'attend et que la capacité le permet, un nouveau ticket est admis immédiatement.
+ * </p>
+ * <p>
+ * L'état (dernier numéro, curseur, débit, ticket de chaque compte) est en mémoire ; avec {@code persistance}, il est
+ * sauvegardé dans {@code file_attente_etat} et restauré au démarrage (la clé {@code secret} doit alors être fixée pour
+ * que les tickets émis restent valides).
+ * </p>
+ * <p>
+ * Chaque instance tient sa propre file : derrière un répartiteur de charge, les requêtes d'un même compte doivent
+ * toujours être routées vers la même instance (affinité de session). Sans affinité, une autre instance ne reconnaît
+ * pas le ticket (clé aléatoire propre à l'instance quand {@code secret} n'est pas fixée, numérotation distincte sinon)
+ * et en émet un nouveau en fin de sa propre file : l'engagement d'un ticket par compte ne vaut que par instance. Pour
+ * la même raison, {@code persistance} suppose une seule instance, toutes écrivant la même ligne.
+ * </p>
+ */
+@Service
+public class FileAttenteService {
+
+    private static final Logger log = LoggerFactory.getLogger(FileAttenteService.class);
+
+    public static final String EN_TETE = "X-File-Attente";
+
+    private static final String ALGORITHME = "HmacSHA256";
+    private static final double LISSAGE = 0.2;
+    private static final long ATTENTE_MAX_SECONDES = 86_400;
+
+    private static final String SQL_LIRE = "SELECT dernier_numero, curseur_admission, debit_mesure FROM file_attente_etat " +
+            "WHERE id = 1 AND mis_a_jour > ?";
+    private static final String SQL_ECRIRE = "INSERT INTO file_attente_etat (id, dernier_numero, curseur_admission, debit_mesure, mis_a_jour) " +
+            "VALUES (1, ?, ?, ?, ?) ON CONFLICT (id) DO UPDATE SET dernier_numero = EXCLUDED.dernier_numero, " +
+            "curseur_admission = EXCLUDED.curseur_admission, debit_mesure = EXCLUDED.debit_mesure, mis_a_jour = EXCLUDED.mis_a_jour";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SecretKeySpec cle;
+
+    @Value("${app.file-attente.active:true}")
+    private boolean active;
+
+    @Value("${app.file-attente.debit-min:5}")
+    private double debitMin;
+
+    @Value("${app.file-attente.marge:1.2}")
+    private double marge;
+
+    @Value("${app.file-attente.concurrence-max:8}")
+    private int concurrenceMax;
+
+    @Value("${app.file-attente.validite-ms:7200000}")
+    private long validiteMs;
+
+    @Value("${app.file-attente.persistance:false}")
+    private boolean persistance;
+
+    private final ConcurrentHashMap<String, String> ticketsParSujet = new ConcurrentHashMap<>();
+    private final Object verrou = new Object();
+    private final AtomicLong dernierNumero = new AtomicLong();
+    private final AtomicInteger enCours = new AtomicInteger();
+    private final LongAdder achatsReussis = new LongAdder();
+    private volatile long curseur;
+    private volatile double debitMesure;
+    private double reliquat;
+    private long dernierCadencement = System.nanoTime();
+
+    public FileAttenteService(JdbcTemplate jdbcTemplate, @Value("${app.file-attente.secret:}") String secret) {
+        this.jdbcTemplate = jdbcTemplate;
+        byte[] octets;
+        if (secret == null || secret.isBlank()) {
+            octets = new byte[32];
+            new SecureRandom().nextBytes(octets);
+            log.info("Aucune clé de file d'attente configurée : clé aléatoire, les tickets ne survivent pas au redémarrage " +
+                    "et ne sont reconnus que par cette instance (affinité de session requise).");
+        } else {
+            octets = secret.getBytes(StandardCharsets.UTF_8);
+        }
+        this.cle = new SecretKeySpec(octets, ALGORITHME);
+    }
+
+    /**
+     * Résultat du passage d'une requête dans la salle d'attente.
+     *
+     * @param ticket           Le ticket à renvoyer avec les requêtes suivantes.
+     * @param admis            Vrai si la requête peut être traitée.
+     * @param position         Le nombre de tickets à admettre avant celui-ci (0 si admis).
+     * @param attenteSecondes  L'attente estimée au débit d'admission courant (0 si admis).
+     */
+    public record Admission(String ticket, boolean admis, long position, long attenteSecondes) {
+    }
+
+    private record EtatFile(long dernierNumero, long curseur, double debit) {
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Admet ou place en attente le porteur du ticket. Un ticket absent, mal signé, émis pour un autre client ou expiré
+     * est remplacé par le ticket encore valide du client, à défaut par un nouveau ticket, en fin de file.
+     *
+     * @param ticket Le ticket présenté par le client, ou {@code null}.
+     * @param sujet  L'utilisateur authentifié auquel le ticket est lié (sujet du jeton JWT).
+     */
+    public Admission admettre(String ticket, String sujet) {
+        long maintenant = System.currentTimeMillis();
+        long numero = verifier(ticket, sujet, maintenant);
+        if (numero <= 0) {
+            ticket = ticketsParSujet.get(sujet);
+            numero = verifier(ticket, sujet, maintenant);
+        }
+        if (numero <= 0) {
+            numero = dernierNumero.incrementAndGet();
+            admettreSiCapaciteLibre(numero);
+            ticket = signer(numero, maintenant, sujet);
+            ticketsParSujet.put(sujet, ticket);
+        }
+        long position = numero - curseur;
+        if (position <= 0) {
+            return new Admission(ticket, true, 0, 0);
+        }
+        long attente = (long) Math.ceil(position / debitAdmission());
+        return new Admission(ticket, false, position, Math.min(attente, ATTENTE_MAX_SECONDES));
+    }
+
+    /** Début d'une requête admise. */
+    public void debuterRequete() {
+        enCours.incrementAndGet();
+    }
+
+    /**
+     * Fin d'une requête admise.
+     *
+     * @param achatReussi Vrai si la requête a validé un achat (compté dans le débit mesuré).
+     */
+    public void terminerRequete(boolean achatReussi) {
+        enCours.decrementAndGet();
+        if (achatReussi) {
+            achatsReussis.increment();
+        }
+    }
+
+    /** Débit d'admission courant, en tickets par seconde. */
+    public double debitAdmission() {
+        return Math.max(debitMin, debitMesure * marge);
+    }
+
+    /** Nombre de tickets émis et pas encore admis. */
+    public long longueur() {
+        return Math.max(0, dernierNumero.get() - curseur);
+    }
+
+    @Scheduled(fixedDelayString = "${app.file-attente.cadence-ms:1000}")
+    public void cadencer() {
+        long maintenant = System.nanoTime();
+        double secondes;
+        synchronized (verrou) {
+            secondes = (maintenant - dernierCadencement) / 1e9;
+            dernierCadencement = maintenant;
+        }
+        avancer(secondes);
+    }
+
+    /** Met à jour le débit mesuré et avance le curseur d'admission pour un intervalle écoulé. */
+    void avancer(double secondes) {
+        if (secondes <= 0) {
+            return;
+        }
+        double debitInstantane = achatsReussis.sumThenReset() / secondes;
+        debitMesure = LISSAGE * debitInstantane + (1 - LISSAGE) * debitMesure;
+        synchronized (verrou) {
+            long dernier = dernierNumero.get();
+            if (curseur >= dernier || enCours.get() >= concurrenceMax) {
+                reliquat = 0;
+                return;
+            }
+            reliquat += debitAdmission() * secondes;
+            long admis = (long) reliquat;
+            reliquat -= admis;
+            curseur = Math.min(dernier, curseur + admis);
+        }
+    }
+
+    /** Oublie les tickets expirés des clients. */
+    @Scheduled(fixedDelayString = "${app.file-attente.purge-ms:60000}")
+    public void purger() {
+        long limite = System.currentTimeMillis() - validiteMs;
+        ticketsParSujet.values().removeIf(ticket -> emission(ticket) < limite);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void restaurer() {
+        if (!persistance) {
+            return;
+        }
+        try {
+            List<EtatFile> etats = jdbcTemplate.query(SQL_LIRE, (rs, i) -> new EtatFile(rs.getLong("dernier_numero"),
+                    rs.getLong("curseur_admission"), rs.getDouble("debit_mesure")), new Timestamp(System.currentTimeMillis() - validiteMs));
+            if (!etats.isEmpty()) {
+                EtatFile etat = etats.get(0);
+                synchronized (verrou) {
+                    dernierNumero.set(etat.dernierNumero());
+                    curseur = etat.curseur();
+                    debitMesure = etat.debit();
+                }
+                log.info("File d'attente restaurée : {} ticket(s) en attente.", longueur());
+            }
+        } catch (DataAccessException e) {
+            log.warn("Restauration de la file d'attente impossible : {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.file-attente.persistance-ms:5000}")
+    public void sauvegarder() {
+        if (!persistance) {
+            return;
+        }
+        try {
+            jdbcTemplate.update(SQL_ECRIRE, dernierNumero.get(), curseur, debitMesure, new Timestamp(System.currentTimeMillis()));
+        } catch (DataAccessException e) {
+            log.warn("Sauvegarde de la file d'attente impossible : {}", e.getMessage());
+        }
+    }
+
+    /** Admet le ticket sans attendre si tous les tickets précédents le sont et que la capacité libre le permet. */
+    private void admettreSiCapaciteLibre(long numero) {
+        synchronized (verrou) {
+            long libre = (long) concurrenceMax - enCours.get();
+            if (numero - curseur <= libre) {
+                curseur = Math.max(curseur, numero);
+            }
+        }
+    }
+
+    /** Format : {@code numero.emission.signature}, signature sur le numéro, l'émission et le sujet. */
+    private String signer(long numero, long emisA, String sujet) {
+        return numero + "." + emisA + "." + signature(numero, emisA, sujet);
+    }
+
+    /** @return Le numéro du ticket s'il est valide, sinon 0. */
+    private long verifier(String ticket, String sujet, long maintenant) {
+        if (ticket == null) {
+            return 0;
+        }
+        String[] parties = ticket.split("\\.");
+        if (parties.length != 3) {
+            return 0;
+        }
+        try {
+            long numero = Long.parseLong(parties[0]);
+            long emisA = Long.parseLong(parties[1]);
+            boolean signatureValide = MessageDigest.isEqual(
+                    signature(numero, emisA, sujet).getBytes(StandardCharsets.US_ASCII),
+                    parties[2].getBytes(StandardCharsets.US_ASCII));
+            if (!signatureValide || numero > dernierNumero.get() || maintenant - emisA > validiteMs || emisA > maintenant) {
+                return 0;
+            }
+            return numero;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static long emission(String ticket) {
+        return Long.parseLong(ticket.split("\\.")[1]);
+    }
+
+    private String signature(long numero, long emisA, String sujet) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHME);
+            mac.init(cle);
+            byte[] empreinte = mac.doFinal((numero + "|" + emisA + "|" + sujet).getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(empreinte);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Signature du ticket de file d'attente impossible.", e);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package fr.studi.bloc3jo2024.service;
+
+import fr.studi.bloc3jo2024.exception.IdempotenceSatureeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Rejeu des requêtes POST portant un en-tête {@value #EN_TETE} (panier, validation du panier, paiement).
+ * <p>
+ * La première requête d'une clé l'exécute ; sa réponse réussie (2xx) est conservée {@code app.idempotence.ttl-ms}
+ * et renvoyée telle quelle, avec l'en-tête {@value #EN_TETE_REJEU}, aux requêtes suivantes de même clé : un client
+ * qui réessaie après un délai d'attente ne paie pas et ne décrémente pas le stock deux fois. Un doublon arrivé
+ * pendant l'exécution attend son résultat au lieu de la relancer. Un échec libère la clé : le client peut réessayer.
+ * </p>
+ * <p>
+ * Une clé est propre à une route et à un utilisateur ; réutilisée avec d'autres paramètres, elle est refusée (422).
+ * Le stockage est borné à {@code app.idempotence.taille-max} clés, purgées périodiquement à expiration ; une fois
+ * plein, les nouvelles clés sont refusées (503) plutôt qu'exécutées sans protection contre le double traitement.
+ * </p>
+ */
+@Service
+public class IdempotenceService {
+
+    private static final Logger log = LoggerFactory.getLogger(IdempotenceService.class);
+
+    public static final String EN_TETE = "Idempotency-Key";
+    public static final String EN_TETE_REJEU = "Idempotent-Replayed";
+
+    private static final int LONGUEUR_MAX_CLE = 255;
+    private static final String CLE_INVALIDE = "La clé d'idempotence doit comporter entre 1 et " + LONGUEUR_MAX_CLE + " caractères.";
+    private static final String CLE_REUTILISEE = "La clé d'idempotence a déjà été utilisée pour une requête différente.";
+    private static final String REQUETE_EN_COURS = "Une requête avec la même clé d'idempotence est encore en cours de traitement.";
+    private static final String STOCKAGE_PLEIN = "Le service est momentanément saturé, veuillez réessayer plus tard.";
+
+    private final ConcurrentHashMap<String, Entree> entrees = new ConcurrentHashMap<>();
+    private final int tailleMax;
+    private final long ttlMs;
+    private final long attenteMs;
+
+    public IdempotenceService(@Value("${app.idempotence.taille-max:100000}") int tailleMax,
+                              @Value("${app.idempotence.ttl-ms:86400000}") long ttlMs,
+                              @Value("${app.idempotence.attente-ms:30000}") long attenteMs) {
+        this.tailleMax = tailleMax;
+        this.ttlMs = ttlMs;
+        this.attenteMs = attenteMs;
+    }
+
+    /** Requête d'une clé : empreinte des paramètres et réponse, disponible une fois l'exécution terminée. */
+    private static final class Entree {
+        private final String empreinte;
+        private final CompletableFuture<ResponseEntity<?>> reponse = new CompletableFuture<>();
+        private volatile long expiration = Long.MAX_VALUE; // Jamais purgée tant qu'elle est en cours
+
+        private Entree(String empreinte) {
+            this.empreinte = empreinte;
+        }
+    }
+
+    /**
+     * Exécute le traitement une seule fois par clé d'idempotence.
+     *
+     * @param cle        La valeur de l'en-tête {@value #EN_TETE}, ou {@code null} (traitement exécuté sans rejeu).
+     * @param portee     La route et l'utilisateur auxquels la clé est propre.
+     * @param empreinte  Les paramètres de la requête, qui doivent être identiques à chaque rejeu.
+     * @param traitement Le traitement de la requête.
+     * @return La réponse du traitement, ou celle conservée pour cette clé.
+     * @throws ResponseStatusException 400 si la clé est invalide, 422 si elle a servi à une autre requête,
+     *                                 409 si la requête d'origine est encore en cours après le délai d'attente.
+     * @throws IdempotenceSatureeException si le stockage est plein et que la clé est nouvelle.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> ResponseEntity<T> executer(String cle, String portee, String empreinte, Supplier<ResponseEntity<T>> traitement) {
+        if (cle == null) {
+            return traitement.get();
+        }
+        if (cle.isBlank() || cle.length() > LONGUEUR_MAX_CLE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, CLE_INVALIDE);
+        }
+        String cleComplete = portee + '|' + cle;
+        Entree nouvelle = new Entree(empreinte);
+        while (true) {
+            Entree existante = entrees.get(cleComplete);
+            if (existante != null && existante.expiration <= System.currentTimeMillis()) {
+                entrees.remove(cleComplete, existante);
+                continue;
+            }
+            if (existante != null) {
+                return (ResponseEntity<T>) rejouer(existante, empreinte);
+            }
+            if (entrees.size() >= tailleMax) {
+                log.warn("Stockage d'idempotence plein ({} clés) : requête {} refusée.", tailleMax, portee);
+                throw new IdempotenceSatureeException(STOCKAGE_PLEIN);
+            }
+            if (entrees.putIfAbsent(cleComplete, nouvelle) == null) {
+                return executerPremiere(cleComplete, nouvelle, traitement);
+            }
+        }
+    }
+
+    /** Retire les clés expirées. */
+    @Scheduled(fixedDelayString = "${app.idempotence.purge-ms:60000}")
+    public void purger() {
+        long maintenant = System.currentTimeMillis();
+        int avant = entrees.size();
+        entrees.values().removeIf(entree -> entree.expiration <= maintenant);
+        int retirees = avant - entrees.size();
+        if (retirees > 0) {
+            log.debug("{} clé(s) d'idempotence expirée(s) purgée(s).", retirees);
+        }
+    }
+
+    int taille() {
+        return entrees.size();
+    }
+
+    private <T> ResponseEntity<T> executerPremiere(String cleComplete, Entree entree, Supplier<ResponseEntity<T>> traitement) {
+        ResponseEntity<T> reponse;
+        try {
+            reponse = traitement.get();
+        } catch (RuntimeException | Error e) {
+            // Sans quoi la clé resterait « en cours » sans expiration et bloquerait tous les rejeux
+            entrees.remove(cleComplete, entree);
+            entree.reponse.completeExceptionally(e);
+            throw e;
+        }
+        if (reponse.getStatusCode().is2xxSuccessful()) {
+            entree.expiration = System.currentTimeMillis() + ttlMs;
+        } else {
+            entrees.remove(cleComplete, entree);
+        }
+        entree.reponse.complete(reponse);
+        return reponse;
+    }
+
+    private ResponseEntity<?> rejouer(Entree entree, String empreinte) {
+        if (!entree.empreinte.equals(empreinte)) {
+            throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY, CLE_REUTILISEE);
+        }
+        ResponseEntity<?> reponse;
+        try {
+            reponse = entree.reponse.get(attenteMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, REQUETE_EN_COURS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(HttpStatus.CONFLICT, REQUETE_EN_COURS);
+        } catch (ExecutionException e) {
+            // La requête d'origine a échoué : le doublon concurrent reçoit la même erreur
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        return ResponseEntity.status(reponse.getStatusCode())
+                .headers(reponse.getHeaders())
+                .header(EN_TETE_REJEU, "true")
+                .body(reponse.getBody());
+    }
+}
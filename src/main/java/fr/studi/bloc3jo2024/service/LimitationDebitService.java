@@ -0,0 +1,144 @@
+package fr.studi.bloc3jo2024.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Seaux à jetons des routes limitées en débit (voir {@code LimitationDebitFilter}).
+ * <p>
+ * Chaque seau est un seul {@link AtomicLong} mis à jour par compare-and-set, sans verrou : l'heure théorique à
+ * laquelle le seau sera de nouveau plein (algorithme GCRA, équivalent à un seau de {@code capacite} jetons rechargé
+ * d'un jeton toutes les {@code periode / capacite}). Un seau redevenu plein n'a plus d'état utile : il est retiré par
+ * la purge périodique. La table est bornée à {@code app.limitation-debit.taille-max} seaux ; au-delà, les nouvelles
+ * clés d'une même limite partagent un seau de débordement plutôt que d'échapper à la limitation.
+ * </p>
+ */
+@Service
+public class LimitationDebitService {
+
+    private static final Logger log = LoggerFactory.getLogger(LimitationDebitService.class);
+
+    private static final Pattern FORMAT_LIMITE = Pattern.compile("(\\d+)\\s*/\\s*(\\d+)\\s*([smh])");
+    private static final String DEBORDEMENT = "|debordement";
+
+    private final ConcurrentHashMap<String, AtomicLong> seaux = new ConcurrentHashMap<>();
+    private final int tailleMax;
+    private final LongSupplier horloge;
+
+    @Autowired
+    public LimitationDebitService(@Value("${app.limitation-debit.taille-max:100000}") int tailleMax) {
+        this(tailleMax, System::nanoTime);
+    }
+
+    LimitationDebitService(int tailleMax, LongSupplier horloge) {
+        this.tailleMax = tailleMax;
+        this.horloge = horloge;
+    }
+
+    /**
+     * Limite d'un seau : {@code capacite} requêtes en rafale, rechargées en {@code periode}.
+     */
+    public record Limite(int capacite, Duration periode) {
+
+        public Limite {
+            if (capacite <= 0 || periode.isZero() || periode.isNegative()) {
+                throw new IllegalArgumentException("Limite de débit invalide : " + capacite + " / " + periode);
+            }
+        }
+
+        /**
+         * Lit une limite au format {@code capacite/duree}, la durée en secondes, minutes ou heures
+         * (ex. {@code 5/1m}, {@code 50/1s}, {@code 3/1h}).
+         */
+        public static Limite lire(String valeur) {
+            Matcher matcher = FORMAT_LIMITE.matcher(valeur.trim());
+            if (!matcher.matches()) {
+                throw new IllegalArgumentException("Limite de débit invalide : '" + valeur + "' (attendu : 5/1m, 50/1s...)");
+            }
+            long quantite = Long.parseLong(matcher.group(2));
+            Duration periode = switch (matcher.group(3)) {
+                case "s" -> Duration.ofSeconds(quantite);
+                case "m" -> Duration.ofMinutes(quantite);
+                default -> Duration.ofHours(quantite);
+            };
+            return new Limite(Integer.parseInt(matcher.group(1)), periode);
+        }
+
+        long intervalleNanos() {
+            return periode.toNanos() / capacite;
+        }
+    }
+
+    /**
+     * Consomme un jeton du seau de la clé.
+     *
+     * @param cle    La clé du seau (route, dimension et valeur : adresse, email...).
+     * @param limite La limite du seau.
+     * @return 0 si la requête est acceptée, sinon le délai en nanosecondes avant qu'un jeton soit disponible.
+     */
+    public long consommer(String cle, Limite limite) {
+        AtomicLong seau = seau(cle);
+        long intervalle = limite.intervalleNanos();
+        long tolerance = limite.periode().toNanos();
+        while (true) {
+            long maintenant = horloge.getAsLong();
+            long plein = seau.get();
+            long suivant = Math.max(plein, maintenant) + intervalle;
+            long attente = suivant - maintenant - tolerance;
+            if (attente > 0) {
+                return attente;
+            }
+            if (seau.compareAndSet(plein, suivant)) {
+                return 0;
+            }
+        }
+    }
+
+    /** Retire les seaux redevenus pleins. */
+    @Scheduled(fixedDelayString = "${app.limitation-debit.purge-ms:60000}")
+    public void purger() {
+        long maintenant = horloge.getAsLong();
+        int avant = seaux.size();
+        seaux.values().removeIf(seau -> seau.get() <= maintenant);
+        int retires = avant - seaux.size();
+        if (retires > 0) {
+            log.debug("{} seau(x) de limitation de débit purgé(s).", retires);
+        }
+    }
+
+    int taille() {
+        return seaux.size();
+    }
+
+    private AtomicLong seau(String cle) {
+        AtomicLong seau = seaux.get(cle);
+        if (seau != null) {
+            return seau;
+        }
+        if (seaux.size() >= tailleMax) {
+            purger();
+            if (seaux.size() >= tailleMax) {
+                // Nouvelles clés regroupées par limite : une attaque à clés variées reste limitée
+                return seaux.computeIfAbsent(prefixe(cle) + DEBORDEMENT, k -> new AtomicLong(Long.MIN_VALUE));
+            }
+        }
+        return seaux.computeIfAbsent(cle, k -> new AtomicLong(Long.MIN_VALUE));
+    }
+
+    /** La clé sans sa dernière composante (la valeur limitée). */
+    private static String prefixe(String cle) {
+        int separateur = cle.lastIndexOf('|');
+        return separateur > 0 ? cle.substring(0, separateur) : cle;
+    }
+}
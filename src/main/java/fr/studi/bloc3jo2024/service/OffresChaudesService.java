@@ -0,0 +1,476 @@
+package fr.studi.bloc3jo2024.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Détection des offres « chaudes » et file de réservation à écrivain unique pour chacune d'elles.
+ * <p>
+ * Les tentatives d'achat sont comptées par offre sur une fenêtre glissante ({@code app.offres-chaudes.fenetre-ms},
+ * découpée en tranches). Au-delà de {@code app.offres-chaudes.seuil} tentatives, l'offre est chaude jusqu'à ce que le
+ * compte retombe sous la moitié du seuil. Les achats d'une offre chaude ne modifient plus eux-mêmes la ligne de l'offre
+ * (et son {@code @Version}) ni celle de sa discipline : ils déposent une commande dans la file de l'offre et attendent
+ * son résultat.
+ * </p>
+ * <p>
+ * Une seule tâche à la fois traite la file d'une offre. Elle prend les commandes en attente par lots, verrouille la
+ * discipline puis l'offre (même ordre que les achats ordinaires), accepte les réservations dans l'ordre d'arrivée tant
+ * que le stock et les places suffisent, applique le lot en une mise à jour par ligne, valide, puis complète les
+ * commandes. Pendant qu'un lot est appliqué, les suivantes s'accumulent : plus l'offre est disputée, plus les lots
+ * sont gros. Si la transaction de l'acheteur est ensuite annulée, la réservation est restituée par la même file. Une
+ * restitution prise dans un lot en échec n'est jamais perdue : elle est resoumise après un délai qui double à chaque
+ * échec, jusqu'à ce qu'un lot l'applique.
+ * </p>
+ * <p>
+ * Les lots sont écrits par un pool de connexions dédié de {@code app.offres-chaudes.ecrivains} connexions : les
+ * acheteurs qui attendent leur lot occupent déjà des connexions du pool principal, l'écrivain ne doit pas en dépendre.
+ * Ses verrous sont attendus au plus {@code app.offres-chaudes.attente-ms} ({@code lock_timeout}), et l'acheteur n'attend
+ * jamais un lot plus longtemps : une réservation acceptée après son abandon est aussitôt restituée.
+ * </p>
+ */
+@Service
+public class OffresChaudesService implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(OffresChaudesService.class);
+
+    private static final String SQL_VERROU_DISCIPLINE =
+            "SELECT nb_place_dispo FROM disciplines WHERE id_discipline = ? FOR UPDATE";
+    private static final String SQL_VERROU_OFFRE =
+            "SELECT quantite FROM offres WHERE id_offre = ? FOR UPDATE";
+    private static final String SQL_MAJ_OFFRE = "UPDATE offres SET quantite = quantite + ?, "
+            + "version = COALESCE(version, 0) + 1, "
+            + "statut_offre = CASE WHEN statut_offre = 'ANNULE' THEN statut_offre "
+            + "WHEN quantite + ? <= 0 THEN 'EPUISE' "
+            + "WHEN statut_offre = 'EPUISE' THEN 'DISPONIBLE' "
+            + "ELSE statut_offre END "
+            + "WHERE id_offre = ?";
+    private static final String SQL_MAJ_DISCIPLINE =
+            "UPDATE disciplines SET nb_place_dispo = nb_place_dispo + ? WHERE id_discipline = ?";
+    private static final String RESERVATION_NON_TRAITEE =
+            "Réservation sur une offre très demandée non traitée à temps. Veuillez réessayer.";
+    private static final long REPRISE_MIN_MS = 100;
+    private static final long REPRISE_MAX_MS = 30_000;
+
+    /** Issue d'une réservation sur une offre chaude. */
+    public enum Reservation {
+        ACCEPTEE,
+        STOCK_INSUFFISANT,
+        PLACES_INSUFFISANTES
+    }
+
+    private final ConcurrentHashMap<Long, Fenetre> fenetres = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, FileOffre> files = new ConcurrentHashMap<>();
+    private final AtomicLong lotsAppliques = new AtomicLong();
+    private final AtomicLong restitutionsReprises = new AtomicLong();
+    private final OffresEpuiseesService offresEpuiseesService;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService ecrivains;
+    private final ScheduledExecutorService reprises;
+    private final DataSource dataSource;
+    private final boolean active;
+    private final int seuil;
+    private final long trancheMs;
+    private final int tranches;
+    private final int tailleLot;
+    private final long attenteMs;
+    private final LongSupplier horlogeMs;
+
+    @Autowired
+    public OffresChaudesService(DataSourceProperties dataSourceProperties,
+                                OffresEpuiseesService offresEpuiseesService,
+                                @Value("${app.offres-chaudes.active:true}") boolean active,
+                                @Value("${app.offres-chaudes.seuil:50}") int seuil,
+                                @Value("${app.offres-chaudes.fenetre-ms:10000}") long fenetreMs,
+                                @Value("${app.offres-chaudes.tranches:10}") int tranches,
+                                @Value("${app.offres-chaudes.taille-lot:256}") int tailleLot,
+                                @Value("${app.offres-chaudes.attente-ms:5000}") long attenteMs,
+                                @Value("${app.offres-chaudes.ecrivains:2}") int ecrivains) {
+        this(poolEcrivains(dataSourceProperties, ecrivains, attenteMs), offresEpuiseesService, active, seuil, fenetreMs, tranches, tailleLot, attenteMs,
+                ecrivains, System::currentTimeMillis);
+    }
+
+    OffresChaudesService(DataSource dataSource, OffresEpuiseesService offresEpuiseesService, boolean active, int seuil, long fenetreMs, int tranches, int tailleLot,
+                         long attenteMs, int ecrivains, LongSupplier horlogeMs) {
+        this.dataSource = dataSource;
+        this.offresEpuiseesService = offresEpuiseesService;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        this.active = active;
+        this.seuil = seuil;
+        this.tranches = tranches;
+        this.trancheMs = Math.max(1, fenetreMs / tranches);
+        this.tailleLot = tailleLot;
+        this.attenteMs = attenteMs;
+        this.horlogeMs = horlogeMs;
+        AtomicInteger numero = new AtomicInteger();
+        this.ecrivains = Executors.newFixedThreadPool(ecrivains, tache -> {
+            Thread thread = new Thread(tache, "offres-chaudes-" + numero.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.reprises = Executors.newSingleThreadScheduledExecutor(tache -> {
+            Thread thread = new Thread(tache, "offres-chaudes-reprises");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /** Pool dédié aux lots, ouvert à la première connexion : rien n'est ouvert tant qu'aucune offre n'est chaude. */
+    private static DataSource poolEcrivains(DataSourceProperties dataSourceProperties, int ecrivains, long attenteMs) {
+        HikariDataSource pool = dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        pool.setPoolName("Jo2024OffresChaudesPool");
+        pool.setMaximumPoolSize(ecrivains);
+        pool.setMinimumIdle(0);
+        // Un lot bloqué par un verrou tenu ailleurs échoue au lieu d'immobiliser l'écrivain et ses acheteurs
+        pool.setConnectionInitSql("SET lock_timeout = " + attenteMs);
+        return pool;
+    }
+
+    /**
+     * Compte une tentative d'achat de l'offre.
+     *
+     * @param idOffre L'identifiant de l'offre.
+     * @return {@code true} si l'achat doit passer par la file de l'offre ({@link #reserver}).
+     */
+    public boolean enregistrerTentative(Long idOffre) {
+        if (!active || idOffre == null) {
+            return false;
+        }
+        return fenetres.computeIfAbsent(idOffre, id -> new Fenetre(tranches))
+                .enregistrer(horlogeMs.getAsLong() / trancheMs, seuil);
+    }
+
+    /**
+     * Réserve stock et places pour un achat d'offre chaude, avec les achats concurrents de la même offre.
+     * La réservation est validée dès le retour ; elle est restituée si la transaction appelante est annulée.
+     *
+     * @param idOffre      L'identifiant de l'offre.
+     * @param idDiscipline L'identifiant de la discipline de l'offre.
+     * @param quantite     Le nombre d'offres achetées.
+     * @param places       Le nombre de places de la discipline occupées par l'achat.
+     * @return L'issue de la réservation.
+     * @throws CannotAcquireLockException Si le lot n'a pas été pris en charge dans {@code app.offres-chaudes.attente-ms},
+     *                                    ou pas appliqué dans le même délai une fois pris en charge.
+     */
+    public Reservation reserver(Long idOffre, Long idDiscipline, int quantite, int places) {
+        Commande commande = new Commande(quantite, places, false);
+        soumettre(idOffre, idDiscipline, commande);
+        Reservation reservation = attendre(idOffre, idDiscipline, commande);
+        if (reservation == Reservation.ACCEPTEE && TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_ROLLED_BACK) {
+                        soumettre(idOffre, idDiscipline, new Commande(quantite, places, true));
+                    }
+                }
+            });
+        }
+        return reservation;
+    }
+
+    private Reservation attendre(Long idOffre, Long idDiscipline, Commande commande) {
+        try {
+            try {
+                return commande.resultat.get(attenteMs, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (commande.abandonner()) {
+                    throw new CannotAcquireLockException(RESERVATION_NON_TRAITEE);
+                }
+                // Déjà prise dans un lot en cours : son issue suit normalement de peu, l'attente reste bornée
+                return commande.resultat.get(attenteMs, TimeUnit.MILLISECONDS);
+            }
+        } catch (TimeoutException e) {
+            restituerSiAcceptee(idOffre, idDiscipline, commande);
+            throw new CannotAcquireLockException(RESERVATION_NON_TRAITEE);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (!commande.abandonner()) {
+                restituerSiAcceptee(idOffre, idDiscipline, commande);
+            }
+            throw new CannotAcquireLockException("Réservation interrompue.", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : new IllegalStateException(e.getCause());
+        }
+    }
+
+    /** L'acheteur a renoncé à une commande déjà prise dans un lot : si le lot l'accepte, elle est restituée. */
+    private void restituerSiAcceptee(Long idOffre, Long idDiscipline, Commande commande) {
+        commande.resultat.thenAccept(issue -> {
+            if (issue == Reservation.ACCEPTEE) {
+                soumettre(idOffre, idDiscipline, new Commande(commande.quantite, commande.places, true));
+            }
+        });
+    }
+
+    private void soumettre(Long idOffre, Long idDiscipline, Commande commande) {
+        FileOffre file = files.computeIfAbsent(idOffre, id -> new FileOffre(id, idDiscipline));
+        file.commandes.add(commande);
+        planifier(file);
+    }
+
+    private void planifier(FileOffre file) {
+        if (!file.commandes.isEmpty() && file.planifiee.compareAndSet(false, true)) {
+            ecrivains.execute(() -> traiter(file));
+        }
+    }
+
+    /** Applique un lot de la file puis rend la main : les files de plusieurs offres chaudes se partagent les écrivains. */
+    private void traiter(FileOffre file) {
+        try {
+            List<Commande> lot = file.prendreLot(tailleLot);
+            if (!lot.isEmpty()) {
+                appliquer(file, lot);
+            }
+        } finally {
+            file.planifiee.set(false);
+            planifier(file);
+        }
+    }
+
+    /** Issues des commandes d'un lot et état de l'offre après le lot. */
+    private record Bilan(List<Reservation> issues, boolean epuisee, boolean restitution) {
+    }
+
+    private void appliquer(FileOffre file, List<Commande> lot) {
+        Bilan bilan;
+        try {
+            bilan = transactionTemplate.execute(status -> appliquerDansTransaction(file, lot));
+        } catch (RuntimeException e) {
+            log.error("Échec du lot de {} commande(s) sur l'offre {} : {}", lot.size(), file.idOffre, e.getMessage(), e);
+            for (Commande commande : lot) {
+                if (commande.restitution) {
+                    reprendre(file, commande);
+                } else {
+                    commande.resultat.completeExceptionally(e);
+                }
+            }
+            return;
+        }
+        lotsAppliques.incrementAndGet();
+        if (bilan.epuisee() || bilan.restitution()) {
+            offresEpuiseesService.signaler(file.idOffre, bilan.epuisee());
+        }
+        for (int i = 0; i < lot.size(); i++) {
+            lot.get(i).resultat.complete(bilan.issues().get(i));
+        }
+    }
+
+    /** Personne n'attend une restitution : elle est resoumise jusqu'à son application, après un délai croissant. */
+    private void reprendre(FileOffre file, Commande restitution) {
+        int tentative = restitution.tentative + 1;
+        long delaiMs = Math.min(REPRISE_MAX_MS, REPRISE_MIN_MS << Math.min(tentative - 1, 16));
+        restitutionsReprises.incrementAndGet();
+        log.warn("Restitution de {} offre(s) et {} place(s) sur l'offre {} reprise dans {} ms (tentative {}).",
+                restitution.quantite, restitution.places, file.idOffre, delaiMs, tentative);
+        reprises.schedule(() -> soumettre(file.idOffre, file.idDiscipline,
+                new Commande(restitution.quantite, restitution.places, true, tentative)), delaiMs, TimeUnit.MILLISECONDS);
+    }
+
+    private Bilan appliquerDansTransaction(FileOffre file, List<Commande> lot) {
+        List<Integer> places = jdbcTemplate.queryForList(SQL_VERROU_DISCIPLINE, Integer.class, file.idDiscipline);
+        List<Integer> stock = jdbcTemplate.queryForList(SQL_VERROU_OFFRE, Integer.class, file.idOffre);
+        int stockDisponible = stock.isEmpty() ? 0 : stock.get(0);
+        int placesDisponibles = places.isEmpty() ? 0 : places.get(0);
+        int deltaStock = 0;
+        int deltaPlaces = 0;
+        boolean restitution = false;
+        for (Commande commande : lot) {
+            if (commande.restitution) {
+                deltaStock += commande.quantite;
+                deltaPlaces += commande.places;
+                restitution = true;
+            }
+        }
+        stockDisponible += deltaStock;
+        placesDisponibles += deltaPlaces;
+
+        List<Reservation> issues = new ArrayList<>(lot.size());
+        for (Commande commande : lot) {
+            Reservation issue = Reservation.ACCEPTEE;
+            if (!commande.restitution) {
+                if (commande.quantite > stockDisponible) {
+                    issue = Reservation.STOCK_INSUFFISANT;
+                } else if (commande.places > placesDisponibles) {
+                    issue = Reservation.PLACES_INSUFFISANTES;
+                } else {
+                    stockDisponible -= commande.quantite;
+                    placesDisponibles -= commande.places;
+                    deltaStock -= commande.quantite;
+                    deltaPlaces -= commande.places;
+                }
+            }
+            issues.add(issue);
+        }
+
+        if (!stock.isEmpty() && deltaStock != 0) {
+            jdbcTemplate.update(SQL_MAJ_OFFRE, deltaStock, deltaStock, file.idOffre);
+        }
+        if (!places.isEmpty() && deltaPlaces != 0) {
+            jdbcTemplate.update(SQL_MAJ_DISCIPLINE, deltaPlaces, file.idDiscipline);
+        }
+        log.debug("Lot de {} commande(s) appliqué sur l'offre {} : stock {}, places {}.",
+                lot.size(), file.idOffre, deltaStock, deltaPlaces);
+        return new Bilan(issues, stockDisponible <= 0 || placesDisponibles <= 0, restitution);
+    }
+
+    /** Oublie les offres sans tentative récente ni commande en attente. */
+    @Scheduled(fixedDelayString = "${app.offres-chaudes.purge-ms:60000}")
+    public void purger() {
+        long tranche = horlogeMs.getAsLong() / trancheMs;
+        fenetres.values().removeIf(fenetre -> fenetre.estVide(tranche));
+        files.values().removeIf(file -> file.commandes.isEmpty() && !file.planifiee.get()
+                && !fenetres.containsKey(file.idOffre));
+    }
+
+    long lotsAppliques() {
+        return lotsAppliques.get();
+    }
+
+    long restitutionsReprises() {
+        return restitutionsReprises.get();
+    }
+
+    @Override
+    public void destroy() {
+        List<Runnable> restitutionsEnAttente = reprises.shutdownNow();
+        if (!restitutionsEnAttente.isEmpty()) {
+            log.error("Arrêt avec {} restitution(s) d'offres chaudes non appliquée(s).", restitutionsEnAttente.size());
+        }
+        ecrivains.shutdown();
+        if (dataSource instanceof HikariDataSource pool) {
+            pool.close();
+        }
+    }
+
+    /** Compte des tentatives d'une offre par tranche de temps, sur les {@code tranches} dernières tranches. */
+    private static final class Fenetre {
+
+        private final long[] comptes;
+        private final long[] numeros;
+        private boolean chaude;
+
+        Fenetre(int tranches) {
+            this.comptes = new long[tranches];
+            this.numeros = new long[tranches];
+        }
+
+        synchronized boolean enregistrer(long tranche, int seuil) {
+            int indice = (int) (tranche % comptes.length);
+            if (numeros[indice] != tranche) {
+                numeros[indice] = tranche;
+                comptes[indice] = 0;
+            }
+            comptes[indice]++;
+            long total = total(tranche);
+            // Hystérésis : une offre chaude le reste tant que le compte ne retombe pas sous la moitié du seuil
+            chaude = chaude ? total >= seuil / 2 : total >= seuil;
+            return chaude;
+        }
+
+        synchronized boolean estVide(long tranche) {
+            return total(tranche) == 0;
+        }
+
+        private long total(long tranche) {
+            long total = 0;
+            for (int i = 0; i < comptes.length; i++) {
+                if (numeros[i] > tranche - comptes.length) {
+                    total += comptes[i];
+                }
+            }
+            return total;
+        }
+    }
+
+    /** File des commandes d'une offre ; {@code planifiee} garantit qu'une seule tâche la traite à la fois. */
+    private static final class FileOffre {
+
+        private final Long idOffre;
+        private final Long idDiscipline;
+        private final Queue<Commande> commandes = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean planifiee = new AtomicBoolean();
+
+        FileOffre(Long idOffre, Long idDiscipline) {
+            this.idOffre = idOffre;
+            this.idDiscipline = idDiscipline;
+        }
+
+        List<Commande> prendreLot(int taille) {
+            List<Commande> lot = new ArrayList<>();
+            Commande commande;
+            while (lot.size() < taille && (commande = commandes.poll()) != null) {
+                if (commande.prendre()) {
+                    lot.add(commande);
+                }
+            }
+            return lot;
+        }
+    }
+
+    /** Réservation (ou restitution) de stock et de places, complétée par l'écrivain. */
+    private static final class Commande {
+
+        private static final int EN_ATTENTE = 0;
+        private static final int PRISE = 1;
+        private static final int ABANDONNEE = 2;
+
+        private final int quantite;
+        private final int places;
+        private final boolean restitution;
+        private final int tentative;
+        private final CompletableFuture<Reservation> resultat = new CompletableFuture<>();
+        private final AtomicInteger etat = new AtomicInteger(EN_ATTENTE);
+
+        Commande(int quantite, int places, boolean restitution) {
+            this(quantite, places, restitution, 0);
+        }
+
+        Commande(int quantite, int places, boolean restitution, int tentative) {
+            this.quantite = quantite;
+            this.places = places;
+            this.restitution = restitution;
+            this.tentative = tentative;
+        }
+
+        boolean prendre() {
+            return etat.compareAndSet(EN_ATTENTE, PRISE);
+        }
+
+        boolean abandonner() {
+            return etat.compareAndSet(EN_ATTENTE, ABANDONNEE);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package fr.studi.bloc3jo2024.service;
+
+import fr.studi.bloc3jo2024.changements.Changement;
+import fr.studi.bloc3jo2024.changements.TypeChangement;
+import fr.studi.bloc3jo2024.repository.OffreRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Registre en mémoire des offres épuisées (stock à zéro ou discipline sans place), consulté avant toute transaction :
+ * pendant une rupture, l'ajout au panier, le détail de l'offre et le paiement d'un panier qui la contient sont refusés
+ * sans accès à la base.
+ * <p>
+ * Le registre est reconstruit toutes les {@code app.offres-epuisees.rafraichissement-ms} par une seule requête, ce
+ * qui propage aux autres instances les ruptures et les réassorts qu'elles n'ont pas vus. Entre deux rafraîchissements,
+ * l'instance applique aussitôt ce qu'elle observe elle-même (finalisations, lots des offres chaudes, mises à jour
+ * d'administration) ; ces signaux sont rejoués sur le résultat d'un rafraîchissement commencé avant eux. Si aucun
+ * rafraîchissement n'a réussi depuis {@code app.offres-epuisees.peremption-ms}, le registre ne refuse plus rien et la
+ * base reste seule juge. Un changement d'offre ou de discipline annoncé par le bus de changements déclenche un
+ * rafraîchissement sans attendre le suivant.
+ * </p>
+ * <p>
+ * Le journal des signaux à rejouer est borné à {@code app.offres-epuisees.journal-max} entrées : s'il déborde (base
+ * indisponible pendant une rupture), il est vidé et seul un rafraîchissement commencé après le débordement peut
+ * remplacer le registre, puisque les signaux perdus ne seraient plus rejoués sur un résultat plus ancien.
+ * </p>
+ */
+@Service
+public class OffresEpuiseesService {
+
+    private static final Logger log = LoggerFactory.getLogger(OffresEpuiseesService.class);
+
+    private static final String OFFRE_EPUISEE = "L'offre %d est épuisée.";
+
+    /** Rupture ou réassort observé par cette instance. */
+    private record Signal(Long idOffre, boolean epuisee, long instant) {
+    }
+
+    private final OffreRepository offreRepository;
+    private final boolean active;
+    private final long peremptionMs;
+    private final int journalMax;
+    private final LongSupplier horlogeMs;
+    private final Deque<Signal> journal = new ArrayDeque<>();
+    private volatile Set<Long> epuisees = ConcurrentHashMap.newKeySet();
+    private volatile long dernierRafraichissement;
+    /** Instant du dernier débordement du journal : un rafraîchissement commencé avant est ignoré. */
+    private long dernierDebordement = Long.MIN_VALUE;
+
+    @Autowired
+    public OffresEpuiseesService(OffreRepository offreRepository,
+                                 @Value("${app.offres-epuisees.active:true}") boolean active,
+                                 @Value("${app.offres-epuisees.peremption-ms:10000}") long peremptionMs,
+                                 @Value("${app.offres-epuisees.journal-max:10000}") int journalMax) {
+        this(offreRepository, active, peremptionMs, journalMax, System::currentTimeMillis);
+    }
+
+    OffresEpuiseesService(OffreRepository offreRepository, boolean active, long peremptionMs, int journalMax,
+                          LongSupplier horlogeMs) {
+        this.offreRepository = offreRepository;
+        this.active = active;
+        this.peremptionMs = peremptionMs;
+        this.journalMax = journalMax;
+        this.horlogeMs = horlogeMs;
+        this.dernierRafraichissement = horlogeMs.getAsLong();
+    }
+
+    /**
+     * @param idOffre L'identifiant de l'offre.
+     * @return {@code true} si l'offre est connue comme épuisée.
+     */
+    public boolean estEpuisee(Long idOffre) {
+        return active && idOffre != null
+                && horlogeMs.getAsLong() - dernierRafraichissement <= peremptionMs
+                && epuisees.contains(idOffre);
+    }
+
+    /**
+     * Refuse une offre connue comme épuisée.
+     *
+     * @param idOffre L'identifiant de l'offre.
+     * @throws IllegalStateException Si l'offre est épuisée.
+     */
+    public void verifierDisponible(Long idOffre) {
+        if (estEpuisee(idOffre)) {
+            throw new IllegalStateException(String.format(OFFRE_EPUISEE, idOffre));
+        }
+    }
+
+    /**
+     * Enregistre une rupture ou un réassort observé sur un état validé en base.
+     *
+     * @param idOffre  L'identifiant de l'offre.
+     * @param epuisee  {@code true} si l'offre est épuisée, {@code false} si elle est de nouveau disponible.
+     */
+    public synchronized void signaler(Long idOffre, boolean epuisee) {
+        if (!active || idOffre == null) {
+            return;
+        }
+        long maintenant = horlogeMs.getAsLong();
+        if (journal.size() >= journalMax) {
+            journal.clear();
+            dernierDebordement = maintenant;
+            log.warn("Journal des offres épuisées plein ({} signaux) : rechargement complet au prochain rafraîchissement.", journalMax);
+        }
+        journal.addLast(new Signal(idOffre, epuisee, maintenant));
+        appliquer(epuisees, idOffre, epuisee);
+    }
+
+    /** Comme {@link #signaler}, après le commit de la transaction courante ; rien en cas de rollback. */
+    public void signalerApresCommit(Long idOffre, boolean epuisee) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    signaler(idOffre, epuisee);
+                }
+            });
+        } else {
+            signaler(idOffre, epuisee);
+        }
+    }
+
+    /** Relit les offres épuisées en base, y compris celles dont la discipline n'a plus de place. */
+    @Scheduled(fixedDelayString = "${app.offres-epuisees.rafraichissement-ms:2000}")
+    public void rafraichir() {
+        if (!active) {
+            return;
+        }
+        long debut = horlogeMs.getAsLong();
+        List<Long> ids;
+        try {
+            ids = offreRepository.findIdsEpuisees();
+        } catch (DataAccessException e) {
+            log.warn("Rafraîchissement des offres épuisées impossible : {}", e.getMessage());
+            return;
+        }
+        synchronized (this) {
+            if (debut < dernierRafraichissement) {
+                return; // Un rafraîchissement concurrent, plus récent, a déjà été appliqué
+            }
+            if (debut <= dernierDebordement) {
+                return; // Des signaux postérieurs à la requête ont été perdus : le prochain rafraîchissement recharge tout
+            }
+            Set<Long> nouvelles = ConcurrentHashMap.newKeySet();
+            nouvelles.addAll(ids);
+            // Les signaux antérieurs à la requête sont déjà dans son résultat
+            while (!journal.isEmpty() && journal.peekFirst().instant() < debut) {
+                journal.pollFirst();
+            }
+            for (Signal signal : journal) {
+                appliquer(nouvelles, signal.idOffre(), signal.epuisee());
+            }
+            if (nouvelles.size() != epuisees.size()) {
+                log.debug("{} offre(s) épuisée(s).", nouvelles.size());
+            }
+            epuisees = nouvelles;
+            dernierRafraichissement = debut;
+        }
+    }
+
+    /** Rafraîchit le registre dès qu'une offre ou une discipline a changé sur une autre instance. */
+    @EventListener
+    public void surChangement(Changement changement) {
+        if (changement.concerne(TypeChangement.OFFRE) || changement.concerne(TypeChangement.DISCIPLINE)) {
+            rafraichir();
+        }
+    }
+
+    int taille() {
+        return epuisees.size();
+    }
+
+    synchronized int tailleJournal() {
+        return journal.size();
+    }
+
+    private static void appliquer(Set<Long> epuisees, Long idOffre, boolean epuisee) {
+        if (epuisee) {
+            epuisees.add(idOffre);
+        } else {
+            epuisees.remove(idOffre);
+        }
+    }
+}
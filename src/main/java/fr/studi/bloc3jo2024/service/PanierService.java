@@ -11,5 +11,7 @@ public interface PanierService {
     PanierDto supprimerOffreDuPanier(String utilisateurId, Long offreId);
     PanierDto viderPanier(String utilisateurId);
     void supprimerOffreDeTousLesPaniers(fr.studi.bloc3jo2024.entity.Offre offre);
+    void reporterChangementPrix(fr.studi.bloc3jo2024.entity.Offre offre, java.math.BigDecimal ancienPrix); // Ajuste le montant des paniers en cours
     PanierDto finaliserAchat(String utilisateurId); // Modifiez la signature pour prendre l'ID utilisateur
+    long purgerPaniersAbandonnes(); // Supprime les paniers en cours inactifs et sans paiement
 }
\ No newline at end of file
@@ -0,0 +1,143 @@
+package fr.studi.bloc3jo2024.service;
+
+import fr.studi.bloc3jo2024.concurrence.ClasseCharge;
+import fr.studi.bloc3jo2024.concurrence.Cloison;
+import fr.studi.bloc3jo2024.purge.VerrouTaches;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Date;
+import java.time.Duration;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * Maintenance des partitions mensuelles de la table {@code transactions} (voir la migration V6).
+ * <p>
+ * Les partitions du mois courant et des {@code mois-avance} mois suivants sont créées à l'avance pour que les
+ * insertions ne tombent pas dans la partition par défaut ; les partitions plus anciennes que {@code retention-mois}
+ * sont détachées et leurs lignes déplacées dans {@code transactions_archive}. Le travail lui-même est fait par les
+ * fonctions SQL {@code creer_partition_transactions} et {@code archiver_partition_transactions}, idempotentes.
+ * </p>
+ * <p>
+ * Toutes les instances déclenchent la maintenance (au démarrage et par le cron) ; une seule l'exécute, sous le verrou
+ * de tâche {@value #VERROU} ({@link VerrouTaches}), pour que leurs DDL ne se concurrencent pas.
+ * </p>
+ */
+@Service
+public class PartitionsTransactionsService {
+
+    private static final Logger log = LoggerFactory.getLogger(PartitionsTransactionsService.class);
+
+    static final String PREFIXE_PARTITION = "transactions_p";
+    static final String VERROU = "partitions-transactions";
+    /** Au-delà, le verrou d'une instance arrêtée en pleine maintenance expire de lui-même. */
+    private static final Duration DUREE_MAX_VERROU = Duration.ofMinutes(30);
+    private static final DateTimeFormatter FORMAT_SUFFIXE = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private static final String SQL_CREER = "SELECT creer_partition_transactions(?)";
+    private static final String SQL_ARCHIVER = "SELECT archiver_partition_transactions(?)";
+    private static final String SQL_LISTER = "SELECT c.relname FROM pg_inherits i " +
+            "JOIN pg_class c ON c.oid = i.inhrelid " +
+            "WHERE i.inhparent = 'transactions'::regclass AND c.relname LIKE '" + PREFIXE_PARTITION + "%' " +
+            "ORDER BY c.relname";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final VerrouTaches verrouTaches;
+    private final int moisAvance;
+    private final int retentionMois;
+
+    public PartitionsTransactionsService(JdbcTemplate jdbcTemplate, VerrouTaches verrouTaches,
+                                         @Value("${app.partitions.transactions.mois-avance:3}") int moisAvance,
+                                         @Value("${app.partitions.transactions.retention-mois:24}") int retentionMois) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.verrouTaches = verrouTaches;
+        this.moisAvance = moisAvance;
+        this.retentionMois = retentionMois;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Cloison(ClasseCharge.PLANIFICATION)
+    @Scheduled(cron = "${app.partitions.transactions.cron:0 30 2 * * *}")
+    public void maintenir() {
+        try {
+            if (!verrouTaches.acquerir(VERROU, DUREE_MAX_VERROU)) {
+                log.info("Maintenance des partitions de transactions ignorée : elle est en cours sur une autre instance.");
+                return;
+            }
+            try {
+                maintenir(YearMonth.now());
+            } finally {
+                verrouTaches.liberer(VERROU);
+            }
+        } catch (DataAccessException e) {
+            log.warn("Maintenance des partitions de transactions impossible : {}", e.getMessage());
+        }
+    }
+
+    void maintenir(YearMonth moisCourant) {
+        int creees = creerPartitionsFutures(moisCourant);
+        long archivees = archiverPartitionsAnciennes(moisCourant);
+        log.info("Partitions de transactions : {} créée(s), {} ligne(s) archivée(s).", creees, archivees);
+    }
+
+    /**
+     * Crée les partitions manquantes du mois courant aux {@code mois-avance} mois suivants.
+     *
+     * @return Le nombre de partitions réellement créées.
+     */
+    int creerPartitionsFutures(YearMonth moisCourant) {
+        int creees = 0;
+        for (int i = 0; i <= moisAvance; i++) {
+            YearMonth mois = moisCourant.plusMonths(i);
+            if (Boolean.TRUE.equals(jdbcTemplate.queryForObject(SQL_CREER, Boolean.class, premierJour(mois)))) {
+                log.info("Partition {} créée.", nomPartition(mois));
+                creees++;
+            }
+        }
+        return creees;
+    }
+
+    /**
+     * Archive les partitions dont le mois précède la fenêtre de rétention.
+     *
+     * @return Le nombre total de lignes déplacées dans {@code transactions_archive}.
+     */
+    long archiverPartitionsAnciennes(YearMonth moisCourant) {
+        YearMonth limite = moisCourant.minusMonths(retentionMois);
+        long lignes = 0;
+        for (YearMonth mois : listerPartitions()) {
+            if (mois.isBefore(limite)) {
+                Long archivees = jdbcTemplate.queryForObject(SQL_ARCHIVER, Long.class, premierJour(mois));
+                log.info("Partition {} archivée ({} lignes).", nomPartition(mois), archivees);
+                lignes += archivees != null ? archivees : 0;
+            }
+        }
+        return lignes;
+    }
+
+    /** Mois couverts par les partitions mensuelles attachées (la partition par défaut est exclue). */
+    public List<YearMonth> listerPartitions() {
+        return jdbcTemplate.queryForList(SQL_LISTER, String.class).stream()
+                .map(nom -> nom.substring(PREFIXE_PARTITION.length()))
+                .filter(suffixe -> suffixe.matches("\\d{6}"))
+                .map(suffixe -> YearMonth.parse(suffixe, FORMAT_SUFFIXE))
+                .toList();
+    }
+
+    public static String nomPartition(YearMonth mois) {
+        return PREFIXE_PARTITION + mois.format(FORMAT_SUFFIXE);
+    }
+
+    private static Date premierJour(YearMonth mois) {
+        return Date.valueOf(mois.atDay(1));
+    }
+}
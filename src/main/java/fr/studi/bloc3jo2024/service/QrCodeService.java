@@ -6,18 +6,46 @@ import com.google.zxing.client.j2se.MatrixToImageWriter;
 import com.google.zxing.common.BitMatrix;
 import com.google.zxing.qrcode.QRCodeWriter;
 import fr.studi.bloc3jo2024.exception.QrCodeGenerationException;
+import io.micrometer.core.annotation.Timed;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadPoolExecutor;
 
 @Service
 public class QrCodeService {
 
     private static final Logger logger = LoggerFactory.getLogger(QrCodeService.class);
 
+    // Pool borné dédié au rendu des QR codes d'une commande : au-delà de la file, le thread appelant fait le rendu lui-même.
+    private final ThreadPoolTaskExecutor renduExecutor;
+
+    public QrCodeService(@Value("${app.billets.qrcode.threads:0}") int nbThreads,
+                         @Value("${app.billets.qrcode.capacite-file:256}") int capaciteFile) {
+        int threads = nbThreads > 0 ? nbThreads : Runtime.getRuntime().availableProcessors();
+        this.renduExecutor = new ThreadPoolTaskExecutor();
+        this.renduExecutor.setCorePoolSize(threads);
+        this.renduExecutor.setMaxPoolSize(threads);
+        this.renduExecutor.setQueueCapacity(capaciteFile);
+        this.renduExecutor.setThreadNamePrefix("qrcode-");
+        this.renduExecutor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        this.renduExecutor.initialize();
+    }
+
+    @PreDestroy
+    void arreter() {
+        renduExecutor.shutdown();
+    }
+
     /**
      * Génère un QR Code à partir du texte fourni.
      *
@@ -27,13 +55,14 @@ public class QrCodeService {
      * @return Le QR Code sous forme de tableau de bytes (format PNG).
      * @throws QrCodeGenerationException si une erreur survient lors de la génération ou de la conversion.
      */
+    @Timed(value = "jo2024.billet.qrcode.rendu", description = "Rendu PNG d'un QR code")
     public byte[] generateQRCode(String text, int width, int height) {
         try {
             QRCodeWriter qrCodeWriter = new QRCodeWriter();
             BitMatrix bitMatrix = qrCodeWriter.encode(text, BarcodeFormat.QR_CODE, width, height);
             ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
             MatrixToImageWriter.writeToStream(bitMatrix, "PNG", outputStream);
-            logger.info("QR Code généré avec succès pour le texte : {}", text);
+            logger.debug("QR Code généré avec succès pour le texte : {}", text);
             return outputStream.toByteArray();
         } catch (WriterException e) {
             logger.error("Erreur de génération (WriterException) du QR Code pour le texte : {}", text, e);
@@ -50,7 +79,34 @@ public class QrCodeService {
      * @param text Le texte à encoder dans le QR Code.
      * @return Le QR Code sous forme de tableau de bytes (format PNG).
      */
+    @Timed(value = "jo2024.billet.qrcode.rendu", description = "Rendu PNG d'un QR code")
     public byte[] generateQRCode(String text) {
         return generateQRCode(text, 200, 200); // Dimensions par défaut
     }
+
+    /**
+     * Génère en parallèle les QR codes (200x200 pixels) d'une liste de textes, sur le pool borné du service.
+     *
+     * @param texts Les textes à encoder.
+     * @return Les QR codes au format PNG, dans le même ordre que les textes.
+     * @throws QrCodeGenerationException si l'un des rendus échoue.
+     */
+    @Timed(value = "jo2024.billet.qrcode.lot", description = "Rendu PNG parallèle des QR codes d'une commande")
+    public List<byte[]> generateQRCodes(List<String> texts) {
+        if (texts.size() <= 1) {
+            return texts.stream().map(this::generateQRCode).toList();
+        }
+        List<CompletableFuture<byte[]>> rendus = texts.stream()
+                .map(text -> CompletableFuture.supplyAsync(() -> generateQRCode(text), renduExecutor))
+                .toList();
+        try {
+            return rendus.stream().map(CompletableFuture::join).toList();
+        } catch (CompletionException e) {
+            rendus.forEach(rendu -> rendu.cancel(false));
+            if (e.getCause() instanceof QrCodeGenerationException qrCodeGenerationException) {
+                throw qrCodeGenerationException;
+            }
+            throw new QrCodeGenerationException("Erreur lors du rendu parallèle des QR codes", e.getCause());
+        }
+    }
 }
@@ -1,5 +1,7 @@
 package fr.studi.bloc3jo2024.service;
 
+import fr.studi.bloc3jo2024.changements.BusChangements;
+import fr.studi.bloc3jo2024.changements.TypeChangement;
 import fr.studi.bloc3jo2024.dto.authentification.RegisterRequestDto;
 import fr.studi.bloc3jo2024.entity.*;
 import fr.studi.bloc3jo2024.entity.enums.TypeAuthTokenTemp;
@@ -27,6 +29,8 @@ public class UtilisateurService {
     private final PasswordEncoder passwordEncoder;
     private final JavaMailSender mailSender;
     private final AuthTokenTemporaireService tokenService;
+    private final CompteursVentesService compteursVentesService;
+    private final BusChangements busChangements;
 
     @Value("${app.frontend.confirmation-base-url}")
     private String confirmationBaseUrl;
@@ -87,6 +91,7 @@ public class UtilisateurService {
 
         // Sauvegarde en base
         utilisateurRepository.save(user);
+        compteursVentesService.enregistrerInscription();
 
         // Génération et envoi du token de confirmation
         String rawToken = tokenService.createToken(
@@ -115,6 +120,7 @@ public class UtilisateurService {
         user.setVerified(true);
         user.setCleUtilisateur(UUID.randomUUID().toString());
         utilisateurRepository.save(user);
+        busChangements.publier(TypeChangement.UTILISATEUR, user.getIdUtilisateur());
 
         tokenService.markAsUsed(token);
     }
@@ -146,6 +152,7 @@ public class UtilisateurService {
 
         user.getAuthentification().setMotPasseHache(passwordEncoder.encode(newPassword));
         utilisateurRepository.save(user);
+        busChangements.publier(TypeChangement.UTILISATEUR, user.getIdUtilisateur());
 
         tokenService.markAsUsed(token);
     }
@@ -4,6 +4,7 @@ import fr.studi.bloc3jo2024.entity.*;
 import fr.studi.bloc3jo2024.entity.enums.StatutTransaction;
 import fr.studi.bloc3jo2024.service.BilletCreationService;
 import fr.studi.bloc3jo2024.service.BilletService;
+import io.micrometer.core.annotation.Timed;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -11,6 +12,9 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 @Service
@@ -23,25 +27,26 @@ public class BilletCreationServiceImpl implements BilletCreationService {
 
     @Override
     @Transactional
-    public Billet genererBilletApresTransactionReussie(Paiement paiement) {
-        logger.info("Déclenchement de la génération du billet pour paiement ID : {}", paiement.getIdPaiement());
+    @Timed(value = "jo2024.billet.generation", description = "Génération des billets après paiement réussi")
+    public List<Billet> genererBilletsApresTransactionReussie(Paiement paiement) {
+        logger.info("Déclenchement de la génération des billets pour paiement ID : {}", paiement.getIdPaiement());
 
         Utilisateur utilisateur = paiement.getUtilisateur();
         if (utilisateur == null) {
             logger.error("Cannot generate billet for paiement ID {} - User is null.", paiement.getIdPaiement());
-            return null;
+            return List.of();
         }
 
         Panier panier = paiement.getPanier();
         if (panier == null) {
             logger.error("Cannot generate billet for paiement ID {} - Panier is null.", paiement.getIdPaiement());
-            return null;
+            return List.of();
         }
 
         Transaction transaction = paiement.getTransaction();
         if (transaction == null || transaction.getStatutTransaction() != StatutTransaction.REUSSI) {
             logger.error("Cannot generate billet for paiement ID {} - Associated transaction is null or not successful.", paiement.getIdPaiement());
-            return null;
+            return List.of();
         }
 
         LocalDateTime dateValidation = transaction.getDateValidation();
@@ -50,28 +55,27 @@ public class BilletCreationServiceImpl implements BilletCreationService {
             dateValidation = LocalDateTime.now(); // Fallback
         }
 
-        // Utilisez BilletService pour la génération de clés et les opérations de billetterie
-        String cleAchat = billetService.genererCleAchat();
-        String cleUtilisateur = utilisateur.getCleUtilisateur();
-        String cleFinaleBillet = billetService.genererCleFinaleBillet(cleUtilisateur, cleAchat);
-
-        // Obtenir des offres depuis le contenuPaniers du panier
-        List<Offre> offres = panier.getContenuPaniers() != null ?
-                panier.getContenuPaniers().stream()
-                        .map(ContenuPanier::getOffre)
-                        .toList() : List.of();
+        // Une entrée par place : quantité commandée × capacité de l'offre (ex. 2 offres DUO = 4 billets)
+        List<Offre> offresParPlace = new ArrayList<>();
+        if (panier.getContenuPaniers() != null) {
+            panier.getContenuPaniers().stream()
+                    .filter(contenu -> contenu.getOffre() != null)
+                    .sorted(Comparator.comparing(contenu -> contenu.getOffre().getIdOffre(), Comparator.nullsLast(Comparator.naturalOrder())))
+                    .forEach(contenu -> {
+                        int places = contenu.getQuantiteCommandee() * Math.max(1, contenu.getOffre().getCapacite());
+                        offresParPlace.addAll(Collections.nCopies(places, contenu.getOffre()));
+                    });
+        }
 
-        if (offres.isEmpty()) {
+        if (offresParPlace.isEmpty()) {
             logger.warn("No offers found in panier ID {} for billet generation.", panier.getIdPanier());
-            return null;
+            return List.of();
         }
 
-        // Créer et enregistrer le billet
-        Billet billet = billetService.creerEtEnregistrerBillet(utilisateur, offres, cleFinaleBillet, dateValidation);
-
-        Billet finalBillet = billetService.finaliserBilletAvecQrCode(billet); // Ajouter un QR, enregistrer à nouveau, envoyer un e-mail
+        // Clés générées en une fois, QR codes rendus en parallèle, INSERT groupés et un seul e-mail
+        List<Billet> billets = billetService.emettreBillets(utilisateur, offresParPlace, dateValidation);
 
-        logger.info("Billet ID : {} créé pour paiement ID : {}", finalBillet != null ? finalBillet.getIdBillet() : "N/A", paiement.getIdPaiement());
-        return finalBillet;
+        logger.info("{} billet(s) créé(s) pour paiement ID : {}", billets.size(), paiement.getIdPaiement());
+        return billets;
     }
 }
\ No newline at end of file
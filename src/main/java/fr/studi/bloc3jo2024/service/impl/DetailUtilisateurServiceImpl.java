@@ -23,8 +23,12 @@ public record DetailUtilisateurServiceImpl(Utilisateur utilisateur) implements U
     @Override
     public Collection<? extends GrantedAuthority> getAuthorities() {
         String role = utilisateur.getRole().getTypeRole().name();
-        return "ADMIN".equalsIgnoreCase(role)
-                ? List.of(new SimpleGrantedAuthority("ROLE_ADMIN"))
+        if ("ADMIN".equalsIgnoreCase(role)) {
+            return List.of(new SimpleGrantedAuthority("ROLE_ADMIN"));
+        }
+        // Le personnel de scan doit porter ROLE_SCANNER pour accéder à /api/billets/verifier/** et /api/billets/sync/**.
+        return "SCANNER".equalsIgnoreCase(role)
+                ? List.of(new SimpleGrantedAuthority("ROLE_SCANNER"))
                 : List.of(new SimpleGrantedAuthority("ROLE_USER"));
     }
 
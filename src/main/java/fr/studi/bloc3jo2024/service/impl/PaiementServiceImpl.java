@@ -1,5 +1,7 @@
 package fr.studi.bloc3jo2024.service.impl;
 
+import fr.studi.bloc3jo2024.concurrence.ClasseCharge;
+import fr.studi.bloc3jo2024.concurrence.Cloison;
 import fr.studi.bloc3jo2024.dto.paiement.PaiementDto;
 import fr.studi.bloc3jo2024.dto.paiement.PaiementSimulationResultDto;
 import fr.studi.bloc3jo2024.dto.paiement.TransactionDto;
@@ -8,21 +10,28 @@ import fr.studi.bloc3jo2024.entity.enums.MethodePaiementEnum;
 import fr.studi.bloc3jo2024.entity.enums.StatutPaiement;
 import fr.studi.bloc3jo2024.entity.enums.StatutTransaction;
 import fr.studi.bloc3jo2024.exception.ResourceNotFoundException;
+import fr.studi.bloc3jo2024.logging.MdcCles;
 import fr.studi.bloc3jo2024.repository.PaiementRepository;
 import fr.studi.bloc3jo2024.repository.PanierRepository;
 import fr.studi.bloc3jo2024.repository.TransactionRepository;
 import fr.studi.bloc3jo2024.repository.UtilisateurRepository;
 import fr.studi.bloc3jo2024.repository.MethodePaiementRepository;
+import fr.studi.bloc3jo2024.repository.VenteAgregeeRepository;
 import fr.studi.bloc3jo2024.service.BilletCreationService;
+import fr.studi.bloc3jo2024.service.CompteursVentesService;
 import fr.studi.bloc3jo2024.service.PaiementService;
+import io.micrometer.core.annotation.Timed;
 import lombok.RequiredArgsConstructor;
 import org.modelmapper.ModelMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -39,17 +48,25 @@ public class PaiementServiceImpl implements PaiementService {
     private final ModelMapper modelMapper;
     private final BilletCreationService billetCreationService;
     private final MethodePaiementRepository methodePaiementRepository;
+    private final VenteAgregeeRepository venteAgregeeRepository;
+    private final CompteursVentesService compteursVentesService;
 
     private static final String UTILISATEUR_NOT_FOUND = "Utilisateur non trouvé avec l'ID : ";
     private static final String PAIEMENT_DEJA_EXISTANT = "Un paiement existe déjà pour ce panier et cet utilisateur.";
     private static final String PAIEMENT_NOT_FOUND = "Paiement non trouvé avec l'ID : ";
+    private static final String PAIEMENT_DEJA_REUSSI = "Le paiement %d a déjà réussi : son résultat ne peut plus être modifié.";
     private static final String METHODE_PAIEMENT_NOT_FOUND = "Méthode de paiement non trouvée : ";
+    /** Écart toléré entre date de paiement et date de transaction (lignes antérieures à leur alignement). */
+    private static final Duration FENETRE_DATE_TRANSACTION = Duration.ofMinutes(5);
 
 
     @Override
+    @Cloison(ClasseCharge.PAIEMENT)
     @Transactional
+    @Timed(value = "jo2024.paiement.initiation", description = "Création d'un paiement pour un panier")
     public PaiementDto effectuerPaiement(UUID utilisateurId, Long idPanier, MethodePaiementEnum methodePaiementEnum) {
-        logger.info("Tentative d'effectuer un paiement pour l'utilisateur ID : {}, panier ID : {}, méthode : {}", utilisateurId, idPanier, methodePaiementEnum);
+        MDC.put(MdcCles.PANIER_ID, String.valueOf(idPanier));
+        logger.debug("Tentative d'effectuer un paiement pour l'utilisateur ID : {}, panier ID : {}, méthode : {}", utilisateurId, idPanier, methodePaiementEnum);
 
         Utilisateur utilisateur = utilisateurRepository.findById(utilisateurId)
                 .orElseThrow(() -> new ResourceNotFoundException(UTILISATEUR_NOT_FOUND + utilisateurId));
@@ -76,7 +93,8 @@ public class PaiementServiceImpl implements PaiementService {
 
         Transaction transaction = new Transaction();
         transaction.setMontant(panier.getMontantTotal());
-        transaction.setDateTransaction(LocalDateTime.now());
+        // Même instant que le paiement : la transaction se retrouve ensuite dans sa seule partition mensuelle
+        transaction.setDateTransaction(paiement.getDatePaiement());
         transaction.setStatutTransaction(StatutTransaction.EN_ATTENTE);
         transaction.setPaiement(paiement);
         paiement.setTransaction(transaction);
@@ -88,14 +106,23 @@ public class PaiementServiceImpl implements PaiementService {
     }
 
     @Override
+    @Cloison(ClasseCharge.PAIEMENT)
     @Transactional
+    @Timed(value = "jo2024.paiement.simulation", description = "Traitement du résultat (simulé) d'un paiement")
     public PaiementSimulationResultDto simulerResultatPaiement(Long idPaiement, boolean paiementReussi, String detailsSimules) {
-        logger.info("Simulation du résultat du paiement ID : {}, résultat : {}", idPaiement, paiementReussi);
+        logger.debug("Simulation du résultat du paiement ID : {}, résultat : {}", idPaiement, paiementReussi);
         Paiement paiement = paiementRepository.findById(idPaiement)
                 .orElseThrow(() -> new ResourceNotFoundException(PAIEMENT_NOT_FOUND + idPaiement));
-        Transaction transaction = transactionRepository.findByPaiementIdPaiement(idPaiement)
+        Transaction transaction = transactionRepository.findByPaiementIdPaiementAndDateTransactionBetween(idPaiement,
+                        paiement.getDatePaiement().minus(FENETRE_DATE_TRANSACTION),
+                        paiement.getDatePaiement().plus(FENETRE_DATE_TRANSACTION))
                 .orElseThrow(() -> new ResourceNotFoundException("Transaction non trouvée pour le paiement ID : " + idPaiement));
 
+        boolean dejaReussie = transaction.getStatutTransaction() == StatutTransaction.REUSSI;
+        if (dejaReussie && !paiementReussi) {
+            // Billets émis et ventes cumulées : un paiement réussi ne repasse jamais en échec
+            throw new IllegalStateException(String.format(PAIEMENT_DEJA_REUSSI, idPaiement));
+        }
         paiement.setStatutPaiement(paiementReussi ? StatutPaiement.ACCEPTE : StatutPaiement.REFUSE);
 
         transaction.setStatutTransaction(paiementReussi ? StatutTransaction.REUSSI : StatutTransaction.ECHEC);
@@ -103,26 +130,34 @@ public class PaiementServiceImpl implements PaiementService {
         transaction.setDetails(detailsSimules);
         paiementRepository.save(paiement);
 
-        logger.info("Résultat du paiement ID : {} mis à jour, statut : {}", idPaiement, paiement.getStatutPaiement());
-
-        Billet billetCree = null;
+        List<Billet> billetsCrees = List.of();
 
         if (transaction.getStatutTransaction() == StatutTransaction.REUSSI) {
-            billetCree = billetCreationService.genererBilletApresTransactionReussie(paiement);
-            if (billetCree != null) {
-                logger.info("Billet créé avec ID : {} pour paiement ID : {}", billetCree.getIdBillet(), idPaiement);
-            } else {
-                logger.warn("Billet creation service returned null for paiement ID {}", paiement.getIdPaiement());
+            if (!dejaReussie) {
+                // Même transaction que la validation : l'agrégat ne peut pas diverger des paiements réussis
+                venteAgregeeRepository.cumulerVentesPanier(paiement.getPanier().getIdPanier(),
+                        transaction.getDateTransaction().toLocalDate());
+            }
+            billetsCrees = billetCreationService.genererBilletsApresTransactionReussie(paiement);
+            if (billetsCrees.isEmpty()) {
+                logger.warn("Billet creation service returned no billet for paiement ID {}", paiement.getIdPaiement());
+            }
+            if (!dejaReussie) {
+                compteursVentesService.enregistrerPaiementReussi(billetsCrees);
             }
         }
+        logger.info("Paiement ID : {} traité, statut : {}, billets émis : {}", idPaiement, paiement.getStatutPaiement(), billetsCrees.size());
         PaiementDto paiementDto = mapPaiementToDto(paiement);
 
         PaiementSimulationResultDto resultDto = new PaiementSimulationResultDto();
         resultDto.setPaiement(paiementDto);
 
-        if (billetCree != null) {
-            resultDto.setBilletId(billetCree.getIdBillet());
-            resultDto.setCleFinaleBillet(billetCree.getCleFinaleBillet());
+        if (!billetsCrees.isEmpty()) {
+            // Le premier billet reste exposé dans les champs historiques pour les clients existants
+            resultDto.setBilletId(billetsCrees.get(0).getIdBillet());
+            resultDto.setCleFinaleBillet(billetsCrees.get(0).getCleFinaleBillet());
+            resultDto.setBilletIds(billetsCrees.stream().map(Billet::getIdBillet).toList());
+            resultDto.setClesFinalesBillets(billetsCrees.stream().map(Billet::getCleFinaleBillet).toList());
         }
 
         return resultDto;
@@ -131,7 +166,7 @@ public class PaiementServiceImpl implements PaiementService {
     @Override
     @Transactional(readOnly = true)
     public Optional<PaiementDto> getPaiementParPanier(UUID utilisateurId, Long idPanier) {
-        logger.info("Récupération du paiement pour l'utilisateur ID : {}, panier ID : {}", utilisateurId, idPanier);
+        logger.debug("Récupération du paiement pour l'utilisateur ID : {}, panier ID : {}", utilisateurId, idPanier);
         return paiementRepository.findByPanier_idPanierAndUtilisateur_idUtilisateur(idPanier, utilisateurId)
                 .map(this::mapPaiementToDto);
     }
@@ -139,7 +174,7 @@ public class PaiementServiceImpl implements PaiementService {
     @Override
     @Transactional(readOnly = true)
     public Optional<PaiementDto> getPaiementParId(Long idPaiement) {
-        logger.info("Récupération du paiement avec l'ID : {}", idPaiement);
+        logger.debug("Récupération du paiement avec l'ID : {}", idPaiement);
         return paiementRepository.findById(idPaiement)
                 .map(this::mapPaiementToDto);
     }
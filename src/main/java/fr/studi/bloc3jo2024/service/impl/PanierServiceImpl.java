@@ -1,5 +1,10 @@
 package fr.studi.bloc3jo2024.service.impl;
 
+import fr.studi.bloc3jo2024.changements.BusChangements;
+import fr.studi.bloc3jo2024.changements.TypeChangement;
+import fr.studi.bloc3jo2024.concurrence.ClasseCharge;
+import fr.studi.bloc3jo2024.concurrence.Cloison;
+import fr.studi.bloc3jo2024.concurrence.ReessaiSurConflit;
 import fr.studi.bloc3jo2024.dto.panier.AjouterOffrePanierDto;
 import fr.studi.bloc3jo2024.dto.panier.ContenuPanierDto;
 import fr.studi.bloc3jo2024.dto.panier.ModifierContenuPanierDto;
@@ -8,14 +13,28 @@ import fr.studi.bloc3jo2024.entity.*;
 import fr.studi.bloc3jo2024.entity.enums.StatutOffre;
 import fr.studi.bloc3jo2024.entity.enums.StatutPanier;
 import fr.studi.bloc3jo2024.exception.ResourceNotFoundException;
+import fr.studi.bloc3jo2024.logging.MdcCles;
+import fr.studi.bloc3jo2024.metrics.VenteMetrics;
+import fr.studi.bloc3jo2024.purge.PurgeParLots;
 import fr.studi.bloc3jo2024.repository.*;
+import fr.studi.bloc3jo2024.service.CachePaniersService;
+import fr.studi.bloc3jo2024.service.ContentionService;
+import fr.studi.bloc3jo2024.service.OffresChaudesService;
+import fr.studi.bloc3jo2024.service.OffresEpuiseesService;
 import fr.studi.bloc3jo2024.service.PanierService;
+import io.micrometer.core.annotation.Timed;
 import lombok.RequiredArgsConstructor;
 import org.modelmapper.ModelMapper;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
@@ -32,9 +51,22 @@ public class PanierServiceImpl implements PanierService {
     private final UtilisateurRepository utilisateurRepository;
     private final DisciplineRepository disciplineRepository;
     private final ModelMapper modelMapper;
+    private final VenteMetrics venteMetrics;
+    private final CachePaniersService cachePaniersService;
+    private final ContentionService contentionService;
+    private final OffresChaudesService offresChaudesService;
+    private final OffresEpuiseesService offresEpuiseesService;
+    private final BusChangements busChangements;
+    private final PurgeParLots purgeParLots;
+
+    // Recalcul complet des totaux après chaque mutation, pour comparaison avec les totaux incrémentaux (tests, débogage)
+    @Value("${app.paniers.verifier-totaux:false}")
+    private boolean verifierTotaux;
+
+    @Value("${app.purges.paniers-abandonnes.inactivite-jours:30}")
+    private int inactiviteJoursPaniersAbandonnes;
 
     // Déclaration des constantes pour les messages d'erreur
-    private static final String DISCIPLINE_NOT_FOUND = "Discipline non trouvée avec l'ID : ";
     private static final String UTILISATEUR_NOT_FOUND = "Utilisateur non trouvé avec l'ID : ";
     private static final String OFFRE_NOT_FOUND = "Offre non trouvée avec l'ID : ";
     private static final String OFFRE_NOT_IN_PANIER = "L'offre avec l'ID %d n'est pas dans le panier";
@@ -46,21 +78,40 @@ public class PanierServiceImpl implements PanierService {
     private static final String OFFRE_DISCIPLINE_NULL = "L'offre avec l'ID %d n'est associée à aucune discipline ou l'objet discipline est nul.";
     private static final String CONTENU_PANIER_INVALIDE = "Contenu de panier ou offre invalide trouvé lors de l'opération.";
     private static final String STOCK_INSUFFISANT_FINALISATION = "Stock de l'offre (%d) insuffisant au moment de la finalisation.";
+    private static final String TOTAUX_INCOHERENTS = "Totaux incrémentaux du panier %d incohérents : %s au lieu de %s.";
+    private static final String PURGE_PANIERS_ABANDONNES = "paniers-abandonnes";
+    // Un lot de paniers abandonnés supprimés avec leur contenu en une instruction (index idx_paniers_en_attente_activite).
+    // Les paniers verrouillés par une requête en cours sont laissés aux lots suivants ; un panier modifié entre-temps
+    // change d'adresse physique et n'est pas supprimé.
+    public static final String LOT_PANIERS_ABANDONNES = "WITH lot AS (" +
+            "SELECT p.ctid AS ligne, p.id_panier FROM paniers p " +
+            "WHERE p.statut_panier = 'EN_ATTENTE' AND COALESCE(p.date_modification, p.date_ajout) < ? " +
+            "AND NOT EXISTS (SELECT 1 FROM paiements pa WHERE pa.id_panier = p.id_panier) " +
+            "LIMIT ? FOR UPDATE SKIP LOCKED), " +
+            "contenu AS (DELETE FROM contenu_panier cp USING lot WHERE cp.id_panier = lot.id_panier) " +
+            "DELETE FROM paniers p USING lot WHERE p.ctid = lot.ligne";
 
     /**
      * Récupère le panier en cours (avec statut EN_ATTENTE) de l'utilisateur.
      * Si l'utilisateur n'a pas de panier EN_ATTENTE, un nouveau panier est créé,
      * sauvegardé et retourné.
+     * Le panier est servi par {@link CachePaniersService} quand il y est : aucune transaction n'est alors
+     * ouverte (propagation SUPPORTS), donc aucune connexion n'est empruntée au pool.
      *
      * @param utilisateurIdStr L'ID de l'utilisateur au format String.
      * @return Un PanierDto représentant le panier de l'utilisateur.
      * @throws ResourceNotFoundException Si l'utilisateur n'est pas trouvé.
      */
     @Override
-    @Transactional(readOnly = true) // Peut être en lecture seule si creerNouveauPanier n'est pas appelé
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public PanierDto getPanierUtilisateur(String utilisateurIdStr) {
+        Optional<PanierDto> enCache = cachePaniersService.lire(UUID.fromString(utilisateurIdStr));
+        if (enCache.isPresent()) {
+            return enCache.get();
+        }
         // getPanierUtilisateurEntity gère déjà la recherche de l'utilisateur et la création du panier si nécessaire
         Panier panier = getPanierUtilisateurEntity(utilisateurIdStr);
+        cachePaniersService.ecrire(panier);
         return mapPanierToDto(panier);
     }
 
@@ -92,19 +143,28 @@ public class PanierServiceImpl implements PanierService {
      * @param utilisateurIdStr      L'ID de l'utilisateur au format String.
      * @param ajouterOffrePanierDto Les détails de l'offre à ajouter (ID et quantité).
      * @return Le PanierDto mis à jour.
-     * @throws ResourceNotFoundException Si l'utilisateur, l'offre ou la discipline n'est pas trouvé.
+     * @throws ResourceNotFoundException Si l'utilisateur ou l'offre n'est pas trouvé.
      * @throws IllegalArgumentException  Si la quantité demandée est invalide ou l'offre n'est pas disponible/quantité insuffisante.
      * @throws IllegalStateException     Si l'offre n'est pas associée à une discipline ou si les places disponibles sont insuffisantes dans la discipline.
      */
     @Override
+    @ReessaiSurConflit
     @Transactional
+    @Timed(value = "jo2024.panier.ajout", description = "Ajout d'une offre au panier")
     public PanierDto ajouterOffreAuPanier(String utilisateurIdStr, AjouterOffrePanierDto ajouterOffrePanierDto) {
-        Panier panier = getPanierUtilisateurEntity(utilisateurIdStr); // Récupération/création du panier
-        Offre offre = offreRepository.findById(ajouterOffrePanierDto.getIdOffre())
-                .orElseThrow(() -> new ResourceNotFoundException(OFFRE_NOT_FOUND + ajouterOffrePanierDto.getIdOffre())); // Récupération de l'offre
+        Panier panier = getPanierPourModification(utilisateurIdStr); // Récupération/création du panier
+        TotauxPanier totaux = totaux(panier);
+        Offre offre = offreRepository.findByIdWithDiscipline(ajouterOffrePanierDto.getIdOffre())
+                .orElseThrow(() -> new ResourceNotFoundException(OFFRE_NOT_FOUND + ajouterOffrePanierDto.getIdOffre())); // Récupération de l'offre et de sa discipline
 
         // Vérification de la disponibilité de l'offre et de la quantité globale de l'offre (stock)
         if (offre.getStatutOffre() != StatutOffre.DISPONIBLE || offre.getQuantite() < ajouterOffrePanierDto.getQuantite()) {
+            if (offre.getQuantite() < ajouterOffrePanierDto.getQuantite()) {
+                venteMetrics.rejetSurvente(VenteMetrics.MOTIF_STOCK_OFFRE, "ajout");
+            }
+            if (offre.getQuantite() <= 0) {
+                offresEpuiseesService.signaler(offre.getIdOffre(), true); // Les ajouts suivants sont refusés sans transaction
+            }
             throw new IllegalArgumentException(QUANTITE_INVALIDE_OU_NON_DISPONIBLE);
         }
         // Vérification de la quantité demandée (doit être positive)
@@ -117,8 +177,7 @@ public class PanierServiceImpl implements PanierService {
             throw new IllegalStateException(String.format(OFFRE_DISCIPLINE_NULL, offre.getIdOffre()));
         }
 
-        Discipline discipline = disciplineRepository.findById(offre.getDiscipline().getIdDiscipline())
-                .orElseThrow(() -> new ResourceNotFoundException(DISCIPLINE_NOT_FOUND + offre.getDiscipline().getIdDiscipline())); // Récupération de la discipline
+        Discipline discipline = offre.getDiscipline(); // Chargée avec l'offre
 
         // Trouver l'élément de ContenuPanier existant pour cette offre (s'il y en a un)
         Optional<ContenuPanier> existingContenuPanierOpt = panier.getContenuPaniers().stream()
@@ -129,10 +188,14 @@ public class PanierServiceImpl implements PanierService {
         int quantityToAdd = ajouterOffrePanierDto.getQuantite();
         int newTotalQuantityForThisItem = currentQuantityInCart + quantityToAdd;
 
-        // Calculer les places totales dans la discipline après avoir ajouté la nouvelle quantité pour l'offre actuelle
-        int newTotalPlacesInDiscipline = calculateTotalPlacesForDiscipline(panier, discipline, offre, newTotalQuantityForThisItem); // Utilisation de la méthode d'aide
+        // Places totales dans la discipline après ajout : total courant + places de la quantité ajoutée
+        int newTotalPlacesInDiscipline = totaux.getPlaces(discipline.getIdDiscipline()) + offre.getCapacite() * quantityToAdd;
 
         if (discipline.getNbPlaceDispo() < newTotalPlacesInDiscipline) {
+            venteMetrics.rejetSurvente(VenteMetrics.MOTIF_PLACES_DISCIPLINE, "ajout");
+            if (discipline.getNbPlaceDispo() <= 0) {
+                offresEpuiseesService.signaler(offre.getIdOffre(), true);
+            }
             throw new IllegalStateException(PLACES_INSUFFISANTES + " (Discipline : " + discipline.getNomDiscipline() + ")"); // Message plus précis
         }
 
@@ -153,8 +216,9 @@ public class PanierServiceImpl implements PanierService {
         contenuPanier.setQuantiteCommandee(newTotalQuantityForThisItem);
         contenuPanierRepository.save(contenuPanier); // Persistance de ContenuPanier
 
-        // Recalcul du montant total du panier et persistance du panier mis à jour
-        recalculerMontantTotal(panier);
+        // Mise à jour des totaux par delta et persistance du panier
+        appliquerVariation(panier, offre, quantityToAdd);
+        mettreEnCache(panier);
 
         return mapPanierToDto(panier); // Conversion en DTO
     }
@@ -172,11 +236,13 @@ public class PanierServiceImpl implements PanierService {
      * @throws IllegalStateException     Si l'offre n'est pas associée à une discipline ou si les places disponibles sont insuffisantes pour la nouvelle quantité dans la discipline.
      */
     @Override
+    @ReessaiSurConflit
     @Transactional
     public PanierDto modifierQuantiteOffrePanier(String utilisateurIdStr, ModifierContenuPanierDto modifierContenuPanierDto) {
-        Panier panier = getPanierUtilisateurEntity(utilisateurIdStr); // Récupération du panier
-        Offre offre = offreRepository.findById(modifierContenuPanierDto.getIdOffre())
-                .orElseThrow(() -> new ResourceNotFoundException(OFFRE_NOT_FOUND + modifierContenuPanierDto.getIdOffre())); // Récupération de l'offre
+        Panier panier = getPanierPourModification(utilisateurIdStr); // Récupération du panier
+        TotauxPanier totaux = totaux(panier);
+        Offre offre = offreRepository.findByIdWithDiscipline(modifierContenuPanierDto.getIdOffre())
+                .orElseThrow(() -> new ResourceNotFoundException(OFFRE_NOT_FOUND + modifierContenuPanierDto.getIdOffre())); // Récupération de l'offre et de sa discipline
 
         int nouvelleQuantite = modifierContenuPanierDto.getNouvelleQuantite();
 
@@ -202,14 +268,15 @@ public class PanierServiceImpl implements PanierService {
             throw new IllegalStateException(String.format(OFFRE_DISCIPLINE_NULL, offre.getIdOffre()));
         }
 
-        Discipline discipline = disciplineRepository.findById(offre.getDiscipline().getIdDiscipline())
-                .orElseThrow(() -> new ResourceNotFoundException(DISCIPLINE_NOT_FOUND + offre.getDiscipline().getIdDiscipline())); // Récupération de la discipline
+        Discipline discipline = offre.getDiscipline(); // Chargée avec l'offre
 
-        // Calculer les places totales dans la discipline après avoir appliqué la nouvelle quantité pour l'offre actuelle
-        int newTotalPlacesInDiscipline = calculateTotalPlacesForDiscipline(panier, discipline, offre, nouvelleQuantite); // Utilisation de la méthode d'aide
+        // Places totales dans la discipline après modification : total courant + places de l'écart de quantité
+        int variation = nouvelleQuantite - contenuPanierExistant.getQuantiteCommandee();
+        int newTotalPlacesInDiscipline = totaux.getPlaces(discipline.getIdDiscipline()) + offre.getCapacite() * variation;
 
         // Vérifier si le nombre total de places après la modification dépasse la capacité de la discipline
         if (discipline.getNbPlaceDispo() < newTotalPlacesInDiscipline) {
+            venteMetrics.rejetSurvente(VenteMetrics.MOTIF_PLACES_DISCIPLINE, "modification");
             throw new IllegalStateException(PLACES_INSUFFISANTES + " (Discipline : " + discipline.getNomDiscipline() + ")"); // Message plus précis
         }
 
@@ -219,8 +286,9 @@ public class PanierServiceImpl implements PanierService {
         // Persister l'élément de contenu modifié
         contenuPanierRepository.save(contenuPanierExistant);
 
-        // Recalcul du montant total du panier et persistance du panier mis à jour
-        recalculerMontantTotal(panier);
+        // Mise à jour des totaux par delta et persistance du panier
+        appliquerVariation(panier, offre, variation);
+        mettreEnCache(panier);
 
         return mapPanierToDto(panier); // Retourne le DTO
     }
@@ -236,9 +304,11 @@ public class PanierServiceImpl implements PanierService {
      * @throws ResourceNotFoundException Si l'utilisateur n'est pas trouvé.
      */
     @Override
+    @ReessaiSurConflit
     @Transactional
     public PanierDto supprimerOffreDuPanier(String utilisateurIdStr, Long offreId) {
-        Panier panier = getPanierUtilisateurEntity(utilisateurIdStr); // Récupération du panier
+        Panier panier = getPanierPourModification(utilisateurIdStr); // Récupération du panier
+        totaux(panier);
 
         // Trouver l'élément dans le Set en mémoire pour le retirer
         Optional<ContenuPanier> contenuARetirerOpt = panier.getContenuPaniers().stream()
@@ -257,10 +327,11 @@ public class PanierServiceImpl implements PanierService {
             // Retirer l'objet du Set en mémoire pour maintenir la cohérence
             panier.getContenuPaniers().remove(contenuARetirer);
 
-            // Recalculer le montant total maintenant que l'élément a été retiré du Set
-            recalculerMontantTotal(panier); // Persiste aussi le panier
+            // Retirer la quantité de l'élément des totaux (persiste aussi le panier)
+            appliquerVariation(panier, contenuARetirer.getOffre(), -contenuARetirer.getQuantiteCommandee());
         }
 
+        mettreEnCache(panier);
         // Le mappage se fera sur l'objet panier mis à jour (ou inchangé si l'offre n'était pas là)
         return mapPanierToDto(panier);
     }
@@ -274,9 +345,10 @@ public class PanierServiceImpl implements PanierService {
      * @throws ResourceNotFoundException Si l'utilisateur n'est pas trouvé.
      */
     @Override
+    @ReessaiSurConflit
     @Transactional
     public PanierDto viderPanier(String utilisateurIdStr) {
-        Panier panier = getPanierUtilisateurEntity(utilisateurIdStr); // Récupération du panier
+        Panier panier = getPanierPourModification(utilisateurIdStr); // Récupération du panier
 
         // Vérifier si le panier a du contenu avant de tenter de supprimer
         if (panier != null && panier.getContenuPaniers() != null && !panier.getContenuPaniers().isEmpty()) {
@@ -286,22 +358,23 @@ public class PanierServiceImpl implements PanierService {
             // Vider le Set en mémoire pour maintenir la cohérence
             panier.getContenuPaniers().clear();
 
-            // Réinitialisation du montant total
+            // Réinitialisation des totaux et du montant total
+            totaux(panier).reinitialiser();
             panier.setMontantTotal(BigDecimal.ZERO);
 
             // Persistance du panier modifié (vide)
             panierRepository.save(panier);
 
         }
+        mettreEnCache(panier);
         return mapPanierToDto(panier);
     }
 
     /**
      * Supprime toutes les occurrences d'une offre donnée dans tous les paniers.
      * Cette méthode est typiquement appelée lors de la suppression d'une offre.
-     * Note : Cette opération ne met pas à jour automatiquement les montants totaux
-     * des paniers affectés en temps réel. Un mécanisme supplémentaire pourrait être nécessaire
-     * si l'affichage immédiat des totaux corrigés est requis après la suppression d'une offre.
+     * Le montant des paniers en cours est d'abord diminué des lignes retirées : tenu à jour par delta, il n'est plus
+     * recalculé depuis les lignes restantes. Le cache des paniers est vidé après le commit, les paniers concernés n'étant pas connus.
      *
      * @param offre L'offre à supprimer de tous les paniers.
      */
@@ -310,28 +383,53 @@ public class PanierServiceImpl implements PanierService {
     public void supprimerOffreDeTousLesPaniers(Offre offre) {
         // Vérification null pour l'offre avant de tenter la suppression
         if (offre != null) {
+            // Les montants sont corrigés tant que les lignes existent encore
+            panierRepository.retirerOffreDesMontants(offre.getIdOffre());
             // Utilise une méthode de repository personnalisée pour supprimer en masse
             // Selon l'erreur et la signature du repo, cette méthode renvoie void.
             contenuPanierRepository.deleteByOffre(offre); // Appel sans capturer la valeur de retour
+            cachePaniersService.vider();
         }
     }
 
+    /**
+     * Répercute le changement de prix d'une offre sur le montant total des paniers en cours qui la contiennent.
+     * Les montants étant tenus à jour par delta, ils ne sont plus recalculés depuis les prix courants à la mutation suivante.
+     *
+     * @param offre      L'offre dont le prix vient de changer (avec son nouveau prix).
+     * @param ancienPrix Le prix de l'offre avant modification.
+     */
+    @Override
+    @Transactional
+    public void reporterChangementPrix(Offre offre, BigDecimal ancienPrix) {
+        if (offre == null || offre.getPrix() == null || ancienPrix == null || offre.getPrix().compareTo(ancienPrix) == 0) {
+            return;
+        }
+        panierRepository.reporterChangementPrix(offre.getIdOffre(), offre.getPrix().subtract(ancienPrix));
+        cachePaniersService.vider();
+    }
+
     /**
      * Finalise le processus d'achat pour le panier en cours de l'utilisateur.
      * Change le statut du panier à PAYE, décrémente la quantité des offres
      * correspondantes dans le stock et décrémente les places disponibles dans les disciplines associées.
      * Cette opération est transactionnelle pour garantir la cohérence des données.
+     * Les offres chaudes sont réservées avant toute autre ligne : l'écrivain de leur file verrouille la discipline,
+     * il ne doit pas attendre un verrou que cette transaction aurait déjà pris en la décrémentant.
      *
      * @param utilisateurIdStr L'ID de l'utilisateur au format String.
      * @return Le PanierDto mis à jour avec le statut PAYE.
-     * @throws ResourceNotFoundException Si l'utilisateur ou une discipline associée n'est pas trouvée.
+     * @throws ResourceNotFoundException Si l'utilisateur n'est pas trouvé.
      * @throws IllegalStateException     Si le panier ne peut pas être payé (statut incorrect, vide)
      *                                   ou si le nombre de places ou le stock de l'offre est insuffisant au moment de la finalisation.
      */
     @Override
+    @Cloison(ClasseCharge.PAIEMENT)
+    @ReessaiSurConflit
     @Transactional // Assure l'atomicité de l'opération d'achat
+    @Timed(value = "jo2024.panier.finalisation", description = "Finalisation de l'achat d'un panier")
     public PanierDto finaliserAchat(String utilisateurIdStr) {
-        Panier panier = getPanierUtilisateurEntity(utilisateurIdStr); // Récupération du panier
+        Panier panier = getPanierPourModification(utilisateurIdStr); // Récupération du panier
 
         // Vérification du statut du panier
         if (panier.getStatut() != StatutPanier.EN_ATTENTE) {
@@ -343,7 +441,9 @@ public class PanierServiceImpl implements PanierService {
             throw new IllegalStateException(PANIER_VIDE);
         }
 
-        // Parcours des contenus du panier pour valider et mettre à jour
+        // Validation des lignes, réparties entre offres chaudes et offres ordinaires
+        List<ContenuPanier> lignesChaudes = new ArrayList<>();
+        List<ContenuPanier> lignesOrdinaires = new ArrayList<>();
         for (ContenuPanier contenu : panier.getContenuPaniers()) {
             // Ajout de vérifications null rigoureuses pour les objets liés essentiels
             if (contenu == null || contenu.getOffre() == null || contenu.getOffre().getIdOffre() == null) {
@@ -362,73 +462,160 @@ public class PanierServiceImpl implements PanierService {
             if (offre.getDiscipline() == null || offre.getDiscipline().getIdDiscipline() == null) {
                 throw new IllegalStateException(String.format(OFFRE_DISCIPLINE_NULL, offre.getIdOffre()));
             }
-            Discipline discipline = disciplineRepository.findById(offre.getDiscipline().getIdDiscipline())
-                    .orElseThrow(() -> {
-                        return new ResourceNotFoundException(DISCIPLINE_NOT_FOUND + offre.getDiscipline().getIdDiscipline());
-                    });
+
+            if (offresChaudesService.enregistrerTentative(offre.getIdOffre())) {
+                lignesChaudes.add(contenu);
+            } else {
+                lignesOrdinaires.add(contenu);
+            }
+        }
+
+        // Offres chaudes : stock et places réservés par lot avec les achats concurrents, sans écrire les lignes ici
+        for (ContenuPanier contenu : lignesChaudes) {
+            Offre offre = contenu.getOffre();
+            reserverOffreChaude(offre, offre.getDiscipline(), contenu.getQuantiteCommandee(),
+                    offre.getCapacite() * contenu.getQuantiteCommandee());
+        }
+
+        for (ContenuPanier contenu : lignesOrdinaires) {
+            Offre offre = contenu.getOffre();
+            int quantiteCommandee = contenu.getQuantiteCommandee();
+            Discipline discipline = offre.getDiscipline(); // Chargée avec le panier
 
             int placesOccupees = offre.getCapacite() * quantiteCommandee; // Calcul des places à décrémenter
 
             int updatedPlacesCount = disciplineRepository.decrementerPlaces(discipline.getIdDiscipline(), placesOccupees);
 
             if (updatedPlacesCount == 0) {
+                venteMetrics.rejetSurvente(VenteMetrics.MOTIF_PLACES_DISCIPLINE, "finalisation");
                 throw new IllegalStateException(String.format(PLACES_INSUFFISANTES + " (Discipline : %s, Offre : %d)", discipline.getNomDiscipline(), offre.getIdOffre()));
             }
 
+            // Offre disputée : relue sous verrou (le contexte vient d'être vidé par decrementerPlaces), sans conflit au commit
+            if (contentionService.estDisputee(Offre.class, offre.getIdOffre())) {
+                offre = offreRepository.findByIdPourMiseAJour(offre.getIdOffre())
+                        .orElseThrow(() -> new ResourceNotFoundException(OFFRE_NOT_FOUND + contenu.getOffre().getIdOffre()));
+            }
+
             // Vérification de stock avant décrémentation pour double sécurité et robustesse
             if (offre.getQuantite() < quantiteCommandee) {
+                venteMetrics.rejetSurvente(VenteMetrics.MOTIF_STOCK_OFFRE, "finalisation");
+                if (offre.getQuantite() <= 0) {
+                    offresEpuiseesService.signaler(offre.getIdOffre(), true);
+                }
                 throw new IllegalStateException(String.format(STOCK_INSUFFISANT_FINALISATION, offre.getIdOffre()));
             }
             offre.setQuantite(offre.getQuantite() - quantiteCommandee); // Mise à jour de la quantité de l'offre (stock)
             offreRepository.save(offre); // Persistance de l'offre modifiée
+            if (offre.getQuantite() <= 0) {
+                offresEpuiseesService.signalerApresCommit(offre.getIdOffre(), true);
+                busChangements.publier(TypeChangement.OFFRE, offre.getIdOffre());
+            }
         }
 
         // Si la boucle se termine sans exception, toutes les validations sont passées et les mises à jour sont faites en mémoire.
         panier.setStatut(StatutPanier.PAYE); // Mise à jour du statut du panier
-        panierRepository.save(panier); // Persistance du panier avec le nouveau statut
+        // decrementerPlaces vide le contexte : save fusionne le panier détaché dans une copie gérée, seule versionnée au flush
+        panier = panierRepository.save(panier); // Persistance du panier avec le nouveau statut
+        // L'instantané PAYE écarte du cache le panier en cours, y compris face à une lecture concurrente plus ancienne
+        mettreEnCache(panier);
         return mapPanierToDto(panier); // Retourne le PanierDto finalisé
     }
 
     /**
-     * Recalcule le montant total du panier en sommant le prix total de chaque élément de contenu.
-     * Le panier est ensuite sauvegardé pour persister le nouveau montant total.
-     * Assure que le Set de contenus panier est initialisé pour éviter les erreurs.
+     * Supprime, par lots courts, les paniers EN_ATTENTE sans modification depuis {@code app.purges.paniers-abandonnes.inactivite-jours}
+     * et sans paiement, avec leur contenu. Non transactionnelle : chaque lot est validé séparément (voir {@link PurgeParLots}).
      *
-     * @param panier Le panier dont le montant total doit être recalculé.
+     * @return Le nombre de paniers supprimés.
      */
-    private void recalculerMontantTotal(Panier panier) {
-        // Vérification null pour le panier source
-        if (panier == null) {
-            return;
+    @Override
+    public long purgerPaniersAbandonnes() {
+        LocalDateTime limite = LocalDateTime.now().minusDays(inactiviteJoursPaniersAbandonnes);
+        long supprimes = purgeParLots.executer(PURGE_PANIERS_ABANDONNES, LOT_PANIERS_ABANDONNES, limite);
+        if (supprimes > 0) {
+            cachePaniersService.vider();
+            busChangements.publier(TypeChangement.PANIER, null);
         }
-        // S'assurer que le Set de contenus est initialisé
-        if (panier.getContenuPaniers() == null) {
-            panier.setContenuPaniers(new java.util.HashSet<>()); // Initialiser si null
+        return supprimes;
+    }
+
+    /**
+     * Écrit le panier modifié dans le cache local et annonce la modification aux autres instances,
+     * qui oublient leur copie après le commit.
+     */
+    private void mettreEnCache(Panier panier) {
+        cachePaniersService.ecrire(panier);
+        if (panier.getUtilisateur() != null) {
+            busChangements.publier(TypeChangement.PANIER, panier.getUtilisateur().getIdUtilisateur());
         }
+    }
 
-        BigDecimal total = panier.getContenuPaniers().stream()
-                .filter(contenu -> contenu != null && contenu.getOffre() != null && contenu.getOffre().getPrix() != null) // Filtrer les contenus invalides
-                .map(contenu -> {
-                    try {
-                        BigDecimal prix = contenu.getOffre().getPrix();
-                        BigDecimal quantite = BigDecimal.valueOf(contenu.getQuantiteCommandee());
-                        return prix.multiply(quantite);
-                    } catch (Exception e) {
-                        // Utiliser les IDs du panier et de l'offre pour l'identification
-                        Long panierId = (contenu != null && contenu.getPanier() != null) ? contenu.getPanier().getIdPanier() : null;
-                        Long offreId = (contenu != null && contenu.getOffre() != null) ? contenu.getOffre().getIdOffre() : null;
-                        return BigDecimal.ZERO; // Retourner 0 pour ce contenu invalide
-                    }
-                })
-                .reduce(BigDecimal.ZERO, BigDecimal::add); // Démarrer l'addition avec ZERO
+    /**
+     * Réserve stock et places d'une offre chaude par la file de l'offre.
+     * La réservation est restituée si la finalisation est ensuite annulée.
+     *
+     * @param offre          L'offre achetée.
+     * @param discipline     La discipline de l'offre.
+     * @param quantite       La quantité commandée.
+     * @param placesOccupees Les places de la discipline occupées par l'achat.
+     * @throws IllegalStateException Si le stock de l'offre ou les places de la discipline sont insuffisants.
+     */
+    private void reserverOffreChaude(Offre offre, Discipline discipline, int quantite, int placesOccupees) {
+        switch (offresChaudesService.reserver(offre.getIdOffre(), discipline.getIdDiscipline(), quantite, placesOccupees)) {
+            case PLACES_INSUFFISANTES -> {
+                venteMetrics.rejetSurvente(VenteMetrics.MOTIF_PLACES_DISCIPLINE, "finalisation");
+                throw new IllegalStateException(String.format(PLACES_INSUFFISANTES + " (Discipline : %s, Offre : %d)", discipline.getNomDiscipline(), offre.getIdOffre()));
+            }
+            case STOCK_INSUFFISANT -> {
+                venteMetrics.rejetSurvente(VenteMetrics.MOTIF_STOCK_OFFRE, "finalisation");
+                throw new IllegalStateException(String.format(STOCK_INSUFFISANT_FINALISATION, offre.getIdOffre()));
+            }
+            case ACCEPTEE -> {
+                // Stock et places déjà décrémentés et validés par le lot
+            }
+        }
+    }
 
-        panier.setMontantTotal(total);
+    /**
+     * Retourne les totaux courants du panier, initialisés au premier appel de la transaction.
+     * Doit être appelée avant toute modification des lignes : le montant est repris de la valeur persistée
+     * et les places sont cumulées sur les lignes telles qu'elles ont été chargées.
+     *
+     * @param panier Le panier chargé.
+     * @return Les totaux du panier, mis à jour ensuite par {@link #appliquerVariation}.
+     */
+    private TotauxPanier totaux(Panier panier) {
+        if (panier.getTotaux() == null) {
+            panier.setTotaux(TotauxPanier.initialiser(panier));
+        }
+        return panier.getTotaux();
+    }
+
+    /**
+     * Répercute la variation de quantité d'une offre sur les totaux du panier, met à jour le montant total
+     * et persiste le panier. Aucune ligne n'est reparcourue, sauf si la vérification des totaux est activée.
+     *
+     * @param panier         Le panier modifié.
+     * @param offre          L'offre dont la quantité a changé.
+     * @param deltaQuantite  La variation de quantité (négative pour un retrait).
+     */
+    private void appliquerVariation(Panier panier, Offre offre, int deltaQuantite) {
+        TotauxPanier totaux = totaux(panier);
+        totaux.appliquer(offre, deltaQuantite);
+        panier.setMontantTotal(totaux.getMontant());
+        if (verifierTotaux) {
+            TotauxPanier recalcul = TotauxPanier.calculer(panier);
+            if (!totaux.concordeAvec(recalcul)) {
+                throw new IllegalStateException(String.format(TOTAUX_INCOHERENTS, panier.getIdPanier(), totaux, recalcul));
+            }
+        }
         panierRepository.save(panier); // Persister le panier avec le nouveau total
     }
 
     /**
      * Méthode utilitaire pour récupérer l'entité Panier en cours (statut EN_ATTENTE)
-     * de l'utilisateur identifié par son ID String.
+     * de l'utilisateur identifié par son ID String, avec ses lignes, leurs offres et leurs disciplines
+     * chargées en une seule requête : les parcours du contenu qui suivent ne déclenchent aucun chargement paresseux.
      * Gère la conversion de l'ID String en UUID et la recherche de l'utilisateur.
      * Si aucun panier EN_ATTENTE n'est trouvé, en crée un nouveau.
      *
@@ -441,9 +628,34 @@ public class PanierServiceImpl implements PanierService {
         Utilisateur utilisateur = utilisateurRepository.findById(utilisateurId)
                 .orElseThrow(() -> new ResourceNotFoundException(UTILISATEUR_NOT_FOUND + utilisateurId));
         // Tente de trouver un panier EN_ATTENTE existant
-        return panierRepository.findByUtilisateur_idUtilisateurAndStatut(utilisateur.getIdUtilisateur(), StatutPanier.EN_ATTENTE)
+        Panier panier = panierRepository.findCompletByUtilisateurAndStatut(utilisateur.getIdUtilisateur(), StatutPanier.EN_ATTENTE)
                 // Si aucun panier EN_ATTENTE n'est trouvé, en crée un nouveau et le retourne
                 .orElseGet(() -> creerNouveauPanier(utilisateur));
+        if (panier != null && panier.getIdPanier() != null) {
+            MDC.put(MdcCles.PANIER_ID, panier.getIdPanier().toString());
+        }
+        return panier;
+    }
+
+    /**
+     * Récupère le panier en cours pour une opération qui le modifie. Si des conflits de version récents le désignent
+     * comme disputé (requêtes concurrentes d'un même utilisateur), sa ligne est verrouillée jusqu'au commit ; si elle a
+     * changé depuis le chargement, le conflit est levé immédiatement pour que le réessai reparte d'un état frais.
+     *
+     * @param utilisateurIdStr L'ID de l'utilisateur au format String.
+     * @return L'entité Panier de l'utilisateur avec le statut EN_ATTENTE.
+     * @throws ObjectOptimisticLockingFailureException Si le panier disputé a changé depuis son chargement.
+     */
+    private Panier getPanierPourModification(String utilisateurIdStr) {
+        Panier panier = getPanierUtilisateurEntity(utilisateurIdStr);
+        if (contentionService.estDisputee(Panier.class, panier.getIdPanier())) {
+            long versionChargee = panier.getVersion() != null ? panier.getVersion() : 0L;
+            Long versionCourante = panierRepository.verrouillerEtLireVersion(panier.getIdPanier());
+            if (versionCourante == null || versionCourante != versionChargee) {
+                throw new ObjectOptimisticLockingFailureException(Panier.class, panier.getIdPanier());
+            }
+        }
+        return panier;
     }
 
     /**
@@ -514,35 +726,4 @@ public class PanierServiceImpl implements PanierService {
 
         return panierDto;
     }
-
-    /**
-     * Calcule le nombre total de places occupées dans une discipline spécifique par les offres
-     * présentes dans un panier, en utilisant une quantité potentiellement modifiée pour une offre donnée.
-     * Cette méthode est utilisée pour les validations de capacité lors de l'ajout ou la modification
-     * d'éléments dans le panier.
-     *
-     * @param panier                   L'entité Panier.
-     * @param discipline               La discipline concernée.
-     * @return Le nombre total de places occupées pour cette discipline dans le panier après application de la quantité spécifiée pour l'offre donnée.
-     */
-    private int calculateTotalPlacesForDiscipline(Panier panier, Discipline discipline, Offre targetOffre, int quantityForTargetOffre) {
-        if (panier == null || panier.getContenuPaniers() == null || discipline == null || discipline.getIdDiscipline() == null || targetOffre == null) {
-            return 0;
-        }
-
-
-        int currentTotalPlacesExcludingTarget = 0;
-        for (ContenuPanier cp : panier.getContenuPaniers()) {
-            if (cp == null || cp.getOffre() == null || cp.getOffre().getDiscipline() == null || cp.getOffre().getDiscipline().getIdDiscipline() == null) {
-                continue;
-            }
-
-            if (cp.getOffre().getDiscipline().getIdDiscipline().equals(discipline.getIdDiscipline()) && !cp.getOffre().getIdOffre().equals(targetOffre.getIdOffre())) {
-                int itemPlaces = cp.getOffre().getCapacite() * cp.getQuantiteCommandee();
-                currentTotalPlacesExcludingTarget += itemPlaces;
-            }
-        }
-        int finalTotal = currentTotalPlacesExcludingTarget + (targetOffre.getCapacite() * quantityForTargetOffre);
-        return finalTotal;
-    }
-}
\ No newline at end of file
+}
@@ -1,5 +1,8 @@
 package fr.studi.bloc3jo2024.service.offres;
 
+import fr.studi.bloc3jo2024.changements.BusChangements;
+import fr.studi.bloc3jo2024.changements.TypeChangement;
+import fr.studi.bloc3jo2024.concurrence.ReessaiSurConflit;
 import fr.studi.bloc3jo2024.dto.offres.CreerOffreDto;
 import fr.studi.bloc3jo2024.dto.offres.MettreAJourOffreDto;
 import fr.studi.bloc3jo2024.dto.offres.OffreAdminDto;
@@ -8,6 +11,10 @@ import fr.studi.bloc3jo2024.entity.Offre;
 import fr.studi.bloc3jo2024.exception.ResourceNotFoundException;
 import fr.studi.bloc3jo2024.repository.DisciplineRepository;
 import fr.studi.bloc3jo2024.repository.OffreRepository;
+import fr.studi.bloc3jo2024.service.CachePaniersService;
+import fr.studi.bloc3jo2024.service.CompteursVentesService;
+import fr.studi.bloc3jo2024.service.ContentionService;
+import fr.studi.bloc3jo2024.service.OffresEpuiseesService;
 import fr.studi.bloc3jo2024.service.PanierService;
 import lombok.RequiredArgsConstructor;
 import org.modelmapper.ModelMapper;
@@ -16,10 +23,11 @@ import org.slf4j.LoggerFactory;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 /**
  * Service pour la gestion des offres par les administrateurs.
@@ -39,6 +47,12 @@ public class AdminOffreService {
     private final DisciplineRepository disciplineRepository;
     private final PanierService panierService;
     private final ModelMapper modelMapper;
+    private final CompteursVentesService compteursVentesService;
+    private final CachePaniersService cachePaniersService;
+    private final ContentionService contentionService;
+    private final OffresEpuiseesService offresEpuiseesService;
+    private final BusChangements busChangements;
+    private final ExpirationOffresService expirationOffresService;
 
     private Discipline findDisciplineByIdOrThrow(Long idDiscipline) {
         return disciplineRepository.findById(idDiscipline)
@@ -62,6 +76,9 @@ public class AdminOffreService {
         nouvelleOffre.setDiscipline(discipline);
 
         Offre offreCreee = offreRepository.save(nouvelleOffre);
+        compteursVentesService.declarerOffre(offreCreee);
+        busChangements.publier(TypeChangement.OFFRE, offreCreee.getIdOffre());
+        expirationOffresService.rechargerApresCommit();
         log.info("Offre créée avec ID : {}", offreCreee.getIdOffre());
         return convertToOffreAdminDtoWithDetails(offreCreee);
     }
@@ -92,20 +109,34 @@ public class AdminOffreService {
      * @return Le DTO de l'offre mise à jour.
      * @throws ResourceNotFoundException si aucune offre ou discipline n'est trouvée.
      */
+    @ReessaiSurConflit
     public OffreAdminDto mettreAJourOffre(Long idOffre, MettreAJourOffreDto mettreAJourOffreDto) {
         log.info("Mise à jour de l'offre ID : {}", idOffre);
-        Offre offreExistante = offreRepository.findById(idOffre)
+        // Offre disputée par les ventes en cours : lue sous verrou plutôt que d'échouer au commit
+        Offre offreExistante = (contentionService.estDisputee(Offre.class, idOffre)
+                ? offreRepository.findByIdPourMiseAJour(idOffre)
+                : offreRepository.findById(idOffre))
                 .orElseThrow(() -> {
                     log.warn("Offre non trouvée avec l'ID : {}", idOffre);
                     return new ResourceNotFoundException(OFFRE_NON_TROUVEE_ID_PREFIX + idOffre);
                 });
 
         Discipline discipline = findDisciplineByIdOrThrow(mettreAJourOffreDto.getIdDiscipline());
+        BigDecimal ancienPrix = offreExistante.getPrix();
 
         modelMapper.map(mettreAJourOffreDto, offreExistante);
         offreExistante.setDiscipline(discipline);
 
         Offre offreMiseAJour = offreRepository.save(offreExistante);
+        panierService.reporterChangementPrix(offreMiseAJour, ancienPrix);
+        // Prix et type d'offre sont figés dans les paniers en cache
+        cachePaniersService.vider();
+        offresEpuiseesService.signalerApresCommit(idOffre,
+                offreMiseAJour.getQuantite() <= 0 || discipline.getNbPlaceDispo() <= 0);
+        // Les autres instances vident leurs paniers en cache et rafraîchissent leur registre des offres épuisées
+        busChangements.publier(TypeChangement.OFFRE, idOffre);
+        // Date d'expiration, discipline ou statut ont pu changer l'échéance de l'offre
+        expirationOffresService.rechargerApresCommit();
         log.info("Offre ID : {} mise à jour avec succès.", idOffre);
         return convertToOffreAdminDtoWithDetails(offreMiseAJour);
     }
@@ -117,6 +148,7 @@ public class AdminOffreService {
      * @param idOffre L'identifiant de l'offre à supprimer.
      * @throws ResourceNotFoundException si aucune offre n'est trouvée pour l'ID donné.
      */
+    @ReessaiSurConflit
     public void supprimerOffre(Long idOffre) {
         log.info("Tentative de suppression de l'offre ID : {}", idOffre);
         Offre offre = offreRepository.findById(idOffre)
@@ -127,6 +159,8 @@ public class AdminOffreService {
         panierService.supprimerOffreDeTousLesPaniers(offre);
         log.info("Impacts sur les paniers gérés pour l'offre ID : {}", idOffre);
         offreRepository.delete(offre);
+        offresEpuiseesService.signalerApresCommit(idOffre, false);
+        busChangements.publier(TypeChangement.OFFRE, idOffre);
         log.info("Offre ID : {} supprimée avec succès.", idOffre);
     }
 
@@ -144,33 +178,26 @@ public class AdminOffreService {
     }
 
     /**
-     * Calcule le nombre total de billets vendus pour chaque offre.
+     * Retourne le nombre total de billets vendus pour chaque offre, lu depuis les compteurs en mémoire
+     * (sans transaction ni accès à la base).
      *
      * @return Une Map associant l'ID de l'offre au nombre de billets vendus.
      */
-    @Transactional(readOnly = true)
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public Map<Long, Long> getNombreDeVentesParOffre() {
-        log.debug("Calcul du nombre de ventes par offre.");
-        return offreRepository.countBilletsByOffreId().stream()
-                .collect(Collectors.toMap(
-                        result -> (Long) ((Object[]) result)[0],
-                        result -> (Long) ((Object[]) result)[1]
-                ));
+        log.debug("Lecture du nombre de ventes par offre.");
+        return compteursVentesService.getBilletsParOffre();
     }
 
     /**
-     * Calcule le nombre total de billets vendus regroupés par type d'offre.
+     * Retourne le nombre total de billets vendus regroupés par type d'offre, lu depuis les compteurs en mémoire.
      *
      * @return Une Map associant le type d'offre (String) au nombre de billets vendus.
      */
-    @Transactional(readOnly = true)
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public Map<String, Long> getVentesParTypeOffre() {
-        log.debug("Calcul du nombre de ventes par type d'offre.");
-        return offreRepository.countBilletsByTypeOffre().stream()
-                .collect(Collectors.toMap(
-                        result -> (((Object[]) result)[0] != null) ? ((Object[]) result)[0].toString() : "INCONNU",
-                        result -> (Long) ((Object[]) result)[1]
-                ));
+        log.debug("Lecture du nombre de ventes par type d'offre.");
+        return compteursVentesService.getBilletsParType();
     }
 
     private OffreAdminDto convertToOffreAdminDtoWithDetails(Offre offre) {
@@ -0,0 +1,296 @@
+package fr.studi.bloc3jo2024.service.offres;
+
+import fr.studi.bloc3jo2024.changements.Changement;
+import fr.studi.bloc3jo2024.changements.TypeChangement;
+import fr.studi.bloc3jo2024.entity.enums.StatutOffre;
+import fr.studi.bloc3jo2024.repository.OffreRepository;
+import fr.studi.bloc3jo2024.repository.OffreRepository.EcheanceOffre;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Moteur d'expiration des offres.
+ * <p>
+ * Une offre disponible expire à son échéance effective, la plus proche de sa date d'expiration et de la date de sa
+ * discipline. Les échéances des {@code app.expiration-offres.horizon-ms} à venir sont chargées par deux parcours
+ * d'index bornés (offres disponibles par date d'expiration, disciplines par date) et tenues dans une file de priorité.
+ * Une minuterie se réarme sur la plus proche et passe les offres échues au statut EXPIRE à cet instant, par lots de
+ * {@code app.expiration-offres.taille-lot} ; la mise à jour revérifie l'échéance en base, une offre modifiée depuis le
+ * chargement n'est donc pas expirée à tort.
+ * </p>
+ * <p>
+ * La file est rechargée au démarrage (ce qui rattrape les échéances passées pendant un arrêt), toutes les
+ * {@code app.expiration-offres.rechargement-ms}, après chaque modification d'offre ou de discipline sur cette instance
+ * et sur annonce du bus de changements pour les autres. Au-delà de {@code app.expiration-offres.taille-max} échéances,
+ * la file s'arrête à la dernière chargée et se recharge en l'atteignant.
+ * </p>
+ */
+@Service
+public class ExpirationOffresService implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(ExpirationOffresService.class);
+
+    /** Échéance d'une offre, en millisecondes depuis l'epoch. */
+    private record Echeance(long instant, Long idOffre) {
+    }
+
+    private final OffreRepository offreRepository;
+    private final TransactionOperations transaction;
+    private final boolean active;
+    private final long horizonMs;
+    private final int tailleLot;
+    private final int tailleMax;
+    private final long repriseMs;
+    private final LongSupplier horlogeMs;
+    private final ScheduledExecutorService minuterie;
+    private final PriorityQueue<Echeance> file = new PriorityQueue<>(Comparator.comparingLong(Echeance::instant));
+    private long borne = Long.MAX_VALUE;
+    private long repriseApres;
+    private long rechargementsDemandes;
+    private long rechargementApplique;
+    private ScheduledFuture<?> prochainDeclenchement;
+
+    @Autowired
+    public ExpirationOffresService(OffreRepository offreRepository, PlatformTransactionManager transactionManager,
+                                   @Value("${app.expiration-offres.active:true}") boolean active,
+                                   @Value("${app.expiration-offres.horizon-ms:3600000}") long horizonMs,
+                                   @Value("${app.expiration-offres.taille-lot:100}") int tailleLot,
+                                   @Value("${app.expiration-offres.taille-max:10000}") int tailleMax,
+                                   @Value("${app.expiration-offres.reprise-ms:5000}") long repriseMs) {
+        this(offreRepository, new TransactionTemplate(transactionManager), active, horizonMs, tailleLot, tailleMax,
+                repriseMs, System::currentTimeMillis, active ? Executors.newSingleThreadScheduledExecutor(tache -> {
+                    Thread thread = new Thread(tache, "expiration-offres");
+                    thread.setDaemon(true);
+                    return thread;
+                }) : null);
+    }
+
+    /** Sans minuterie ({@code null}), les échéances ne sont traitées que par {@link #expirerEcheances()}. */
+    ExpirationOffresService(OffreRepository offreRepository, TransactionOperations transaction, boolean active,
+                            long horizonMs, int tailleLot, int tailleMax, long repriseMs, LongSupplier horlogeMs,
+                            ScheduledExecutorService minuterie) {
+        this.offreRepository = offreRepository;
+        this.transaction = transaction;
+        this.active = active;
+        this.horizonMs = horizonMs;
+        this.tailleLot = tailleLot;
+        this.tailleMax = tailleMax;
+        this.repriseMs = repriseMs;
+        this.horlogeMs = horlogeMs;
+        this.minuterie = minuterie;
+    }
+
+    /**
+     * Recharge la file avec les échéances des offres disponibles jusqu'à l'horizon, passées comprises. En cas d'échec,
+     * la file courante est conservée et le chargement retenté après {@code app.expiration-offres.reprise-ms}.
+     */
+    @Scheduled(fixedDelayString = "${app.expiration-offres.rechargement-ms:300000}")
+    public void recharger() {
+        if (!active) {
+            return;
+        }
+        long numero;
+        synchronized (this) {
+            numero = ++rechargementsDemandes;
+        }
+        long maintenant = horlogeMs.getAsLong();
+        LocalDateTime limite = versDate(maintenant + horizonMs);
+        Pageable premieres = PageRequest.of(0, tailleMax);
+        List<EcheanceOffre> parOffre;
+        List<EcheanceOffre> parDiscipline;
+        try {
+            parOffre = offreRepository.findEcheancesParDateExpiration(StatutOffre.DISPONIBLE, limite, premieres);
+            parDiscipline = offreRepository.findEcheancesParDateDiscipline(StatutOffre.DISPONIBLE, limite, premieres);
+        } catch (DataAccessException e) {
+            log.warn("Chargement des échéances d'offres impossible, nouvel essai dans {} ms : {}", repriseMs, e.getMessage());
+            synchronized (this) {
+                repriseApres = maintenant + repriseMs;
+                armer();
+            }
+            return;
+        }
+        // Une liste tronquée ne dit rien au-delà de sa dernière échéance : la file s'arrête là
+        long nouvelleBorne = Math.min(borne(parOffre, maintenant + horizonMs), borne(parDiscipline, maintenant + horizonMs));
+        Map<Long, Long> echeances = new HashMap<>();
+        for (List<EcheanceOffre> liste : List.of(parOffre, parDiscipline)) {
+            for (EcheanceOffre echeance : liste) {
+                echeances.merge(echeance.getIdOffre(), versMs(echeance.getEcheance()), Math::min);
+            }
+        }
+        synchronized (this) {
+            if (numero < rechargementApplique) {
+                return; // Un rechargement commencé après celui-ci a déjà été appliqué
+            }
+            rechargementApplique = numero;
+            file.clear();
+            echeances.forEach((idOffre, instant) -> {
+                if (instant <= nouvelleBorne) {
+                    file.add(new Echeance(instant, idOffre));
+                }
+            });
+            borne = nouvelleBorne;
+            repriseApres = 0;
+            armer();
+        }
+        log.debug("{} échéance(s) d'offre planifiée(s) jusqu'au {}.", echeances.size(), versDate(nouvelleBorne));
+    }
+
+    /** Comme {@link #recharger}, après le commit de la transaction courante ; rien en cas de rollback. */
+    public void rechargerApresCommit() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    recharger();
+                }
+            });
+        } else {
+            recharger();
+        }
+    }
+
+    /** Recharge la file dès qu'une offre ou une discipline a changé sur une autre instance. */
+    @EventListener
+    public void surChangement(Changement changement) {
+        if (changement.concerne(TypeChangement.OFFRE) || changement.concerne(TypeChangement.DISCIPLINE)) {
+            recharger();
+        }
+    }
+
+    /**
+     * Passe au statut EXPIRE les offres de la file dont l'échéance est atteinte, par lots, chacun dans sa transaction.
+     * Un lot en échec est remis en file et retenté après {@code app.expiration-offres.reprise-ms}.
+     *
+     * @return Le nombre d'offres expirées.
+     */
+    int expirerEcheances() {
+        int expirees = 0;
+        while (true) {
+            List<Long> lot = new ArrayList<>();
+            long maintenant;
+            synchronized (this) {
+                maintenant = horlogeMs.getAsLong();
+                if (maintenant < repriseApres) {
+                    break;
+                }
+                while (lot.size() < tailleLot && !file.isEmpty() && file.peek().instant() <= maintenant) {
+                    lot.add(file.poll().idOffre());
+                }
+            }
+            if (lot.isEmpty()) {
+                break;
+            }
+            LocalDateTime date = versDate(maintenant);
+            try {
+                Integer nombre = transaction.execute(statut -> offreRepository.expirerOffresEchues(lot, date));
+                expirees += nombre != null ? nombre : 0;
+            } catch (DataAccessException | TransactionException e) {
+                log.warn("Expiration de {} offre(s) impossible, nouvel essai dans {} ms : {}", lot.size(), repriseMs, e.getMessage());
+                synchronized (this) {
+                    lot.forEach(idOffre -> file.add(new Echeance(maintenant, idOffre)));
+                    repriseApres = maintenant + repriseMs;
+                }
+                break;
+            }
+        }
+        if (expirees > 0) {
+            log.info("{} offre(s) passée(s) au statut EXPIRE.", expirees);
+        }
+        return expirees;
+    }
+
+    @Override
+    public void destroy() {
+        if (minuterie != null) {
+            minuterie.shutdownNow();
+        }
+    }
+
+    synchronized int enAttente() {
+        return file.size();
+    }
+
+    synchronized long prochaineEcheance() {
+        Echeance tete = file.peek();
+        return tete != null ? tete.instant() : Long.MAX_VALUE;
+    }
+
+    private void declencher() {
+        try {
+            expirerEcheances();
+            boolean aRecharger;
+            synchronized (this) {
+                aRecharger = horlogeMs.getAsLong() >= borne;
+                if (!aRecharger) {
+                    armer();
+                }
+            }
+            if (aRecharger) {
+                recharger();
+            }
+        } catch (RuntimeException e) {
+            log.error("Erreur du moteur d'expiration des offres", e);
+        }
+    }
+
+    /** Programme la minuterie sur la prochaine échéance, la fin de la file ou la reprise après un échec. */
+    private void armer() {
+        if (minuterie == null || minuterie.isShutdown()) {
+            return;
+        }
+        if (prochainDeclenchement != null) {
+            prochainDeclenchement.cancel(false);
+            prochainDeclenchement = null;
+        }
+        long cible = Math.max(Math.min(prochaineEcheance(), borne), repriseApres);
+        if (cible == Long.MAX_VALUE) {
+            return;
+        }
+        long delai = Math.max(0, cible - horlogeMs.getAsLong());
+        prochainDeclenchement = minuterie.schedule(this::declencher, delai, TimeUnit.MILLISECONDS);
+    }
+
+    private long borne(List<EcheanceOffre> echeances, long horizon) {
+        return echeances.size() < tailleMax ? horizon : versMs(echeances.get(echeances.size() - 1).getEcheance());
+    }
+
+    /** Arrondi à la milliseconde supérieure : l'offre n'est jamais présentée avant son échéance en base. */
+    private static long versMs(LocalDateTime date) {
+        Instant instant = date.atZone(ZoneId.systemDefault()).toInstant();
+        return instant.toEpochMilli() + (instant.getNano() % 1_000_000 != 0 ? 1 : 0);
+    }
+
+    private static LocalDateTime versDate(long ms) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(ms), ZoneId.systemDefault());
+    }
+}
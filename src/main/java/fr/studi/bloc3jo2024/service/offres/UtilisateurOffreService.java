@@ -1,5 +1,7 @@
 package fr.studi.bloc3jo2024.service.offres;
 
+import fr.studi.bloc3jo2024.concurrence.ClasseCharge;
+import fr.studi.bloc3jo2024.concurrence.Cloison;
 import fr.studi.bloc3jo2024.dto.offres.OffreDto;
 import fr.studi.bloc3jo2024.entity.Offre;
 import fr.studi.bloc3jo2024.entity.Discipline;
@@ -18,6 +20,7 @@ import org.springframework.transaction.annotation.Transactional;
 import java.time.LocalDateTime;
 
 @Service
+@Cloison(ClasseCharge.CATALOGUE)
 @Transactional(readOnly = true)
 @RequiredArgsConstructor
 public class UtilisateurOffreService {
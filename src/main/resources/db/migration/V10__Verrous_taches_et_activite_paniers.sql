@@ -0,0 +1,12 @@
+-- Verrous des tâches planifiées (VerrouTaches) : une ligne par tâche, prise par une seule instance jusqu'à
+-- verrouille_jusqua. Une instance arrêtée en cours de tâche libère son verrou à cette échéance.
+CREATE TABLE IF NOT EXISTS verrous_taches (
+                                              nom VARCHAR(64) PRIMARY KEY,
+                                              verrouille_jusqua TIMESTAMP NOT NULL,
+                                              verrouille_le TIMESTAMP NOT NULL,
+                                              verrouille_par VARCHAR(255) NOT NULL
+);
+
+-- Dernière modification d'un panier : les paniers EN_ATTENTE inactifs sont purgés (PanierServiceImpl).
+-- Sans valeur pour les paniers existants, la date d'ajout fait foi.
+ALTER TABLE paniers ADD COLUMN IF NOT EXISTS date_modification TIMESTAMP;
@@ -0,0 +1,5 @@
+-- Paniers EN_ATTENTE par dernière activité (purge des paniers abandonnés) : index partiel sur l'expression utilisée
+-- par la purge. Créé en CONCURRENTLY pour ne pas bloquer les écritures (Flyway exécute alors cette migration hors
+-- transaction).
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_paniers_en_attente_activite ON paniers ((COALESCE(date_modification, date_ajout)))
+    WHERE statut_panier = 'EN_ATTENTE';
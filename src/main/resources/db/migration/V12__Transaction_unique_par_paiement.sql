@@ -0,0 +1,24 @@
+-- Une seule transaction par paiement.
+-- Depuis le partitionnement (V6), l'unicité porte sur (id_payement, date_transaction) : PostgreSQL impose la clé de
+-- partitionnement dans toute contrainte d'unicité. Ce déclencheur rétablit l'unicité du paiement seul : il verrouille
+-- la ligne du paiement, ce qui sérialise les insertions concurrentes pour un même paiement, puis refuse l'insertion
+-- si une transaction existe déjà (recherche par l'index d'unicité, dont id_payement est la première colonne).
+-- Les partitions créées par creer_partition_transactions héritent du déclencheur à leur attachement ; les lignes
+-- qu'elles reprennent de la partition par défaut y sont copiées avant, sans le déclencher.
+CREATE OR REPLACE FUNCTION verifier_transaction_unique_par_paiement() RETURNS TRIGGER
+    LANGUAGE plpgsql AS
+$$
+BEGIN
+    PERFORM 1 FROM paiements WHERE id_paiement = NEW.id_payement FOR NO KEY UPDATE;
+    IF EXISTS (SELECT 1 FROM transactions WHERE id_payement = NEW.id_payement) THEN
+        RAISE EXCEPTION 'Une transaction existe déjà pour le paiement %', NEW.id_payement
+            USING ERRCODE = 'unique_violation';
+    END IF;
+    RETURN NEW;
+END
+$$;
+
+CREATE TRIGGER transactions_une_par_paiement
+    BEFORE INSERT ON transactions
+    FOR EACH ROW
+EXECUTE FUNCTION verifier_transaction_unique_par_paiement();
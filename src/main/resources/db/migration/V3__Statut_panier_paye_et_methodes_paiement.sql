@@ -0,0 +1,8 @@
+-- Alignement du type statut_panier sur l'énumération Java StatutPanier (EN_ATTENTE, PAYE, SAUVEGARDE).
+-- Sans cette valeur, la finalisation d'un panier (passage au statut PAYE) échoue sur PostgreSQL.
+ALTER TYPE statut_panier ADD VALUE IF NOT EXISTS 'PAYE';
+
+-- Insertion des méthodes de paiement acceptées par l'application.
+INSERT INTO methodes_paiement (nom_methode_paiement) VALUES ('CARTE_BANCAIRE') ON CONFLICT (nom_methode_paiement) DO NOTHING;
+INSERT INTO methodes_paiement (nom_methode_paiement) VALUES ('PAYPAL') ON CONFLICT (nom_methode_paiement) DO NOTHING;
+INSERT INTO methodes_paiement (nom_methode_paiement) VALUES ('STRIPE') ON CONFLICT (nom_methode_paiement) DO NOTHING;
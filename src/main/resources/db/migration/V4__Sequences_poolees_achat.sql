@@ -0,0 +1,8 @@
+-- Séquences "poolées" pour les tables écrites à chaque achat (paniers, paiements, transactions, billets).
+-- Hibernate réserve 50 identifiants par appel à nextval (allocationSize = 50) au lieu d'un INSERT ... RETURNING
+-- par ligne avec IDENTITY : les INSERT peuvent alors être regroupés en batch JDBC.
+-- L'incrément doit rester égal à l'allocationSize des entités (contrôlé par Hibernate au démarrage).
+ALTER SEQUENCE IF EXISTS paniers_id_panier_seq INCREMENT BY 50;
+ALTER SEQUENCE IF EXISTS paiements_id_paiement_seq INCREMENT BY 50;
+ALTER SEQUENCE IF EXISTS transactions_id_transaction_seq INCREMENT BY 50;
+ALTER SEQUENCE IF EXISTS billets_id_billet_seq INCREMENT BY 50;
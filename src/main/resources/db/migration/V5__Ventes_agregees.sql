@@ -0,0 +1,25 @@
+-- Agrégat des ventes réussies par jour, type d'offre, offre et discipline.
+-- Alimenté dans la transaction qui valide le paiement (INSERT ... ON CONFLICT), il remplace la jointure
+-- paiements → transactions → paniers → contenu_panier → offres rejouée sur tout l'historique par les statistiques.
+-- Pas de clé étrangère : l'historique des ventes doit survivre à la suppression d'une offre.
+CREATE TABLE IF NOT EXISTS ventes_agregees (
+                                               jour DATE NOT NULL,
+                                               type_offre type_offre NOT NULL,
+                                               id_offre BIGINT NOT NULL,
+                                               id_discipline BIGINT NOT NULL,
+                                               nb_ventes BIGINT NOT NULL DEFAULT 0,
+                                               quantite_vendue BIGINT NOT NULL DEFAULT 0,
+                                               PRIMARY KEY (jour, type_offre, id_offre, id_discipline)
+);
+
+-- Reprise de l'historique : mêmes règles que l'ancienne requête (paiement ACCEPTE, transaction REUSSI, jour de la transaction).
+INSERT INTO ventes_agregees (jour, type_offre, id_offre, id_discipline, nb_ventes, quantite_vendue)
+SELECT CAST(t.date_transaction AS DATE), o.type_offre, o.id_offre, o.id_discipline, COUNT(*), SUM(cp.quantite_commandee)
+FROM paiements p
+         JOIN transactions t ON t.id_payement = p.id_paiement
+         JOIN contenu_panier cp ON cp.id_panier = p.id_panier
+         JOIN offres o ON o.id_offre = cp.id_offre
+WHERE p.statut_paiement = 'ACCEPTE'
+  AND t.statut_transaction = 'REUSSI'
+GROUP BY CAST(t.date_transaction AS DATE), o.type_offre, o.id_offre, o.id_discipline
+ON CONFLICT (jour, type_offre, id_offre, id_discipline) DO NOTHING;
@@ -0,0 +1,99 @@
+-- Partitionnement mensuel de transactions par date_transaction.
+-- Chaque mois a sa partition transactions_pAAAAMM ; une partition par défaut recueille les dates hors plage
+-- (ses lignes sont déplacées dans la bonne partition lors de sa création). Les requêtes qui bornent date_transaction
+-- ne parcourent que les partitions concernées, et les mois anciens sont détachés vers transactions_archive.
+-- La clé primaire et l'unicité du paiement incluent la clé de partitionnement, comme l'exige PostgreSQL.
+
+-- 1. Ancienne table mise de côté ; la séquence lui est détachée pour survivre à sa suppression.
+ALTER TABLE transactions RENAME TO transactions_avant_partitionnement;
+ALTER TABLE transactions_avant_partitionnement RENAME CONSTRAINT transactions_pkey TO transactions_avant_partitionnement_pkey;
+ALTER TABLE transactions_avant_partitionnement RENAME CONSTRAINT transactions_id_payement_key TO transactions_avant_partitionnement_id_payement_key;
+ALTER SEQUENCE transactions_id_transaction_seq OWNED BY NONE;
+
+-- 2. Table partitionnée
+CREATE TABLE transactions (
+                              id_transaction BIGINT NOT NULL DEFAULT nextval('transactions_id_transaction_seq'),
+                              montant DECIMAL(38,2) NOT NULL CHECK (montant >= 0),
+                              date_transaction TIMESTAMP NOT NULL DEFAULT NOW(),
+                              statut_transaction statut_transaction NOT NULL,
+                              date_validation TIMESTAMP,
+                              details_transaction TEXT,
+                              is_test BOOLEAN NOT NULL DEFAULT FALSE,
+                              id_payement BIGINT NOT NULL,
+                              PRIMARY KEY (id_transaction, date_transaction),
+                              UNIQUE (id_payement, date_transaction),
+                              FOREIGN KEY (id_payement) REFERENCES paiements(id_paiement)
+) PARTITION BY RANGE (date_transaction);
+
+ALTER SEQUENCE transactions_id_transaction_seq OWNED BY transactions.id_transaction;
+
+CREATE TABLE transactions_defaut PARTITION OF transactions DEFAULT;
+
+-- Mois détachés : mêmes colonnes, sans clé étrangère (l'archive ne contraint plus la suppression des paiements).
+CREATE TABLE transactions_archive (LIKE transactions INCLUDING DEFAULTS INCLUDING CONSTRAINTS);
+ALTER TABLE transactions_archive ADD PRIMARY KEY (id_transaction, date_transaction);
+
+-- 3. Création d'une partition mensuelle (idempotente). Retourne FALSE si elle existe déjà.
+CREATE OR REPLACE FUNCTION creer_partition_transactions(p_mois DATE) RETURNS BOOLEAN
+    LANGUAGE plpgsql AS
+$$
+DECLARE
+    v_debut DATE := date_trunc('month', p_mois)::date;
+    v_fin   DATE := (date_trunc('month', p_mois) + INTERVAL '1 month')::date;
+    v_nom   TEXT := 'transactions_p' || to_char(p_mois, 'YYYYMM');
+BEGIN
+    IF to_regclass(v_nom) IS NOT NULL THEN
+        RETURN FALSE;
+    END IF;
+    EXECUTE format('CREATE TABLE %I (LIKE transactions INCLUDING DEFAULTS INCLUDING CONSTRAINTS)', v_nom);
+    -- Les lignes de ce mois déjà reçues par la partition par défaut doivent la quitter avant l'attachement
+    EXECUTE format('WITH deplacees AS (DELETE FROM transactions_defaut WHERE date_transaction >= %L AND date_transaction < %L RETURNING *) '
+                       || 'INSERT INTO %I SELECT * FROM deplacees', v_debut, v_fin, v_nom);
+    EXECUTE format('ALTER TABLE transactions ATTACH PARTITION %I FOR VALUES FROM (%L) TO (%L)', v_nom, v_debut, v_fin);
+    RETURN TRUE;
+END
+$$;
+
+-- 4. Archivage d'une partition mensuelle : détachement, copie dans transactions_archive puis suppression.
+--    Retourne le nombre de lignes archivées (0 si la partition n'existe pas).
+CREATE OR REPLACE FUNCTION archiver_partition_transactions(p_mois DATE) RETURNS BIGINT
+    LANGUAGE plpgsql AS
+$$
+DECLARE
+    v_nom    TEXT := 'transactions_p' || to_char(p_mois, 'YYYYMM');
+    v_lignes BIGINT;
+BEGIN
+    IF to_regclass(v_nom) IS NULL THEN
+        RETURN 0;
+    END IF;
+    EXECUTE format('ALTER TABLE transactions DETACH PARTITION %I', v_nom);
+    EXECUTE format('INSERT INTO transactions_archive SELECT * FROM %I', v_nom);
+    GET DIAGNOSTICS v_lignes = ROW_COUNT;
+    EXECUTE format('DROP TABLE %I', v_nom);
+    RETURN v_lignes;
+END
+$$;
+
+-- 5. Partitions de l'historique jusqu'à trois mois dans le futur, puis reprise des lignes.
+DO
+$$
+DECLARE
+    v_mois DATE;
+BEGIN
+    FOR v_mois IN
+        SELECT generate_series(date_trunc('month', COALESCE((SELECT MIN(date_transaction) FROM transactions_avant_partitionnement), NOW())),
+                               date_trunc('month', NOW()) + INTERVAL '3 months',
+                               INTERVAL '1 month')::date
+        LOOP
+            PERFORM creer_partition_transactions(v_mois);
+        END LOOP;
+END
+$$;
+
+INSERT INTO transactions (id_transaction, montant, date_transaction, statut_transaction, date_validation,
+                          details_transaction, is_test, id_payement)
+SELECT id_transaction, montant, date_transaction, statut_transaction, date_validation,
+       details_transaction, is_test, id_payement
+FROM transactions_avant_partitionnement;
+
+DROP TABLE transactions_avant_partitionnement;
@@ -0,0 +1,20 @@
+-- Index des recherches fréquentes absentes du schéma initial.
+-- Créés en CONCURRENTLY pour ne pas bloquer les écritures sur des tables déjà volumineuses
+-- (Flyway exécute alors cette migration hors transaction).
+
+-- Panier courant d'un utilisateur (findByUtilisateur_idUtilisateurAndStatut, appelé à chaque opération sur le panier)
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_paniers_utilisateur_statut ON paniers (id_utilisateur_uuid, statut_panier);
+
+-- Clés des billets encore valides (findAllValidTicketKeys) : index partiel limité aux billets non scannés,
+-- la clé incluse permet un parcours d'index seul.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_billets_non_scannes ON billets (cle_finale_billet) WHERE is_scanned = FALSE;
+
+-- Suppression des lignes de panier d'une offre (deleteByOffre) : la clé primaire commence par id_panier.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_contenu_panier_offre ON contenu_panier (id_offre);
+
+-- Purge des tokens expirés (deleteByDateExpirationBefore) et recherche du token d'un utilisateur par type.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_authtokentemp_date_expiration ON auth_tokens_temporaire (date_expiration);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_authtokentemp_utilisateur_type ON auth_tokens_temporaire (id_utilisateur_uuid, type_token);
+
+-- Billets vendus par offre (compteurs de ventes) : la clé primaire commence par id_billet.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_billet_offre_offre ON billet_offre (id_offre);
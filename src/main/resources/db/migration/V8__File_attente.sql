@@ -0,0 +1,9 @@
+-- État de la salle d'attente devant le panier et le paiement (une seule ligne), sauvegardé périodiquement quand
+-- app.file-attente.persistance est actif : un redémarrage conserve l'ordre des tickets déjà émis.
+CREATE TABLE IF NOT EXISTS file_attente_etat (
+                                                 id SMALLINT PRIMARY KEY CHECK (id = 1),
+                                                 dernier_numero BIGINT NOT NULL,
+                                                 curseur_admission BIGINT NOT NULL,
+                                                 debit_mesure DOUBLE PRECISION NOT NULL DEFAULT 0,
+                                                 mis_a_jour TIMESTAMP NOT NULL
+);
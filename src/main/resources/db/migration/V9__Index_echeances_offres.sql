@@ -0,0 +1,6 @@
+-- Échéances des offres disponibles (ExpirationOffresService) : index partiel limité aux offres encore en vente,
+-- parcouru dans l'ordre des dates jusqu'à l'horizon de chargement. Les échéances portées par la date de la discipline
+-- passent par idx_discipline_date puis idx_offre_discipline.
+-- Créé en CONCURRENTLY pour ne pas bloquer les écritures (Flyway exécute alors cette migration hors transaction).
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_offres_disponibles_date_expiration ON offres (date_expiration)
+    WHERE statut_offre = 'DISPONIBLE';
@@ -0,0 +1,145 @@
+package fr.studi.bloc3jo2024.analytique;
+
+import fr.studi.bloc3jo2024.dto.statistiques.LigneAnalyseDto;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TableVentesTest {
+
+    private static final LocalDateTime J1 = LocalDateTime.of(2024, 7, 26, 10, 15);
+    private static final LocalDateTime J3 = LocalDateTime.of(2024, 7, 28, 18, 0);
+
+    private TableVentes tableExemple() {
+        return new TableVentes.Constructeur()
+                .ajouter(J1, "SOLO", "Natation", "Paris", "France", "CARTE_BANCAIRE", 1, 5_000)
+                .ajouter(J1, "DUO", "Natation", "Paris", "Belgique", "PAYPAL", 2, 18_000)
+                .ajouter(J3, "SOLO", "Escrime", "Lille", "France", "CARTE_BANCAIRE", 3, 15_000)
+                .ajouter(J3, "FAMILIALE", "Escrime", "Lille", null, "STRIPE", 1, 19_000)
+                .construire();
+    }
+
+    @Test
+    void executer_regroupeParPaysEtTrieParMontantDecroissant() {
+        // Arrange
+        TableVentes table = tableExemple();
+
+        // Act
+        List<LigneAnalyseDto> lignes = table.executer(new RequeteVentes(DimensionVente.PAYS_ACHETEUR, null, null, null));
+
+        // Assert
+        assertThat(lignes).extracting(LigneAnalyseDto::getValeur).containsExactly("France", "INCONNU", "Belgique");
+        LigneAnalyseDto france = lignes.get(0);
+        assertThat(france.getNombreLignes()).isEqualTo(2);
+        assertThat(france.getQuantite()).isEqualTo(4);
+        assertThat(france.getMontant()).isEqualByComparingTo(new BigDecimal("200.00"));
+    }
+
+    @Test
+    void executer_appliqueLesFiltresEnEtEntreDimensionsEtEnOuEntreValeurs() {
+        // Arrange
+        TableVentes table = tableExemple();
+        Map<DimensionVente, Set<String>> filtres = Map.of(
+                DimensionVente.TYPE_OFFRE, Set.of("SOLO", "DUO"),
+                DimensionVente.VILLE, Set.of("Paris"));
+
+        // Act
+        List<LigneAnalyseDto> lignes = table.executer(new RequeteVentes(DimensionVente.METHODE_PAIEMENT, filtres, null, null));
+
+        // Assert
+        assertThat(lignes).extracting(LigneAnalyseDto::getValeur).containsExactly("PAYPAL", "CARTE_BANCAIRE");
+        assertThat(lignes).extracting(LigneAnalyseDto::getQuantite).containsExactly(2L, 1L);
+    }
+
+    @Test
+    void executer_filtreInconnu_aucuneLigne() {
+        // Act
+        List<LigneAnalyseDto> lignes = tableExemple().executer(new RequeteVentes(DimensionVente.DISCIPLINE,
+                Map.of(DimensionVente.VILLE, Set.of("Marseille")), null, null));
+
+        // Assert
+        assertThat(lignes).isEmpty();
+    }
+
+    @Test
+    void executer_parJourEtPeriode_joursTriesEtBornesInclusives() {
+        // Arrange
+        TableVentes table = tableExemple();
+
+        // Act
+        List<LigneAnalyseDto> tousLesJours = table.executer(new RequeteVentes(DimensionVente.JOUR, null, null, null));
+        List<LigneAnalyseDto> apresJ1 = table.executer(new RequeteVentes(DimensionVente.JOUR, null,
+                LocalDate.of(2024, 7, 27), LocalDate.of(2024, 7, 28)));
+        List<LigneAnalyseDto> parHeure = table.executer(new RequeteVentes(DimensionVente.HEURE, null,
+                null, LocalDate.of(2024, 7, 26)));
+
+        // Assert : le jour sans vente (27/07) n'apparaît pas
+        assertThat(tousLesJours).extracting(LigneAnalyseDto::getValeur).containsExactly("2024-07-26", "2024-07-28");
+        assertThat(apresJ1).extracting(LigneAnalyseDto::getValeur).containsExactly("2024-07-28");
+        assertThat(apresJ1.get(0).getMontant()).isEqualByComparingTo(new BigDecimal("340.00"));
+        assertThat(parHeure).extracting(LigneAnalyseDto::getValeur).containsExactly("10");
+        assertThat(parHeure.get(0).getNombreLignes()).isEqualTo(2);
+    }
+
+    @Test
+    void executer_plusieursBlocs_resultatIdentiqueAuCalculSequentiel() {
+        // Arrange : trois blocs et demi pour forcer la fusion des résultats partiels
+        int nbLignes = TableVentes.TAILLE_BLOC * 3 + TableVentes.TAILLE_BLOC / 2;
+        String[] types = {"SOLO", "DUO", "FAMILIALE"};
+        long[] quantitesAttendues = new long[types.length];
+        long[] montantsAttendus = new long[types.length];
+        long lignesFiltrees = 0;
+        TableVentes.Constructeur constructeur = new TableVentes.Constructeur();
+        for (int i = 0; i < nbLignes; i++) {
+            int type = i % types.length;
+            String ville = i % 5 == 0 ? "Lille" : "Paris";
+            int quantite = 1 + i % 4;
+            long montant = 1_000L * quantite;
+            constructeur.ajouter(J1.plusDays(i % 10), types[type], "Natation", ville, "France", "CARTE_BANCAIRE",
+                    quantite, montant);
+            if (!"Lille".equals(ville)) {
+                quantitesAttendues[type] += quantite;
+                montantsAttendus[type] += montant;
+                lignesFiltrees++;
+            }
+        }
+        TableVentes table = constructeur.construire();
+
+        // Act
+        List<LigneAnalyseDto> lignes = table.executer(new RequeteVentes(DimensionVente.TYPE_OFFRE,
+                Map.of(DimensionVente.VILLE, Set.of("Paris")), null, null));
+
+        // Assert
+        assertThat(table.taille()).isEqualTo(nbLignes);
+        assertThat(lignes).hasSize(types.length);
+        assertThat(lignes.stream().mapToLong(LigneAnalyseDto::getNombreLignes).sum()).isEqualTo(lignesFiltrees);
+        for (LigneAnalyseDto ligne : lignes) {
+            int type = List.of(types).indexOf(ligne.getValeur());
+            assertThat(ligne.getQuantite()).isEqualTo(quantitesAttendues[type]);
+            assertThat(ligne.getMontant()).isEqualByComparingTo(BigDecimal.valueOf(montantsAttendus[type], 2));
+        }
+    }
+
+    @Test
+    void vide_executer_aucuneLigne() {
+        // Act
+        List<LigneAnalyseDto> lignes = TableVentes.vide().executer(new RequeteVentes(DimensionVente.JOUR, null,
+                LocalDate.of(2024, 1, 1), null));
+
+        // Assert
+        assertThat(lignes).isEmpty();
+    }
+
+    @Test
+    void requete_sansRegroupement_refusee() {
+        assertThrows(IllegalArgumentException.class, () -> new RequeteVentes(null, Map.of(), null, null));
+    }
+}
@@ -0,0 +1,175 @@
+package fr.studi.bloc3jo2024.changements;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BusChangementsTest {
+
+    private static final String SQL_NOTIFY = "SELECT pg_notify(?, ?)";
+    private static final String CANAL = "jo2024_changements";
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private DataSource sourceEcoute;
+
+    @Mock
+    private ApplicationEventPublisher publicateur;
+
+    private BusChangements bus;
+
+    @BeforeEach
+    void setUp() {
+        bus = new BusChangements(jdbcTemplate, sourceEcoute, publicateur, true, CANAL, 500, 5_000, 3);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private List<String> notificationsEnvoyees(int nombre) {
+        ArgumentCaptor<String> notifications = ArgumentCaptor.forClass(String.class);
+        verify(jdbcTemplate, times(nombre)).queryForList(eq(SQL_NOTIFY), eq(CANAL), notifications.capture());
+        return notifications.getAllValues();
+    }
+
+    @Test
+    void publier_dansUneTransaction_nEnvoieRienAvantLeCommit() {
+        // Arrange
+        TransactionSynchronizationManager.initSynchronization();
+        bus.publier(TypeChangement.OFFRE, 42L);
+        List<TransactionSynchronization> synchronisations = TransactionSynchronizationManager.getSynchronizations();
+
+        // Act
+        bus.envoyer();
+        int avantCommit = bus.enAttente();
+        synchronisations.forEach(TransactionSynchronization::afterCommit);
+
+        // Assert
+        assertEquals(0, avantCommit);
+        assertEquals(1, bus.enAttente());
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void envoyer_changementsDoublonnes_sontRegroupesEnUneNotification() {
+        // Arrange
+        bus.publier(TypeChangement.OFFRE, 42L);
+        bus.publier(TypeChangement.OFFRE, 42L);
+        bus.publier(TypeChangement.DISCIPLINE, null);
+
+        // Act
+        bus.envoyer();
+
+        // Assert
+        String notification = notificationsEnvoyees(1).get(0);
+        String[] lignes = notification.split("\n");
+        assertEquals(3, lignes.length); // Origine, puis un changement par ligne
+        assertEquals("OFFRE|42", lignes[1]);
+        assertEquals("DISCIPLINE", lignes[2]);
+        assertEquals(0, bus.enAttente());
+    }
+
+    @Test
+    void envoyer_fileDebordee_annonceUnVidageComplet() {
+        // Arrange : 3 changements en attente au plus
+        for (long id = 1; id <= 5; id++) {
+            bus.publier(TypeChangement.OFFRE, id);
+        }
+
+        // Act
+        bus.envoyer();
+
+        // Assert
+        String[] lignes = notificationsEnvoyees(1).get(0).split("\n");
+        assertEquals(2, lignes.length);
+        assertEquals("TOUT", lignes[1]);
+    }
+
+    @Test
+    void envoyer_echecDeLEnvoi_annonceUnVidageCompletAuPassageSuivant() {
+        // Arrange
+        when(jdbcTemplate.queryForList(eq(SQL_NOTIFY), eq(CANAL), anyString()))
+                .thenThrow(new DataAccessResourceFailureException("Base indisponible"))
+                .thenReturn(List.of());
+        bus.publier(TypeChangement.PANIER, "u-1");
+
+        // Act
+        bus.envoyer();
+        bus.envoyer();
+
+        // Assert
+        List<String> notifications = notificationsEnvoyees(2);
+        assertTrue(notifications.get(0).endsWith("\nPANIER|u-1"));
+        assertTrue(notifications.get(1).endsWith("\nTOUT"));
+    }
+
+    @Test
+    void recevoir_notificationDUneAutreInstance_diffuseChaqueChangement() {
+        // Act
+        bus.recevoir("autre-instance\nOFFRE|42\nTOUT\nINCONNU|1");
+
+        // Assert
+        verify(publicateur).publishEvent(new Changement(TypeChangement.OFFRE, "42"));
+        verify(publicateur).publishEvent(new Changement(TypeChangement.TOUT, null));
+        verifyNoMoreInteractions(publicateur);
+    }
+
+    @Test
+    void recevoir_notificationDeCetteInstance_estIgnoree() {
+        // Arrange
+        bus.publier(TypeChangement.OFFRE, 42L);
+        bus.envoyer();
+        String notification = notificationsEnvoyees(1).get(0);
+
+        // Act
+        bus.recevoir(notification);
+
+        // Assert
+        verifyNoInteractions(publicateur);
+    }
+
+    @Test
+    void publier_busInactif_nEnvoieRien() {
+        // Arrange
+        BusChangements inactif = new BusChangements(jdbcTemplate, sourceEcoute, publicateur, false, CANAL, 500, 5_000, 3);
+
+        // Act
+        inactif.publier(TypeChangement.OFFRE, 42L);
+        inactif.envoyer();
+        inactif.demarrer();
+
+        // Assert
+        verifyNoInteractions(jdbcTemplate, sourceEcoute);
+    }
+
+    @Test
+    void constructeur_canalInvalide_estRefuse() {
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class,
+                () -> new BusChangements(jdbcTemplate, sourceEcoute, publicateur, true, "canal; DROP TABLE offres", 500, 5_000, 3));
+    }
+}
@@ -0,0 +1,79 @@
+package fr.studi.bloc3jo2024.concurrence;
+
+import fr.studi.bloc3jo2024.service.CloisonsService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CloisonAspectTest {
+
+    @Mock
+    private CloisonsService cloisonsService;
+
+    /** Service factice : statistiques par défaut, une méthode rangée dans le scan. */
+    @Cloison(ClasseCharge.STATISTIQUES)
+    static class ServiceCloisonne {
+
+        public String tableauDeBord() {
+            return "stats";
+        }
+
+        @Cloison(ClasseCharge.SCAN)
+        public String scanner() {
+            throw new IllegalStateException("Billet déjà scanné");
+        }
+    }
+
+    private ServiceCloisonne proxy;
+
+    @BeforeEach
+    void setUp() {
+        AspectJProxyFactory factory = new AspectJProxyFactory(new ServiceCloisonne());
+        factory.setProxyTargetClass(true);
+        factory.addAspect(new CloisonAspect(cloisonsService));
+        proxy = factory.getProxy();
+    }
+
+    @Test
+    void executer_annotationDeClasse_prendEtRendUnPermisDeLaClasse() {
+        // Arrange
+        when(cloisonsService.entrer(ClasseCharge.STATISTIQUES)).thenReturn(true);
+
+        // Act
+        String resultat = proxy.tableauDeBord();
+
+        // Assert
+        assertEquals("stats", resultat);
+        verify(cloisonsService).sortir(ClasseCharge.STATISTIQUES);
+    }
+
+    @Test
+    void executer_annotationDeMethode_lEmporteEtRendLePermisSurException() {
+        // Arrange
+        when(cloisonsService.entrer(ClasseCharge.SCAN)).thenReturn(true);
+
+        // Act & Assert
+        assertThrows(IllegalStateException.class, () -> proxy.scanner());
+        verify(cloisonsService).sortir(ClasseCharge.SCAN);
+        verify(cloisonsService, never()).entrer(ClasseCharge.STATISTIQUES);
+    }
+
+    @Test
+    void executer_dejaSousPermis_neRendRien() {
+        // Arrange
+        when(cloisonsService.entrer(ClasseCharge.STATISTIQUES)).thenReturn(false);
+
+        // Act
+        proxy.tableauDeBord();
+
+        // Assert
+        verify(cloisonsService, never()).sortir(any());
+    }
+}
@@ -0,0 +1,105 @@
+package fr.studi.bloc3jo2024.concurrence;
+
+import fr.studi.bloc3jo2024.entity.Offre;
+import fr.studi.bloc3jo2024.metrics.VenteMetrics;
+import fr.studi.bloc3jo2024.service.ContentionService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ReessaiSurConflitAspectTest {
+
+    @Mock
+    private ContentionService contentionService;
+    @Mock
+    private VenteMetrics venteMetrics;
+
+    /** Service factice qui échoue sur un conflit de version les {@code echecs} premières fois. */
+    static class ServiceEnConflit {
+        int echecs;
+        int appels;
+
+        @ReessaiSurConflit
+        public String acheter() {
+            appels++;
+            if (appels <= echecs) {
+                throw new ObjectOptimisticLockingFailureException(Offre.class, 42L);
+            }
+            return "ok";
+        }
+
+        @ReessaiSurConflit(tentatives = 2)
+        public String acheterDeuxFois() {
+            return acheter();
+        }
+    }
+
+    private ServiceEnConflit cible;
+    private ServiceEnConflit proxy;
+
+    @BeforeEach
+    void setUp() {
+        cible = new ServiceEnConflit();
+        AspectJProxyFactory factory = new AspectJProxyFactory(cible);
+        factory.setProxyTargetClass(true);
+        factory.addAspect(new ReessaiSurConflitAspect(contentionService, venteMetrics));
+        proxy = factory.getProxy();
+    }
+
+    @Test
+    void executer_conflitsPuisSucces_reessaieEtSignaleLaLigne() {
+        // Arrange
+        cible.echecs = 2;
+        when(contentionService.getTentativesMax()).thenReturn(4);
+        when(contentionService.delaiAvantReessai(anyInt())).thenReturn(Duration.ZERO);
+
+        // Act
+        String resultat = proxy.acheter();
+
+        // Assert
+        assertEquals("ok", resultat);
+        assertEquals(3, cible.appels);
+        verify(contentionService, times(2)).signalerConflit("Offre", 42L);
+        verify(venteMetrics, times(2)).reessaiVerrouOptimiste("Offre", "acheter");
+    }
+
+    @Test
+    void executer_tentativesEpuisees_propageLeConflit() {
+        // Arrange
+        cible.echecs = 10;
+        when(contentionService.delaiAvantReessai(anyInt())).thenReturn(Duration.ZERO);
+
+        // Act & Assert
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> proxy.acheterDeuxFois());
+        assertEquals(2, cible.appels);
+        verify(contentionService, times(2)).signalerConflit("Offre", 42L);
+        verify(venteMetrics, times(1)).reessaiVerrouOptimiste("Offre", "acheterDeuxFois");
+    }
+
+    @Test
+    void executer_transactionEnglobanteActive_neReessaiePas() {
+        // Arrange
+        cible.echecs = 1;
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        try {
+            // Act & Assert
+            assertThrows(ObjectOptimisticLockingFailureException.class, () -> proxy.acheter());
+        } finally {
+            TransactionSynchronizationManager.setActualTransactionActive(false);
+        }
+        assertEquals(1, cible.appels);
+        verifyNoInteractions(contentionService);
+    }
+}
@@ -0,0 +1,123 @@
+package fr.studi.bloc3jo2024.config;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class GardeRepliqueTest {
+
+    @Mock
+    private DataSource replique;
+
+    @Mock
+    private DataSource primaire;
+
+    @Mock
+    private JdbcTemplate jdbcReplique;
+
+    @Mock
+    private Connection connexionReplique;
+
+    @Mock
+    private Connection connexionPrimaire;
+
+    private final AtomicLong horloge = new AtomicLong(1_000_000);
+    private GardeReplique garde;
+
+    @BeforeEach
+    void setUp() {
+        // Retard maximal de 1 s, mesuré toutes les secondes
+        garde = new GardeReplique(replique, primaire, jdbcReplique, 1_000, 1_000, horloge::get);
+    }
+
+    @Test
+    void getConnection_avantLaPremiereMesure_utiliseLePrimaire() throws Exception {
+        // Arrange
+        when(primaire.getConnection()).thenReturn(connexionPrimaire);
+
+        // Act & Assert
+        assertSame(connexionPrimaire, garde.getConnection());
+        verifyNoInteractions(replique);
+    }
+
+    @Test
+    void getConnection_retardAcceptable_utiliseLaReplique() throws Exception {
+        // Arrange
+        when(jdbcReplique.queryForObject(GardeReplique.SQL_RETARD, Double.class)).thenReturn(0.2);
+        when(replique.getConnection()).thenReturn(connexionReplique);
+
+        // Act
+        garde.verifier();
+
+        // Assert
+        assertSame(connexionReplique, garde.getConnection());
+        verifyNoInteractions(primaire);
+    }
+
+    @Test
+    void getConnection_retardExcessif_utiliseLePrimaire() throws Exception {
+        // Arrange
+        when(jdbcReplique.queryForObject(GardeReplique.SQL_RETARD, Double.class)).thenReturn(0.2, 4.5);
+        when(primaire.getConnection()).thenReturn(connexionPrimaire);
+
+        // Act
+        garde.verifier();
+        boolean avant = garde.estDisponible();
+        garde.verifier();
+
+        // Assert
+        assertTrue(avant);
+        assertFalse(garde.estDisponible());
+        assertSame(connexionPrimaire, garde.getConnection());
+    }
+
+    @Test
+    void getConnection_repliqueDeconnecteeDuPrimaire_utiliseLePrimaire() throws Exception {
+        // Arrange : retard nul tant que le flux WAL est reçu, puis plus de flux (receive = replay, mais figés)
+        when(jdbcReplique.queryForObject(GardeReplique.SQL_RETARD, Double.class)).thenReturn(0.0, (Double) null);
+        when(primaire.getConnection()).thenReturn(connexionPrimaire);
+
+        // Act
+        garde.verifier();
+        boolean avant = garde.estDisponible();
+        garde.verifier();
+
+        // Assert
+        assertTrue(avant);
+        assertFalse(garde.estDisponible());
+        assertSame(connexionPrimaire, garde.getConnection());
+        verifyNoInteractions(replique);
+    }
+
+    @Test
+    void estDisponible_mesureEnEchecOuPerimee_repasseSurLePrimaire() {
+        // Arrange
+        when(jdbcReplique.queryForObject(GardeReplique.SQL_RETARD, Double.class))
+                .thenReturn(0.0)
+                .thenThrow(new DataAccessResourceFailureException("Réplique injoignable"))
+                .thenReturn(0.0);
+
+        // Act & Assert
+        garde.verifier();
+        assertTrue(garde.estDisponible());
+        garde.verifier();
+        assertFalse(garde.estDisponible()); // Mesure en échec
+
+        garde.verifier();
+        assertTrue(garde.estDisponible());
+        horloge.addAndGet(3_001);
+        assertFalse(garde.estDisponible()); // Plus de mesure depuis 3 périodes
+    }
+}
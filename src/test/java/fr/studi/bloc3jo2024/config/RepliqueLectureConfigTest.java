@@ -0,0 +1,101 @@
+package fr.studi.bloc3jo2024.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.SimpleDriverDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RepliqueLectureConfigTest {
+
+    private SimpleDriverDataSource primaire;
+    private SimpleDriverDataSource replique;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+
+    private static SimpleDriverDataSource base(String nom) {
+        SimpleDriverDataSource dataSource = new SimpleDriverDataSource(new org.h2.Driver(),
+                "jdbc:h2:mem:" + nom + "-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "");
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("CREATE TABLE base (nom VARCHAR(20))");
+        jdbc.update("INSERT INTO base VALUES (?)", nom);
+        return dataSource;
+    }
+
+    @BeforeEach
+    void setUp() {
+        primaire = base("primaire");
+        replique = base("replique");
+        DataSource routage = RepliqueLectureConfig.routage(primaire, replique);
+        jdbcTemplate = new JdbcTemplate(routage);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(routage));
+    }
+
+    @AfterEach
+    void tearDown() {
+        new JdbcTemplate(primaire).execute("SHUTDOWN");
+        new JdbcTemplate(replique).execute("SHUTDOWN");
+    }
+
+    private String baseInterrogee() {
+        return jdbcTemplate.queryForObject("SELECT nom FROM base", String.class);
+    }
+
+    @Test
+    void routage_transactionEnLectureSeule_estServieParLaReplique() {
+        // Arrange
+        transactionTemplate.setReadOnly(true);
+
+        // Act
+        String base = transactionTemplate.execute(statut -> baseInterrogee());
+
+        // Assert
+        assertEquals("replique", base);
+    }
+
+    @Test
+    void routage_transactionEnEcritureEtAccesHorsTransaction_restentSurLePrimaire() {
+        // Act
+        String enTransaction = transactionTemplate.execute(statut -> baseInterrogee());
+        String horsTransaction = baseInterrogee();
+
+        // Assert
+        assertEquals("primaire", enTransaction);
+        assertEquals("primaire", horsTransaction);
+    }
+
+    @Test
+    void configuration_repliqueActive_creeDesPoolsDistinctsEtRouteParDefautSurLePrimaire() {
+        new ApplicationContextRunner()
+                .withConfiguration(AutoConfigurations.of(DataSourceAutoConfiguration.class))
+                .withUserConfiguration(RepliqueLectureConfig.class)
+                .withPropertyValues(
+                        "spring.datasource.url=jdbc:h2:mem:primaire-config",
+                        "spring.datasource.hikari.maximum-pool-size=5",
+                        "app.replique.active=true",
+                        "app.replique.url=jdbc:h2:mem:replique-config",
+                        "app.replique.hikari.maximum-pool-size=10")
+                .run(contexte -> {
+                    // Assert
+                    assertInstanceOf(LazyConnectionDataSourceProxy.class, contexte.getBean(DataSource.class));
+                    HikariDataSource poolPrimaire = contexte.getBean("primaireDataSource", HikariDataSource.class);
+                    HikariDataSource poolReplique = contexte.getBean("repliqueDataSource", HikariDataSource.class);
+                    assertEquals(5, poolPrimaire.getMaximumPoolSize());
+                    assertEquals(10, poolReplique.getMaximumPoolSize());
+                    assertEquals("Jo2024RepliqueHikariPool", poolReplique.getPoolName());
+                    assertTrue(poolReplique.isReadOnly());
+                });
+    }
+}
@@ -10,6 +10,7 @@ import fr.studi.bloc3jo2024.entity.enums.StatutOffre;
 import fr.studi.bloc3jo2024.entity.enums.TypeOffre;
 import fr.studi.bloc3jo2024.exception.ResourceNotFoundException;
 import fr.studi.bloc3jo2024.service.offres.AdminOffreService;
+import fr.studi.bloc3jo2024.service.OffresEpuiseesService;
 import fr.studi.bloc3jo2024.service.offres.UtilisateurOffreService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Nested;
@@ -51,6 +52,9 @@ class OffreControllerTest {
     @Mock
     private UtilisateurOffreService utilisateurOffreService;
 
+    @Mock
+    private OffresEpuiseesService offresEpuiseesService;
+
     // Instances des contrôleurs à tester
     @InjectMocks
     private AdminOffreController adminOffreController;
@@ -269,5 +273,13 @@ class OffreControllerTest {
             assertThrows(ResourceNotFoundException.class, () -> utilisateurOffreController.obtenirOffreDisponibleParId(offreId));
             verify(utilisateurOffreService, times(1)).obtenirOffreDisponibleParId(offreId);
         }
+
+        @Test
+        void obtenirOffreDisponibleParId_OffreEpuisee_ThrowsResourceNotFoundWithoutCallingService() {
+            Long offreId = 1L;
+            when(offresEpuiseesService.estEpuisee(offreId)).thenReturn(true);
+            assertThrows(ResourceNotFoundException.class, () -> utilisateurOffreController.obtenirOffreDisponibleParId(offreId));
+            verifyNoInteractions(utilisateurOffreService);
+        }
     }
 }
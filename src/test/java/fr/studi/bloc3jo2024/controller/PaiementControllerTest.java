@@ -2,13 +2,17 @@ package fr.studi.bloc3jo2024.controller;
 
 import fr.studi.bloc3jo2024.dto.paiement.PaiementDto;
 import fr.studi.bloc3jo2024.dto.paiement.PaiementSimulationResultDto;
+import fr.studi.bloc3jo2024.entity.Utilisateur;
 import fr.studi.bloc3jo2024.entity.enums.MethodePaiementEnum;
 import fr.studi.bloc3jo2024.exception.ResourceNotFoundException;
+import fr.studi.bloc3jo2024.service.IdempotenceService;
 import fr.studi.bloc3jo2024.service.PaiementService;
+import fr.studi.bloc3jo2024.service.impl.DetailUtilisateurServiceImpl;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -32,6 +36,9 @@ class PaiementControllerTest {
     @Mock
     private PaiementService paiementService;
 
+    @Spy
+    private IdempotenceService idempotenceService = new IdempotenceService(100, 60_000, 1_000);
+
     private final UUID utilisateurId = UUID.randomUUID();
     private final Long panierId = 1L;
     private final Long paiementId = 2L;
@@ -59,6 +66,23 @@ class PaiementControllerTest {
         SecurityContextHolder.clearContext();
     }
 
+    @Test
+    void effectuerPaiement_MemeCleIdempotence_NeRelancePasLePaiement() {
+        // Arrange
+        mockAuthentication();
+        when(paiementService.effectuerPaiement(utilisateurId, panierId, methodePaiement)).thenReturn(paiementDto);
+        paiementController.effectuerPaiement(panierId, methodePaiement, "cle-1");
+
+        // Act
+        ResponseEntity<PaiementDto> rejeu = paiementController.effectuerPaiement(panierId, methodePaiement, "cle-1");
+
+        // Assert
+        assertEquals(HttpStatus.CREATED, rejeu.getStatusCode());
+        assertSame(paiementDto, rejeu.getBody());
+        verify(paiementService, times(1)).effectuerPaiement(utilisateurId, panierId, methodePaiement);
+        clearAuthentication();
+    }
+
     @Test
     void effectuerPaiement_ValidInput_ReturnsCreatedPaiementDto() {
         // Arrange
@@ -66,7 +90,7 @@ class PaiementControllerTest {
         when(paiementService.effectuerPaiement(utilisateurId, panierId, methodePaiement)).thenReturn(paiementDto);
 
         // Act
-        ResponseEntity<PaiementDto> response = paiementController.effectuerPaiement(panierId, methodePaiement);
+        ResponseEntity<PaiementDto> response = paiementController.effectuerPaiement(panierId, methodePaiement, null);
 
         // Assert
         assertEquals(HttpStatus.CREATED, response.getStatusCode());
@@ -75,6 +99,24 @@ class PaiementControllerTest {
         clearAuthentication();
     }
 
+    @Test
+    void effectuerPaiement_PrincipalJwt_UtiliseIdDeLEntiteUtilisateur() {
+        // Arrange : principal tel que posé par JwtAuthenticationFilter (username = email)
+        Utilisateur utilisateur = Utilisateur.builder().idUtilisateur(utilisateurId).email("acheteur@jo.fr").build();
+        Authentication authentication = mock(Authentication.class);
+        when(authentication.getPrincipal()).thenReturn(new DetailUtilisateurServiceImpl(utilisateur));
+        SecurityContextHolder.getContext().setAuthentication(authentication);
+        when(paiementService.effectuerPaiement(utilisateurId, panierId, methodePaiement)).thenReturn(paiementDto);
+
+        // Act
+        ResponseEntity<PaiementDto> response = paiementController.effectuerPaiement(panierId, methodePaiement, null);
+
+        // Assert
+        assertEquals(HttpStatus.CREATED, response.getStatusCode());
+        verify(paiementService, times(1)).effectuerPaiement(utilisateurId, panierId, methodePaiement);
+        clearAuthentication();
+    }
+
     @Test
     void effectuerPaiement_ResourceNotFound_ThrowsNotFoundException() {
         // Arrange
@@ -84,7 +126,7 @@ class PaiementControllerTest {
 
         // Act & Assert
         ResponseStatusException exception = assertThrows(ResponseStatusException.class,
-                () -> paiementController.effectuerPaiement(panierId, methodePaiement));
+                () -> paiementController.effectuerPaiement(panierId, methodePaiement, null));
         assertEquals(HttpStatus.NOT_FOUND, exception.getStatusCode());
         assertEquals("Panier non trouvé", exception.getReason());
         verify(paiementService, times(1)).effectuerPaiement(utilisateurId, panierId, methodePaiement);
@@ -100,7 +142,7 @@ class PaiementControllerTest {
 
         // Act & Assert
         ResponseStatusException exception = assertThrows(ResponseStatusException.class,
-                () -> paiementController.effectuerPaiement(panierId, methodePaiement));
+                () -> paiementController.effectuerPaiement(panierId, methodePaiement, null));
         assertEquals(HttpStatus.CONFLICT, exception.getStatusCode());
         assertEquals("Le paiement a déjà été effectué pour ce panier", exception.getReason());
         verify(paiementService, times(1)).effectuerPaiement(utilisateurId, panierId, methodePaiement);
@@ -116,7 +158,7 @@ class PaiementControllerTest {
 
         // Act & Assert
         ResponseStatusException exception = assertThrows(ResponseStatusException.class,
-                () -> paiementController.effectuerPaiement(panierId, methodePaiement));
+                () -> paiementController.effectuerPaiement(panierId, methodePaiement, null));
         assertEquals(HttpStatus.BAD_REQUEST, exception.getStatusCode());
         assertEquals("Méthode de paiement invalide", exception.getReason());
         verify(paiementService, times(1)).effectuerPaiement(utilisateurId, panierId, methodePaiement);
@@ -130,7 +172,7 @@ class PaiementControllerTest {
 
         // Act & Assert
         assertThrows(IllegalStateException.class,
-                () -> paiementController.effectuerPaiement(panierId, methodePaiement),
+                () -> paiementController.effectuerPaiement(panierId, methodePaiement, null),
                 "L'identifiant de l'utilisateur authentifié n'est pas un UUID valide.");
         verify(paiementService, never()).effectuerPaiement(any(), any(), any());
         clearAuthentication();
@@ -168,6 +210,21 @@ class PaiementControllerTest {
         verify(paiementService, times(1)).simulerResultatPaiement(paiementId, reussi, details);
     }
 
+    @Test
+    void simulerResultatPaiement_PaiementDejaReussi_ThrowsConflictException() {
+        // Arrange
+        final boolean reussi = false;
+        final String details = "Rétrofacturation";
+        when(paiementService.simulerResultatPaiement(paiementId, reussi, details))
+                .thenThrow(new IllegalStateException("Paiement déjà réussi"));
+
+        // Act & Assert
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> paiementController.simulerResultatPaiement(paiementId, reussi, details));
+        assertEquals(HttpStatus.CONFLICT, exception.getStatusCode());
+        assertEquals("Paiement déjà réussi", exception.getReason());
+    }
+
     @Test
     void simulerResultatPaiement_ValidInputWithoutDetails_ReturnsOkSimulationResultDto() {
         // Arrange
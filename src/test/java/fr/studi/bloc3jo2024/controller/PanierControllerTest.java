@@ -1,19 +1,26 @@
 package fr.studi.bloc3jo2024.controller;
 
 import fr.studi.bloc3jo2024.dto.panier.AjouterOffrePanierDto;
+import fr.studi.bloc3jo2024.dto.panier.ContenuPanierDto;
 import fr.studi.bloc3jo2024.dto.panier.ModifierContenuPanierDto;
 import fr.studi.bloc3jo2024.dto.panier.PanierDto;
 import fr.studi.bloc3jo2024.exception.ResourceNotFoundException;
+import fr.studi.bloc3jo2024.service.CachePaniersService;
+import fr.studi.bloc3jo2024.service.IdempotenceService;
+import fr.studi.bloc3jo2024.service.OffresEpuiseesService;
 import fr.studi.bloc3jo2024.service.PanierService;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -28,6 +35,15 @@ class PanierControllerTest {
     @Mock
     private PanierService panierService;
 
+    @Mock
+    private OffresEpuiseesService offresEpuiseesService;
+
+    @Mock
+    private CachePaniersService cachePaniersService;
+
+    @Spy
+    private IdempotenceService idempotenceService = new IdempotenceService(100, 60_000, 1_000);
+
     private final UUID userId = UUID.randomUUID();
     private final Long offreId = 10L;
     private final AjouterOffrePanierDto ajouterOffreDto = new AjouterOffrePanierDto(offreId, 2);
@@ -67,7 +83,7 @@ class PanierControllerTest {
         when(panierService.ajouterOffreAuPanier(userId.toString(), ajouterOffreDto)).thenReturn(panierDto);
 
         // Act
-        ResponseEntity<PanierDto> response = panierController.ajouterOffre(userId, ajouterOffreDto);
+        ResponseEntity<PanierDto> response = panierController.ajouterOffre(userId, ajouterOffreDto, null);
 
         // Assert
         assertEquals(HttpStatus.CREATED, response.getStatusCode());
@@ -82,7 +98,7 @@ class PanierControllerTest {
 
         // Act & Assert
         ResponseStatusException exception = assertThrows(ResponseStatusException.class,
-                () -> panierController.ajouterOffre(userId, ajouterOffreDto));
+                () -> panierController.ajouterOffre(userId, ajouterOffreDto, null));
         assertEquals(HttpStatus.NOT_FOUND, exception.getStatusCode());
         assertEquals("Offre non trouvée", exception.getReason());
         verify(panierService, times(1)).ajouterOffreAuPanier(userId.toString(), ajouterOffreDto);
@@ -95,7 +111,7 @@ class PanierControllerTest {
 
         // Act & Assert
         ResponseStatusException exception = assertThrows(ResponseStatusException.class,
-                () -> panierController.ajouterOffre(userId, ajouterOffreDto));
+                () -> panierController.ajouterOffre(userId, ajouterOffreDto, null));
         assertEquals(HttpStatus.BAD_REQUEST, exception.getStatusCode());
         assertEquals("Quantité invalide", exception.getReason());
         verify(panierService, times(1)).ajouterOffreAuPanier(userId.toString(), ajouterOffreDto);
@@ -108,7 +124,7 @@ class PanierControllerTest {
 
         // Act & Assert
         ResponseStatusException exception = assertThrows(ResponseStatusException.class,
-                () -> panierController.ajouterOffre(userId, ajouterOffreDto));
+                () -> panierController.ajouterOffre(userId, ajouterOffreDto, null));
         assertEquals(HttpStatus.CONFLICT, exception.getStatusCode());
         assertEquals("Stock insuffisant pour cette offre", exception.getReason());
         verify(panierService, times(1)).ajouterOffreAuPanier(userId.toString(), ajouterOffreDto);
@@ -200,7 +216,7 @@ class PanierControllerTest {
         when(panierService.finaliserAchat(userId.toString())).thenReturn(panierDto);
 
         // Act
-        ResponseEntity<PanierDto> response = panierController.payerPanier(userId);
+        ResponseEntity<PanierDto> response = panierController.payerPanier(userId, null);
 
         // Assert
         assertEquals(HttpStatus.OK, response.getStatusCode());
@@ -215,7 +231,7 @@ class PanierControllerTest {
 
         // Act & Assert
         ResponseStatusException exception = assertThrows(ResponseStatusException.class,
-                () -> panierController.payerPanier(userId));
+                () -> panierController.payerPanier(userId, null));
         assertEquals(HttpStatus.NOT_FOUND, exception.getStatusCode());
         assertEquals("Panier non trouvé pour cet utilisateur", exception.getReason());
         verify(panierService, times(1)).finaliserAchat(userId.toString());
@@ -228,9 +244,68 @@ class PanierControllerTest {
 
         // Act & Assert
         ResponseStatusException exception = assertThrows(ResponseStatusException.class,
-                () -> panierController.payerPanier(userId));
+                () -> panierController.payerPanier(userId, null));
         assertEquals(HttpStatus.CONFLICT, exception.getStatusCode());
         assertEquals("Le panier ne peut pas être payé", exception.getReason());
         verify(panierService, times(1)).finaliserAchat(userId.toString());
     }
+
+    @Test
+    void payerPanier_MemeCleIdempotence_RenvoieLaPremiereReponseSansRepayer() {
+        // Arrange
+        when(panierService.finaliserAchat(userId.toString())).thenReturn(panierDto);
+        panierController.payerPanier(userId, "cle-1");
+
+        // Act
+        ResponseEntity<PanierDto> rejeu = panierController.payerPanier(userId, "cle-1");
+
+        // Assert
+        assertEquals(HttpStatus.OK, rejeu.getStatusCode());
+        assertSame(panierDto, rejeu.getBody());
+        assertEquals("true", rejeu.getHeaders().getFirst(IdempotenceService.EN_TETE_REJEU));
+        verify(panierService, times(1)).finaliserAchat(userId.toString());
+    }
+
+    @Test
+    void ajouterOffre_CleReutiliseeAvecUneAutreOffre_ThrowsUnprocessableEntity() {
+        // Arrange
+        when(panierService.ajouterOffreAuPanier(userId.toString(), ajouterOffreDto)).thenReturn(panierDto);
+        panierController.ajouterOffre(userId, ajouterOffreDto, "cle-1");
+        AjouterOffrePanierDto autreOffre = new AjouterOffrePanierDto(offreId + 1, 2);
+
+        // Act & Assert
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> panierController.ajouterOffre(userId, autreOffre, "cle-1"));
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, exception.getStatusCode());
+        verify(panierService, never()).ajouterOffreAuPanier(userId.toString(), autreOffre);
+    }
+
+    @Test
+    void ajouterOffre_OffreEpuisee_ThrowsConflictWithoutCallingService() {
+        // Arrange
+        doThrow(new IllegalStateException("L'offre 10 est épuisée.")).when(offresEpuiseesService).verifierDisponible(offreId);
+
+        // Act & Assert
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> panierController.ajouterOffre(userId, ajouterOffreDto, null));
+        assertEquals(HttpStatus.CONFLICT, exception.getStatusCode());
+        verifyNoInteractions(panierService);
+    }
+
+    @Test
+    void payerPanier_PanierEnCacheAvecOffreEpuisee_ThrowsConflictWithoutCallingService() {
+        // Arrange
+        PanierDto panierEnCache = PanierDto.builder()
+                .contenuPaniers(List.of(ContenuPanierDto.builder().idOffre(offreId).build()))
+                .build();
+        when(cachePaniersService.lire(userId)).thenReturn(Optional.of(panierEnCache));
+        doThrow(new IllegalStateException("L'offre 10 est épuisée.")).when(offresEpuiseesService).verifierDisponible(offreId);
+
+        // Act & Assert
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> panierController.payerPanier(userId, null));
+        assertEquals(HttpStatus.CONFLICT, exception.getStatusCode());
+        assertEquals("L'offre 10 est épuisée.", exception.getReason());
+        verifyNoInteractions(panierService);
+    }
 }
@@ -1,12 +1,18 @@
 package fr.studi.bloc3jo2024.controller;
 
+import fr.studi.bloc3jo2024.analytique.DimensionVente;
+import fr.studi.bloc3jo2024.analytique.EntrepotVentes;
+import fr.studi.bloc3jo2024.analytique.RequeteVentes;
 import fr.studi.bloc3jo2024.dto.offres.VenteParOffreDto;
-import fr.studi.bloc3jo2024.repository.PaiementRepository;
-import fr.studi.bloc3jo2024.repository.UtilisateurRepository;
+import fr.studi.bloc3jo2024.dto.statistiques.LigneAnalyseDto;
+import fr.studi.bloc3jo2024.dto.statistiques.ResultatAnalyseDto;
+import fr.studi.bloc3jo2024.service.CompteursVentesService;
+import fr.studi.bloc3jo2024.service.DiffusionStatsService;
 import fr.studi.bloc3jo2024.service.StatistiqueService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
@@ -14,12 +20,17 @@ import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
+import java.math.BigDecimal;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -34,10 +45,13 @@ class StatistiqueControllerTest {
     private StatistiqueService statistiqueService;
 
     @Mock
-    private UtilisateurRepository utilisateurRepository;
+    private CompteursVentesService compteursVentesService;
 
     @Mock
-    private PaiementRepository paiementRepository;
+    private DiffusionStatsService diffusionStatsService;
+
+    @Mock
+    private EntrepotVentes entrepotVentes;
 
     @InjectMocks
     private StatistiqueController statistiqueController;
@@ -136,7 +150,7 @@ class StatistiqueControllerTest {
 
     /**
      * Tests the {@code getStatsGlobales} endpoint pour une récupération de données réussie.
-     * Vérifie que les méthodes du référentiel sont appelées et que la réponse est correctement formatée.
+     * Vérifie que les compteurs en mémoire sont lus et que la réponse est correctement formatée.
      * @throws Exception si MockMvc les performances échouent.
      */
     @Test
@@ -144,8 +158,8 @@ class StatistiqueControllerTest {
         long mockUserCount = 150L;
         long mockSuccessfulPayments = 75L;
 
-        when(utilisateurRepository.count()).thenReturn(mockUserCount);
-        when(paiementRepository.countByStatutPaiementAndTransaction_StatutTransaction(any(), any())).thenReturn(mockSuccessfulPayments);
+        when(compteursVentesService.getUtilisateurs()).thenReturn(mockUserCount);
+        when(compteursVentesService.getPaiementsReussis()).thenReturn(mockSuccessfulPayments);
 
         mockMvc.perform(get("/api/admin/stats/global")
                         .contentType(MediaType.APPLICATION_JSON))
@@ -154,4 +168,32 @@ class StatistiqueControllerTest {
                 .andExpect(jsonPath("$.utilisateurs", is((int) mockUserCount)))
                 .andExpect(jsonPath("$.paiementsReussis", is((int) mockSuccessfulPayments)));
     }
+
+    /**
+     * Tests the {@code analyserVentes} endpoint : les filtres {@code DIMENSION:valeur} et la période sont transmis à l'entrepôt.
+     * @throws Exception si MockMvc les performances échouent.
+     */
+    @Test
+    void testAnalyserVentes_Success() throws Exception {
+        ResultatAnalyseDto resultat = new ResultatAnalyseDto("PAYS_ACHETEUR", 3, 12, Instant.now(),
+                List.of(new LigneAnalyseDto("France", 2, 3, new BigDecimal("150.00"))));
+        when(entrepotVentes.analyser(any(RequeteVentes.class))).thenReturn(resultat);
+
+        mockMvc.perform(get("/api/admin/stats/analyse")
+                        .param("groupePar", "PAYS_ACHETEUR")
+                        .param("filtre", "TYPE_OFFRE:SOLO", "TYPE_OFFRE:DUO", "VILLE:Paris")
+                        .param("du", "2024-07-26"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.groupePar", is("PAYS_ACHETEUR")))
+                .andExpect(jsonPath("$.lignes", hasSize(1)))
+                .andExpect(jsonPath("$.lignes[0].valeur", is("France")));
+
+        ArgumentCaptor<RequeteVentes> requete = ArgumentCaptor.forClass(RequeteVentes.class);
+        verify(entrepotVentes).analyser(requete.capture());
+        assertThat(requete.getValue().groupePar()).isEqualTo(DimensionVente.PAYS_ACHETEUR);
+        assertThat(requete.getValue().filtres().get(DimensionVente.TYPE_OFFRE)).isEqualTo(Set.of("SOLO", "DUO"));
+        assertThat(requete.getValue().filtres().get(DimensionVente.VILLE)).isEqualTo(Set.of("Paris"));
+        assertThat(requete.getValue().du()).isEqualTo(LocalDate.of(2024, 7, 26));
+        assertThat(requete.getValue().au()).isNull();
+    }
 }
@@ -0,0 +1,90 @@
+package fr.studi.bloc3jo2024.entities;
+
+import fr.studi.bloc3jo2024.entity.ContenuPanier;
+import fr.studi.bloc3jo2024.entity.Discipline;
+import fr.studi.bloc3jo2024.entity.Offre;
+import fr.studi.bloc3jo2024.entity.Panier;
+import fr.studi.bloc3jo2024.entity.TotauxPanier;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TotauxPanierTest {
+
+    private final Discipline escrime = Discipline.builder().idDiscipline(10L).build();
+    private final Discipline judo = Discipline.builder().idDiscipline(20L).build();
+    private final Offre solo = Offre.builder().idOffre(1L).prix(new BigDecimal("49.90")).capacite(1).discipline(escrime).build();
+    private final Offre familiale = Offre.builder().idOffre(2L).prix(new BigDecimal("150.00")).capacite(4).discipline(judo).build();
+
+    private Panier panier(BigDecimal montantTotal) {
+        Panier panier = Panier.builder().idPanier(100L).montantTotal(montantTotal).build();
+        Set<ContenuPanier> contenus = new HashSet<>();
+        contenus.add(ContenuPanier.builder().panier(panier).offre(solo).quantiteCommandee(3).build());
+        contenus.add(ContenuPanier.builder().panier(panier).offre(familiale).quantiteCommandee(1).build());
+        panier.setContenuPaniers(contenus);
+        return panier;
+    }
+
+    @Test
+    void calculer_cumuleMontantEtPlacesDesLignes() {
+        // Act
+        TotauxPanier totaux = TotauxPanier.calculer(panier(null));
+
+        // Assert
+        assertEquals(29970L, totaux.getMontantCentimes()); // 3 * 49,90 + 150
+        assertEquals(0, new BigDecimal("299.70").compareTo(totaux.getMontant()));
+        assertEquals(3, totaux.getPlaces(10L));
+        assertEquals(4, totaux.getPlaces(20L));
+        assertEquals(0, totaux.getPlaces(30L));
+    }
+
+    @Test
+    void initialiser_reprendLeMontantPersiste() {
+        // Act : montant persisté établi avec un ancien prix
+        TotauxPanier totaux = TotauxPanier.initialiser(panier(new BigDecimal("280.00")));
+
+        // Assert
+        assertEquals(28000L, totaux.getMontantCentimes());
+        assertEquals(3, totaux.getPlaces(10L));
+        assertFalse(totaux.concordeAvec(TotauxPanier.calculer(panier(null))));
+    }
+
+    @Test
+    void appliquer_metAJourParDelta() {
+        // Arrange
+        Panier panier = panier(new BigDecimal("299.70"));
+        TotauxPanier totaux = TotauxPanier.initialiser(panier);
+
+        // Act : retrait de la ligne familiale
+        totaux.appliquer(familiale, -1);
+        panier.getContenuPaniers().removeIf(contenu -> contenu.getOffre() == familiale);
+
+        // Assert
+        assertEquals(14970L, totaux.getMontantCentimes());
+        assertEquals(0, totaux.getPlaces(20L));
+        assertTrue(totaux.concordeAvec(TotauxPanier.calculer(panier))); // Discipline à zéro équivalente à absente
+    }
+
+    @Test
+    void reinitialiser_remetTousLesTotauxAZero() {
+        // Arrange
+        TotauxPanier totaux = TotauxPanier.calculer(panier(null));
+
+        // Act
+        totaux.reinitialiser();
+
+        // Assert
+        assertEquals(0L, totaux.getMontantCentimes());
+        assertEquals(0, totaux.getPlaces(10L));
+    }
+
+    @Test
+    void enCentimes_arrondiAuCentimeLePlusProche() {
+        assertEquals(1000L, TotauxPanier.enCentimes(BigDecimal.TEN));
+        assertEquals(1235L, TotauxPanier.enCentimes(new BigDecimal("12.345")));
+    }
+}
@@ -0,0 +1,160 @@
+package fr.studi.bloc3jo2024.filter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.studi.bloc3jo2024.service.FileAttenteService;
+import fr.studi.bloc3jo2024.service.JwtService;
+import io.jsonwebtoken.MalformedJwtException;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class FileAttenteFilterTest {
+
+    private static final String JETON = "jeton";
+    private static final String EMAIL = "acheteur@example.com";
+
+    @Mock
+    private FileAttenteService fileAttenteService;
+    @Mock
+    private JwtService jwtService;
+    @Mock
+    private FilterChain chaine;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private FileAttenteFilter filtre() {
+        return new FileAttenteFilter(fileAttenteService, jwtService, objectMapper);
+    }
+
+    private MockHttpServletRequest requete(String methode, String uri) {
+        MockHttpServletRequest request = new MockHttpServletRequest(methode, uri);
+        request.addHeader("Authorization", "Bearer " + JETON);
+        return request;
+    }
+
+    @Test
+    void doFilter_lectureDuPanier_nePassePasParLaFile() throws Exception {
+        // Arrange
+        when(fileAttenteService.isActive()).thenReturn(true);
+        MockHttpServletRequest request = requete("GET", "/api/paniers/42");
+
+        // Act
+        filtre().doFilter(request, new MockHttpServletResponse(), chaine);
+
+        // Assert
+        verify(chaine).doFilter(eq(request), any());
+        verify(fileAttenteService, never()).admettre(any(), any());
+    }
+
+    @Test
+    void doFilter_ticketAdmis_traiteLaRequeteEtCompteLAchat() throws Exception {
+        // Arrange
+        when(fileAttenteService.isActive()).thenReturn(true);
+        when(jwtService.extractEmail(JETON)).thenReturn(EMAIL);
+        when(fileAttenteService.admettre("1.2.sig", EMAIL)).thenReturn(new FileAttenteService.Admission("1.2.sig", true, 0, 0));
+        MockHttpServletRequest request = requete("POST", "/api/paniers/42/payer");
+        request.addHeader(FileAttenteService.EN_TETE, "1.2.sig");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // Act
+        filtre().doFilter(request, response, chaine);
+
+        // Assert
+        verify(chaine).doFilter(eq(request), any());
+        verify(fileAttenteService).debuterRequete();
+        verify(fileAttenteService).terminerRequete(true);
+        assertEquals("1.2.sig", response.getHeader(FileAttenteService.EN_TETE));
+    }
+
+    @Test
+    void doFilter_ajoutAuPanierAdmis_nEstPasCompteCommeAchat() throws Exception {
+        // Arrange
+        when(fileAttenteService.isActive()).thenReturn(true);
+        when(jwtService.extractEmail(JETON)).thenReturn(EMAIL);
+        when(fileAttenteService.admettre(null, EMAIL)).thenReturn(new FileAttenteService.Admission("1.2.sig", true, 0, 0));
+
+        // Act
+        filtre().doFilter(requete("POST", "/api/paniers/42/offres"), new MockHttpServletResponse(), chaine);
+
+        // Assert
+        verify(fileAttenteService).terminerRequete(false);
+    }
+
+    @Test
+    void doFilter_ticketEnAttente_repond503AvecPositionEtRetryAfter() throws Exception {
+        // Arrange
+        when(fileAttenteService.isActive()).thenReturn(true);
+        when(jwtService.extractEmail(JETON)).thenReturn(EMAIL);
+        when(fileAttenteService.admettre(null, EMAIL)).thenReturn(new FileAttenteService.Admission("7.2.sig", false, 5, 120));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // Act
+        filtre().doFilter(requete("POST", "/api/paiements/panier/3"), response, chaine);
+
+        // Assert
+        verifyNoInteractions(chaine);
+        verify(fileAttenteService, never()).debuterRequete();
+        assertEquals(503, response.getStatus());
+        assertEquals("30", response.getHeader("Retry-After")); // Plafonné : le client revient voir sa position
+        assertEquals("7.2.sig", response.getHeader(FileAttenteService.EN_TETE));
+        Map<?, ?> corps = objectMapper.readValue(response.getContentAsString(), Map.class);
+        assertEquals(5, corps.get("position"));
+        assertEquals(120, corps.get("attenteEstimeeSecondes"));
+    }
+
+    @Test
+    void doFilter_sansJeton_laissePasserSansEmettreDeTicket() throws Exception {
+        // Arrange
+        when(fileAttenteService.isActive()).thenReturn(true);
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/paniers/42/payer");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // Act
+        filtre().doFilter(request, response, chaine);
+
+        // Assert
+        verify(chaine).doFilter(request, response);
+        verify(fileAttenteService, never()).admettre(any(), any());
+        assertNull(response.getHeader(FileAttenteService.EN_TETE));
+    }
+
+    @Test
+    void doFilter_jetonInvalide_laissePasserSansEmettreDeTicket() throws Exception {
+        // Arrange
+        when(fileAttenteService.isActive()).thenReturn(true);
+        when(jwtService.extractEmail(JETON)).thenThrow(new MalformedJwtException("jeton forgé"));
+        MockHttpServletRequest request = requete("POST", "/api/paiements/panier/3");
+
+        // Act
+        filtre().doFilter(request, new MockHttpServletResponse(), chaine);
+
+        // Assert
+        verify(chaine).doFilter(eq(request), any());
+        verify(fileAttenteService, never()).admettre(any(), any());
+        verify(fileAttenteService, never()).debuterRequete();
+    }
+
+    @Test
+    void doFilter_fileInactive_laissePasserSansTicket() throws Exception {
+        // Arrange
+        when(fileAttenteService.isActive()).thenReturn(false);
+        MockHttpServletRequest request = requete("POST", "/api/paniers/42/payer");
+
+        // Act
+        filtre().doFilter(request, new MockHttpServletResponse(), chaine);
+
+        // Assert
+        verify(chaine).doFilter(eq(request), any());
+        verify(fileAttenteService, never()).admettre(any(), any());
+    }
+}
@@ -1,7 +1,12 @@
 package fr.studi.bloc3jo2024.filter;
 
+import fr.studi.bloc3jo2024.entity.Role;
+import fr.studi.bloc3jo2024.entity.Utilisateur;
+import fr.studi.bloc3jo2024.entity.enums.TypeRole;
+import fr.studi.bloc3jo2024.logging.MdcCles;
 import fr.studi.bloc3jo2024.service.DetailUtilisateurService;
 import fr.studi.bloc3jo2024.service.JwtService;
+import fr.studi.bloc3jo2024.service.impl.DetailUtilisateurServiceImpl;
 import io.jsonwebtoken.ExpiredJwtException;
 import io.jsonwebtoken.JwtException;
 import io.jsonwebtoken.MalformedJwtException;
@@ -11,6 +16,7 @@ import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import java.util.UUID;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
@@ -19,6 +25,7 @@ import org.junit.jupiter.params.provider.MethodSource;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.slf4j.MDC;
 import org.springframework.http.MediaType;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.User;
@@ -245,4 +252,28 @@ class JwtAuthenticationFilterTest {
         String extracted = jwtAuthenticationFilter.extractTokenFromRequest(request);
         assertEquals(expectedToken, extracted);
     }
+
+    @Test
+    void doFilterInternal_whenUtilisateurAuthentifie_thenPlaceUserIdDansLeMdc() throws ServletException, IOException {
+        UUID idUtilisateur = UUID.randomUUID();
+        Utilisateur utilisateur = Utilisateur.builder()
+                .idUtilisateur(idUtilisateur)
+                .email(mockEmail)
+                .isVerified(true)
+                .role(Role.builder().typeRole(TypeRole.USER).build())
+                .build();
+        when(request.getHeader("Authorization")).thenReturn(mockBearerToken);
+        when(jwtService.extractEmail(mockTokenValue)).thenReturn(mockEmail);
+        when(jwtService.isTokenValid(mockTokenValue, mockEmail)).thenReturn(true);
+        when(detailUtilisateurService.loadUserByUsername(mockEmail)).thenReturn(new DetailUtilisateurServiceImpl(utilisateur));
+
+        try {
+            jwtAuthenticationFilter.doFilterInternal(request, response, filterChain);
+
+            assertEquals(idUtilisateur.toString(), MDC.get(MdcCles.USER_ID));
+            verify(filterChain).doFilter(request, response);
+        } finally {
+            MDC.clear();
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,141 @@
+package fr.studi.bloc3jo2024.filter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.studi.bloc3jo2024.service.LimitationDebitService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class LimitationDebitFilterTest {
+
+    @Mock
+    private FilterChain chaine;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final MockEnvironment environment = new MockEnvironment()
+            .withProperty("app.limitation-debit.login.ip", "3/1m")
+            .withProperty("app.limitation-debit.login.email", "2/1m");
+
+    private LimitationDebitFilter filtre(LimitationDebitService service) {
+        return new LimitationDebitFilter(service, objectMapper, environment);
+    }
+
+    private static MockHttpServletRequest connexion(String adresse, String email) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/auth/login");
+        request.setRemoteAddr(adresse);
+        request.setContentType("application/json");
+        request.setContent(("{\"email\":\"" + email + "\",\"password\":\"secret\"}").getBytes(StandardCharsets.UTF_8));
+        return request;
+    }
+
+    @Test
+    void doFilter_limiteParEmailAtteinte_repond429AvecRetryAfter() throws Exception {
+        // Arrange
+        LimitationDebitFilter filtre = filtre(new LimitationDebitService(100));
+        filtre.doFilter(connexion("10.0.0.1", "cible@test.fr"), new MockHttpServletResponse(), chaine);
+        filtre.doFilter(connexion("10.0.0.2", "cible@test.fr"), new MockHttpServletResponse(), chaine);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // Act : troisième adresse, même compte visé (casse différente)
+        filtre.doFilter(connexion("10.0.0.3", "Cible@Test.fr"), response, chaine);
+
+        // Assert
+        verify(chaine, times(2)).doFilter(any(), any());
+        assertEquals(429, response.getStatus());
+        assertEquals("30", response.getHeader("Retry-After")); // Un jeton toutes les 30 s
+        Map<?, ?> corps = objectMapper.readValue(response.getContentAsString(), Map.class);
+        assertEquals(429, corps.get("status"));
+    }
+
+    @Test
+    void doFilter_limiteParAdresseAtteinte_refuseQuelQueSoitLEmail() throws Exception {
+        // Arrange
+        LimitationDebitFilter filtre = filtre(new LimitationDebitService(100));
+        for (int i = 0; i < 3; i++) {
+            filtre.doFilter(connexion("10.0.0.1", "compte" + i + "@test.fr"), new MockHttpServletResponse(), chaine);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // Act
+        filtre.doFilter(connexion("10.0.0.1", "autre@test.fr"), response, chaine);
+
+        // Assert
+        assertEquals(429, response.getStatus());
+        verify(chaine, times(3)).doFilter(any(), any());
+    }
+
+    @Test
+    void doFilter_corpsLuPourLEmail_resteLisibleParLeControleur() throws Exception {
+        // Arrange
+        ArgumentCaptor<HttpServletRequest> captor = ArgumentCaptor.forClass(HttpServletRequest.class);
+
+        // Act
+        filtre(new LimitationDebitService(100)).doFilter(connexion("10.0.0.1", "a@test.fr"), new MockHttpServletResponse(), chaine);
+
+        // Assert
+        verify(chaine).doFilter(captor.capture(), any());
+        String corps = new String(captor.getValue().getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        assertEquals("{\"email\":\"a@test.fr\",\"password\":\"secret\"}", corps);
+    }
+
+    @Test
+    void doFilter_routeNonLimitee_neConsommeAucunJeton() throws Exception {
+        // Arrange
+        LimitationDebitService service = mock(LimitationDebitService.class);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/offres");
+
+        // Act
+        filtre(service).doFilter(request, new MockHttpServletResponse(), chaine);
+
+        // Assert
+        verify(chaine).doFilter(eq(request), any());
+        verifyNoInteractions(service);
+    }
+
+    @Test
+    void doFilter_scan_limiteParAdresseSeulement() throws Exception {
+        // Arrange
+        LimitationDebitService service = mock(LimitationDebitService.class);
+        when(service.consommer(eq("scan|ip|10.0.0.9"), any())).thenReturn(0L);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/billets/verifier/cle-123");
+        request.setRemoteAddr("10.0.0.9");
+
+        // Act
+        filtre(service).doFilter(request, new MockHttpServletResponse(), chaine);
+
+        // Assert
+        verify(service, times(1)).consommer(any(), any());
+        verify(chaine).doFilter(eq(request), any());
+    }
+
+    @Test
+    void doFilter_limitationInactive_laissePasser() throws Exception {
+        // Arrange
+        environment.setProperty("app.limitation-debit.active", "false");
+        LimitationDebitService service = mock(LimitationDebitService.class);
+        MockHttpServletRequest request = connexion("10.0.0.1", "a@test.fr");
+
+        // Act
+        filtre(service).doFilter(request, new MockHttpServletResponse(), chaine);
+
+        // Assert
+        verify(chaine).doFilter(eq(request), any());
+        verifyNoInteractions(service);
+    }
+}
@@ -0,0 +1,64 @@
+package fr.studi.bloc3jo2024.filter;
+
+import fr.studi.bloc3jo2024.logging.MdcCles;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestIdMdcFilterTest {
+
+    private final RequestIdMdcFilter filtre = new RequestIdMdcFilter();
+
+    /**
+     * Vérifie que l'identifiant fourni par le client est réutilisé, renvoyé et visible dans le MDC pendant la requête.
+     */
+    @Test
+    void doFilter_requestIdFourni_reutiliseEtNettoye() throws Exception {
+        // Arrange
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/offres");
+        request.addHeader(RequestIdMdcFilter.REQUEST_ID_HEADER, "abc-123");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        AtomicReference<String> vuDansLaChaine = new AtomicReference<>();
+        FilterChain chaine = (req, res) -> {
+            vuDansLaChaine.set(MDC.get(MdcCles.REQUEST_ID));
+            MDC.put(MdcCles.USER_ID, "utilisateur");
+            MDC.put(MdcCles.PANIER_ID, "42");
+        };
+
+        // Act
+        filtre.doFilter(request, response, chaine);
+
+        // Assert
+        assertEquals("abc-123", vuDansLaChaine.get());
+        assertEquals("abc-123", response.getHeader(RequestIdMdcFilter.REQUEST_ID_HEADER));
+        assertNull(MDC.get(MdcCles.REQUEST_ID));
+        assertNull(MDC.get(MdcCles.USER_ID));
+        assertNull(MDC.get(MdcCles.PANIER_ID));
+    }
+
+    /**
+     * Vérifie qu'un en-tête absent ou suspect est remplacé par un identifiant généré.
+     */
+    @Test
+    void doFilter_requestIdInvalide_genereUnIdentifiant() throws Exception {
+        // Arrange
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/offres");
+        request.addHeader(RequestIdMdcFilter.REQUEST_ID_HEADER, "injection\nde log");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // Act
+        filtre.doFilter(request, response, (req, res) -> { });
+
+        // Assert
+        String genere = response.getHeader(RequestIdMdcFilter.REQUEST_ID_HEADER);
+        assertNotNull(genere);
+        assertNotEquals("injection\nde log", genere);
+        assertEquals(36, genere.length());
+    }
+}
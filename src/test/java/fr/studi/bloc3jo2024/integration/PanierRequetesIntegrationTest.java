@@ -0,0 +1,184 @@
+package fr.studi.bloc3jo2024.integration;
+
+import fr.studi.bloc3jo2024.dto.panier.AjouterOffrePanierDto;
+import fr.studi.bloc3jo2024.dto.panier.ModifierContenuPanierDto;
+import fr.studi.bloc3jo2024.entity.*;
+import fr.studi.bloc3jo2024.entity.enums.StatutOffre;
+import fr.studi.bloc3jo2024.entity.enums.TypeOffre;
+import fr.studi.bloc3jo2024.entity.enums.TypeRole;
+import fr.studi.bloc3jo2024.repository.*;
+import fr.studi.bloc3jo2024.service.CachePaniersService;
+import fr.studi.bloc3jo2024.service.EmailService;
+import fr.studi.bloc3jo2024.service.PanierService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compte les requêtes SQL de chaque opération du panier grâce aux statistiques Hibernate, pour un petit et un grand panier.
+ * <p>
+ * Le panier, ses lignes, leurs offres et leurs disciplines sont chargés en une seule requête : le nombre de requêtes
+ * d'une lecture ou d'une mutation ne dépend pas du nombre de lignes. Seule la finalisation décrémente les places
+ * ligne par ligne (une mise à jour conditionnelle chacune).
+ * </p>
+ */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class PanierRequetesIntegrationTest extends AbstractPostgresIntegrationTest {
+
+    private static final Logger log = LoggerFactory.getLogger(PanierRequetesIntegrationTest.class);
+
+    private static final int PETIT_PANIER = 2;
+    private static final int GRAND_PANIER = 8;
+    /** Borne haute d'une opération : utilisateur, panier complet, offre, puis écritures groupées. */
+    private static final long MAX_REQUETES_OPERATION = 6;
+
+    @Autowired
+    private PanierService panierService;
+    @Autowired
+    private CachePaniersService cachePaniersService;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private UtilisateurRepository utilisateurRepository;
+    @Autowired
+    private RoleRepository roleRepository;
+    @Autowired
+    private PaysRepository paysRepository;
+    @Autowired
+    private AdresseRepository adresseRepository;
+    @Autowired
+    private DisciplineRepository disciplineRepository;
+    @Autowired
+    private OffreRepository offreRepository;
+
+    @MockitoBean
+    private EmailService emailService;
+
+    private Statistics statistics;
+    private Adresse adresse;
+    private final List<Offre> offres = new ArrayList<>();
+
+    /** Nombre de requêtes préparées par opération sur un panier. */
+    private record Profil(long lecture, long lectureEnCache, long ajout, long modification, long suppression,
+                          long vidage, long finalisation) {
+    }
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        offres.clear();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            Pays pays = paysRepository.save(Pays.builder().nomPays("Pays-" + UUID.randomUUID()).build());
+            adresse = adresseRepository.save(Adresse.builder()
+                    .numeroRue(1).nomRue("Rue du Stade").ville("Paris").codePostal("75001").pays(pays).build());
+            for (int d = 0; d < 2; d++) {
+                Discipline discipline = disciplineRepository.save(Discipline.builder()
+                        .nomDiscipline("Escrime " + UUID.randomUUID())
+                        .dateDiscipline(LocalDateTime.now().plusDays(30))
+                        .nbPlaceDispo(10_000)
+                        .adresse(adresse)
+                        .build());
+                for (int o = 0; o < GRAND_PANIER / 2; o++) {
+                    offres.add(offreRepository.save(Offre.builder().prix(BigDecimal.valueOf(40 + o)).quantite(1_000)
+                            .capacite(1).statutOffre(StatutOffre.DISPONIBLE).typeOffre(TypeOffre.SOLO)
+                            .discipline(discipline).build()));
+                }
+            }
+        });
+    }
+
+    @Test
+    void operationsPanier_nombreDeRequetesIndependantDeLaTaille() {
+        // Act
+        Profil petit = mesurer(PETIT_PANIER);
+        Profil grand = mesurer(GRAND_PANIER);
+        log.info("Requêtes par opération : panier de {} lignes {}, panier de {} lignes {}",
+                PETIT_PANIER, petit, GRAND_PANIER, grand);
+
+        // Assert : lecture et mutations coûtent le même nombre de requêtes quelle que soit la taille
+        assertThat(grand.lecture()).isEqualTo(petit.lecture());
+        assertThat(grand.ajout()).isEqualTo(petit.ajout());
+        assertThat(grand.modification()).isEqualTo(petit.modification());
+        assertThat(grand.suppression()).isEqualTo(petit.suppression());
+        assertThat(grand.vidage()).isEqualTo(petit.vidage());
+        assertThat(List.of(grand.lecture(), grand.ajout(), grand.modification(), grand.suppression(), grand.vidage()))
+                .allSatisfy(requetes -> assertThat(requetes).isLessThanOrEqualTo(MAX_REQUETES_OPERATION));
+
+        // Assert : un panier en cache est servi sans aucune requête
+        assertThat(petit.lectureEnCache()).isZero();
+        assertThat(grand.lectureEnCache()).isZero();
+
+        // Assert : la finalisation ne relit rien par ligne ; seule la décrémentation des places est unitaire
+        assertThat(grand.finalisation() - petit.finalisation()).isLessThanOrEqualTo(GRAND_PANIER - PETIT_PANIER);
+    }
+
+    private Profil mesurer(int nbLignes) {
+        String utilisateur = remplirPanier(nbLignes);
+        Long premiereOffre = offres.get(0).getIdOffre();
+        Long derniereOffre = offres.get(nbLignes - 1).getIdOffre();
+
+        cachePaniersService.vider();
+        long lecture = compter(() -> panierService.getPanierUtilisateur(utilisateur));
+        long lectureEnCache = compter(() -> panierService.getPanierUtilisateur(utilisateur));
+        long ajout = compter(() -> panierService.ajouterOffreAuPanier(utilisateur,
+                new AjouterOffrePanierDto(premiereOffre, 1)));
+        long modification = compter(() -> panierService.modifierQuantiteOffrePanier(utilisateur,
+                new ModifierContenuPanierDto(premiereOffre, 3)));
+        long suppression = compter(() -> panierService.supprimerOffreDuPanier(utilisateur, derniereOffre));
+        long vidage = compter(() -> panierService.viderPanier(utilisateur));
+
+        String acheteur = remplirPanier(nbLignes);
+        long finalisation = compter(() -> panierService.finaliserAchat(acheteur));
+
+        return new Profil(lecture, lectureEnCache, ajout, modification, suppression, vidage, finalisation);
+    }
+
+    private long compter(Runnable operation) {
+        statistics.clear();
+        operation.run();
+        return statistics.getPrepareStatementCount();
+    }
+
+    /** Crée un utilisateur et lui ajoute une ligne par offre, jusqu'à {@code nbLignes}. */
+    private String remplirPanier(int nbLignes) {
+        Utilisateur utilisateur = transactionTemplate.execute(status -> {
+            Role role = roleRepository.findByTypeRole(TypeRole.USER)
+                    .orElseGet(() -> roleRepository.save(Role.builder().typeRole(TypeRole.USER).build()));
+            return utilisateurRepository.save(Utilisateur.builder()
+                    .email("panier-" + UUID.randomUUID() + "@jo.fr")
+                    .nom("Panier")
+                    .prenom("Test")
+                    .dateNaissance(LocalDate.of(1990, 1, 1))
+                    .cleUtilisateur(UUID.randomUUID().toString())
+                    .isVerified(true)
+                    .adresse(adresse)
+                    .role(role)
+                    .build());
+        });
+        String idUtilisateur = utilisateur.getIdUtilisateur().toString();
+        for (int i = 0; i < nbLignes; i++) {
+            panierService.ajouterOffreAuPanier(idUtilisateur, new AjouterOffrePanierDto(offres.get(i).getIdOffre(), 1));
+        }
+        return idUtilisateur;
+    }
+}
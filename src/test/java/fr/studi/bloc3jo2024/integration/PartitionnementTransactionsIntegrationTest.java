@@ -0,0 +1,108 @@
+package fr.studi.bloc3jo2024.integration;
+
+import fr.studi.bloc3jo2024.service.EmailService;
+import fr.studi.bloc3jo2024.service.PartitionsTransactionsService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Vérifie le partitionnement mensuel de {@code transactions} créé par la migration V6 : élagage des partitions
+ * pour une requête bornée sur la date, reprise des lignes de la partition par défaut et archivage d'un mois, ainsi que
+ * l'unicité de la transaction d'un paiement rétablie par la migration V12.
+ */
+@SpringBootTest
+class PartitionnementTransactionsIntegrationTest extends AbstractPostgresIntegrationTest {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private PartitionsTransactionsService partitionsTransactionsService;
+
+    @MockitoBean
+    private EmailService emailService;
+
+    @Test
+    void requeteBorneeSurLaDate_neParcourtQueLaPartitionDuMois() {
+        // Arrange
+        LocalDateTime milieuDuMois = YearMonth.now().atDay(15).atTime(12, 0);
+        String partition = PartitionsTransactionsService.nomPartition(YearMonth.now());
+
+        // Act : bornes littérales pour un élagage dès la planification
+        List<String> plan = jdbcTemplate.queryForList(String.format("EXPLAIN SELECT * FROM transactions " +
+                "WHERE id_payement = 1 AND date_transaction BETWEEN TIMESTAMP '%s' AND TIMESTAMP '%s'",
+                milieuDuMois.minusMinutes(5), milieuDuMois.plusMinutes(5)), String.class);
+
+        // Assert
+        String texte = String.join("\n", plan);
+        assertThat(texte).contains(partition).doesNotContain("transactions_defaut");
+    }
+
+    @Test
+    void creationPuisArchivage_deplaceLesLignesDeLaPartitionParDefaut() {
+        // Arrange : une transaction très ancienne tombe d'abord dans la partition par défaut
+        LocalDate mois = LocalDate.of(2001, 2, 1);
+        Long idPaiement = creerPaiement();
+        jdbcTemplate.update("INSERT INTO transactions (montant, date_transaction, statut_transaction, id_payement) " +
+                "VALUES (10, ?, 'REUSSI'::statut_transaction, ?)", Timestamp.valueOf(mois.atTime(12, 0)), idPaiement);
+
+        // Act
+        Boolean creee = jdbcTemplate.queryForObject("SELECT creer_partition_transactions(?)", Boolean.class, Date.valueOf(mois));
+        Long lignesDansPartition = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM transactions_p200102", Long.class);
+        Long archivees = jdbcTemplate.queryForObject("SELECT archiver_partition_transactions(?)", Long.class, Date.valueOf(mois));
+
+        // Assert
+        assertThat(creee).isTrue();
+        assertThat(lignesDansPartition).isEqualTo(1);
+        assertThat(archivees).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject("SELECT to_regclass('transactions_p200102') IS NULL", Boolean.class)).isTrue();
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM transactions_archive WHERE id_payement = ?", Long.class, idPaiement))
+                .isEqualTo(1);
+        assertThat(partitionsTransactionsService.listerPartitions()).doesNotContain(YearMonth.of(2001, 2));
+    }
+
+    @Test
+    void secondeTransactionPourUnMemePaiement_estRefusee() {
+        // Arrange : l'unicité (id_payement, date_transaction) de la table partitionnée laisserait passer une autre date
+        Long idPaiement = creerPaiement();
+        LocalDateTime date = LocalDateTime.now();
+        jdbcTemplate.update("INSERT INTO transactions (montant, date_transaction, statut_transaction, id_payement) " +
+                "VALUES (10, ?, 'EN_ATTENTE'::statut_transaction, ?)", Timestamp.valueOf(date), idPaiement);
+
+        // Act & Assert
+        assertThatThrownBy(() -> jdbcTemplate.update("INSERT INTO transactions (montant, date_transaction, statut_transaction, id_payement) " +
+                "VALUES (10, ?, 'EN_ATTENTE'::statut_transaction, ?)", Timestamp.valueOf(date.minusMonths(2)), idPaiement))
+                .isInstanceOf(DuplicateKeyException.class);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM transactions WHERE id_payement = ?", Long.class, idPaiement))
+                .isEqualTo(1);
+    }
+
+    private Long creerPaiement() {
+        Long idPays = jdbcTemplate.queryForObject("INSERT INTO pays (nom_pays) VALUES ('Pays-partition-' || gen_random_uuid()) RETURNING id_pays", Long.class);
+        Long idAdresse = jdbcTemplate.queryForObject("INSERT INTO adresses (numero_rue, nom_rue, ville, code_postal, id_pays) " +
+                "VALUES (1, 'Rue', 'Paris', '75001', ?) RETURNING id_adresse", Long.class, idPays);
+        jdbcTemplate.update("INSERT INTO roles (type_role) VALUES ('USER'::type_role) ON CONFLICT DO NOTHING");
+        Long idRole = jdbcTemplate.queryForObject("SELECT id_role FROM roles WHERE type_role = 'USER'", Long.class);
+        Object idUtilisateur = jdbcTemplate.queryForObject("INSERT INTO utilisateurs (id_utilisateur_uuid, email, nom, prenom, date_naissance, " +
+                "cle_utilisateur, is_verified, id_adresse, id_role) VALUES (gen_random_uuid(), 'partition-' || gen_random_uuid() || '@jo.fr', " +
+                "'Nom', 'Prenom', DATE '1990-01-01', gen_random_uuid()::text, true, ?, ?) RETURNING id_utilisateur_uuid", Object.class, idAdresse, idRole);
+        Long idPanier = jdbcTemplate.queryForObject("INSERT INTO paniers (montant_total, statut_panier, date_ajout, id_utilisateur_uuid) " +
+                "VALUES (10, 'PAYE'::statut_panier, NOW(), ?) RETURNING id_panier", Long.class, idUtilisateur);
+        Long idMethode = jdbcTemplate.queryForObject("SELECT id_methode FROM methodes_paiement LIMIT 1", Long.class);
+        return jdbcTemplate.queryForObject("INSERT INTO paiements (statut_paiement, date_paiement, montant, id_methode_paiement, id_utilisateur, id_panier) " +
+                "VALUES ('EN_ATTENTE'::statut_paiement, NOW(), 10, ?, ?, ?) RETURNING id_paiement", Long.class, idMethode, idUtilisateur, idPanier);
+    }
+}
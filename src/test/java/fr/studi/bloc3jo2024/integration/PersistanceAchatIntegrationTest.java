@@ -0,0 +1,184 @@
+package fr.studi.bloc3jo2024.integration;
+
+import fr.studi.bloc3jo2024.dto.paiement.PaiementDto;
+import fr.studi.bloc3jo2024.dto.paiement.PaiementSimulationResultDto;
+import fr.studi.bloc3jo2024.entity.*;
+import fr.studi.bloc3jo2024.entity.enums.MethodePaiementEnum;
+import fr.studi.bloc3jo2024.entity.enums.StatutOffre;
+import fr.studi.bloc3jo2024.entity.enums.StatutPanier;
+import fr.studi.bloc3jo2024.entity.enums.TypeOffre;
+import fr.studi.bloc3jo2024.entity.enums.TypeRole;
+import fr.studi.bloc3jo2024.repository.*;
+import fr.studi.bloc3jo2024.service.EmailService;
+import fr.studi.bloc3jo2024.service.PaiementService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compte les allers-retours JDBC d'un achat complet (initiation du paiement puis paiement réussi avec émission du billet)
+ * grâce aux statistiques Hibernate.
+ * <p>
+ * Chaque billet (un par place) doit partir en un seul INSERT groupé (QR code compris, sans UPDATE), et les identifiants
+ * étant réservés par plages de 50 (séquences poolées), un second achat ne doit pas coûter plus de requêtes que le premier.
+ * </p>
+ */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class PersistanceAchatIntegrationTest extends AbstractPostgresIntegrationTest {
+
+    private static final Logger log = LoggerFactory.getLogger(PersistanceAchatIntegrationTest.class);
+
+    /** Bornes hautes des requêtes préparées : lectures de contrôle + INSERT groupés, séquences amorties. */
+    private static final long MAX_REQUETES_INITIATION = 8;
+    /** Inclut l'unique upsert de l'agrégat des ventes (ventes_agregees). */
+    private static final long MAX_REQUETES_PAIEMENT_REUSSI = 15;
+
+    @Autowired
+    private PaiementService paiementService;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private UtilisateurRepository utilisateurRepository;
+    @Autowired
+    private RoleRepository roleRepository;
+    @Autowired
+    private PaysRepository paysRepository;
+    @Autowired
+    private AdresseRepository adresseRepository;
+    @Autowired
+    private DisciplineRepository disciplineRepository;
+    @Autowired
+    private OffreRepository offreRepository;
+    @Autowired
+    private PanierRepository panierRepository;
+    @Autowired
+    private ContenuPanierRepository contenuPanierRepository;
+    @Autowired
+    private VenteAgregeeRepository venteAgregeeRepository;
+
+    @MockitoBean
+    private EmailService emailService;
+
+    private Statistics statistics;
+    private Adresse adresse;
+    private Offre offreSolo;
+    private Offre offreDuo;
+
+    /** Nombre de requêtes et d'écritures mesurées pour une étape de l'achat. */
+    private record Mesure(long requetes, long insertsBillet, long updatesBillet) {
+    }
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            Pays pays = paysRepository.save(Pays.builder().nomPays("Pays-" + UUID.randomUUID()).build());
+            adresse = adresseRepository.save(Adresse.builder()
+                    .numeroRue(1).nomRue("Rue du Stade").ville("Paris").codePostal("75001").pays(pays).build());
+            Discipline discipline = disciplineRepository.save(Discipline.builder()
+                    .nomDiscipline("Natation " + UUID.randomUUID())
+                    .dateDiscipline(LocalDateTime.now().plusDays(30))
+                    .nbPlaceDispo(1000)
+                    .adresse(adresse)
+                    .build());
+            offreSolo = offreRepository.save(Offre.builder().prix(BigDecimal.valueOf(50)).quantite(100).capacite(1)
+                    .statutOffre(StatutOffre.DISPONIBLE).typeOffre(TypeOffre.SOLO).discipline(discipline).build());
+            offreDuo = offreRepository.save(Offre.builder().prix(BigDecimal.valueOf(90)).quantite(100).capacite(2)
+                    .statutOffre(StatutOffre.DISPONIBLE).typeOffre(TypeOffre.DUO).discipline(discipline).build());
+        });
+    }
+
+    @Test
+    void achatComplet_nombreDAllersRetoursBorneEtBilletsSansUpdate() {
+        // Arrange
+        Panier premierPanier = creerPanierPaye();
+        Panier secondPanier = creerPanierPaye();
+
+        // Act
+        Mesure[] premierAchat = acheter(premierPanier);
+        Mesure[] secondAchat = acheter(secondPanier);
+        log.info("Requêtes JDBC par achat : initiation {} puis {}, paiement réussi {} puis {}",
+                premierAchat[0].requetes(), secondAchat[0].requetes(), premierAchat[1].requetes(), secondAchat[1].requetes());
+
+        // Assert : un billet par place (SOLO + DUO = 3), jamais de mise à jour pour y ajouter le QR code
+        assertThat(secondAchat[1].insertsBillet()).isEqualTo(3);
+        assertThat(secondAchat[1].updatesBillet()).isZero();
+
+        // Assert : les séquences poolées ne coûtent rien de plus une fois la plage réservée
+        assertThat(secondAchat[0].requetes()).isLessThanOrEqualTo(premierAchat[0].requetes());
+        assertThat(secondAchat[1].requetes()).isLessThanOrEqualTo(premierAchat[1].requetes());
+        assertThat(secondAchat[0].requetes()).isLessThanOrEqualTo(MAX_REQUETES_INITIATION);
+        assertThat(secondAchat[1].requetes()).isLessThanOrEqualTo(MAX_REQUETES_PAIEMENT_REUSSI);
+
+        // Assert : les deux paniers sont cumulés dans l'agrégat du jour, une ligne par offre
+        LocalDate jour = LocalDate.now();
+        VenteAgregee soloDuJour = venteAgregeeRepository.findById(new VenteAgregeeKey(jour, TypeOffre.SOLO,
+                offreSolo.getIdOffre(), offreSolo.getDiscipline().getIdDiscipline())).orElseThrow();
+        assertThat(soloDuJour.getNbVentes()).isEqualTo(2);
+        assertThat(soloDuJour.getQuantiteVendue()).isEqualTo(2);
+    }
+
+    private Mesure[] acheter(Panier panier) {
+        UUID idUtilisateur = panier.getUtilisateur().getIdUtilisateur();
+
+        statistics.clear();
+        PaiementDto paiement = paiementService.effectuerPaiement(idUtilisateur, panier.getIdPanier(), MethodePaiementEnum.CARTE_BANCAIRE);
+        Mesure initiation = mesurer();
+
+        statistics.clear();
+        PaiementSimulationResultDto resultat = paiementService.simulerResultatPaiement(paiement.getIdPaiement(), true, "OK");
+        Mesure paiementReussi = mesurer();
+
+        assertThat(resultat.getCleFinaleBillet()).isNotBlank();
+        assertThat(resultat.getClesFinalesBillets()).hasSize(3).contains(resultat.getCleFinaleBillet());
+        return new Mesure[]{initiation, paiementReussi};
+    }
+
+    private Mesure mesurer() {
+        var billets = statistics.getEntityStatistics(Billet.class.getName());
+        return new Mesure(statistics.getPrepareStatementCount(), billets.getInsertCount(), billets.getUpdateCount());
+    }
+
+    private Panier creerPanierPaye() {
+        return transactionTemplate.execute(status -> {
+            Role role = roleRepository.findByTypeRole(TypeRole.USER)
+                    .orElseGet(() -> roleRepository.save(Role.builder().typeRole(TypeRole.USER).build()));
+            Utilisateur utilisateur = utilisateurRepository.save(Utilisateur.builder()
+                    .email("acheteur-" + UUID.randomUUID() + "@jo.fr")
+                    .nom("Acheteur")
+                    .prenom("Test")
+                    .dateNaissance(LocalDate.of(1990, 1, 1))
+                    .cleUtilisateur(UUID.randomUUID().toString())
+                    .isVerified(true)
+                    .adresse(adresse)
+                    .role(role)
+                    .build());
+            Panier panier = panierRepository.save(Panier.builder()
+                    .statut(StatutPanier.PAYE)
+                    .montantTotal(BigDecimal.valueOf(140))
+                    .utilisateur(utilisateur)
+                    .build());
+            contenuPanierRepository.save(ContenuPanier.builder().panier(panier).offre(offreSolo).quantiteCommandee(1).build());
+            contenuPanierRepository.save(ContenuPanier.builder().panier(panier).offre(offreDuo).quantiteCommandee(1).build());
+            return panier;
+        });
+    }
+}
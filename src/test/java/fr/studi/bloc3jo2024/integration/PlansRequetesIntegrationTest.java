@@ -0,0 +1,356 @@
+package fr.studi.bloc3jo2024.integration;
+
+import fr.studi.bloc3jo2024.entity.enums.StatutPanier;
+import fr.studi.bloc3jo2024.entity.enums.TypeAuthTokenTemp;
+import fr.studi.bloc3jo2024.repository.AuthTokenTemporaireRepository;
+import fr.studi.bloc3jo2024.repository.BilletRepository;
+import fr.studi.bloc3jo2024.repository.ContenuPanierRepository;
+import fr.studi.bloc3jo2024.repository.OffreRepository;
+import fr.studi.bloc3jo2024.repository.PaiementRepository;
+import fr.studi.bloc3jo2024.repository.PanierRepository;
+import fr.studi.bloc3jo2024.repository.TransactionRepository;
+import fr.studi.bloc3jo2024.repository.UtilisateurRepository;
+import fr.studi.bloc3jo2024.service.AuthTokenTemporaireService;
+import fr.studi.bloc3jo2024.service.EmailService;
+import fr.studi.bloc3jo2024.service.impl.PanierServiceImpl;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Conseiller d'index : chaque requête des repositories portant sur une table volumineuse est exécutée contre des
+ * tables peuplées (plusieurs dizaines de milliers de lignes, statistiques à jour), le SQL généré par Hibernate est
+ * capturé puis passé à {@code EXPLAIN}. Les requêtes natives des purges par lots, exécutées hors Hibernate, sont
+ * expliquées directement. Le test échoue si un plan contient un parcours séquentiel d'une table de plus
+ * de {@link #SEUIL_GRANDE_TABLE} lignes.
+ * <p>
+ * Sans valeurs fournies, le plan est générique ({@code EXPLAIN (GENERIC_PLAN)}, PostgreSQL 16+) ; les requêtes sur
+ * intervalle fournissent des valeurs réalistes, car la sélectivité par défaut d'une inégalité inconnue (un tiers de la
+ * table) ne reflète pas leur usage. Toute nouvelle méthode d'un repository surveillé doit recevoir un cas ici,
+ * ou être déclarée dans {@link #PARCOURS_COMPLET_ASSUME}.
+ * </p>
+ */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+        + "fr.studi.bloc3jo2024.integration.PlansRequetesIntegrationTest$CaptureSql")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class PlansRequetesIntegrationTest extends AbstractPostgresIntegrationTest {
+
+    private static final long SEUIL_GRANDE_TABLE = 5_000;
+    private static final int NB_UTILISATEURS = 20_000;
+    private static final int TAILLE_LOT_PURGE = 1_000;
+    private static final int INACTIVITE_JOURS_PANIERS = 30;
+    private static final Pattern PARCOURS_SEQUENTIEL = Pattern.compile("Seq Scan on (\\S+)");
+
+    /** Repositories des tables qui grossissent avec le trafic. */
+    private static final List<Class<?>> REPOSITORIES_SURVEILLES = List.of(
+            PanierRepository.class, ContenuPanierRepository.class, BilletRepository.class,
+            AuthTokenTemporaireRepository.class, UtilisateurRepository.class, PaiementRepository.class,
+            TransactionRepository.class);
+
+    /** Agrégats globaux (recalage des compteurs) : le parcours complet est attendu. */
+    private static final Set<String> PARCOURS_COMPLET_ASSUME = Set.of(
+            "PaiementRepository.countByStatutPaiementAndTransaction_StatutTransaction",
+            "PaiementRepository.countByOffreIdAndStatutPaiementAndTransaction_StatutTransaction");
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private PanierRepository panierRepository;
+    @Autowired
+    private ContenuPanierRepository contenuPanierRepository;
+    @Autowired
+    private BilletRepository billetRepository;
+    @Autowired
+    private AuthTokenTemporaireRepository authTokenTemporaireRepository;
+    @Autowired
+    private UtilisateurRepository utilisateurRepository;
+    @Autowired
+    private PaiementRepository paiementRepository;
+    @Autowired
+    private TransactionRepository transactionRepository;
+    @Autowired
+    private OffreRepository offreRepository;
+
+    @MockitoBean
+    private EmailService emailService;
+
+    private String email;
+    private UUID idUtilisateur;
+    private Long idPanier;
+    private Long idOffre;
+    private Long idPaiement;
+    private LocalDateTime dateTransaction;
+    private String tokenIdentifier;
+    private String tokenHache;
+    private String cleBillet;
+
+    /** Capture le SQL émis par Hibernate pendant l'appel d'une méthode de repository. */
+    public static class CaptureSql implements StatementInspector {
+
+        private static final List<String> REQUETES = new CopyOnWriteArrayList<>();
+        private static volatile boolean active;
+
+        @Override
+        public String inspect(String sql) {
+            if (active) {
+                REQUETES.add(sql);
+            }
+            return sql;
+        }
+    }
+
+    /** Appel d'une méthode de repository ; {@code valeurs} (optionnelles) sont liées à la première requête émise. */
+    private record Cas(Runnable appel, Object... valeurs) {
+    }
+
+    /** Requête SQL native, expliquée avec ses valeurs. */
+    private record RequeteNative(String sql, Object... valeurs) {
+    }
+
+    @BeforeAll
+    void peupler() {
+        Boolean dejaPeuple = jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM utilisateurs WHERE email = 'plan-1@jo.fr')", Boolean.class);
+        if (!Boolean.TRUE.equals(dejaPeuple)) {
+            creerDonnees();
+        }
+        for (String table : List.of("utilisateurs", "paniers", "contenu_panier", "paiements", "transactions",
+                "billets", "billet_offre", "auth_tokens_temporaire")) {
+            jdbcTemplate.execute("ANALYZE " + table);
+        }
+
+        email = "plan-4242@jo.fr";
+        idUtilisateur = jdbcTemplate.queryForObject("SELECT id_utilisateur_uuid FROM utilisateurs WHERE email = ?", UUID.class, email);
+        idPanier = jdbcTemplate.queryForObject("SELECT id_panier FROM paniers WHERE id_utilisateur_uuid = ? AND statut_panier = 'PAYE'",
+                Long.class, idUtilisateur);
+        idOffre = jdbcTemplate.queryForObject("SELECT MIN(id_offre) FROM contenu_panier WHERE id_panier = ?", Long.class, idPanier);
+        idPaiement = jdbcTemplate.queryForObject("SELECT id_paiement FROM paiements WHERE id_panier = ?", Long.class, idPanier);
+        dateTransaction = jdbcTemplate.queryForObject("SELECT date_transaction FROM transactions WHERE id_payement = ?",
+                LocalDateTime.class, idPaiement);
+        tokenIdentifier = jdbcTemplate.queryForObject("SELECT MIN(token_identifier) FROM auth_tokens_temporaire WHERE id_utilisateur_uuid = ?",
+                String.class, idUtilisateur);
+        tokenHache = jdbcTemplate.queryForObject("SELECT token_hache FROM auth_tokens_temporaire WHERE token_identifier = ?",
+                String.class, tokenIdentifier);
+        cleBillet = jdbcTemplate.queryForObject("SELECT MIN(cle_finale_billet) FROM billets WHERE id_utilisateur_uuid = ?",
+                String.class, idUtilisateur);
+    }
+
+    @Test
+    void chaqueRequeteSurUneGrandeTable_utiliseUnIndex() {
+        // Arrange
+        Map<String, Cas> cas = cas();
+        List<String> nonCouvertes = new ArrayList<>();
+        for (Class<?> repository : REPOSITORIES_SURVEILLES) {
+            for (Method methode : repository.getDeclaredMethods()) {
+                String nom = repository.getSimpleName() + "." + methode.getName();
+                if (!methode.isSynthetic() && !methode.isDefault()
+                        && !cas.containsKey(nom) && !PARCOURS_COMPLET_ASSUME.contains(nom)) {
+                    nonCouvertes.add(nom);
+                }
+            }
+        }
+
+        // Act
+        List<String> parcoursSequentiels = new ArrayList<>();
+        cas.forEach((nom, unCas) -> {
+            List<String> requetes = capturer(unCas.appel());
+            assertThat(requetes).as("SQL capturé pour %s", nom).isNotEmpty();
+            for (int i = 0; i < requetes.size(); i++) {
+                relever(nom, requetes.get(i), i == 0 ? unCas.valeurs() : new Object[0], parcoursSequentiels);
+            }
+        });
+        requetesNatives().forEach((nom, requete) -> relever(nom, requete.sql(), requete.valeurs(), parcoursSequentiels));
+
+        // Assert
+        assertThat(nonCouvertes).as("Méthodes de repository sans cas d'EXPLAIN").isEmpty();
+        assertThat(parcoursSequentiels).as("Parcours séquentiels de grandes tables").isEmpty();
+    }
+
+    private Map<String, Cas> cas() {
+        Map<String, Cas> cas = new LinkedHashMap<>();
+        cas.put("PanierRepository.findByIdPanierAndUtilisateur_idUtilisateur",
+                new Cas(() -> panierRepository.findByIdPanierAndUtilisateur_idUtilisateur(idPanier, idUtilisateur)));
+        cas.put("PanierRepository.findByUtilisateur_idUtilisateurAndStatut",
+                new Cas(() -> panierRepository.findByUtilisateur_idUtilisateurAndStatut(idUtilisateur, StatutPanier.EN_ATTENTE)));
+        cas.put("PanierRepository.findCompletByUtilisateurAndStatut",
+                new Cas(() -> panierRepository.findCompletByUtilisateurAndStatut(idUtilisateur, StatutPanier.EN_ATTENTE)));
+        cas.put("PanierRepository.reporterChangementPrix",
+                new Cas(() -> panierRepository.reporterChangementPrix(idOffre, BigDecimal.ONE), BigDecimal.ONE, idOffre));
+        cas.put("PanierRepository.retirerOffreDesMontants",
+                new Cas(() -> panierRepository.retirerOffreDesMontants(idOffre), idOffre));
+        cas.put("ContenuPanierRepository.deleteByOffre",
+                new Cas(() -> contenuPanierRepository.deleteByOffre(offreRepository.getReferenceById(idOffre)), idOffre));
+        cas.put("ContenuPanierRepository.deleteByPanier",
+                new Cas(() -> contenuPanierRepository.deleteByPanier(panierRepository.getReferenceById(idPanier))));
+        cas.put("BilletRepository.findByCleFinaleBillet",
+                new Cas(() -> billetRepository.findByCleFinaleBillet(cleBillet)));
+        cas.put("BilletRepository.findAllValidTicketKeys",
+                new Cas(() -> billetRepository.findAllValidTicketKeys()));
+        cas.put("AuthTokenTemporaireRepository.findByTokenIdentifier",
+                new Cas(() -> authTokenTemporaireRepository.findByTokenIdentifier(tokenIdentifier)));
+        cas.put("AuthTokenTemporaireRepository.findByTokenHache",
+                new Cas(() -> authTokenTemporaireRepository.findByTokenHache(tokenHache)));
+        cas.put("AuthTokenTemporaireRepository.findByUtilisateurAndTypeToken",
+                new Cas(() -> authTokenTemporaireRepository.findByUtilisateurAndTypeToken(
+                        utilisateurRepository.getReferenceById(idUtilisateur), TypeAuthTokenTemp.RESET_PASSWORD)));
+        cas.put("UtilisateurRepository.findByEmail",
+                new Cas(() -> utilisateurRepository.findByEmail(email)));
+        cas.put("UtilisateurRepository.findByEmailWithRole",
+                new Cas(() -> utilisateurRepository.findByEmailWithRole(email)));
+        cas.put("UtilisateurRepository.existsByEmail",
+                new Cas(() -> utilisateurRepository.existsByEmail(email)));
+        cas.put("PaiementRepository.findByPanier_idPanierAndUtilisateur_idUtilisateur",
+                new Cas(() -> paiementRepository.findByPanier_idPanierAndUtilisateur_idUtilisateur(idPanier, idUtilisateur)));
+        cas.put("TransactionRepository.findByPaiement",
+                new Cas(() -> transactionRepository.findByPaiement(paiementRepository.getReferenceById(idPaiement))));
+        LocalDateTime debut = dateTransaction.minusMinutes(5);
+        LocalDateTime fin = dateTransaction.plusMinutes(5);
+        cas.put("TransactionRepository.findByPaiementIdPaiementAndDateTransactionBetween",
+                new Cas(() -> transactionRepository.findByPaiementIdPaiementAndDateTransactionBetween(idPaiement, debut, fin),
+                        idPaiement, debut, fin));
+        return cas;
+    }
+
+    /** Purges par lots : suppression par {@code ctid} des lignes expirées, au plus un lot à la fois. */
+    private Map<String, RequeteNative> requetesNatives() {
+        Map<String, RequeteNative> requetes = new LinkedHashMap<>();
+        LocalDateTime maintenant = LocalDateTime.now();
+        requetes.put("AuthTokenTemporaireService.LOT_TOKENS_EXPIRES",
+                new RequeteNative(AuthTokenTemporaireService.LOT_TOKENS_EXPIRES, maintenant, TAILLE_LOT_PURGE));
+        requetes.put("PanierServiceImpl.LOT_PANIERS_ABANDONNES",
+                new RequeteNative(PanierServiceImpl.LOT_PANIERS_ABANDONNES,
+                        maintenant.minusDays(INACTIVITE_JOURS_PANIERS), TAILLE_LOT_PURGE));
+        return requetes;
+    }
+
+    /** Ajoute à {@code parcoursSequentiels} chaque parcours séquentiel d'une grande table dans le plan de {@code sql}. */
+    private void relever(String nom, String sql, Object[] valeurs, List<String> parcoursSequentiels) {
+        String plan = expliquer(sql, valeurs);
+        Matcher matcher = PARCOURS_SEQUENTIEL.matcher(plan);
+        while (matcher.find()) {
+            String relation = matcher.group(1);
+            if (lignesEstimees(relation) >= SEUIL_GRANDE_TABLE) {
+                parcoursSequentiels.add(nom + " → Seq Scan on " + relation + "\n" + sql + "\n" + plan);
+            }
+        }
+    }
+
+    /** Exécute l'appel dans une transaction annulée (les suppressions ne sont jamais validées) et retourne le SQL émis. */
+    private List<String> capturer(Runnable appel) {
+        CaptureSql.REQUETES.clear();
+        transactionTemplate.executeWithoutResult(status -> {
+            CaptureSql.active = true;
+            try {
+                appel.run();
+            } finally {
+                CaptureSql.active = false;
+                status.setRollbackOnly();
+            }
+        });
+        return List.copyOf(CaptureSql.REQUETES);
+    }
+
+    private String expliquer(String sql, Object[] valeurs) {
+        List<String> lignes;
+        if (valeurs.length > 0) {
+            lignes = jdbcTemplate.queryForList("EXPLAIN " + sql, String.class, valeurs);
+        } else {
+            lignes = jdbcTemplate.queryForList("EXPLAIN (GENERIC_PLAN) " + numeroterParametres(sql), String.class);
+        }
+        return String.join("\n", lignes);
+    }
+
+    /** Remplace les marqueurs JDBC {@code ?} par des paramètres numérotés {@code $n} pour un plan générique. */
+    private static String numeroterParametres(String sql) {
+        StringBuilder resultat = new StringBuilder();
+        int numero = 0;
+        for (char c : sql.toCharArray()) {
+            if (c == '?') {
+                resultat.append('$').append(++numero);
+            } else {
+                resultat.append(c);
+            }
+        }
+        return resultat.toString();
+    }
+
+    private long lignesEstimees(String relation) {
+        Long lignes = jdbcTemplate.queryForObject(
+                "SELECT COALESCE(MAX(reltuples), 0)::bigint FROM pg_class WHERE relname = ?", Long.class, relation);
+        return lignes != null ? lignes : 0;
+    }
+
+    /**
+     * Peuple les tables surveillées : deux paniers par utilisateur (un payé, un en cours), deux lignes par panier,
+     * un paiement et une transaction étalés sur un an par panier payé, deux billets dont 5 % non scannés, deux tokens
+     * dont 1 % expirés.
+     */
+    private void creerDonnees() {
+        jdbcTemplate.update("INSERT INTO pays (nom_pays) VALUES ('Pays-plans') ON CONFLICT (nom_pays) DO NOTHING");
+        Long idAdresse = jdbcTemplate.queryForObject("INSERT INTO adresses (numero_rue, nom_rue, ville, code_postal, id_pays) " +
+                "SELECT 1, 'Rue des plans', 'Paris', '75001', id_pays FROM pays WHERE nom_pays = 'Pays-plans' RETURNING id_adresse", Long.class);
+        jdbcTemplate.update("INSERT INTO roles (type_role) VALUES ('USER') ON CONFLICT (type_role) DO NOTHING");
+        Long idRole = jdbcTemplate.queryForObject("SELECT id_role FROM roles WHERE type_role = 'USER'", Long.class);
+        Long idDiscipline = jdbcTemplate.queryForObject("INSERT INTO disciplines (nom_discipline, date_discipline, nb_place_dispo, id_adresse) " +
+                "VALUES ('Discipline-plans', NOW() + INTERVAL '30 days', 1000000, ?) RETURNING id_discipline", Long.class, idAdresse);
+        jdbcTemplate.update("INSERT INTO offres (type_offre, quantite, prix, capacite, statut_offre, id_discipline) " +
+                "SELECT 'SOLO', 1000000, 50, 1, 'DISPONIBLE', ? FROM generate_series(1, 100)", idDiscipline);
+
+        jdbcTemplate.update("INSERT INTO utilisateurs (email, nom, prenom, date_naissance, cle_utilisateur, is_verified, id_role, id_adresse) " +
+                "SELECT 'plan-' || i || '@jo.fr', 'Nom', 'Prenom', DATE '1990-01-01', 'plan-cle-' || i, TRUE, ?, ? " +
+                "FROM generate_series(1, ?) i", idRole, idAdresse, NB_UTILISATEURS);
+        jdbcTemplate.update("INSERT INTO paniers (montant_total, statut_panier, date_ajout, id_utilisateur_uuid) " +
+                "SELECT 100, s.statut::statut_panier, NOW(), u.id_utilisateur_uuid " +
+                "FROM utilisateurs u CROSS JOIN (VALUES ('PAYE'), ('EN_ATTENTE')) AS s(statut) WHERE u.email LIKE 'plan-%'");
+        jdbcTemplate.update("INSERT INTO contenu_panier (id_panier, id_offre, quantite_commandee) " +
+                "SELECT p.id_panier, o.ids[1 + (p.id_panier + d) % 100], 1 " +
+                "FROM paniers p JOIN utilisateurs u ON u.id_utilisateur_uuid = p.id_utilisateur_uuid " +
+                "CROSS JOIN (SELECT array_agg(id_offre ORDER BY id_offre) AS ids FROM offres WHERE id_discipline = ?) o " +
+                "CROSS JOIN (VALUES (0), (1)) AS l(d) WHERE u.email LIKE 'plan-%'", idDiscipline);
+        Long idMethode = jdbcTemplate.queryForObject("SELECT MIN(id_methode) FROM methodes_paiement", Long.class);
+        jdbcTemplate.update("INSERT INTO paiements (statut_paiement, date_paiement, montant, id_methode_paiement, id_utilisateur, id_panier) " +
+                "SELECT 'ACCEPTE', NOW() - (p.id_panier % 365) * INTERVAL '1 day', 100, ?, p.id_utilisateur_uuid, p.id_panier " +
+                "FROM paniers p JOIN utilisateurs u ON u.id_utilisateur_uuid = p.id_utilisateur_uuid " +
+                "WHERE u.email LIKE 'plan-%' AND p.statut_panier = 'PAYE'", idMethode);
+        jdbcTemplate.update("INSERT INTO transactions (montant, date_transaction, statut_transaction, id_payement) " +
+                "SELECT 100, pa.date_paiement, 'REUSSI', pa.id_paiement " +
+                "FROM paiements pa JOIN utilisateurs u ON u.id_utilisateur_uuid = pa.id_utilisateur WHERE u.email LIKE 'plan-%'");
+
+        jdbcTemplate.update("INSERT INTO billets (cle_finale_billet, id_utilisateur_uuid, is_scanned) " +
+                "SELECT 'plan-billet-' || u.email || '-' || n, u.id_utilisateur_uuid, (hashtext(u.email)::bigint + n) % 20 <> 0 " +
+                "FROM utilisateurs u CROSS JOIN generate_series(1, 2) n WHERE u.email LIKE 'plan-%'");
+        jdbcTemplate.update("INSERT INTO billet_offre (id_billet, id_offre) " +
+                "SELECT b.id_billet, o.ids[1 + b.id_billet % 100] FROM billets b " +
+                "CROSS JOIN (SELECT array_agg(id_offre ORDER BY id_offre) AS ids FROM offres WHERE id_discipline = ?) o " +
+                "WHERE b.cle_finale_billet LIKE 'plan-billet-%'", idDiscipline);
+
+        jdbcTemplate.update("INSERT INTO auth_tokens_temporaire (id_token_temp_uuid, token_identifier, token_hache, type_token, date_expiration, id_utilisateur_uuid) " +
+                "SELECT gen_random_uuid(), gen_random_uuid()::text, 'plan-hache-' || u.email || '-' || t.type, t.type::type_token, " +
+                "CASE WHEN (hashtext(u.email)::bigint + length(t.type)) % 100 = 0 THEN NOW() - INTERVAL '1 day' " +
+                "ELSE NOW() + (1 + abs(hashtext(u.email)::bigint) % 1000) * INTERVAL '1 minute' END, u.id_utilisateur_uuid " +
+                "FROM utilisateurs u CROSS JOIN (VALUES ('RESET_PASSWORD'), ('VALIDATION_EMAIL')) AS t(type) WHERE u.email LIKE 'plan-%'");
+    }
+}
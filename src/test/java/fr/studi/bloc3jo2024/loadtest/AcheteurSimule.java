@@ -0,0 +1,287 @@
+package fr.studi.bloc3jo2024.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Un acheteur simulé qui rejoue le parcours réel d'achat via l'API HTTP :
+ * connexion → catalogue → ajout au panier → finalisation → paiement → simulation → scan du billet.
+ * <p>
+ * Chaque appel est chronométré dans le {@link RapportCharge} ; les refus de fin de stock sont
+ * comptés comme des issues normales, toute autre anomalie est signalée comme échec ou violation.
+ * </p>
+ */
+final class AcheteurSimule implements Runnable {
+
+    private static final Duration DELAI_REQUETE = Duration.ofSeconds(30);
+    private static final String EN_TETE_FILE_ATTENTE = "X-File-Attente";
+    private static final int ATTENTES_MAX = 600;
+
+    /**
+     * Identité d'un acheteur. {@code idUtilisateur} est nul lorsque le compte doit être créé via l'API ;
+     * il est alors résolu par l'{@link AnnuaireComptes} après l'inscription.
+     */
+    record Compte(String email, String motDePasse, UUID idUtilisateur) {
+    }
+
+    /** Réponse HTTP réduite au statut et au corps JSON (nœud manquant si le corps est vide ou non JSON). */
+    private record Reponse(int statut, JsonNode corps) {
+        boolean succes() {
+            return statut >= 200 && statut < 300;
+        }
+    }
+
+    private final HttpClient client;
+    private final ObjectMapper objectMapper;
+    private final String urlBase;
+    private final RapportCharge rapport;
+    private final ParametresCharge parametres;
+    private final Compte compte;
+    private final Long idOffreVedette;
+    private final String jetonScanner;
+    private final Set<String> clesEmises;
+    private final AnnuaireComptes annuaire;
+    private String ticketFileAttente;
+
+    /** Accès aux données hors API nécessaires à l'inscription : mail de confirmation et identifiant créé. */
+    interface AnnuaireComptes {
+        String attendreJetonConfirmation(String email) throws InterruptedException;
+
+        UUID idUtilisateur(String email);
+    }
+
+    AcheteurSimule(HttpClient client, ObjectMapper objectMapper, String urlBase, RapportCharge rapport,
+                   ParametresCharge parametres, Compte compte, Long idOffreVedette, String jetonScanner,
+                   Set<String> clesEmises, AnnuaireComptes annuaire) {
+        this.client = client;
+        this.objectMapper = objectMapper;
+        this.urlBase = urlBase;
+        this.rapport = rapport;
+        this.parametres = parametres;
+        this.compte = compte;
+        this.idOffreVedette = idOffreVedette;
+        this.jetonScanner = jetonScanner;
+        this.clesEmises = clesEmises;
+        this.annuaire = annuaire;
+    }
+
+    @Override
+    public void run() {
+        rapport.parcoursDemarre();
+        try {
+            parcourir();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            rapport.echec("interrompu");
+        } catch (IOException e) {
+            rapport.echec("transport: " + e.getClass().getSimpleName());
+        } catch (RuntimeException e) {
+            rapport.echec("client: " + e.getClass().getSimpleName());
+        }
+    }
+
+    private void parcourir() throws IOException, InterruptedException {
+        UUID idUtilisateur = compte.idUtilisateur();
+        if (idUtilisateur == null) {
+            idUtilisateur = inscrire();
+            if (idUtilisateur == null) {
+                rapport.echec("inscription");
+                return;
+            }
+        }
+
+        // 1. Connexion
+        Reponse connexion = appeler("auth.login", post("/api/auth/login", Map.of(
+                "email", compte.email(), "password", compte.motDePasse()), null));
+        String jwt = connexion.corps().path("token").asText(null);
+        if (!connexion.succes() || jwt == null) {
+            rapport.echec("login");
+            return;
+        }
+
+        // 2. Catalogue
+        Reponse catalogue = appeler("offres.lister", get("/api/offres?size=100", jwt));
+        JsonNode offre = choisirOffre(catalogue.corps().path("content"));
+        if (offre == null) {
+            rapport.rejetStock();
+            return;
+        }
+        long idOffre = offre.path("id").asLong();
+        int quantite = 1 + ThreadLocalRandom.current().nextInt(Math.max(1, parametres.quantiteMax()));
+
+        // 3. Ajout au panier
+        Reponse ajout = appeler("panier.ajout", post("/api/paniers/" + idUtilisateur + "/offres",
+                Map.of("idOffre", idOffre, "quantite", quantite), jwt));
+        if (estRefusMetier(ajout)) {
+            rapport.rejetStock();
+            return;
+        }
+        if (!ajout.succes()) {
+            rapport.echec("panier.ajout " + ajout.statut());
+            return;
+        }
+
+        // 4. Finalisation (décrément du stock et des places)
+        Reponse finalisation = appeler("panier.payer", post("/api/paniers/" + idUtilisateur + "/payer", null, jwt));
+        if (estRefusMetier(finalisation)) {
+            rapport.rejetStock();
+            return;
+        }
+        if (!finalisation.succes()) {
+            rapport.echec("panier.payer " + finalisation.statut());
+            return;
+        }
+        long idPanier = finalisation.corps().path("idPanier").asLong();
+        rapport.achatConfirme(idOffre, quantite);
+
+        // 5. Paiement
+        Reponse paiement = appeler("paiement.initier",
+                post("/api/paiements/panier/" + idPanier + "?methodePaiement=CARTE_BANCAIRE", null, jwt));
+        if (!paiement.succes()) {
+            rapport.echec("paiement.initier " + paiement.statut());
+            return;
+        }
+        long idPaiement = paiement.corps().path("idPaiement").asLong();
+
+        // 6. Simulation du retour de la banque (génère le billet)
+        Reponse simulation = appeler("paiement.simuler",
+                post("/api/paiements/" + idPaiement + "/simuler?reussi=true", null, jwt));
+        String cle = simulation.corps().path("cleFinaleBillet").asText(null);
+        if (!simulation.succes() || cle == null) {
+            rapport.echec("paiement.simuler " + simulation.statut());
+            return;
+        }
+        if (!clesEmises.add(cle)) {
+            rapport.violation("Clé de billet émise deux fois : " + cle);
+        }
+
+        // 7. Contrôle d'accès : le premier scan passe, le second doit être refusé
+        Reponse scan = appeler("billet.verifier", get("/api/billets/verifier/" + cle, jetonScanner));
+        if (!scan.succes()) {
+            rapport.echec("billet.verifier " + scan.statut());
+            return;
+        }
+        Reponse secondScan = appeler("billet.reverifier", get("/api/billets/verifier/" + cle, jetonScanner));
+        if (secondScan.succes()) {
+            rapport.violation("Billet accepté deux fois au scan : " + cle);
+        }
+        rapport.parcoursTermine();
+    }
+
+    /**
+     * Choisit l'offre visée : l'offre vedette pour une part des acheteurs (contention maximale),
+     * sinon une offre disponible tirée au hasard.
+     */
+    private JsonNode choisirOffre(JsonNode offres) {
+        if (!offres.isArray() || offres.isEmpty()) {
+            return null;
+        }
+        List<JsonNode> disponibles = new ArrayList<>();
+        for (JsonNode offre : offres) {
+            if (idOffreVedette != null && offre.path("id").asLong() == idOffreVedette
+                    && ThreadLocalRandom.current().nextDouble() < parametres.partOffreVedette()) {
+                return offre;
+            }
+            if (offre.path("quantiteDisponible").asInt() > 0) {
+                disponibles.add(offre);
+            }
+        }
+        return disponibles.isEmpty() ? null : disponibles.get(ThreadLocalRandom.current().nextInt(disponibles.size()));
+    }
+
+    private static boolean estRefusMetier(Reponse reponse) {
+        return reponse.statut() == 409 || reponse.statut() == 400;
+    }
+
+    /** Inscription via l'API puis activation du compte grâce au lien reçu par GreenMail. */
+    private UUID inscrire() throws IOException, InterruptedException {
+        Map<String, Object> demande = Map.ofEntries(
+                Map.entry("username", "Charge"),
+                Map.entry("firstname", "Acheteur"),
+                Map.entry("date", "1990-01-01"),
+                Map.entry("email", compte.email()),
+                Map.entry("phonenumber", "0600000000"),
+                Map.entry("streetnumber", 1),
+                Map.entry("address", "Rue de la Charge"),
+                Map.entry("postalcode", "75001"),
+                Map.entry("city", "Paris"),
+                Map.entry("password", compte.motDePasse()),
+                Map.entry("country", "France"));
+        Reponse inscription = appeler("auth.register", post("/api/auth/register", demande, null));
+        if (!inscription.succes()) {
+            return null;
+        }
+        String jeton = annuaire.attendreJetonConfirmation(compte.email());
+        if (jeton == null) {
+            return null;
+        }
+        Reponse confirmation = appeler("auth.confirm", get("/api/auth/confirm?token=" + jeton, null));
+        return confirmation.succes() ? annuaire.idUtilisateur(compte.email()) : null;
+    }
+
+    /**
+     * Envoie la requête ; en salle d'attente (503 avec ticket), patiente le délai {@code Retry-After} et la renvoie
+     * avec le ticket, comme le ferait le client web. Chaque passage est compté dans le rapport.
+     */
+    private Reponse appeler(String etape, HttpRequest requete) throws IOException, InterruptedException {
+        for (int attente = 0; ; attente++) {
+            HttpRequest envoi = ticketFileAttente == null ? requete
+                    : HttpRequest.newBuilder(requete, (nom, valeur) -> true).setHeader(EN_TETE_FILE_ATTENTE, ticketFileAttente).build();
+            long debut = System.nanoTime();
+            HttpResponse<String> reponse = client.send(envoi, HttpResponse.BodyHandlers.ofString());
+            rapport.enregistrerAppel(etape, reponse.statusCode(), System.nanoTime() - debut);
+            reponse.headers().firstValue(EN_TETE_FILE_ATTENTE).ifPresent(ticket -> ticketFileAttente = ticket);
+            if (reponse.statusCode() != 503 || ticketFileAttente == null || attente >= ATTENTES_MAX) {
+                return new Reponse(reponse.statusCode(), lireJson(reponse.body()));
+            }
+            long secondes = reponse.headers().firstValueAsLong("Retry-After").orElse(1);
+            Thread.sleep(Duration.ofSeconds(Math.max(1, secondes)));
+        }
+    }
+
+    private JsonNode lireJson(String corps) {
+        if (corps == null || corps.isBlank()) {
+            return objectMapper.missingNode();
+        }
+        try {
+            return objectMapper.readTree(corps);
+        } catch (IOException e) {
+            return objectMapper.missingNode();
+        }
+    }
+
+    private HttpRequest get(String chemin, String jwt) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(urlBase + chemin)).timeout(DELAI_REQUETE).GET();
+        if (jwt != null) {
+            builder.header("Authorization", "Bearer " + jwt);
+        }
+        return builder.build();
+    }
+
+    private HttpRequest post(String chemin, Object corps, String jwt) throws IOException {
+        HttpRequest.BodyPublisher publisher = corps == null
+                ? HttpRequest.BodyPublishers.noBody()
+                : HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(corps));
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(urlBase + chemin))
+                .timeout(DELAI_REQUETE)
+                .header("Content-Type", "application/json")
+                .POST(publisher);
+        if (jwt != null) {
+            builder.header("Authorization", "Bearer " + jwt);
+        }
+        return builder.build();
+    }
+}
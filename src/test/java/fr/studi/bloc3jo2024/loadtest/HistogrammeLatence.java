@@ -0,0 +1,113 @@
+package fr.studi.bloc3jo2024.loadtest;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogramme de latences log-linéaire, sans verrou, en microsecondes.
+ * <p>
+ * Chaque puissance de deux est découpée en 16 sous-intervalles, ce qui borne l'erreur relative
+ * des percentiles à environ 6 % tout en gardant un tableau de taille fixe (1024 compteurs)
+ * partagé par tous les threads acheteurs.
+ * </p>
+ */
+final class HistogrammeLatence {
+
+    private static final int SOUS_INTERVALLES_LOG2 = 4;
+    private static final int SOUS_INTERVALLES = 1 << SOUS_INTERVALLES_LOG2;
+    private static final int NB_COMPTEURS = 64 * SOUS_INTERVALLES;
+
+    private final AtomicLongArray compteurs = new AtomicLongArray(NB_COMPTEURS);
+    private final LongAdder nombre = new LongAdder();
+    private final LongAdder sommeMicros = new LongAdder();
+    private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0L);
+
+    void enregistrer(long dureeNanos) {
+        long micros = Math.max(1L, dureeNanos / 1_000L);
+        compteurs.incrementAndGet(indice(micros));
+        nombre.increment();
+        sommeMicros.add(micros);
+        maxMicros.accumulate(micros);
+    }
+
+    long nombre() {
+        return nombre.sum();
+    }
+
+    double moyenneMillis() {
+        long n = nombre.sum();
+        return n == 0 ? 0.0 : sommeMicros.sum() / (n * 1_000.0);
+    }
+
+    double maxMillis() {
+        return maxMicros.get() / 1_000.0;
+    }
+
+    /**
+     * @param quantile Quantile recherché, entre 0 et 1 (ex. 0.99).
+     * @return La borne haute (en millisecondes) de l'intervalle contenant ce quantile.
+     */
+    double percentileMillis(double quantile) {
+        long total = nombre.sum();
+        if (total == 0) {
+            return 0.0;
+        }
+        long rang = Math.max(1L, (long) Math.ceil(quantile * total));
+        long cumul = 0;
+        for (int i = 0; i < NB_COMPTEURS; i++) {
+            cumul += compteurs.get(i);
+            if (cumul >= rang) {
+                return Math.min(borneHaute(i), maxMicros.get()) / 1_000.0;
+            }
+        }
+        return maxMillis();
+    }
+
+    /**
+     * Distribution regroupée par puissances de deux de millisecondes (≤1 ms, ≤2 ms, ≤4 ms…),
+     * rendue sous forme de barres textuelles pour le rapport.
+     */
+    String distribution() {
+        long[] parPuissance = new long[64];
+        int derniere = 0;
+        for (int i = 0; i < NB_COMPTEURS; i++) {
+            long c = compteurs.get(i);
+            if (c == 0) {
+                continue;
+            }
+            long millis = Math.max(1L, (borneHaute(i) + 999L) / 1_000L);
+            int puissance = 64 - Long.numberOfLeadingZeros(millis - 1);
+            parPuissance[puissance] += c;
+            derniere = Math.max(derniere, puissance);
+        }
+        long total = Math.max(1L, nombre.sum());
+        StringBuilder sb = new StringBuilder();
+        for (int p = 0; p <= derniere; p++) {
+            int largeur = (int) Math.round(40.0 * parPuissance[p] / total);
+            sb.append(String.format("      <= %6d ms | %-40s %d%n", 1L << p, "#".repeat(largeur), parPuissance[p]));
+        }
+        return sb.toString();
+    }
+
+    static int indice(long micros) {
+        if (micros < SOUS_INTERVALLES) {
+            return (int) micros;
+        }
+        int puissance = 63 - Long.numberOfLeadingZeros(micros);
+        int decalage = puissance - SOUS_INTERVALLES_LOG2;
+        int sousIntervalle = (int) ((micros >>> decalage) & (SOUS_INTERVALLES - 1));
+        return (decalage + 1) * SOUS_INTERVALLES + sousIntervalle;
+    }
+
+    static long borneHaute(int indice) {
+        if (indice < SOUS_INTERVALLES) {
+            return indice;
+        }
+        int bloc = indice / SOUS_INTERVALLES;
+        int sousIntervalle = indice % SOUS_INTERVALLES;
+        int decalage = bloc - 1;
+        long borneBasse = (long) (SOUS_INTERVALLES + sousIntervalle) << decalage;
+        return borneBasse + (1L << decalage) - 1;
+    }
+}
@@ -0,0 +1,399 @@
+package fr.studi.bloc3jo2024.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.icegreen.greenmail.configuration.GreenMailConfiguration;
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import fr.studi.bloc3jo2024.entity.*;
+import fr.studi.bloc3jo2024.entity.enums.StatutOffre;
+import fr.studi.bloc3jo2024.entity.enums.TypeOffre;
+import fr.studi.bloc3jo2024.entity.enums.TypeRole;
+import fr.studi.bloc3jo2024.integration.AbstractPostgresIntegrationTest;
+import fr.studi.bloc3jo2024.repository.*;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Harnais de charge reproduisant l'ouverture d'une vente de billets.
+ * <p>
+ * Le scénario crée des disciplines, des offres et une population d'acheteurs, puis lance les parcours
+ * d'achat complets via HTTP sur l'application démarrée sur un port aléatoire, adossée à un PostgreSQL
+ * Testcontainers et à un serveur GreenMail embarqué : aucun service externe n'est nécessaire.
+ * À la fin, le rapport (débit, histogrammes de latence, codes HTTP) est journalisé et les invariants
+ * de stock et de places sont vérifiés directement en base.
+ * </p>
+ * <p>
+ * Exécution : {@code mvn -Pload-test verify -Dcharge.acheteurs=500 -Dcharge.concurrence=64 -Dcharge.tauxArrivee=100}
+ * (voir {@link ParametresCharge} pour l'ensemble des paramètres).
+ * </p>
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class OuvertureVentesSimulation extends AbstractPostgresIntegrationTest {
+
+    private static final Logger log = LoggerFactory.getLogger(OuvertureVentesSimulation.class);
+
+    private static final String MOT_DE_PASSE = "ChargeJo2024!";
+    private static final Pattern JETON_CONFIRMATION = Pattern.compile("token=([0-9a-fA-F-]{36})");
+    private static final Duration ATTENTE_MAIL = Duration.ofSeconds(20);
+
+    @RegisterExtension
+    static final GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP)
+            .withConfiguration(GreenMailConfiguration.aConfig().withDisabledAuthentication());
+
+    @DynamicPropertySource
+    static void proprietesMail(DynamicPropertyRegistry registry) {
+        registry.add("spring.mail.host", () -> "localhost");
+        registry.add("spring.mail.port", () -> ServerSetupTest.SMTP.getPort());
+        // Les requêtes SQL journalisées fausseraient les mesures de latence.
+        registry.add("spring.jpa.show-sql", () -> "false");
+        registry.add("spring.jpa.properties.hibernate.format_sql", () -> "false");
+        // Tous les acheteurs simulés partagent la même adresse : la limite par adresse ne mesurerait qu'elle-même.
+        registry.add("app.limitation-debit.active", () -> "false");
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private PaysRepository paysRepository;
+    @Autowired
+    private AdresseRepository adresseRepository;
+    @Autowired
+    private RoleRepository roleRepository;
+    @Autowired
+    private UtilisateurRepository utilisateurRepository;
+    @Autowired
+    private DisciplineRepository disciplineRepository;
+    @Autowired
+    private OffreRepository offreRepository;
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    void ouvertureDesVentes() throws Exception {
+        ParametresCharge parametres = ParametresCharge.depuisProprietesSysteme();
+        log.info("Démarrage du harnais de charge avec {}", parametres);
+
+        // --- Jeu de données ---
+        String suffixe = UUID.randomUUID().toString().substring(0, 8);
+        Adresse adresse = creerAdresse(suffixe);
+        String motDePasseHache = passwordEncoder.encode(MOT_DE_PASSE);
+        Map<Long, Integer> stocksInitiaux = new HashMap<>();
+        Map<Long, Integer> placesInitiales = new HashMap<>();
+        List<Offre> offres = creerCatalogue(parametres, adresse, suffixe, stocksInitiaux, placesInitiales);
+        List<AcheteurSimule.Compte> comptes = creerComptes(parametres, adresse, motDePasseHache, suffixe);
+        creerUtilisateur("scanner-" + suffixe + "@charge.jo2024.fr", TypeRole.SCANNER, adresse, motDePasseHache);
+
+        String urlBase = "http://localhost:" + port;
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        String jetonScanner = connecterScanner(client, urlBase, "scanner-" + suffixe + "@charge.jo2024.fr");
+
+        // --- Campagne ---
+        RapportCharge rapport = new RapportCharge();
+        Set<String> clesEmises = ConcurrentHashMap.newKeySet();
+        Long idOffreVedette = offres.get(0).getIdOffre();
+        AcheteurSimule.AnnuaireComptes annuaire = new AnnuaireGreenMail();
+
+        Semaphore permis = new Semaphore(parametres.concurrence());
+        ExecutorService executeur = Executors.newVirtualThreadPerTaskExecutor();
+        rapport.demarrer();
+        long prochaineArrivee = System.nanoTime();
+        for (AcheteurSimule.Compte compte : comptes) {
+            prochaineArrivee += intervalleArrivee(parametres.tauxArriveeParSeconde());
+            attendreJusqua(prochaineArrivee);
+            permis.acquire();
+            AcheteurSimule acheteur = new AcheteurSimule(client, objectMapper, urlBase, rapport, parametres,
+                    compte, idOffreVedette, jetonScanner, clesEmises, annuaire);
+            executeur.execute(() -> {
+                try {
+                    acheteur.run();
+                } finally {
+                    permis.release();
+                }
+            });
+        }
+        executeur.shutdown();
+        boolean termine = executeur.awaitTermination(parametres.dureeMax().toSeconds(), TimeUnit.SECONDS);
+        rapport.terminer();
+        if (!termine) {
+            executeur.shutdownNow();
+            rapport.violation("Campagne interrompue après " + parametres.dureeMax() + " : parcours encore en cours.");
+        }
+
+        // --- Invariants ---
+        verifierStocks(stocksInitiaux, rapport);
+        verifierPlaces(placesInitiales, rapport);
+        verifierBillets(clesEmises, rapport);
+
+        log.info(rapport.formater());
+        assertThat(rapport.violations()).as("Violations de cohérence détectées par le harnais").isEmpty();
+    }
+
+    // ------------------------------------------------------------------------------------------
+    // Arrivées (processus de Poisson)
+    // ------------------------------------------------------------------------------------------
+
+    private static long intervalleArrivee(double tauxParSeconde) {
+        if (tauxParSeconde <= 0) {
+            return 0L;
+        }
+        double u = ThreadLocalRandom.current().nextDouble();
+        return (long) (-Math.log(1.0 - u) / tauxParSeconde * 1_000_000_000L);
+    }
+
+    private static void attendreJusqua(long echeanceNanos) {
+        long restant;
+        while ((restant = echeanceNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(restant);
+        }
+    }
+
+    // ------------------------------------------------------------------------------------------
+    // Jeu de données
+    // ------------------------------------------------------------------------------------------
+
+    private Adresse creerAdresse(String suffixe) {
+        Pays france = paysRepository.findByNomPays("France")
+                .orElseGet(() -> paysRepository.save(Pays.builder().nomPays("France").build()));
+        return adresseRepository.save(Adresse.builder()
+                .numeroRue(1)
+                .nomRue("Avenue de la Charge " + suffixe)
+                .ville("Paris")
+                .codePostal("75001")
+                .pays(france)
+                .build());
+    }
+
+    private List<Offre> creerCatalogue(ParametresCharge parametres, Adresse adresse, String suffixe,
+                                       Map<Long, Integer> stocksInitiaux, Map<Long, Integer> placesInitiales) {
+        TypeOffre[] types = TypeOffre.values();
+        List<Offre> offres = new ArrayList<>();
+        for (int d = 0; d < parametres.nbDisciplines(); d++) {
+            Discipline discipline = disciplineRepository.save(Discipline.builder()
+                    .nomDiscipline("Charge " + suffixe + " #" + d)
+                    .dateDiscipline(LocalDateTime.now().plusDays(30))
+                    .nbPlaceDispo(parametres.placesParDiscipline())
+                    .adresse(adresse)
+                    .build());
+            placesInitiales.put(discipline.getIdDiscipline(), parametres.placesParDiscipline());
+
+            for (int o = 0; o < parametres.offresParDiscipline(); o++) {
+                TypeOffre type = types[o % types.length];
+                Offre offre = offreRepository.save(Offre.builder()
+                        .typeOffre(type)
+                        .prix(BigDecimal.valueOf(50L + 25L * o))
+                        .capacite(capacite(type))
+                        .quantite(parametres.stockParOffre())
+                        .statutOffre(StatutOffre.DISPONIBLE)
+                        .discipline(discipline)
+                        .build());
+                stocksInitiaux.put(offre.getIdOffre(), parametres.stockParOffre());
+                offres.add(offre);
+            }
+        }
+        return offres;
+    }
+
+    private static int capacite(TypeOffre type) {
+        return switch (type) {
+            case SOLO -> 1;
+            case DUO -> 2;
+            case FAMILIALE -> 4;
+        };
+    }
+
+    private List<AcheteurSimule.Compte> creerComptes(ParametresCharge parametres, Adresse adresse,
+                                                     String motDePasseHache, String suffixe) {
+        List<AcheteurSimule.Compte> comptes = new ArrayList<>(parametres.acheteurs());
+        for (int i = 0; i < parametres.acheteurs(); i++) {
+            String email = "acheteur-" + suffixe + "-" + i + "@charge.jo2024.fr";
+            UUID id = parametres.inscriptionParApi()
+                    ? null
+                    : creerUtilisateur(email, TypeRole.USER, adresse, motDePasseHache).getIdUtilisateur();
+            comptes.add(new AcheteurSimule.Compte(email, MOT_DE_PASSE, id));
+        }
+        return comptes;
+    }
+
+    private Utilisateur creerUtilisateur(String email, TypeRole typeRole, Adresse adresse, String motDePasseHache) {
+        Role role = roleRepository.findByTypeRole(typeRole)
+                .orElseGet(() -> roleRepository.save(Role.builder().typeRole(typeRole).build()));
+        Authentification authentification = Authentification.builder().motPasseHache(motDePasseHache).build();
+        Utilisateur utilisateur = Utilisateur.builder()
+                .email(email)
+                .nom("Charge")
+                .prenom("Acheteur")
+                .dateNaissance(LocalDate.of(1990, 1, 1))
+                .adresse(adresse)
+                .role(role)
+                .authentification(authentification)
+                .isVerified(true)
+                .cleUtilisateur(UUID.randomUUID().toString())
+                .build();
+        authentification.setUtilisateur(utilisateur);
+        return utilisateurRepository.save(utilisateur);
+    }
+
+    private String connecterScanner(HttpClient client, String urlBase, String email) throws IOException, InterruptedException {
+        String corps = objectMapper.writeValueAsString(Map.of("email", email, "password", MOT_DE_PASSE));
+        HttpResponse<String> reponse = client.send(HttpRequest.newBuilder(URI.create(urlBase + "/api/staff/login"))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(corps))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+        JsonNode json = objectMapper.readTree(reponse.body());
+        assertThat(reponse.statusCode()).as("Connexion du compte scanner").isEqualTo(200);
+        return json.path("token").asText();
+    }
+
+    // ------------------------------------------------------------------------------------------
+    // Invariants vérifiés en base
+    // ------------------------------------------------------------------------------------------
+
+    private void verifierStocks(Map<Long, Integer> stocksInitiaux, RapportCharge rapport) {
+        Map<Long, Long> vendusEnBase = quantitesParCle("""
+                SELECT cp.id_offre AS cle, SUM(cp.quantite_commandee) AS total
+                FROM contenu_panier cp JOIN paniers p ON p.id_panier = cp.id_panier
+                WHERE p.statut_panier = 'PAYE'
+                GROUP BY cp.id_offre
+                """);
+        stocksInitiaux.forEach((idOffre, initial) -> {
+            Integer restant = jdbcTemplate.queryForObject("SELECT quantite FROM offres WHERE id_offre = ?", Integer.class, idOffre);
+            long decremente = initial - (restant == null ? 0 : restant);
+            long vendu = vendusEnBase.getOrDefault(idOffre, 0L);
+            if (restant != null && restant < 0) {
+                rapport.violation("Survente sur l'offre " + idOffre + " : stock restant " + restant);
+            }
+            if (decremente != vendu) {
+                rapport.violation("Offre " + idOffre + " : stock décrémenté de " + decremente
+                        + " mais " + vendu + " unité(s) dans des paniers payés");
+            }
+            if (rapport.quantiteAchetee(idOffre) != vendu) {
+                rapport.violation("Offre " + idOffre + " : " + rapport.quantiteAchetee(idOffre)
+                        + " unité(s) confirmées aux clients mais " + vendu + " en base");
+            }
+        });
+    }
+
+    private void verifierPlaces(Map<Long, Integer> placesInitiales, RapportCharge rapport) {
+        Map<Long, Long> placesVendues = quantitesParCle("""
+                SELECT o.id_discipline AS cle, SUM(cp.quantite_commandee * o.capacite) AS total
+                FROM contenu_panier cp
+                JOIN paniers p ON p.id_panier = cp.id_panier
+                JOIN offres o ON o.id_offre = cp.id_offre
+                WHERE p.statut_panier = 'PAYE'
+                GROUP BY o.id_discipline
+                """);
+        placesInitiales.forEach((idDiscipline, initial) -> {
+            Integer restant = jdbcTemplate.queryForObject(
+                    "SELECT nb_place_dispo FROM disciplines WHERE id_discipline = ?", Integer.class, idDiscipline);
+            long vendues = placesVendues.getOrDefault(idDiscipline, 0L);
+            if (restant != null && restant < 0) {
+                rapport.violation("Survente sur la discipline " + idDiscipline + " : places restantes " + restant);
+            }
+            if (restant != null && initial - restant != vendues) {
+                rapport.violation("Discipline " + idDiscipline + " : " + (initial - restant)
+                        + " place(s) décrémentée(s) mais " + vendues + " vendue(s)");
+            }
+        });
+    }
+
+    private void verifierBillets(Set<String> clesEmises, RapportCharge rapport) {
+        Long doublons = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) - COUNT(DISTINCT cle_finale_billet) FROM billets", Long.class);
+        if (doublons != null && doublons > 0) {
+            rapport.violation(doublons + " clé(s) de billet dupliquée(s) en base");
+        }
+        for (String cle : clesEmises) {
+            Boolean scanne = jdbcTemplate.query("SELECT is_scanned FROM billets WHERE cle_finale_billet = ?",
+                    rs -> rs.next() ? rs.getBoolean(1) : null, cle);
+            if (scanne == null) {
+                rapport.violation("Billet annoncé au client mais absent en base : " + cle);
+            }
+        }
+        if (rapport.parcoursTermines() > clesEmises.size()) {
+            rapport.violation("Plus de parcours terminés (" + rapport.parcoursTermines()
+                    + ") que de billets émis (" + clesEmises.size() + ")");
+        }
+    }
+
+    private Map<Long, Long> quantitesParCle(String sql) {
+        Map<Long, Long> resultat = new HashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            resultat.put(rs.getLong("cle"), rs.getLong("total"));
+        });
+        return resultat;
+    }
+
+    // ------------------------------------------------------------------------------------------
+    // Inscription via GreenMail
+    // ------------------------------------------------------------------------------------------
+
+    /** Retrouve le lien de confirmation envoyé à l'acheteur et l'identifiant créé par l'inscription. */
+    private final class AnnuaireGreenMail implements AcheteurSimule.AnnuaireComptes {
+
+        @Override
+        public String attendreJetonConfirmation(String email) throws InterruptedException {
+            long echeance = System.nanoTime() + ATTENTE_MAIL.toNanos();
+            while (System.nanoTime() < echeance) {
+                for (MimeMessage message : greenMail.getReceivedMessagesForDomain(email)) {
+                    String jeton = extraireJeton(message);
+                    if (jeton != null) {
+                        return jeton;
+                    }
+                }
+                TimeUnit.MILLISECONDS.sleep(50);
+            }
+            return null;
+        }
+
+        @Override
+        public UUID idUtilisateur(String email) {
+            return utilisateurRepository.findByEmail(email).map(Utilisateur::getIdUtilisateur).orElse(null);
+        }
+
+        private String extraireJeton(MimeMessage message) {
+            try {
+                Matcher matcher = JETON_CONFIRMATION.matcher(String.valueOf(message.getContent()));
+                return matcher.find() ? matcher.group(1) : null;
+            } catch (Exception e) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package fr.studi.bloc3jo2024.loadtest;
+
+import java.time.Duration;
+
+/**
+ * Paramètres du harnais de charge "ouverture des ventes".
+ * <p>
+ * Toutes les valeurs sont lues depuis les propriétés système préfixées par {@code charge.},
+ * ce qui permet de les fixer depuis la ligne de commande Maven :
+ * {@code mvn -Pload-test verify -Dcharge.acheteurs=1000 -Dcharge.concurrence=64 -Dcharge.tauxArrivee=200}.
+ * </p>
+ *
+ * @param acheteurs               Nombre total d'acheteurs simulés (un parcours d'achat complet chacun).
+ * @param concurrence             Nombre maximal de parcours exécutés simultanément.
+ * @param tauxArriveeParSeconde   Taux d'arrivée moyen des acheteurs (processus de Poisson). 0 = tous au démarrage.
+ * @param nbDisciplines           Nombre de disciplines créées au démarrage.
+ * @param offresParDiscipline     Nombre d'offres créées par discipline (types SOLO, DUO, FAMILIALE en rotation).
+ * @param stockParOffre           Quantité initiale de chaque offre.
+ * @param placesParDiscipline     Nombre initial de places disponibles par discipline.
+ * @param quantiteMax             Quantité maximale commandée par un acheteur (tirée entre 1 et cette valeur).
+ * @param partOffreVedette        Proportion d'acheteurs qui visent la même offre "vedette" (contention maximale).
+ * @param inscriptionParApi       Si vrai, chaque acheteur s'inscrit via l'API et confirme son compte grâce au mail
+ *                                reçu par GreenMail ; sinon les comptes sont pré-créés en base.
+ * @param dureeMax                Durée maximale accordée à la campagne avant abandon.
+ */
+record ParametresCharge(
+        int acheteurs,
+        int concurrence,
+        double tauxArriveeParSeconde,
+        int nbDisciplines,
+        int offresParDiscipline,
+        int stockParOffre,
+        int placesParDiscipline,
+        int quantiteMax,
+        double partOffreVedette,
+        boolean inscriptionParApi,
+        Duration dureeMax) {
+
+    private static final String PREFIXE = "charge.";
+
+    static ParametresCharge depuisProprietesSysteme() {
+        return new ParametresCharge(
+                entier("acheteurs", 200),
+                entier("concurrence", 32),
+                decimal("tauxArrivee", 50.0),
+                entier("disciplines", 2),
+                entier("offresParDiscipline", 3),
+                entier("stockParOffre", 40),
+                entier("placesParDiscipline", 150),
+                entier("quantiteMax", 2),
+                decimal("partOffreVedette", 0.5),
+                Boolean.parseBoolean(System.getProperty(PREFIXE + "inscriptionParApi", "false")),
+                Duration.ofSeconds(entier("dureeMaxSecondes", 600)));
+    }
+
+    private static int entier(String nom, int defaut) {
+        return Integer.getInteger(PREFIXE + nom, defaut);
+    }
+
+    private static double decimal(String nom, double defaut) {
+        String valeur = System.getProperty(PREFIXE + nom);
+        return valeur == null || valeur.isBlank() ? defaut : Double.parseDouble(valeur);
+    }
+}
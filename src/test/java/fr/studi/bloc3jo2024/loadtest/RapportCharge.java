@@ -0,0 +1,110 @@
+package fr.studi.bloc3jo2024.loadtest;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collecte thread-safe des mesures d'une campagne de charge : latences par étape du parcours,
+ * codes HTTP obtenus, achats confirmés côté client et violations de cohérence (survente, double scan…).
+ */
+final class RapportCharge {
+
+    private final ConcurrentMap<String, HistogrammeLatence> latencesParEtape = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> statutsParEtape = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, LongAdder> quantitesAchetees = new ConcurrentHashMap<>();
+    private final Queue<String> violations = new ConcurrentLinkedQueue<>();
+
+    private final LongAdder parcoursDemarres = new LongAdder();
+    private final LongAdder parcoursTermines = new LongAdder();
+    private final LongAdder rejetsStock = new LongAdder();
+    private final LongAdder echecs = new LongAdder();
+
+    private volatile long debutNanos;
+    private volatile long finNanos;
+
+    void demarrer() {
+        debutNanos = System.nanoTime();
+    }
+
+    void terminer() {
+        finNanos = System.nanoTime();
+    }
+
+    void enregistrerAppel(String etape, int statutHttp, long dureeNanos) {
+        latencesParEtape.computeIfAbsent(etape, e -> new HistogrammeLatence()).enregistrer(dureeNanos);
+        statutsParEtape.computeIfAbsent(etape + " -> " + statutHttp, e -> new LongAdder()).increment();
+    }
+
+    void parcoursDemarre() {
+        parcoursDemarres.increment();
+    }
+
+    void parcoursTermine() {
+        parcoursTermines.increment();
+    }
+
+    /** Refus métier attendu en fin de stock (409/400 sur l'ajout au panier ou la finalisation). */
+    void rejetStock() {
+        rejetsStock.increment();
+    }
+
+    void echec(String raison) {
+        echecs.increment();
+        statutsParEtape.computeIfAbsent("echec: " + raison, e -> new LongAdder()).increment();
+    }
+
+    void achatConfirme(long idOffre, int quantite) {
+        quantitesAchetees.computeIfAbsent(idOffre, id -> new LongAdder()).add(quantite);
+    }
+
+    void violation(String description) {
+        violations.add(description);
+    }
+
+    long quantiteAchetee(long idOffre) {
+        LongAdder adder = quantitesAchetees.get(idOffre);
+        return adder == null ? 0L : adder.sum();
+    }
+
+    List<String> violations() {
+        return List.copyOf(violations);
+    }
+
+    long parcoursTermines() {
+        return parcoursTermines.sum();
+    }
+
+    String formater() {
+        double secondes = Math.max(1e-9, (finNanos - debutNanos) / 1_000_000_000.0);
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%n===== Rapport de charge : ouverture des ventes =====%n"));
+        sb.append(String.format("Durée                 : %.1f s%n", secondes));
+        sb.append(String.format("Parcours démarrés     : %d%n", parcoursDemarres.sum()));
+        sb.append(String.format("Parcours terminés     : %d (%.1f achats/s)%n", parcoursTermines.sum(), parcoursTermines.sum() / secondes));
+        sb.append(String.format("Refus fin de stock    : %d%n", rejetsStock.sum()));
+        sb.append(String.format("Échecs inattendus     : %d%n", echecs.sum()));
+
+        sb.append(String.format("%n-- Latences par étape (ms) --%n"));
+        sb.append(String.format("%-22s %8s %9s %8s %8s %8s %8s %8s%n", "étape", "appels", "req/s", "moy", "p50", "p95", "p99", "max"));
+        Map<String, HistogrammeLatence> triees = new TreeMap<>(latencesParEtape);
+        triees.forEach((etape, h) -> sb.append(String.format("%-22s %8d %9.1f %8.1f %8.1f %8.1f %8.1f %8.1f%n",
+                etape, h.nombre(), h.nombre() / secondes, h.moyenneMillis(),
+                h.percentileMillis(0.50), h.percentileMillis(0.95), h.percentileMillis(0.99), h.maxMillis())));
+
+        sb.append(String.format("%n-- Histogrammes --%n"));
+        triees.forEach((etape, h) -> sb.append("   ").append(etape).append(System.lineSeparator()).append(h.distribution()));
+
+        sb.append(String.format("%n-- Codes HTTP --%n"));
+        new TreeMap<>(statutsParEtape).forEach((cle, n) -> sb.append(String.format("   %-40s %d%n", cle, n.sum())));
+
+        sb.append(String.format("%n-- Violations de cohérence : %d --%n", violations.size()));
+        violations.forEach(v -> sb.append("   ! ").append(v).append(System.lineSeparator()));
+        return sb.toString();
+    }
+}
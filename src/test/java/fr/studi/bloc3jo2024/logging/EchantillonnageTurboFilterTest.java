@@ -0,0 +1,126 @@
+package fr.studi.bloc3jo2024.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.core.spi.FilterReply;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class EchantillonnageTurboFilterTest {
+
+    private LoggerContext contexte;
+    private EchantillonnageTurboFilter filtre;
+
+    @BeforeEach
+    void setUp() {
+        contexte = new LoggerContext();
+        contexte.getLogger(Logger.ROOT_LOGGER_NAME).setLevel(Level.DEBUG);
+        filtre = new EchantillonnageTurboFilter();
+        filtre.setContext(contexte);
+        filtre.addRegle("fr.studi.bloc3jo2024.filter=10");
+        filtre.start();
+    }
+
+    private int compterAcceptes(Logger logger, Level niveau, int nbEvenements) {
+        int acceptes = 0;
+        for (int i = 0; i < nbEvenements; i++) {
+            if (filtre.decide(null, logger, niveau, "message {}", new Object[]{i}, null) != FilterReply.DENY) {
+                acceptes++;
+            }
+        }
+        return acceptes;
+    }
+
+    /**
+     * Vérifie qu'un seul événement INFO sur N est conservé pour un logger couvert par une règle.
+     */
+    @Test
+    void decide_loggerCouvert_conserveUnEvenementSurN() {
+        // Arrange
+        Logger logger = contexte.getLogger("fr.studi.bloc3jo2024.filter.JwtAuthenticationFilter");
+
+        // Act
+        int acceptes = compterAcceptes(logger, Level.INFO, 100);
+
+        // Assert
+        assertEquals(10, acceptes);
+    }
+
+    /**
+     * Vérifie que les WARN et ERROR ne sont jamais échantillonnés.
+     */
+    @Test
+    void decide_niveauWarn_toujoursConserve() {
+        // Arrange
+        Logger logger = contexte.getLogger("fr.studi.bloc3jo2024.filter.JwtAuthenticationFilter");
+
+        // Act & Assert
+        assertEquals(50, compterAcceptes(logger, Level.WARN, 50));
+        assertEquals(50, compterAcceptes(logger, Level.ERROR, 50));
+    }
+
+    /**
+     * Vérifie que les loggers hors règle ne sont pas affectés.
+     */
+    @Test
+    void decide_loggerNonCouvert_neutre() {
+        // Arrange
+        Logger logger = contexte.getLogger("fr.studi.bloc3jo2024.service.impl.PanierServiceImpl");
+
+        // Act & Assert
+        assertEquals(100, compterAcceptes(logger, Level.INFO, 100));
+    }
+
+    /**
+     * Vérifie que la règle au préfixe le plus long l'emporte.
+     */
+    @Test
+    void decide_prefixeLePlusLong_prioritaire() {
+        // Arrange
+        filtre.addRegle("fr.studi.bloc3jo2024.filter.AdminSessionFilter=1");
+        filtre.addRegle("fr.studi.bloc3jo2024.filter.RequestIdMdcFilter=5");
+        Logger logger = contexte.getLogger("fr.studi.bloc3jo2024.filter.RequestIdMdcFilter");
+
+        // Act & Assert
+        assertEquals(20, compterAcceptes(logger, Level.DEBUG, 100));
+    }
+
+    /**
+     * Vérifie que les événements désactivés par le niveau du logger et les appels isXxxEnabled()
+     * ne consomment pas le compteur d'échantillonnage.
+     */
+    @Test
+    void decide_evenementDesactiveOuTestDeNiveau_neComptePas() {
+        // Arrange
+        Logger logger = contexte.getLogger("fr.studi.bloc3jo2024.filter.JwtAuthenticationFilter");
+        logger.setLevel(Level.INFO);
+
+        // Act
+        for (int i = 0; i < 7; i++) {
+            filtre.decide(null, logger, Level.DEBUG, "ignoré", null, null);
+            filtre.decide(null, logger, Level.INFO, null, null, null);
+        }
+
+        // Assert : le compteur est intact, le premier événement INFO réel est donc conservé
+        assertEquals(FilterReply.NEUTRAL, filtre.decide(null, logger, Level.INFO, "message", null, null));
+    }
+
+    /**
+     * Vérifie qu'une règle mal formée est ignorée sans exception.
+     */
+    @Test
+    void addRegle_formatInvalide_ignoree() {
+        // Arrange
+        EchantillonnageTurboFilter filtreVide = new EchantillonnageTurboFilter();
+        filtreVide.setContext(contexte);
+        filtreVide.addRegle("sans-taux");
+        filtreVide.addRegle("fr.studi=abc");
+        Logger logger = contexte.getLogger("fr.studi.bloc3jo2024.filter.JwtAuthenticationFilter");
+
+        // Act & Assert
+        assertEquals(FilterReply.NEUTRAL, filtreVide.decide(null, logger, Level.INFO, "message", null, null));
+    }
+}
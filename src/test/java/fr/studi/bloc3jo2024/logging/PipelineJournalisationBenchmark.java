@@ -0,0 +1,211 @@
+package fr.studi.bloc3jo2024.logging;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.util.ContextInitializer;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.FileAppender;
+import fr.studi.bloc3jo2024.entity.Role;
+import fr.studi.bloc3jo2024.entity.Utilisateur;
+import fr.studi.bloc3jo2024.entity.enums.TypeRole;
+import fr.studi.bloc3jo2024.filter.JwtAuthenticationFilter;
+import fr.studi.bloc3jo2024.filter.RequestIdMdcFilter;
+import fr.studi.bloc3jo2024.service.DetailUtilisateurService;
+import fr.studi.bloc3jo2024.service.JwtService;
+import fr.studi.bloc3jo2024.service.impl.DetailUtilisateurServiceImpl;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.LoggerFactory;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Micro-benchmark du coût de journalisation sur le chemin chaud des filtres HTTP
+ * ({@link RequestIdMdcFilter} puis {@link JwtAuthenticationFilter}), avec et sans pipeline asynchrone.
+ * <p>
+ * Non exécuté par {@code mvn test} (le nom ne correspond pas aux motifs Surefire) ; lancement explicite :
+ * {@code mvn test -Dtest=PipelineJournalisationBenchmark -Dsurefire.failIfNoSpecifiedTests=false}.
+ * Le nombre de requêtes et de threads se règle via {@code -Dbenchmark.requetes} et {@code -Dbenchmark.threads}.
+ * </p>
+ */
+class PipelineJournalisationBenchmark {
+
+    private static final int REQUETES = Integer.getInteger("benchmark.requetes", 200_000);
+    private static final int THREADS = Integer.getInteger("benchmark.threads", 8);
+    private static final String PATTERN = "%d{yyyy-MM-dd HH:mm:ss.SSS} [%thread] %-5level %logger{36} [%X{requestId:-}] - %msg%n";
+    private static final String EMAIL = "benchmark@jo2024.fr";
+
+    private enum Scenario {
+        /** Ancien comportement : un log par requête écrit de façon synchrone dans le fichier. */
+        SYNCHRONE,
+        /** Même volume, mais déposé dans la file bornée de l'AsyncAppender. */
+        ASYNCHRONE,
+        /** File asynchrone et échantillonnage 1/100 du package filter. */
+        ASYNCHRONE_ECHANTILLONNE,
+        /** Configuration de production : les logs DEBUG des filtres sont désactivés. */
+        INFO_SEUL
+    }
+
+    @TempDir
+    Path repertoire;
+
+    @AfterAll
+    static void restaurerConfiguration() throws Exception {
+        LoggerContext contexte = (LoggerContext) LoggerFactory.getILoggerFactory();
+        contexte.reset();
+        new ContextInitializer(contexte).autoConfig();
+    }
+
+    @Test
+    void comparerLesPipelines() throws Exception {
+        Map<Scenario, Double> nanosParRequete = new EnumMap<>(Scenario.class);
+        Map<Scenario, Long> octetsEcrits = new EnumMap<>(Scenario.class);
+
+        for (Scenario scenario : Scenario.values()) {
+            Path fichier = repertoire.resolve(scenario.name().toLowerCase() + ".log");
+            Appender<ILoggingEvent> appender = configurer(scenario, fichier);
+            executer(REQUETES / 10);
+            nanosParRequete.put(scenario, executer(REQUETES));
+            appender.stop();
+            octetsEcrits.put(scenario, Files.size(fichier));
+        }
+
+        StringBuilder rapport = new StringBuilder(String.format("%n===== Coût de journalisation des filtres (%d requêtes, %d threads) =====%n",
+                REQUETES, THREADS));
+        nanosParRequete.forEach((scenario, nanos) -> rapport.append(String.format("%-26s %10.0f ns/requête %12d octets%n",
+                scenario, nanos, octetsEcrits.get(scenario))));
+        System.out.println(rapport);
+
+        assertTrue(octetsEcrits.get(Scenario.SYNCHRONE) > 0, "Le scénario synchrone doit écrire dans le fichier");
+        assertTrue(octetsEcrits.get(Scenario.ASYNCHRONE_ECHANTILLONNE) < octetsEcrits.get(Scenario.SYNCHRONE),
+                "L'échantillonnage doit réduire le volume écrit");
+        assertEquals(0L, octetsEcrits.get(Scenario.INFO_SEUL), "Aucun log DEBUG ne doit être écrit en INFO");
+    }
+
+    private Appender<ILoggingEvent> configurer(Scenario scenario, Path fichier) {
+        LoggerContext contexte = (LoggerContext) LoggerFactory.getILoggerFactory();
+        contexte.reset();
+
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(contexte);
+        encoder.setPattern(PATTERN);
+        encoder.start();
+
+        FileAppender<ILoggingEvent> fichierAppender = new FileAppender<>();
+        fichierAppender.setContext(contexte);
+        fichierAppender.setFile(fichier.toString());
+        fichierAppender.setEncoder(encoder);
+        fichierAppender.start();
+
+        Appender<ILoggingEvent> appender = fichierAppender;
+        if (scenario != Scenario.SYNCHRONE) {
+            AsyncAppender async = new AsyncAppender();
+            async.setContext(contexte);
+            async.setQueueSize(8192);
+            async.setDiscardingThreshold(1638);
+            async.setNeverBlock(true);
+            async.setIncludeCallerData(false);
+            async.addAppender(fichierAppender);
+            async.start();
+            appender = async;
+        }
+        if (scenario == Scenario.ASYNCHRONE_ECHANTILLONNE) {
+            EchantillonnageTurboFilter echantillonnage = new EchantillonnageTurboFilter();
+            echantillonnage.setContext(contexte);
+            echantillonnage.addRegle("fr.studi.bloc3jo2024.filter=100");
+            echantillonnage.start();
+            contexte.addTurboFilter(echantillonnage);
+        }
+
+        Logger racine = contexte.getLogger(Logger.ROOT_LOGGER_NAME);
+        racine.setLevel(Level.INFO);
+        racine.addAppender(appender);
+        contexte.getLogger("fr.studi.bloc3jo2024.filter").setLevel(scenario == Scenario.INFO_SEUL ? Level.INFO : Level.DEBUG);
+        return appender;
+    }
+
+    /**
+     * Rejoue {@code nbRequetes} requêtes authentifiées à travers les deux filtres, réparties sur {@link #THREADS} threads.
+     *
+     * @return Le temps moyen (en nanosecondes) passé par requête.
+     */
+    private double executer(int nbRequetes) throws Exception {
+        RequestIdMdcFilter requestIdFilter = new RequestIdMdcFilter();
+        JwtAuthenticationFilter jwtFilter = new JwtAuthenticationFilter(jwtServiceFixe(), detailUtilisateurFixe());
+        FilterChain fin = (req, res) -> SecurityContextHolder.clearContext();
+        FilterChain chaine = (req, res) -> jwtFilter.doFilter(req, res, fin);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> taches = new ArrayList<>();
+            long debut = System.nanoTime();
+            for (int t = 0; t < THREADS; t++) {
+                taches.add(executor.submit(() -> {
+                    for (int i = 0; i < nbRequetes / THREADS; i++) {
+                        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/offres");
+                        request.addHeader("Authorization", "Bearer jeton");
+                        requestIdFilter.doFilter(request, new MockHttpServletResponse(), chaine);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> tache : taches) {
+                tache.get();
+            }
+            return (System.nanoTime() - debut) / (double) nbRequetes * THREADS;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static JwtService jwtServiceFixe() {
+        return new JwtService() {
+            @Override
+            public String extractEmail(String token) {
+                return EMAIL;
+            }
+
+            @Override
+            public boolean isTokenValid(String token, String email) {
+                return true;
+            }
+        };
+    }
+
+    private static DetailUtilisateurService detailUtilisateurFixe() {
+        UserDetails details = new DetailUtilisateurServiceImpl(Utilisateur.builder()
+                .idUtilisateur(UUID.randomUUID())
+                .email(EMAIL)
+                .isVerified(true)
+                .role(Role.builder().typeRole(TypeRole.USER).build())
+                .build());
+        return new DetailUtilisateurService(null) {
+            @Override
+            public UserDetails loadUserByUsername(String email) {
+                return details;
+            }
+        };
+    }
+}
@@ -0,0 +1,65 @@
+package fr.studi.bloc3jo2024.metrics;
+
+import fr.studi.bloc3jo2024.repository.DisciplineRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class PlacesDisciplineMetricsTest {
+
+    @Mock
+    private DisciplineRepository disciplineRepository;
+
+    private record Places(Long idDiscipline, String nomDiscipline, int nbPlaceDispo) implements DisciplineRepository.PlacesRestantes {
+        @Override
+        public Long getIdDiscipline() {
+            return idDiscipline;
+        }
+
+        @Override
+        public String getNomDiscipline() {
+            return nomDiscipline;
+        }
+
+        @Override
+        public int getNbPlaceDispo() {
+            return nbPlaceDispo;
+        }
+    }
+
+    /**
+     * Vérifie qu'une jauge est publiée par discipline et que les disciplines disparues sont retirées.
+     */
+    @Test
+    void rafraichir_publieUneJaugeParDisciplineEtRetireLesAnciennes() {
+        // Arrange
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        PlacesDisciplineMetrics metrics = new PlacesDisciplineMetrics(disciplineRepository, meterRegistry);
+        when(disciplineRepository.findPlacesRestantes())
+                .thenReturn(List.of(new Places(1L, "Natation", 120), new Places(2L, "Judo", 0)))
+                .thenReturn(List.of(new Places(1L, "Natation", 80)));
+
+        // Act
+        metrics.rafraichir();
+
+        // Assert
+        assertEquals(120.0, meterRegistry.get(PlacesDisciplineMetrics.PLACES_RESTANTES).tag("discipline", "Natation").gauge().value());
+        assertEquals(0.0, meterRegistry.get(PlacesDisciplineMetrics.PLACES_RESTANTES).tag("discipline", "Judo").gauge().value());
+
+        // Act : second rafraîchissement, la discipline Judo a disparu
+        metrics.rafraichir();
+
+        // Assert
+        assertEquals(80.0, meterRegistry.get(PlacesDisciplineMetrics.PLACES_RESTANTES).tag("discipline", "Natation").gauge().value());
+        assertTrue(meterRegistry.find(PlacesDisciplineMetrics.PLACES_RESTANTES).tag("discipline", "Judo").gauges().isEmpty());
+    }
+}
@@ -0,0 +1,68 @@
+package fr.studi.bloc3jo2024.metrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class VenteMetricsTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private VenteMetrics venteMetrics;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        venteMetrics = new VenteMetrics(meterRegistry);
+    }
+
+    /**
+     * Vérifie que chaque refus est compté séparément par motif et par opération.
+     */
+    @Test
+    void rejetSurvente_incrementeLeCompteurParMotifEtOperation() {
+        // Act
+        venteMetrics.rejetSurvente(VenteMetrics.MOTIF_STOCK_OFFRE, "ajout");
+        venteMetrics.rejetSurvente(VenteMetrics.MOTIF_STOCK_OFFRE, "ajout");
+        venteMetrics.rejetSurvente(VenteMetrics.MOTIF_PLACES_DISCIPLINE, "finalisation");
+
+        // Assert
+        assertEquals(2.0, meterRegistry.get(VenteMetrics.REJETS_SURVENTE)
+                .tags("motif", VenteMetrics.MOTIF_STOCK_OFFRE, "operation", "ajout").counter().count());
+        assertEquals(1.0, meterRegistry.get(VenteMetrics.REJETS_SURVENTE)
+                .tags("motif", VenteMetrics.MOTIF_PLACES_DISCIPLINE, "operation", "finalisation").counter().count());
+    }
+
+    /**
+     * Vérifie que le nom de l'entité en conflit est extrait de l'exception Spring ORM.
+     */
+    @Test
+    void echecVerrouOptimiste_utiliseLeNomSimpleDeLEntite() {
+        // Arrange
+        ObjectOptimisticLockingFailureException exception =
+                new ObjectOptimisticLockingFailureException("fr.studi.bloc3jo2024.entity.Offre", 1L);
+
+        // Act
+        venteMetrics.echecVerrouOptimiste(VerrouOptimisteMetricsAspect.entiteEnConflit(exception), "payerPanier");
+
+        // Assert
+        assertEquals(1.0, meterRegistry.get(VenteMetrics.ECHECS_VERROU_OPTIMISTE)
+                .tags("entite", "Offre", "operation", "payerPanier").counter().count());
+    }
+
+    /**
+     * Vérifie que les conflits absorbés par un réessai sont comptés à part des échecs.
+     */
+    @Test
+    void reessaiVerrouOptimiste_incrementeUnCompteurDistinctDesEchecs() {
+        // Act
+        venteMetrics.reessaiVerrouOptimiste("Offre", "finaliserAchat");
+
+        // Assert
+        assertEquals(1.0, meterRegistry.get(VenteMetrics.REESSAIS_VERROU_OPTIMISTE)
+                .tags("entite", "Offre", "operation", "finaliserAchat").counter().count());
+        assertEquals(0, meterRegistry.find(VenteMetrics.ECHECS_VERROU_OPTIMISTE).counters().size());
+    }
+}
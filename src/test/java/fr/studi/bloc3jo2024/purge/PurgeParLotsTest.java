@@ -0,0 +1,126 @@
+package fr.studi.bloc3jo2024.purge;
+
+import fr.studi.bloc3jo2024.concurrence.ClasseCharge;
+import fr.studi.bloc3jo2024.exception.CloisonSatureeException;
+import fr.studi.bloc3jo2024.service.CloisonsService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SimpleDriverDataSource;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PurgeParLotsTest {
+
+    private static final String PURGE = "tokens-expires";
+    private static final String LOT = "DELETE FROM jetons WHERE id IN (SELECT id FROM jetons WHERE expire < ? ORDER BY id LIMIT ?)";
+
+    @Mock
+    private VerrouTaches verrouTaches;
+
+    @Mock
+    private CloisonsService cloisonsService;
+
+    private final AtomicLong horloge = new AtomicLong(1_000_000);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private JdbcTemplate jdbcTemplate;
+    private PurgeParLots purge;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(new SimpleDriverDataSource(new org.h2.Driver(),
+                "jdbc:h2:mem:purges-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", ""));
+        jdbcTemplate.execute("CREATE TABLE jetons (id INT PRIMARY KEY, expire INT NOT NULL)");
+        for (int id = 1; id <= 25; id++) {
+            jdbcTemplate.update("INSERT INTO jetons VALUES (?, ?)", id, id <= 23 ? 0 : 100);
+        }
+        // Lots de 10, sans pause, 1 min au plus
+        purge = new PurgeParLots(jdbcTemplate, verrouTaches, cloisonsService, meterRegistry, 10, 0, 60_000, horloge::get);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.execute("SHUTDOWN");
+    }
+
+    @Test
+    void executer_supprimeParLotsJusquAuLotIncomplet() {
+        // Arrange
+        when(verrouTaches.acquerir(eq(PURGE), any(Duration.class))).thenReturn(true);
+        when(cloisonsService.entrer(ClasseCharge.PLANIFICATION)).thenReturn(true);
+
+        // Act
+        long supprimees = purge.executer(PURGE, LOT, 50);
+
+        // Assert
+        assertEquals(23, supprimees);
+        assertEquals(2, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM jetons", Integer.class));
+        assertEquals(23, meterRegistry.get(PurgeParLots.LIGNES).tag("purge", PURGE).counter().count());
+        assertEquals(3, meterRegistry.get(PurgeParLots.LOTS).tag("purge", PURGE).counter().count());
+        verify(cloisonsService, times(3)).sortir(ClasseCharge.PLANIFICATION);
+        verify(verrouTaches).liberer(PURGE);
+    }
+
+    @Test
+    void executer_verrouTenuAilleurs_neSupprimeRien() {
+        // Arrange
+        when(verrouTaches.acquerir(eq(PURGE), any(Duration.class))).thenReturn(false);
+
+        // Act
+        long supprimees = purge.executer(PURGE, LOT, 50);
+
+        // Assert
+        assertEquals(0, supprimees);
+        assertEquals(25, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM jetons", Integer.class));
+        verifyNoInteractions(cloisonsService);
+        verify(verrouTaches, never()).liberer(any());
+    }
+
+    @Test
+    void executer_dureeMaximaleAtteinte_sArreteEtReprendALaProchaineExecution() {
+        // Arrange : durée maximale nulle, la purge s'arrête après chaque lot
+        PurgeParLots bornee = new PurgeParLots(jdbcTemplate, verrouTaches, cloisonsService, meterRegistry, 10, 0, 0, horloge::get);
+        when(verrouTaches.acquerir(eq(PURGE), any(Duration.class))).thenReturn(true);
+        when(cloisonsService.entrer(ClasseCharge.PLANIFICATION)).thenReturn(true);
+
+        // Act
+        long premiere = bornee.executer(PURGE, LOT, 50);
+        long seconde = bornee.executer(PURGE, LOT, 50);
+        long troisieme = bornee.executer(PURGE, LOT, 50);
+
+        // Assert
+        assertEquals(10, premiere);
+        assertEquals(10, seconde);
+        assertEquals(3, troisieme);
+        verify(verrouTaches, times(3)).liberer(PURGE);
+    }
+
+    @Test
+    void executer_cloisonSaturee_interromptLaPurgeEtLibereLeVerrou() {
+        // Arrange
+        when(verrouTaches.acquerir(eq(PURGE), any(Duration.class))).thenReturn(true);
+        when(cloisonsService.entrer(ClasseCharge.PLANIFICATION))
+                .thenReturn(true)
+                .thenThrow(new CloisonSatureeException("Cloison PLANIFICATION saturée"));
+
+        // Act
+        long supprimees = purge.executer(PURGE, LOT, 50);
+
+        // Assert
+        assertEquals(10, supprimees);
+        verify(cloisonsService, times(1)).sortir(ClasseCharge.PLANIFICATION);
+        verify(verrouTaches).liberer(PURGE);
+    }
+}
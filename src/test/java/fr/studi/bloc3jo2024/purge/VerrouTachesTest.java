@@ -0,0 +1,97 @@
+package fr.studi.bloc3jo2024.purge;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SimpleDriverDataSource;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VerrouTachesTest {
+
+    private static final String TACHE = "tokens-expires";
+
+    private final AtomicLong horloge = new AtomicLong(1_700_000_000_000L);
+    private JdbcTemplate jdbcTemplate;
+    private VerrouTaches instanceA;
+    private VerrouTaches instanceB;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(new SimpleDriverDataSource(new org.h2.Driver(),
+                "jdbc:h2:mem:verrous-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", ""));
+        jdbcTemplate.execute("CREATE TABLE verrous_taches (nom VARCHAR(64) PRIMARY KEY, verrouille_jusqua TIMESTAMP NOT NULL, " +
+                "verrouille_le TIMESTAMP NOT NULL, verrouille_par VARCHAR(255) NOT NULL)");
+        // Verrou conservé au moins 10 s après sa prise
+        instanceA = new VerrouTaches(jdbcTemplate, "a", 10_000, horloge::get);
+        instanceB = new VerrouTaches(jdbcTemplate, "b", 10_000, horloge::get);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.execute("SHUTDOWN");
+    }
+
+    @Test
+    void acquerir_verrouTenuParUneAutreInstance_estRefuse() {
+        // Act
+        boolean priseA = instanceA.acquerir(TACHE, Duration.ofMinutes(1));
+        boolean priseB = instanceB.acquerir(TACHE, Duration.ofMinutes(1));
+
+        // Assert
+        assertTrue(priseA);
+        assertFalse(priseB);
+        assertEquals("a", jdbcTemplate.queryForObject("SELECT verrouille_par FROM verrous_taches WHERE nom = ?", String.class, TACHE));
+    }
+
+    @Test
+    void acquerir_verrouExpireSansLiberation_estRepris() {
+        // Arrange : l'instance A s'arrête sans libérer le verrou
+        instanceA.acquerir(TACHE, Duration.ofMinutes(1));
+        horloge.addAndGet(60_000);
+
+        // Act
+        boolean priseB = instanceB.acquerir(TACHE, Duration.ofMinutes(1));
+
+        // Assert
+        assertTrue(priseB);
+        assertEquals("b", jdbcTemplate.queryForObject("SELECT verrouille_par FROM verrous_taches WHERE nom = ?", String.class, TACHE));
+    }
+
+    @Test
+    void liberer_verrouConserveLaDureeMinimaleApresSaPrise() {
+        // Arrange
+        instanceA.acquerir(TACHE, Duration.ofMinutes(1));
+        horloge.addAndGet(2_000);
+
+        // Act
+        instanceA.liberer(TACHE);
+        boolean avantDureeMin = instanceB.acquerir(TACHE, Duration.ofMinutes(1));
+        horloge.addAndGet(8_000);
+        boolean apresDureeMin = instanceB.acquerir(TACHE, Duration.ofMinutes(1));
+
+        // Assert
+        assertFalse(avantDureeMin);
+        assertTrue(apresDureeMin);
+    }
+
+    @Test
+    void liberer_verrouReprisParUneAutreInstance_nEstPasModifie() {
+        // Arrange : le verrou de A a expiré et B l'a repris
+        instanceA.acquerir(TACHE, Duration.ofSeconds(1));
+        horloge.addAndGet(1_000);
+        instanceB.acquerir(TACHE, Duration.ofMinutes(1));
+
+        // Act
+        instanceA.liberer(TACHE);
+        horloge.addAndGet(10_000);
+
+        // Assert
+        assertFalse(instanceA.acquerir(TACHE, Duration.ofMinutes(1)));
+    }
+}
@@ -4,6 +4,7 @@ import fr.studi.bloc3jo2024.integration.AbstractPostgresIntegrationTest;
 import fr.studi.bloc3jo2024.entity.*;
 import fr.studi.bloc3jo2024.entity.enums.TypeAuthTokenTemp;
 import fr.studi.bloc3jo2024.entity.enums.TypeRole;
+import fr.studi.bloc3jo2024.service.AuthTokenTemporaireService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -167,38 +168,55 @@ class AuthTokenTemporaireRepositoryTest extends AbstractPostgresIntegrationTest
     }
 
     @Test
-    void testDeleteByDateExpirationBefore() {
-        String expiredTokenIdentifier = UUID.randomUUID().toString();
-        AuthTokenTemporaire expiredToken = AuthTokenTemporaire.builder()
-                .tokenIdentifier(expiredTokenIdentifier)
-                .tokenHache("expiredTokenForDeleteTest_" + UUID.randomUUID()) // Assurer l'unicité
-                .typeToken(TypeAuthTokenTemp.VALIDATION_EMAIL)
-                .dateExpiration(LocalDateTime.now().minusDays(1))
-                .utilisateur(testUser)
-                .isUsed(false)
-                .build();
-        entityManager.persist(expiredToken);
-
-        String validTokenIdentifier = UUID.randomUUID().toString();
-        AuthTokenTemporaire validToken = AuthTokenTemporaire.builder()
-                .tokenIdentifier(validTokenIdentifier)
-                .tokenHache("validTokenForDeleteTest_" + UUID.randomUUID()) // Assurer l'unicité
-                .typeToken(TypeAuthTokenTemp.CONNEXION)
-                .dateExpiration(LocalDateTime.now().plusHours(1))
-                .utilisateur(testUser)
-                .isUsed(false)
-                .build();
-        entityManager.persist(validToken);
-        entityManager.flush();
+    void testPurgeLotTokensExpires() {
+        String expiredTokenIdentifier = creerToken(TypeAuthTokenTemp.VALIDATION_EMAIL, LocalDateTime.now().minusDays(1));
+        String validTokenIdentifier = creerToken(TypeAuthTokenTemp.CONNEXION, LocalDateTime.now().plusHours(1));
 
-        LocalDateTime now = LocalDateTime.now();
-        long deletedCount = tokenRepository.deleteByDateExpirationBefore(now);
-        entityManager.flush();
-        entityManager.clear();
+        int deletedCount = purgerLot(LocalDateTime.now(), 1_000);
 
         assertThat(deletedCount).isEqualTo(1);
-        // Pour vérifier la suppression
         assertThat(tokenRepository.findByTokenIdentifier(expiredTokenIdentifier)).isNotPresent();
         assertThat(tokenRepository.findByTokenIdentifier(validTokenIdentifier)).isPresent();
     }
+
+    @Test
+    void testPurgeLotTokensExpires_limiteeALaTailleDuLot() {
+        creerToken(TypeAuthTokenTemp.VALIDATION_EMAIL, LocalDateTime.now().minusDays(2));
+        creerToken(TypeAuthTokenTemp.RESET_PASSWORD, LocalDateTime.now().minusDays(1));
+
+        assertThat(purgerLot(LocalDateTime.now(), 1)).isEqualTo(1);
+        assertThat(purgerLot(LocalDateTime.now(), 1)).isEqualTo(1);
+        assertThat(purgerLot(LocalDateTime.now(), 1)).isZero();
+    }
+
+    /**
+     * Méthode d'aide pour persister un token de l'utilisateur de test.
+     * @param type Le type du token.
+     * @param dateExpiration La date d'expiration du token.
+     * @return L'identifiant du token persisté.
+     */
+    private String creerToken(TypeAuthTokenTemp type, LocalDateTime dateExpiration) {
+        String tokenIdentifier = UUID.randomUUID().toString();
+        entityManager.persist(AuthTokenTemporaire.builder()
+                .tokenIdentifier(tokenIdentifier)
+                .tokenHache("purgeTest_" + UUID.randomUUID()) // Assurer l'unicité
+                .typeToken(type)
+                .dateExpiration(dateExpiration)
+                .utilisateur(testUser)
+                .isUsed(false)
+                .build());
+        entityManager.flush();
+        return tokenIdentifier;
+    }
+
+    /** Exécute un lot de la purge des tokens expirés, tel que lancé par {@link AuthTokenTemporaireService}. */
+    private int purgerLot(LocalDateTime limite, int tailleLot) {
+        int deletedCount = entityManager.getEntityManager()
+                .createNativeQuery(AuthTokenTemporaireService.LOT_TOKENS_EXPIRES)
+                .setParameter(1, limite)
+                .setParameter(2, tailleLot)
+                .executeUpdate();
+        entityManager.clear();
+        return deletedCount;
+    }
 }
\ No newline at end of file
@@ -10,12 +10,13 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ActiveProfiles;
 
 import java.math.BigDecimal;
-import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -138,11 +139,10 @@ class OffreRepositoryTest extends AbstractPostgresIntegrationTest {
     }
 
     @Test
-    void updateStatusForEffectivelyExpiredOffers_shouldUpdateCorrectly() {
+    void expirerOffresEchues_shouldUpdateCorrectly() {
         LocalDateTime testRunActualNow = LocalDateTime.now();
         // Utiliser une date paramètre future par rapport à 'now' pour simuler le temps qui passe dans la logique métier
         LocalDateTime queryNowParam = testRunActualNow.plusDays(60).withNano(0);
-        LocalDate queryCurrentDateParam = queryNowParam.toLocalDate();
 
         Discipline disciplineEffectivelyPast = createAndPersistDiscipline("Disc Past Relative To Query", queryNowParam.minusDays(5));
         Discipline disciplineEffectivelyFuture = createAndPersistDiscipline("Disc Future Relative To Query", queryNowParam.plusDays(5));
@@ -168,7 +168,9 @@ class OffreRepositoryTest extends AbstractPostgresIntegrationTest {
         entityManager.flush();
 
         // Exécute la méthode à tester
-        int updatedCount = offreRepository.updateStatusForEffectivelyExpiredOffers(queryNowParam, queryCurrentDateParam);
+        int updatedCount = offreRepository.expirerOffresEchues(List.of(offreToExpireByOwnDate.getIdOffre(),
+                offreToExpireByDisciplineDate.getIdOffre(), offreNotToExpire.getIdOffre(), offreAlreadyExpired.getIdOffre(),
+                offreNullOwnDateToExpire.getIdOffre(), offreNullOwnDateNotToExpire.getIdOffre()), queryNowParam);
         entityManager.flush();
         entityManager.clear();
 
@@ -201,4 +203,27 @@ class OffreRepositoryTest extends AbstractPostgresIntegrationTest {
                 .isPresent()
                 .hasValueSatisfying(offre -> assertThat(offre.getStatutOffre()).isEqualTo(StatutOffre.DISPONIBLE));
     }
-}
\ No newline at end of file
+
+    @Test
+    void findEcheances_shouldReturnAvailableOffersUpToLimitOrderedByDate() {
+        LocalDateTime limite = LocalDateTime.now().plusDays(60).withNano(0);
+        Discipline disciplineProche = createAndPersistDiscipline("Disc Before Limit", limite.minusDays(2));
+        Discipline disciplineLointaine = createAndPersistDiscipline("Disc After Limit", limite.plusDays(5));
+
+        Offre parDateOffre = createAndPersistOffre("SOLO", BigDecimal.TEN, limite.minusDays(3), disciplineLointaine, StatutOffre.DISPONIBLE);
+        Offre parDateDiscipline = createAndPersistOffre("DUO", BigDecimal.TEN, null, disciplineProche, StatutOffre.DISPONIBLE);
+        createAndPersistOffre("FAMILIALE", BigDecimal.TEN, limite.minusDays(4), disciplineLointaine, StatutOffre.EXPIRE);
+        createAndPersistOffre("FAMILIALE", BigDecimal.TEN, limite.plusDays(1), disciplineLointaine, StatutOffre.DISPONIBLE);
+        entityManager.flush();
+
+        List<OffreRepository.EcheanceOffre> parOffre = offreRepository.findEcheancesParDateExpiration(
+                StatutOffre.DISPONIBLE, limite, PageRequest.of(0, 10));
+        List<OffreRepository.EcheanceOffre> parDiscipline = offreRepository.findEcheancesParDateDiscipline(
+                StatutOffre.DISPONIBLE, limite, PageRequest.of(0, 10));
+
+        assertThat(parOffre).extracting(OffreRepository.EcheanceOffre::getIdOffre).containsExactly(parDateOffre.getIdOffre());
+        assertEquals(limite.minusDays(3), parOffre.get(0).getEcheance());
+        assertThat(parDiscipline).extracting(OffreRepository.EcheanceOffre::getIdOffre).containsExactly(parDateDiscipline.getIdOffre());
+        assertEquals(limite.minusDays(2), parDiscipline.get(0).getEcheance());
+    }
+}
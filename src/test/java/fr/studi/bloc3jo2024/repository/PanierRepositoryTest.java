@@ -0,0 +1,170 @@
+package fr.studi.bloc3jo2024.repository;
+
+import fr.studi.bloc3jo2024.entity.*;
+import fr.studi.bloc3jo2024.entity.enums.StatutOffre;
+import fr.studi.bloc3jo2024.entity.enums.StatutPanier;
+import fr.studi.bloc3jo2024.entity.enums.TypeOffre;
+import fr.studi.bloc3jo2024.entity.enums.TypeRole;
+import fr.studi.bloc3jo2024.integration.AbstractPostgresIntegrationTest;
+import fr.studi.bloc3jo2024.service.impl.PanierServiceImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@ActiveProfiles("integration")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+class PanierRepositoryTest extends AbstractPostgresIntegrationTest {
+
+    @Autowired
+    private PanierRepository panierRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    private Adresse adresse;
+    private Role role;
+    private Discipline discipline;
+
+    @BeforeEach
+    void setUp() {
+        Pays pays = Pays.builder().nomPays("Pays-panier-" + UUID.randomUUID()).build();
+        entityManager.persist(pays);
+        adresse = Adresse.builder().numeroRue(1).nomRue("Rue Test Panier").ville("Paris").codePostal("75001").pays(pays).build();
+        entityManager.persist(adresse);
+        role = entityManager.getEntityManager()
+                .createQuery("SELECT r FROM Role r WHERE r.typeRole = :type", Role.class)
+                .setParameter("type", TypeRole.USER)
+                .getResultStream().findFirst()
+                .orElseGet(() -> entityManager.persist(Role.builder().typeRole(TypeRole.USER).build()));
+        discipline = Discipline.builder().nomDiscipline("Escrime " + UUID.randomUUID())
+                .dateDiscipline(LocalDateTime.now().plusDays(30)).nbPlaceDispo(1_000).adresse(adresse).build();
+        entityManager.persist(discipline);
+        entityManager.flush();
+    }
+
+    /**
+     * Méthode d'aide pour créer un panier d'un nouvel utilisateur.
+     * @param statut Le statut du panier.
+     * @param montant Le montant total persisté du panier.
+     * @return Le panier persisté.
+     */
+    private Panier creerPanier(StatutPanier statut, String montant) {
+        Utilisateur utilisateur = Utilisateur.builder().email("panier-" + UUID.randomUUID() + "@jo.fr")
+                .nom("Nom").prenom("Prenom").dateNaissance(LocalDate.of(1990, 1, 1)).adresse(adresse).role(role).build();
+        entityManager.persist(utilisateur);
+        Panier panier = Panier.builder().statut(statut).montantTotal(new BigDecimal(montant)).utilisateur(utilisateur).build();
+        return entityManager.persist(panier);
+    }
+
+    private Offre creerOffre(String prix) {
+        return entityManager.persist(Offre.builder().prix(new BigDecimal(prix)).quantite(100).capacite(1)
+                .statutOffre(StatutOffre.DISPONIBLE).typeOffre(TypeOffre.SOLO).discipline(discipline).build());
+    }
+
+    private void ajouterLigne(Panier panier, Offre offre, int quantite) {
+        entityManager.persist(ContenuPanier.builder().panier(panier).offre(offre).quantiteCommandee(quantite).build());
+    }
+
+    private BigDecimal montantEnBase(Panier panier) {
+        return (BigDecimal) entityManager.getEntityManager()
+                .createNativeQuery("SELECT montant_total FROM paniers WHERE id_panier = :id")
+                .setParameter("id", panier.getIdPanier())
+                .getSingleResult();
+    }
+
+    /** Date la création et la dernière modification du panier, en jours avant maintenant. */
+    private void dater(Panier panier, int joursDepuisAjout, int joursDepuisModification) {
+        entityManager.getEntityManager()
+                .createNativeQuery("UPDATE paniers SET date_ajout = NOW() - make_interval(days => :ajout), " +
+                        "date_modification = NOW() - make_interval(days => :modification) WHERE id_panier = :id")
+                .setParameter("ajout", joursDepuisAjout)
+                .setParameter("modification", joursDepuisModification)
+                .setParameter("id", panier.getIdPanier())
+                .executeUpdate();
+    }
+
+    private void payer(Panier panier) {
+        entityManager.getEntityManager()
+                .createNativeQuery("INSERT INTO paiements (statut_paiement, date_paiement, montant, id_methode_paiement, id_utilisateur, id_panier) " +
+                        "SELECT 'REFUSE', NOW(), :montant, MIN(id_methode), :utilisateur, :id FROM methodes_paiement")
+                .setParameter("montant", panier.getMontantTotal())
+                .setParameter("utilisateur", panier.getUtilisateur().getIdUtilisateur())
+                .setParameter("id", panier.getIdPanier())
+                .executeUpdate();
+    }
+
+    private long compter(String table, Panier panier) {
+        return ((Number) entityManager.getEntityManager()
+                .createNativeQuery("SELECT COUNT(*) FROM " + table + " WHERE id_panier = :id")
+                .setParameter("id", panier.getIdPanier())
+                .getSingleResult()).longValue();
+    }
+
+    @Test
+    void retirerOffreDesMontants_diminueLesPaniersEnCoursDeLeursLignes() {
+        // Arrange : 2 × 40 + 25 en cours, 40 dans un panier payé
+        Offre retiree = creerOffre("40.00");
+        Offre conservee = creerOffre("25.00");
+        Panier enCours = creerPanier(StatutPanier.EN_ATTENTE, "105.00");
+        ajouterLigne(enCours, retiree, 2);
+        ajouterLigne(enCours, conservee, 1);
+        Panier paye = creerPanier(StatutPanier.PAYE, "40.00");
+        ajouterLigne(paye, retiree, 1);
+        entityManager.flush();
+
+        // Act
+        int misAJour = panierRepository.retirerOffreDesMontants(retiree.getIdOffre());
+
+        // Assert
+        assertThat(misAJour).isEqualTo(1);
+        assertThat(montantEnBase(enCours)).isEqualByComparingTo("25.00");
+        assertThat(montantEnBase(paye)).isEqualByComparingTo("40.00"); // Montant payé : historique
+    }
+
+    @Test
+    void lotPaniersAbandonnes_supprimeLesPaniersInactifsAvecLeursLignes() {
+        // Arrange : trois paniers en cours créés il y a 60 jours, un seul sans activité ni paiement depuis
+        Offre offre = creerOffre("40.00");
+        Panier abandonne = creerPanier(StatutPanier.EN_ATTENTE, "80.00");
+        ajouterLigne(abandonne, offre, 2);
+        Panier avecPaiement = creerPanier(StatutPanier.EN_ATTENTE, "40.00");
+        ajouterLigne(avecPaiement, offre, 1);
+        Panier modifieRecemment = creerPanier(StatutPanier.EN_ATTENTE, "40.00");
+        ajouterLigne(modifieRecemment, offre, 1);
+        entityManager.flush();
+        dater(abandonne, 60, 60);
+        dater(avecPaiement, 60, 60);
+        dater(modifieRecemment, 60, 1);
+        payer(avecPaiement);
+
+        // Act : un lot, tel que lancé par PanierServiceImpl.purgerPaniersAbandonnes
+        int supprimes = entityManager.getEntityManager()
+                .createNativeQuery(PanierServiceImpl.LOT_PANIERS_ABANDONNES)
+                .setParameter(1, LocalDateTime.now().minusDays(30))
+                .setParameter(2, 1_000)
+                .executeUpdate();
+
+        // Assert
+        assertThat(supprimes).isEqualTo(1);
+        assertThat(compter("paniers", abandonne)).isZero();
+        assertThat(compter("contenu_panier", abandonne)).isZero();
+        assertThat(compter("paniers", avecPaiement)).isEqualTo(1);
+        assertThat(compter("contenu_panier", avecPaiement)).isEqualTo(1);
+        assertThat(compter("paniers", modifieRecemment)).isEqualTo(1);
+        assertThat(compter("contenu_panier", modifieRecemment)).isEqualTo(1);
+    }
+}
@@ -3,6 +3,7 @@ package fr.studi.bloc3jo2024.service;
 import fr.studi.bloc3jo2024.entity.AuthTokenTemporaire;
 import fr.studi.bloc3jo2024.entity.Utilisateur;
 import fr.studi.bloc3jo2024.entity.enums.TypeAuthTokenTemp;
+import fr.studi.bloc3jo2024.purge.PurgeParLots;
 import fr.studi.bloc3jo2024.repository.AuthTokenTemporaireRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -36,6 +37,9 @@ class AuthTokenTemporaireServiceTest {
     @Mock
     private PasswordEncoder passwordEncoder;
 
+    @Mock
+    private PurgeParLots purgeParLots;
+
     @InjectMocks
     private AuthTokenTemporaireService authTokenService;
 
@@ -310,13 +314,13 @@ class AuthTokenTemporaireServiceTest {
     void act_purgeExpiredTokens_assert_shouldCallRepositoryAndReturnDeletedCount() {
         // Arrange
         long expectedDeletedCount = 3L;
-        when(tokenRepository.deleteByDateExpirationBefore(any(LocalDateTime.class))).thenReturn(expectedDeletedCount);
+        when(purgeParLots.executer(eq("tokens-expires"), anyString(), any(LocalDateTime.class))).thenReturn(expectedDeletedCount);
 
         // Act
         long actualDeletedCount = authTokenService.purgeExpiredTokens();
 
         // Assert
         assertEquals(expectedDeletedCount, actualDeletedCount);
-        verify(tokenRepository).deleteByDateExpirationBefore(any(LocalDateTime.class));
+        verify(purgeParLots).executer(eq("tokens-expires"), contains("ctid"), any(LocalDateTime.class)); // Par lots, sans charger les entités
     }
 }
\ No newline at end of file
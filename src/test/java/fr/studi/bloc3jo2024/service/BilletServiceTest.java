@@ -105,76 +105,72 @@ class BilletServiceTest {
     }
 
     /**
-     * Teste la création et l'enregistrement d'un billet.
-     * Vérifie que le billet est sauvegardé et que les propriétés sont correctement définies.
+     * Teste la génération groupée des clés d'achat.
+     * Vérifie que chaque clé est un UUID version 4 distinct.
      */
     @Test
-    void creerEtEnregistrerBillet_SavesBilletCorrectly() {
-        // Arrange
-        String cleFinaleArgument = "FINAL-KEY-ABC"; // La clé finale passée en argument
-        // Utilisation d'ArgumentCaptor pour capturer l'objet Billet passé à save()
-        ArgumentCaptor<Billet> billetCaptor = ArgumentCaptor.forClass(Billet.class);
-        when(billetRepository.save(billetCaptor.capture())).thenReturn(billetExemple); // Mock le retour, mais capture l'argument
-
-        // Act
-        Billet savedBillet = billetService.creerEtEnregistrerBillet(utilisateurExemple, Collections.singletonList(offreExemple), cleFinaleArgument, dummyPurchaseDate);
-
-        // Assert
-        // Récupérer le billet qui a été effectivement passé à la méthode save
-        Billet capturedBillet = billetCaptor.getValue();
-
-        assertNotNull(savedBillet);
-        // Les assertions doivent porter sur le billet capturé pour vérifier ce qui a été envoyé à la couche de persistance
-        assertEquals(utilisateurExemple, capturedBillet.getUtilisateur());
-        assertEquals(Collections.singletonList(offreExemple), capturedBillet.getOffres());
-        assertEquals(cleFinaleArgument, capturedBillet.getCleFinaleBillet()); // Vérifie que la clé passée est celle utilisée
-        assertEquals(dummyPurchaseDate, capturedBillet.getPurchaseDate());
-
-        verify(billetRepository, times(1)).save(any(Billet.class));
+    void genererClesAchat_ReturnsDistinctVersion4Uuids() {
+        List<String> cles = billetService.genererClesAchat(100);
+
+        assertEquals(100, cles.size());
+        assertEquals(100, new HashSet<>(cles).size());
+        cles.forEach(cle -> {
+            UUID uuid = UUID.fromString(cle);
+            assertEquals(4, uuid.version());
+            assertEquals(2, uuid.variant());
+        });
     }
 
     /**
-     * Teste la finalisation d'un billet avec génération de QR code et envoi d'email.
-     * Vérifie que les services de QR code et d'email sont appelés correctement.
+     * Teste l'émission groupée des billets d'une commande.
+     * Vérifie qu'un billet est créé par place avec sa propre clé et son QR code,
+     * que tous sont enregistrés par un seul saveAll et envoyés dans un seul e-mail.
      */
     @Test
-    void finaliserBilletAvecQrCode_GeneratesQrAndSendsEmail() {
+    void emettreBillets_UnBilletParPlaceEnregistresEnLot() {
         // Arrange
-        byte[] qrCodeBytes = "qrcode_data".getBytes();
-        when(qrCodeService.generateQRCode(anyString())).thenReturn(qrCodeBytes);
-        when(billetRepository.save(any(Billet.class))).thenReturn(billetExemple); // Mock pour le save du billet
+        utilisateurExemple.setCleUtilisateur("USER-KEY");
+        Offre offreDuo = Offre.builder().typeOffre(TypeOffre.DUO).build();
+        List<Offre> offresParPlace = List.of(offreExemple, offreDuo, offreDuo);
+        when(qrCodeService.generateQRCodes(anyList())).thenAnswer(invocation -> {
+            List<String> textes = invocation.getArgument(0);
+            return textes.stream().map(String::getBytes).toList();
+        });
+        when(billetRepository.saveAll(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
 
         // Act
-        Billet finalBillet = billetService.finaliserBilletAvecQrCode(billetExemple);
+        List<Billet> billets = billetService.emettreBillets(utilisateurExemple, offresParPlace, dummyPurchaseDate);
 
         // Assert
-        assertNotNull(finalBillet);
-        assertArrayEquals(qrCodeBytes, finalBillet.getQrCodeImage());
-        verify(qrCodeService, times(1)).generateQRCode(billetExemple.getCleFinaleBillet());
-        verify(billetRepository, times(1)).save(billetExemple);
+        assertEquals(3, billets.size());
+        assertEquals(3, billets.stream().map(Billet::getCleFinaleBillet).distinct().count());
+        for (int i = 0; i < billets.size(); i++) {
+            Billet billet = billets.get(i);
+            assertTrue(billet.getCleFinaleBillet().startsWith("USER-KEY-"));
+            assertArrayEquals(billet.getCleFinaleBillet().getBytes(), billet.getQrCodeImage());
+            assertEquals(List.of(offresParPlace.get(i)), billet.getOffres());
+            assertEquals(dummyPurchaseDate, billet.getPurchaseDate());
+        }
+        verify(qrCodeService, times(1)).generateQRCodes(anyList());
+        verify(billetRepository, times(1)).saveAll(anyList());
+        verify(billetRepository, never()).save(any(Billet.class));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Map<String, byte[]>> piecesJointesCaptor = ArgumentCaptor.forClass(Map.class);
+        verify(emailService, times(1)).envoyerEmailAvecQrCodes(eq(utilisateurExemple.getEmail()), anyString(), anyString(),
+                piecesJointesCaptor.capture());
+        assertEquals(3, piecesJointesCaptor.getValue().size());
+    }
 
-        // Capture d'arguments pour l'emailService
-        ArgumentCaptor<String> emailCaptor = ArgumentCaptor.forClass(String.class);
-        ArgumentCaptor<String> subjectCaptor = ArgumentCaptor.forClass(String.class);
-        ArgumentCaptor<String> contentCaptor = ArgumentCaptor.forClass(String.class);
-        ArgumentCaptor<byte[]> qrCodeImageCaptor = ArgumentCaptor.forClass(byte[].class);
-        ArgumentCaptor<String> fileNameCaptor = ArgumentCaptor.forClass(String.class);
-
-        verify(emailService, times(1)).envoyerEmailAvecQrCode(
-                emailCaptor.capture(),
-                subjectCaptor.capture(),
-                contentCaptor.capture(),
-                qrCodeImageCaptor.capture(),
-                fileNameCaptor.capture()
-        );
+    /**
+     * Teste l'émission groupée sans place : rien n'est généré ni enregistré.
+     */
+    @Test
+    void emettreBillets_SansPlace_ReturnsEmpty() {
+        List<Billet> billets = billetService.emettreBillets(utilisateurExemple, List.of(), dummyPurchaseDate);
 
-        assertEquals(utilisateurExemple.getEmail(), emailCaptor.getValue());
-        assertEquals("Votre billet pour les JO", subjectCaptor.getValue());
-        assertTrue(contentCaptor.getValue().contains(utilisateurExemple.getPrenom()));
-        assertTrue(contentCaptor.getValue().contains(billetExemple.getCleFinaleBillet()));
-        assertArrayEquals(qrCodeBytes, qrCodeImageCaptor.getValue());
-        assertTrue(fileNameCaptor.getValue().startsWith("billet_"));
-        assertTrue(fileNameCaptor.getValue().endsWith(".png"));
+        assertTrue(billets.isEmpty());
+        verifyNoInteractions(qrCodeService, billetRepository, emailService);
     }
 
     /**
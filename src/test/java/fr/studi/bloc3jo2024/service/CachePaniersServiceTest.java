@@ -0,0 +1,224 @@
+package fr.studi.bloc3jo2024.service;
+
+import fr.studi.bloc3jo2024.changements.Changement;
+import fr.studi.bloc3jo2024.changements.TypeChangement;
+import fr.studi.bloc3jo2024.dto.panier.PanierDto;
+import fr.studi.bloc3jo2024.entity.ContenuPanier;
+import fr.studi.bloc3jo2024.entity.Discipline;
+import fr.studi.bloc3jo2024.entity.Offre;
+import fr.studi.bloc3jo2024.entity.Panier;
+import fr.studi.bloc3jo2024.entity.Utilisateur;
+import fr.studi.bloc3jo2024.entity.enums.StatutPanier;
+import fr.studi.bloc3jo2024.entity.enums.TypeOffre;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachePaniersServiceTest {
+
+    private final UUID idUtilisateur = UUID.randomUUID();
+    private final Utilisateur utilisateur = Utilisateur.builder().idUtilisateur(idUtilisateur).build();
+    private final Discipline discipline = Discipline.builder().idDiscipline(10L).build();
+    private final Offre offreSolo = Offre.builder().idOffre(1L).typeOffre(TypeOffre.SOLO).capacite(1)
+            .prix(BigDecimal.valueOf(50)).discipline(discipline).build();
+    private final Offre offreFamiliale = Offre.builder().idOffre(2L).typeOffre(TypeOffre.FAMILIALE).capacite(4)
+            .prix(BigDecimal.valueOf(150)).discipline(discipline).build();
+
+    private final CachePaniersService cache = new CachePaniersService(100, 60_000);
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private Panier panier(long idPanier, long version, StatutPanier statut) {
+        Panier panier = Panier.builder().idPanier(idPanier).version(version).statut(statut)
+                .montantTotal(BigDecimal.valueOf(350)).utilisateur(utilisateur).build();
+        Set<ContenuPanier> contenus = new HashSet<>();
+        contenus.add(ContenuPanier.builder().panier(panier).offre(offreFamiliale).quantiteCommandee(1).build());
+        contenus.add(ContenuPanier.builder().panier(panier).offre(offreSolo).quantiteCommandee(4).build());
+        panier.setContenuPaniers(contenus);
+        return panier;
+    }
+
+    @Test
+    void lire_retourneLePanierEcrit() {
+        // Arrange
+        cache.ecrire(panier(100L, 3, StatutPanier.EN_ATTENTE));
+
+        // Act
+        Optional<PanierDto> resultat = cache.lire(idUtilisateur);
+
+        // Assert
+        assertTrue(resultat.isPresent());
+        PanierDto dto = resultat.get();
+        assertEquals(100L, dto.getIdPanier());
+        assertEquals(idUtilisateur, dto.getIdUtilisateur());
+        assertEquals(0, BigDecimal.valueOf(350).compareTo(dto.getMontantTotal()));
+        assertEquals(2, dto.getContenuPaniers().size());
+        assertEquals(1L, dto.getContenuPaniers().get(0).getIdOffre()); // Lignes triées par offre
+        assertEquals(0, BigDecimal.valueOf(200).compareTo(dto.getContenuPaniers().get(0).getPrixTotalOffre()));
+        assertEquals(TypeOffre.FAMILIALE, dto.getContenuPaniers().get(1).getTypeOffre());
+    }
+
+    @Test
+    void lire_retourneUnDtoNeufAChaqueAppel() {
+        // Arrange
+        cache.ecrire(panier(100L, 3, StatutPanier.EN_ATTENTE));
+        cache.lire(idUtilisateur).orElseThrow().setMontantTotal(BigDecimal.ONE);
+
+        // Act
+        PanierDto dto = cache.lire(idUtilisateur).orElseThrow();
+
+        // Assert
+        assertEquals(0, BigDecimal.valueOf(350).compareTo(dto.getMontantTotal()));
+    }
+
+    @Test
+    void ecrire_ignoreUneVersionPlusAncienne() {
+        // Arrange
+        Panier recent = panier(100L, 5, StatutPanier.EN_ATTENTE);
+        recent.setMontantTotal(BigDecimal.TEN);
+        cache.ecrire(recent);
+
+        // Act
+        cache.ecrire(panier(100L, 4, StatutPanier.EN_ATTENTE));
+
+        // Assert
+        assertEquals(0, BigDecimal.TEN.compareTo(cache.lire(idUtilisateur).orElseThrow().getMontantTotal()));
+    }
+
+    @Test
+    void ecrire_panierPaye_masqueLePanierEtResisteALaLecturePerimee() {
+        // Arrange
+        cache.ecrire(panier(100L, 5, StatutPanier.EN_ATTENTE));
+
+        // Act
+        cache.ecrire(panier(100L, 6, StatutPanier.PAYE));
+        cache.ecrire(panier(100L, 5, StatutPanier.EN_ATTENTE)); // Lecture commencée avant le paiement
+
+        // Assert
+        assertTrue(cache.lire(idUtilisateur).isEmpty());
+
+        // Lecture périmée de même version que le paiement (panier détaché avant son flush)
+        cache.ecrire(panier(100L, 6, StatutPanier.EN_ATTENTE));
+        assertTrue(cache.lire(idUtilisateur).isEmpty());
+
+        // Le panier suivant (identifiant supérieur) remplace le panier payé
+        cache.ecrire(panier(150L, 0, StatutPanier.EN_ATTENTE));
+        assertEquals(150L, cache.lire(idUtilisateur).orElseThrow().getIdPanier());
+    }
+
+    @Test
+    void ecrire_dansUneTransaction_attendLeCommitEtPrendLaVersionDuFlush() {
+        // Arrange
+        TransactionSynchronizationManager.initSynchronization();
+        Panier panier = panier(100L, 2, StatutPanier.EN_ATTENTE);
+
+        // Act
+        cache.ecrire(panier);
+        assertTrue(cache.lire(idUtilisateur).isEmpty());
+        panier.setVersion(3L); // Incrément appliqué par Hibernate au flush
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+
+        // Assert
+        assertTrue(cache.lire(idUtilisateur).isPresent());
+        TransactionSynchronizationManager.clearSynchronization();
+        Panier perime = panier(100L, 2, StatutPanier.EN_ATTENTE);
+        perime.setMontantTotal(BigDecimal.ONE);
+        cache.ecrire(perime);
+        assertEquals(0, BigDecimal.valueOf(350).compareTo(cache.lire(idUtilisateur).orElseThrow().getMontantTotal()));
+    }
+
+    @Test
+    void vider_empecheLeRetourDUneLectureCommenceeAvant() {
+        // Arrange : une lecture charge le panier avant le vidage, sans être encore commitée
+        cache.ecrire(panier(100L, 1, StatutPanier.EN_ATTENTE));
+        TransactionSynchronizationManager.initSynchronization();
+        cache.ecrire(panier(100L, 1, StatutPanier.EN_ATTENTE));
+        List<TransactionSynchronization> lectureEnCours = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+
+        // Act
+        cache.vider();
+        lectureEnCours.forEach(TransactionSynchronization::afterCommit);
+
+        // Assert
+        assertTrue(cache.lire(idUtilisateur).isEmpty());
+        assertEquals(0, cache.taille());
+    }
+
+    @Test
+    void ecrire_respecteLaTailleMaximale() {
+        // Arrange
+        CachePaniersService petitCache = new CachePaniersService(1, 60_000);
+        petitCache.ecrire(panier(100L, 0, StatutPanier.EN_ATTENTE));
+        Utilisateur autre = Utilisateur.builder().idUtilisateur(UUID.randomUUID()).build();
+        Panier panierAutre = Panier.builder().idPanier(101L).version(0L).statut(StatutPanier.EN_ATTENTE)
+                .montantTotal(BigDecimal.ZERO).utilisateur(autre).build();
+
+        // Act
+        petitCache.ecrire(panierAutre);
+
+        // Assert
+        assertEquals(1, petitCache.taille());
+        assertTrue(petitCache.lire(autre.getIdUtilisateur()).isEmpty());
+        assertTrue(petitCache.lire(idUtilisateur).isPresent());
+    }
+
+    @Test
+    void purger_retireLesEntreesExpirees() {
+        // Arrange
+        CachePaniersService cacheSansDuree = new CachePaniersService(100, 0);
+        cacheSansDuree.ecrire(panier(100L, 0, StatutPanier.EN_ATTENTE));
+
+        // Act
+        cacheSansDuree.purger();
+
+        // Assert
+        assertEquals(0, cacheSansDuree.taille());
+    }
+
+    @Test
+    void surChangement_panierModifieSurUneAutreInstance_oublieSeulementCePanier() {
+        // Arrange
+        cache.ecrire(panier(100L, 0, StatutPanier.EN_ATTENTE));
+        Utilisateur autre = Utilisateur.builder().idUtilisateur(UUID.randomUUID()).build();
+        cache.ecrire(Panier.builder().idPanier(101L).version(0L).statut(StatutPanier.EN_ATTENTE)
+                .montantTotal(BigDecimal.ZERO).utilisateur(autre).build());
+
+        // Act
+        cache.surChangement(new Changement(TypeChangement.PANIER, idUtilisateur.toString()));
+
+        // Assert
+        assertTrue(cache.lire(idUtilisateur).isEmpty());
+        assertTrue(cache.lire(autre.getIdUtilisateur()).isPresent());
+    }
+
+    @Test
+    void surChangement_offreModifieeSurUneAutreInstance_videLeCache() {
+        // Arrange
+        cache.ecrire(panier(100L, 0, StatutPanier.EN_ATTENTE));
+
+        // Act
+        cache.surChangement(new Changement(TypeChangement.DISCIPLINE, "10"));
+        int apresDiscipline = cache.taille();
+        cache.surChangement(new Changement(TypeChangement.OFFRE, "1"));
+
+        // Assert
+        assertEquals(1, apresDiscipline); // Les places ne sont pas figées dans l'instantané
+        assertEquals(0, cache.taille());
+    }
+}
@@ -0,0 +1,132 @@
+package fr.studi.bloc3jo2024.service;
+
+import fr.studi.bloc3jo2024.concurrence.ClasseCharge;
+import fr.studi.bloc3jo2024.config.GardeReplique;
+import fr.studi.bloc3jo2024.exception.CloisonSatureeException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class CloisonsServiceTest {
+
+    private static final GardeReplique SANS_REPLIQUE = null;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private CloisonsService service;
+
+    @BeforeEach
+    void setUp() {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("app.cloisons.statistiques.permis", "1")
+                .withProperty("app.cloisons.statistiques.attente-ms", "50");
+        service = new CloisonsService(environment, meterRegistry, SANS_REPLIQUE);
+    }
+
+    /** Occupe le permis des statistiques depuis un autre thread, le temps de l'action. */
+    private void pendantUnTableauDeBordLent(Runnable action) throws Exception {
+        CompletableFuture<Void> libere = new CompletableFuture<>();
+        CompletableFuture<Boolean> entre = new CompletableFuture<>();
+        CompletableFuture<Void> tableauDeBord = CompletableFuture.runAsync(() -> {
+            entre.complete(service.entrer(ClasseCharge.STATISTIQUES));
+            libere.join();
+            service.sortir(ClasseCharge.STATISTIQUES);
+        });
+        assertTrue(entre.get(5, TimeUnit.SECONDS));
+        try {
+            action.run();
+        } finally {
+            libere.complete(null);
+            tableauDeBord.get(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    void entrer_budgetEpuise_refuseApresLAttenteEtComptabiliseLeRefus() throws Exception {
+        // Act & Assert
+        pendantUnTableauDeBordLent(() ->
+                assertThrows(CloisonSatureeException.class, () -> service.entrer(ClasseCharge.STATISTIQUES)));
+        assertEquals(1, meterRegistry.get(CloisonsService.REFUS).tag("classe", "statistiques").counter().count());
+        assertEquals(1, service.permisDisponibles(ClasseCharge.STATISTIQUES)); // Permis rendu après le tableau de bord
+    }
+
+    @Test
+    void entrer_statistiquesSaturees_nAffectePasLeScan() throws Exception {
+        // Act & Assert
+        pendantUnTableauDeBordLent(() -> {
+            assertTrue(service.entrer(ClasseCharge.SCAN));
+            assertEquals(1, meterRegistry.get(CloisonsService.OCCUPATION).tag("classe", "scan").gauge().value());
+            service.sortir(ClasseCharge.SCAN);
+        });
+        assertEquals(-1, service.permisDisponibles(ClasseCharge.SCAN)); // Classe non limitée
+        assertEquals(0, meterRegistry.get(CloisonsService.OCCUPATION).tag("classe", "scan").gauge().value());
+    }
+
+    @Test
+    void entrer_appelImbrique_neReprendPasDePermis() {
+        // Act
+        boolean exterieur = service.entrer(ClasseCharge.STATISTIQUES);
+        boolean interieur = service.entrer(ClasseCharge.STATISTIQUES); // Sans permis libre, attendrait puis échouerait
+        service.sortir(ClasseCharge.STATISTIQUES);
+
+        // Assert
+        assertTrue(exterieur);
+        assertFalse(interieur);
+        assertEquals(1, service.permisDisponibles(ClasseCharge.STATISTIQUES));
+    }
+
+    @Test
+    void entrer_catalogueServiParLaReplique_neConsommePasLeBudgetDuPrimaire() {
+        // Arrange : un seul permis catalogue, réplique disponible puis en retard
+        GardeReplique gardeReplique = mock(GardeReplique.class);
+        when(gardeReplique.estDisponible()).thenReturn(true, false);
+        CloisonsService avecReplique = new CloisonsService(new MockEnvironment()
+                .withProperty("app.cloisons.catalogue.permis", "1"), new SimpleMeterRegistry(), gardeReplique);
+
+        // Act & Assert
+        assertTrue(avecReplique.entrer(ClasseCharge.CATALOGUE));
+        assertEquals(1, avecReplique.permisDisponibles(ClasseCharge.CATALOGUE)); // Lecture sur la réplique : permis intact
+        avecReplique.sortir(ClasseCharge.CATALOGUE);
+        assertEquals(1, avecReplique.permisDisponibles(ClasseCharge.CATALOGUE));
+
+        assertTrue(avecReplique.entrer(ClasseCharge.CATALOGUE));
+        assertEquals(0, avecReplique.permisDisponibles(ClasseCharge.CATALOGUE)); // Lecture sur le primaire : permis pris
+        avecReplique.sortir(ClasseCharge.CATALOGUE);
+        assertEquals(1, avecReplique.permisDisponibles(ClasseCharge.CATALOGUE));
+    }
+
+    @Test
+    void sortir_repliqueDevenueIndisponibleEnCours_neRendQueLePermisPris() {
+        // Arrange
+        GardeReplique gardeReplique = mock(GardeReplique.class);
+        when(gardeReplique.estDisponible()).thenReturn(true);
+        CloisonsService avecReplique = new CloisonsService(new MockEnvironment()
+                .withProperty("app.cloisons.catalogue.permis", "1"), new SimpleMeterRegistry(), gardeReplique);
+
+        // Act
+        avecReplique.entrer(ClasseCharge.CATALOGUE);
+        when(gardeReplique.estDisponible()).thenReturn(false);
+        avecReplique.sortir(ClasseCharge.CATALOGUE);
+
+        // Assert
+        assertEquals(1, avecReplique.permisDisponibles(ClasseCharge.CATALOGUE)); // Aucun permis fantôme rendu
+    }
+
+    @Test
+    void constructeur_cloisonsInactives_neLimiteAucuneClasse() {
+        // Arrange
+        CloisonsService inactif = new CloisonsService(new MockEnvironment().withProperty("app.cloisons.active", "false"),
+                new SimpleMeterRegistry(), SANS_REPLIQUE);
+
+        // Act & Assert
+        for (ClasseCharge classe : ClasseCharge.values()) {
+            assertEquals(-1, inactif.permisDisponibles(classe));
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package fr.studi.bloc3jo2024.service;
+
+import fr.studi.bloc3jo2024.entity.Billet;
+import fr.studi.bloc3jo2024.entity.Discipline;
+import fr.studi.bloc3jo2024.entity.Offre;
+import fr.studi.bloc3jo2024.entity.enums.StatutPaiement;
+import fr.studi.bloc3jo2024.entity.enums.StatutTransaction;
+import fr.studi.bloc3jo2024.entity.enums.TypeOffre;
+import fr.studi.bloc3jo2024.repository.OffreRepository;
+import fr.studi.bloc3jo2024.repository.PaiementRepository;
+import fr.studi.bloc3jo2024.repository.UtilisateurRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CompteursVentesServiceTest {
+
+    @Mock
+    private OffreRepository offreRepository;
+    @Mock
+    private UtilisateurRepository utilisateurRepository;
+    @Mock
+    private PaiementRepository paiementRepository;
+
+    @InjectMocks
+    private CompteursVentesService compteursVentesService;
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private static OffreRepository.BilletsParOffre ligne(Long idOffre, TypeOffre type, Long idDiscipline, Long nombre) {
+        return new OffreRepository.BilletsParOffre() {
+            @Override
+            public Long getIdOffre() {
+                return idOffre;
+            }
+
+            @Override
+            public TypeOffre getTypeOffre() {
+                return type;
+            }
+
+            @Override
+            public Long getIdDiscipline() {
+                return idDiscipline;
+            }
+
+            @Override
+            public Long getNombreBillets() {
+                return nombre;
+            }
+        };
+    }
+
+    private static Billet billet(Offre offre) {
+        return Billet.builder().offres(List.of(offre)).build();
+    }
+
+    private void chargerDepuisLaBase() {
+        when(offreRepository.countBilletsParOffre()).thenReturn(List.of(
+                ligne(1L, TypeOffre.SOLO, 10L, 4L),
+                ligne(2L, TypeOffre.DUO, 10L, 6L),
+                ligne(3L, TypeOffre.SOLO, 20L, 0L)));
+        when(utilisateurRepository.count()).thenReturn(50L);
+        when(paiementRepository.countByStatutPaiementAndTransaction_StatutTransaction(StatutPaiement.ACCEPTE, StatutTransaction.REUSSI))
+                .thenReturn(7L);
+        compteursVentesService.initialiser();
+    }
+
+    @Test
+    void initialiser_ChargeLesCompteursDepuisLaBase() {
+        // Arrange & Act
+        chargerDepuisLaBase();
+
+        // Assert
+        assertEquals(Map.of(1L, 4L, 2L, 6L, 3L, 0L), compteursVentesService.getBilletsParOffre());
+        assertEquals(Map.of("SOLO", 4L, "DUO", 6L), compteursVentesService.getBilletsParType());
+        assertEquals(Map.of(10L, 10L, 20L, 0L), compteursVentesService.getBilletsParDiscipline());
+        assertEquals(50L, compteursVentesService.getUtilisateurs());
+        assertEquals(7L, compteursVentesService.getPaiementsReussis());
+    }
+
+    @Test
+    void enregistrerPaiementReussi_IncrementeApresLeCommitSeulement() {
+        // Arrange
+        chargerDepuisLaBase();
+        Offre duo = Offre.builder().idOffre(2L).typeOffre(TypeOffre.DUO)
+                .discipline(Discipline.builder().idDiscipline(10L).build()).build();
+        TransactionSynchronizationManager.initSynchronization();
+
+        // Act
+        compteursVentesService.enregistrerPaiementReussi(List.of(billet(duo), billet(duo)));
+
+        // Assert : rien n'est visible avant le commit
+        assertEquals(7L, compteursVentesService.getPaiementsReussis());
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertEquals(8L, compteursVentesService.getPaiementsReussis());
+        assertEquals(8L, compteursVentesService.getBilletsParOffre().get(2L));
+        assertEquals(8L, compteursVentesService.getBilletsParType().get("DUO"));
+        assertEquals(12L, compteursVentesService.getBilletsParDiscipline().get(10L));
+    }
+
+    @Test
+    void recaler_CorrigeLaDeriveEtRetireLesOffresSupprimees() {
+        // Arrange
+        chargerDepuisLaBase();
+        compteursVentesService.enregistrerInscription();
+        when(offreRepository.countBilletsParOffre()).thenReturn(List.of(ligne(1L, TypeOffre.SOLO, 10L, 5L)));
+        when(utilisateurRepository.count()).thenReturn(50L);
+
+        // Act
+        compteursVentesService.recaler();
+
+        // Assert
+        assertEquals(Map.of(1L, 5L), compteursVentesService.getBilletsParOffre());
+        assertEquals(Map.of("SOLO", 5L), compteursVentesService.getBilletsParType());
+        assertEquals(50L, compteursVentesService.getUtilisateurs());
+    }
+
+    @Test
+    void recaler_BaseIndisponible_ConserveLesValeurs() {
+        // Arrange
+        chargerDepuisLaBase();
+        when(offreRepository.countBilletsParOffre()).thenThrow(new DataAccessResourceFailureException("base indisponible"));
+
+        // Act
+        compteursVentesService.recaler();
+
+        // Assert
+        assertEquals(6L, compteursVentesService.getBilletsParOffre().get(2L));
+        assertEquals(7L, compteursVentesService.getPaiementsReussis());
+    }
+}
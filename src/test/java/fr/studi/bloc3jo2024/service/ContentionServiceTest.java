@@ -0,0 +1,107 @@
+package fr.studi.bloc3jo2024.service;
+
+import fr.studi.bloc3jo2024.entity.Offre;
+import fr.studi.bloc3jo2024.entity.Panier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContentionServiceTest {
+
+    private final AtomicLong horloge = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+    private ContentionService service;
+
+    @BeforeEach
+    void setUp() {
+        // Seuil de 3 conflits, demi-vie de 10 s, 2 lignes suivies au plus
+        service = new ContentionService(4, 20, 500, 3, 10_000, 2, horloge::get);
+    }
+
+    private void avancer(long secondes) {
+        horloge.addAndGet(TimeUnit.SECONDS.toNanos(secondes));
+    }
+
+    @Test
+    void estDisputee_seuilAtteint_basculeLaLigneEnVerrouPessimiste() {
+        // Act
+        service.signalerConflit("Offre", 42L);
+        service.signalerConflit("Offre", 42L);
+        boolean avantSeuil = service.estDisputee(Offre.class, 42L);
+        service.signalerConflit("Offre", 42L);
+
+        // Assert
+        assertFalse(avantSeuil);
+        assertTrue(service.estDisputee(Offre.class, 42L));
+        assertFalse(service.estDisputee(Offre.class, 43L)); // Les autres lignes restent optimistes
+        assertFalse(service.estDisputee(Panier.class, 42L));
+    }
+
+    @Test
+    void estDisputee_scoreDecroitAvecLeTemps() {
+        // Arrange
+        for (int i = 0; i < 4; i++) {
+            service.signalerConflit("Offre", 42L);
+        }
+
+        // Act : une demi-vie ramène le score de 4 à 2
+        avancer(10);
+
+        // Assert
+        assertFalse(service.estDisputee(Offre.class, 42L));
+    }
+
+    @Test
+    void signalerConflit_identifiantInconnu_nEstPasSuivi() {
+        // Act
+        service.signalerConflit("inconnue", null);
+
+        // Assert
+        assertEquals(0, service.taille());
+    }
+
+    @Test
+    void signalerConflit_tableSaturee_ignoreLesNouvellesLignes() {
+        // Arrange
+        service.signalerConflit("Offre", 1L);
+        service.signalerConflit("Offre", 2L);
+
+        // Act
+        for (int i = 0; i < 3; i++) {
+            service.signalerConflit("Offre", 3L);
+        }
+
+        // Assert
+        assertEquals(2, service.taille());
+        assertFalse(service.estDisputee(Offre.class, 3L));
+    }
+
+    @Test
+    void purger_oublieLesLignesRedevenuesCalmes() {
+        // Arrange
+        service.signalerConflit("Offre", 1L);
+        avancer(30);
+        service.signalerConflit("Offre", 2L);
+        avancer(30);
+
+        // Act : 1 conflit il y a 60 s (score 1/64) et 1 il y a 30 s (score 1/8)
+        service.purger();
+
+        // Assert
+        assertEquals(1, service.taille());
+    }
+
+    @Test
+    void delaiAvantReessai_resteSousUnPlafondQuiDouble() {
+        // Act & Assert
+        for (int i = 0; i < 100; i++) {
+            assertTrue(service.delaiAvantReessai(1).compareTo(Duration.ofMillis(20)) <= 0);
+            assertTrue(service.delaiAvantReessai(3).compareTo(Duration.ofMillis(80)) <= 0);
+            assertTrue(service.delaiAvantReessai(10).compareTo(Duration.ofMillis(500)) <= 0);
+        }
+    }
+}
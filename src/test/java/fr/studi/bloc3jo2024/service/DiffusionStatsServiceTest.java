@@ -0,0 +1,179 @@
+package fr.studi.bloc3jo2024.service;
+
+import fr.studi.bloc3jo2024.dto.statistiques.StatsTempsReelDto;
+import fr.studi.bloc3jo2024.repository.DisciplineRepository;
+import fr.studi.bloc3jo2024.repository.OffreRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DiffusionStatsServiceTest {
+
+    @Mock
+    private CompteursVentesService compteursVentesService;
+    @Mock
+    private OffreRepository offreRepository;
+    @Mock
+    private DisciplineRepository disciplineRepository;
+
+    private DiffusionStatsService diffusionStatsService;
+
+    /** Événement reçu par un abonné de test. */
+    private record Recu(String nom, StatsTempsReelDto donnees) {
+    }
+
+    @BeforeEach
+    void setUp() {
+        diffusionStatsService = new DiffusionStatsService(compteursVentesService, offreRepository, disciplineRepository, 60_000L, 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        diffusionStatsService.arreter();
+    }
+
+    private static OffreRepository.QuantiteRestante quantite(Long idOffre, int quantite) {
+        return new OffreRepository.QuantiteRestante() {
+            @Override
+            public Long getIdOffre() {
+                return idOffre;
+            }
+
+            @Override
+            public int getQuantite() {
+                return quantite;
+            }
+        };
+    }
+
+    private static DisciplineRepository.PlacesRestantes places(Long idDiscipline, int places) {
+        return new DisciplineRepository.PlacesRestantes() {
+            @Override
+            public Long getIdDiscipline() {
+                return idDiscipline;
+            }
+
+            @Override
+            public String getNomDiscipline() {
+                return "Discipline " + idDiscipline;
+            }
+
+            @Override
+            public int getNbPlaceDispo() {
+                return places;
+            }
+        };
+    }
+
+    private void etat(long ventesSolo, int quantiteOffre1, int placesDiscipline) {
+        when(compteursVentesService.getBilletsParType()).thenReturn(Map.of("SOLO", ventesSolo));
+        when(offreRepository.findQuantitesRestantes()).thenReturn(List.of(quantite(1L, quantiteOffre1), quantite(2L, 50)));
+        when(disciplineRepository.findPlacesRestantes()).thenReturn(List.of(places(10L, placesDiscipline)));
+    }
+
+    @Test
+    void diffuser_SansAbonne_AucunCalcul() {
+        // Act
+        diffusionStatsService.diffuser();
+
+        // Assert
+        verifyNoInteractions(compteursVentesService, offreRepository, disciplineRepository);
+    }
+
+    @Test
+    void diffuser_InstantanePuisDeltaCoalesce_UnSeulCalculPourTousLesAbonnes() throws Exception {
+        // Arrange
+        BlockingQueue<Recu> premier = new LinkedBlockingQueue<>();
+        BlockingQueue<Recu> second = new LinkedBlockingQueue<>();
+        diffusionStatsService.abonner((nom, donnees) -> premier.add(new Recu(nom, donnees)));
+        diffusionStatsService.abonner((nom, donnees) -> second.add(new Recu(nom, donnees)));
+
+        // Act : premier tick (instantané), deuxième tick (seule l'offre 1 et les ventes changent), troisième sans changement
+        etat(3L, 100, 500);
+        diffusionStatsService.diffuser();
+        etat(5L, 98, 500);
+        diffusionStatsService.diffuser();
+        diffusionStatsService.diffuser();
+
+        // Assert
+        Recu instantane = premier.poll(5, TimeUnit.SECONDS);
+        assertNotNull(instantane);
+        assertEquals(DiffusionStatsService.EVENEMENT_INSTANTANE, instantane.nom());
+        assertEquals(Map.of(1L, 100, 2L, 50), instantane.donnees().getQuantitesOffres());
+
+        Recu delta = premier.poll(5, TimeUnit.SECONDS);
+        assertNotNull(delta);
+        assertEquals(DiffusionStatsService.EVENEMENT_DELTA, delta.nom());
+        assertFalse(delta.donnees().isComplet());
+        assertEquals(Map.of("SOLO", 5L), delta.donnees().getVentesParType());
+        assertEquals(Map.of(1L, 98), delta.donnees().getQuantitesOffres());
+        assertTrue(delta.donnees().getPlacesDisciplines().isEmpty());
+
+        assertNull(premier.poll(200, TimeUnit.MILLISECONDS), "Aucun événement quand rien n'a changé");
+        assertNotNull(second.poll(5, TimeUnit.SECONDS));
+        assertNotNull(second.poll(5, TimeUnit.SECONDS));
+        verify(offreRepository, times(3)).findQuantitesRestantes();
+    }
+
+    @Test
+    void diffuser_AbonneLent_ResynchroniseParInstantane() throws Exception {
+        // Arrange : le premier envoi bloque, la file (capacité 2) déborde
+        CountDownLatch debloquer = new CountDownLatch(1);
+        BlockingQueue<Recu> recus = new LinkedBlockingQueue<>();
+        diffusionStatsService.abonner((nom, donnees) -> {
+            recus.add(new Recu(nom, donnees));
+            try {
+                debloquer.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        // Act
+        etat(0L, 100, 500);
+        diffusionStatsService.diffuser();
+        assertNotNull(recus.poll(5, TimeUnit.SECONDS));
+        for (int i = 1; i <= 4; i++) {
+            etat(i, 100 - i, 500 - i);
+            diffusionStatsService.diffuser();
+        }
+        debloquer.countDown();
+
+        // Assert : les deltas perdus au débordement sont remplacés par l'état complet de ce tick, puis les deltas reprennent
+        Recu resynchronisation = recus.poll(5, TimeUnit.SECONDS);
+        assertNotNull(resynchronisation);
+        assertEquals(DiffusionStatsService.EVENEMENT_INSTANTANE, resynchronisation.nom());
+        assertEquals(Map.of(1L, 97, 2L, 50), resynchronisation.donnees().getQuantitesOffres());
+        Recu suite = recus.poll(5, TimeUnit.SECONDS);
+        assertNotNull(suite);
+        assertEquals(DiffusionStatsService.EVENEMENT_DELTA, suite.nom());
+        assertEquals(Map.of(1L, 96), suite.donnees().getQuantitesOffres());
+    }
+
+    @Test
+    void fermer_RetireLAbonne() {
+        // Arrange
+        DiffusionStatsService.Abonne abonne = diffusionStatsService.abonner((nom, donnees) -> { });
+
+        // Act
+        abonne.fermer();
+
+        // Assert
+        assertTrue(abonne.estFerme());
+        assertEquals(0, diffusionStatsService.nombreAbonnes());
+    }
+}
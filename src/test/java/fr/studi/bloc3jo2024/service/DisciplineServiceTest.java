@@ -1,5 +1,7 @@
 package fr.studi.bloc3jo2024.service;
 
+import fr.studi.bloc3jo2024.changements.BusChangements;
+import fr.studi.bloc3jo2024.changements.TypeChangement;
 import fr.studi.bloc3jo2024.dto.disciplines.CreerDisciplineDto;
 import fr.studi.bloc3jo2024.dto.disciplines.MettreAJourDisciplineDto;
 import fr.studi.bloc3jo2024.entity.Adresse;
@@ -7,6 +9,7 @@ import fr.studi.bloc3jo2024.entity.Discipline;
 import fr.studi.bloc3jo2024.entity.Epreuve;
 import fr.studi.bloc3jo2024.repository.AdresseRepository;
 import fr.studi.bloc3jo2024.repository.DisciplineRepository;
+import fr.studi.bloc3jo2024.service.offres.ExpirationOffresService;
 import jakarta.persistence.EntityNotFoundException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -33,6 +36,12 @@ class DisciplineServiceTest {
     @Mock
     private EpreuveService epreuveService;
 
+    @Mock
+    private BusChangements busChangements;
+
+    @Mock
+    private ExpirationOffresService expirationOffresService;
+
     @InjectMocks
     private DisciplineService disciplineService;
 
@@ -232,6 +241,7 @@ class DisciplineServiceTest {
         assertEquals(150, updatedDiscipline.getNbPlaceDispo());
         verify(disciplineRepository, times(1)).findById(1L);
         verify(disciplineRepository, times(1)).save(any(Discipline.class));
+        verify(busChangements).publier(TypeChangement.DISCIPLINE, 1L); // Annoncée aux autres instances
     }
 
     @Test
@@ -272,6 +282,7 @@ class DisciplineServiceTest {
         assertEquals(futureDate, updatedDiscipline.getDateDiscipline());
         verify(disciplineRepository, times(1)).findById(1L);
         verify(disciplineRepository, times(1)).save(any(Discipline.class));
+        verify(expirationOffresService).rechargerApresCommit(); // Échéances des offres de la discipline replanifiées
     }
 
     @Test
@@ -1,5 +1,7 @@
 package fr.studi.bloc3jo2024.service;
 
+import fr.studi.bloc3jo2024.changements.BusChangements;
+import fr.studi.bloc3jo2024.changements.TypeChangement;
 import fr.studi.bloc3jo2024.dto.epreuves.MettreAJourEpreuveVedetteDto;
 import fr.studi.bloc3jo2024.entity.Epreuve;
 import fr.studi.bloc3jo2024.repository.EpreuveRepository;
@@ -25,6 +27,9 @@ class EpreuveServiceTest {
     @Mock
     private EpreuveRepository epreuveRepository;
 
+    @Mock
+    private BusChangements busChangements;
+
     @InjectMocks
     private EpreuveService epreuveService;
 
@@ -110,6 +115,7 @@ class EpreuveServiceTest {
         assertTrue(updatedEpreuve.isFeatured()); // Vérifie que le statut a été mis à jour
         verify(epreuveRepository, times(1)).findById(targetId); // Vérifie la recherche par ID
         verify(epreuveRepository, times(1)).save(epreuveNonVedette); // Vérifie la sauvegarde de l'instance modifiée
+        verify(busChangements).publier(TypeChangement.EPREUVE, targetId); // Annoncée aux autres instances
     }
 
     @Test
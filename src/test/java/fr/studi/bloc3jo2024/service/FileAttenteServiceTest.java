@@ -0,0 +1,232 @@
+package fr.studi.bloc3jo2024.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class FileAttenteServiceTest {
+
+    private static final String SUJET = "acheteur@example.com";
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private FileAttenteService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new FileAttenteService(jdbcTemplate, "cle-de-test");
+        ReflectionTestUtils.setField(service, "active", true);
+        ReflectionTestUtils.setField(service, "debitMin", 2.0);
+        ReflectionTestUtils.setField(service, "marge", 1.5);
+        ReflectionTestUtils.setField(service, "concurrenceMax", 2);
+        ReflectionTestUtils.setField(service, "validiteMs", 3_600_000L);
+    }
+
+    /** Occupe toute la capacité pour que les tickets suivants soient mis en file. */
+    private void saturer() {
+        service.debuterRequete();
+        service.debuterRequete();
+    }
+
+    @Test
+    void admettre_fileVideEtCapaciteLibre_admetImmediatement() {
+        // Act
+        FileAttenteService.Admission admission = service.admettre(null, SUJET);
+
+        // Assert
+        assertTrue(admission.admis());
+        assertNotNull(admission.ticket());
+        assertEquals(0, service.longueur());
+    }
+
+    @Test
+    void admettre_capaciteSaturee_placeEnFileAvecPositionEtAttente() {
+        // Arrange
+        saturer();
+
+        // Act
+        FileAttenteService.Admission premier = service.admettre(null, SUJET);
+        FileAttenteService.Admission second = service.admettre(null, "autre@example.com");
+
+        // Assert
+        assertFalse(premier.admis());
+        assertEquals(1, premier.position());
+        assertEquals(1, premier.attenteSecondes()); // 1 ticket au débit minimal de 2/s
+        assertEquals(2, second.position());
+        assertEquals(2, service.longueur());
+    }
+
+    @Test
+    void admettre_ticketPresenteDeNouveau_conserveSaPlace() {
+        // Arrange
+        saturer();
+        FileAttenteService.Admission premier = service.admettre(null, SUJET);
+        service.admettre(null, "autre@example.com");
+
+        // Act
+        FileAttenteService.Admission retour = service.admettre(premier.ticket(), SUJET);
+
+        // Assert
+        assertEquals(premier.ticket(), retour.ticket());
+        assertEquals(1, retour.position());
+        assertEquals(2, service.longueur()); // Aucun nouveau ticket émis
+    }
+
+    @Test
+    void admettre_ticketFalsifieOuDUnAutreClient_neDonneQueLeTicketDuClient() {
+        // Arrange
+        saturer();
+        FileAttenteService.Admission premier = service.admettre(null, SUJET);
+        String[] parties = premier.ticket().split("\\.");
+        String falsifie = "0." + parties[1] + "." + parties[2];
+
+        // Act
+        FileAttenteService.Admission vole = service.admettre(premier.ticket(), "autre@example.com");
+        FileAttenteService.Admission avance = service.admettre(falsifie, SUJET);
+
+        // Assert
+        assertEquals(2, vole.position());
+        assertEquals(premier.ticket(), avance.ticket());
+        assertEquals(1, avance.position());
+    }
+
+    @Test
+    void admettre_sansTicket_rendLeTicketDejaEmisPourLeClient() {
+        // Arrange
+        saturer();
+        FileAttenteService.Admission premier = service.admettre(null, SUJET);
+
+        // Act
+        FileAttenteService.Admission relance = service.admettre(null, SUJET);
+        FileAttenteService.Admission autre = service.admettre(null, "autre@example.com");
+
+        // Assert
+        assertEquals(premier.ticket(), relance.ticket());
+        assertEquals(1, relance.position());
+        assertEquals(2, autre.position());
+        assertEquals(2, service.longueur());
+    }
+
+    @Test
+    void admettre_ticketDUneAutreInstance_estRemplaceParUnTicketLocal() {
+        // Arrange : deux instances sans clé configurée, chacune avec sa clé aléatoire et sa propre file
+        FileAttenteService instanceA = new FileAttenteService(jdbcTemplate, "");
+        FileAttenteService instanceB = new FileAttenteService(jdbcTemplate, "");
+        for (FileAttenteService instance : new FileAttenteService[]{instanceA, instanceB}) {
+            ReflectionTestUtils.setField(instance, "debitMin", 2.0);
+            ReflectionTestUtils.setField(instance, "concurrenceMax", 0);
+            ReflectionTestUtils.setField(instance, "validiteMs", 3_600_000L);
+        }
+        instanceB.admettre(null, "autre@example.com");
+        FileAttenteService.Admission surA = instanceA.admettre(null, SUJET);
+
+        // Act : sans affinité de session, la requête suivante du compte arrive sur l'autre instance
+        FileAttenteService.Admission surB = instanceB.admettre(surA.ticket(), SUJET);
+        FileAttenteService.Admission retourSurA = instanceA.admettre(surA.ticket(), SUJET);
+
+        // Assert : un ticket par compte et par instance, la place n'est conservée que sur l'instance d'origine
+        assertNotEquals(surA.ticket(), surB.ticket());
+        assertEquals(2, surB.position()); // En fin de la file de l'instance B
+        assertEquals(surA.ticket(), retourSurA.ticket());
+        assertEquals(1, retourSurA.position());
+        assertEquals(1, instanceA.longueur());
+        assertEquals(2, instanceB.longueur());
+    }
+
+    @Test
+    void purger_oublieLesTicketsExpires() {
+        // Arrange
+        saturer();
+        service.admettre(null, SUJET);
+        ReflectionTestUtils.setField(service, "validiteMs", -1L);
+
+        // Act
+        service.purger();
+        ReflectionTestUtils.setField(service, "validiteMs", 3_600_000L);
+        FileAttenteService.Admission apresPurge = service.admettre(null, SUJET);
+
+        // Assert
+        assertEquals(2, apresPurge.position());
+    }
+
+    @Test
+    void avancer_admetAuDebitMinimalDansLOrdre() {
+        // Arrange
+        saturer();
+        FileAttenteService.Admission premier = service.admettre(null, SUJET);
+        FileAttenteService.Admission second = service.admettre(null, "b@example.com");
+        FileAttenteService.Admission troisieme = service.admettre(null, "c@example.com");
+        service.terminerRequete(false);
+
+        // Act : une demi-seconde au débit minimal de 2/s
+        service.avancer(0.5);
+
+        // Assert
+        assertTrue(service.admettre(premier.ticket(), SUJET).admis());
+        assertFalse(service.admettre(second.ticket(), "b@example.com").admis());
+        assertEquals(2, service.admettre(troisieme.ticket(), "c@example.com").position());
+    }
+
+    @Test
+    void avancer_capaciteSaturee_suspendLesAdmissions() {
+        // Arrange
+        saturer();
+        FileAttenteService.Admission premier = service.admettre(null, SUJET);
+
+        // Act
+        service.avancer(10);
+
+        // Assert
+        assertFalse(service.admettre(premier.ticket(), SUJET).admis());
+    }
+
+    @Test
+    void avancer_debitSuitLesAchatsReussisMesures() {
+        // Arrange : 20 achats réussis en une seconde
+        for (int i = 0; i < 20; i++) {
+            service.debuterRequete();
+            service.terminerRequete(true);
+        }
+
+        // Act
+        service.avancer(1);
+
+        // Assert : lissage 0,2 x 20/s = 4/s, majoré de la marge 1,5
+        assertEquals(6.0, service.debitAdmission(), 1e-9);
+    }
+
+    @Test
+    void sauvegarder_sansPersistance_neTouchePasLaBase() {
+        // Act
+        service.sauvegarder();
+        service.restaurer();
+
+        // Assert
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void sauvegarder_avecPersistance_ecritLEtat() {
+        // Arrange
+        ReflectionTestUtils.setField(service, "persistance", true);
+        saturer();
+        service.admettre(null, SUJET);
+
+        // Act
+        service.sauvegarder();
+
+        // Assert
+        verify(jdbcTemplate).update(anyString(), eq(1L), eq(0L), eq(0.0), any());
+    }
+}
@@ -0,0 +1,201 @@
+package fr.studi.bloc3jo2024.service;
+
+import fr.studi.bloc3jo2024.exception.IdempotenceSatureeException;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdempotenceServiceTest {
+
+    private static final String PORTEE = "POST /api/paniers/payer|utilisateur";
+
+    private final IdempotenceService service = new IdempotenceService(100, 60_000, 5_000);
+    private final AtomicInteger executions = new AtomicInteger();
+
+    private ResponseEntity<String> traiter() {
+        return ResponseEntity.ok("paiement-" + executions.incrementAndGet());
+    }
+
+    @Test
+    void executer_sansCle_executeAChaqueFois() {
+        // Act
+        service.executer(null, PORTEE, "panier", this::traiter);
+        service.executer(null, PORTEE, "panier", this::traiter);
+
+        // Assert
+        assertEquals(2, executions.get());
+        assertEquals(0, service.taille());
+    }
+
+    @Test
+    void executer_memeCle_rejoueLaReponseConservee() {
+        // Arrange
+        service.executer("cle", PORTEE, "panier", this::traiter);
+
+        // Act
+        ResponseEntity<String> rejeu = service.executer("cle", PORTEE, "panier", this::traiter);
+
+        // Assert
+        assertEquals(1, executions.get());
+        assertEquals("paiement-1", rejeu.getBody());
+        assertEquals("true", rejeu.getHeaders().getFirst(IdempotenceService.EN_TETE_REJEU));
+    }
+
+    @Test
+    void executer_memeCleAutrePortee_executeDeNouveau() {
+        // Arrange
+        service.executer("cle", PORTEE, "panier", this::traiter);
+
+        // Act
+        service.executer("cle", "POST /api/paniers/payer|autre", "panier", this::traiter);
+
+        // Assert
+        assertEquals(2, executions.get());
+    }
+
+    @Test
+    void executer_cleInvalide_throwsBadRequest() {
+        // Act & Assert
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> service.executer(" ", PORTEE, "panier", this::traiter));
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getStatusCode());
+        assertEquals(0, executions.get());
+    }
+
+    @Test
+    void executer_echec_libereLaCle() {
+        // Arrange
+        assertThrows(ResponseStatusException.class, () -> service.executer("cle", PORTEE, "panier", () -> {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Stock insuffisant");
+        }));
+
+        // Act
+        ResponseEntity<String> reponse = service.executer("cle", PORTEE, "panier", this::traiter);
+
+        // Assert
+        assertEquals("paiement-1", reponse.getBody());
+        assertNull(reponse.getHeaders().getFirst(IdempotenceService.EN_TETE_REJEU));
+    }
+
+    @Test
+    void executer_doublonsConcurrents_attendentLaRequeteEnCours() throws Exception {
+        // Arrange : la première requête reste bloquée jusqu'à l'arrivée des doublons
+        int doublons = 4;
+        CountDownLatch premiereDemarree = new CountDownLatch(1);
+        CountDownLatch liberer = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(doublons + 1);
+        try {
+            Future<ResponseEntity<String>> premiere = executor.submit(() -> service.executer("cle", PORTEE, "panier", () -> {
+                premiereDemarree.countDown();
+                awaitQuietly(liberer);
+                return traiter();
+            }));
+            assertTrue(premiereDemarree.await(5, TimeUnit.SECONDS));
+            Future<?>[] suivantes = new Future<?>[doublons];
+            for (int i = 0; i < doublons; i++) {
+                suivantes[i] = executor.submit(() -> service.executer("cle", PORTEE, "panier", this::traiter));
+            }
+
+            // Act
+            liberer.countDown();
+
+            // Assert
+            assertEquals("paiement-1", premiere.get(5, TimeUnit.SECONDS).getBody());
+            for (Future<?> suivante : suivantes) {
+                assertEquals("paiement-1", ((ResponseEntity<?>) suivante.get(5, TimeUnit.SECONDS)).getBody());
+            }
+            assertEquals(1, executions.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void executer_requeteEnCoursTropLongue_throwsConflict() throws Exception {
+        // Arrange
+        IdempotenceService serviceImpatient = new IdempotenceService(100, 60_000, 50);
+        CountDownLatch premiereDemarree = new CountDownLatch(1);
+        CountDownLatch liberer = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            executor.submit(() -> serviceImpatient.executer("cle", PORTEE, "panier", () -> {
+                premiereDemarree.countDown();
+                awaitQuietly(liberer);
+                return traiter();
+            }));
+            assertTrue(premiereDemarree.await(5, TimeUnit.SECONDS));
+
+            // Act & Assert
+            ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                    () -> serviceImpatient.executer("cle", PORTEE, "panier", this::traiter));
+            assertEquals(HttpStatus.CONFLICT, exception.getStatusCode());
+        } finally {
+            liberer.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void purger_retireLesClesExpirees() {
+        // Arrange
+        IdempotenceService serviceSansDuree = new IdempotenceService(100, 0, 1_000);
+        serviceSansDuree.executer("cle", PORTEE, "panier", this::traiter);
+
+        // Act
+        serviceSansDuree.purger();
+
+        // Assert
+        assertEquals(0, serviceSansDuree.taille());
+    }
+
+    @Test
+    void executer_stockagePlein_refuseLesNouvellesClesSansExecuter() {
+        // Arrange
+        IdempotenceService petitService = new IdempotenceService(1, 60_000, 1_000);
+        petitService.executer("cle-1", PORTEE, "panier", this::traiter);
+
+        // Act & Assert
+        assertThrows(IdempotenceSatureeException.class,
+                () -> petitService.executer("cle-2", PORTEE, "panier", this::traiter));
+        ResponseEntity<String> rejeu = petitService.executer("cle-1", PORTEE, "panier", this::traiter);
+
+        assertEquals(1, executions.get());
+        assertEquals("paiement-1", rejeu.getBody());
+        assertEquals(1, petitService.taille());
+    }
+
+    @Test
+    void executer_erreurDuTraitement_libereLaCle() {
+        // Arrange
+        Supplier<ResponseEntity<String>> enErreur = () -> {
+            throw new StackOverflowError("pile épuisée");
+        };
+
+        // Act
+        assertThrows(StackOverflowError.class, () -> service.executer("cle-1", PORTEE, "panier", enErreur));
+        ResponseEntity<String> nouvelEssai = service.executer("cle-1", PORTEE, "panier", this::traiter);
+
+        // Assert
+        assertEquals("paiement-1", nouvelEssai.getBody());
+        assertNull(nouvelEssai.getHeaders().getFirst(IdempotenceService.EN_TETE_REJEU));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
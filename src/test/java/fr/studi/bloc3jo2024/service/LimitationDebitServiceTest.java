@@ -0,0 +1,126 @@
+package fr.studi.bloc3jo2024.service;
+
+import fr.studi.bloc3jo2024.service.LimitationDebitService.Limite;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LimitationDebitServiceTest {
+
+    private static final Limite CINQ_PAR_MINUTE = new Limite(5, Duration.ofMinutes(1));
+
+    private final AtomicLong horloge = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+    private LimitationDebitService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new LimitationDebitService(3, horloge::get);
+    }
+
+    private void avancer(long secondes) {
+        horloge.addAndGet(TimeUnit.SECONDS.toNanos(secondes));
+    }
+
+    @Test
+    void consommer_accepteUneRafaleJusquALaCapacite() {
+        // Act & Assert
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, service.consommer("login|ip|1.2.3.4", CINQ_PAR_MINUTE));
+        }
+        long attente = service.consommer("login|ip|1.2.3.4", CINQ_PAR_MINUTE);
+
+        // Assert : un jeton toutes les 12 s
+        assertEquals(TimeUnit.SECONDS.toNanos(12), attente);
+    }
+
+    @Test
+    void consommer_seauVide_seRechargeAuRythmeDeLaLimite() {
+        // Arrange
+        for (int i = 0; i < 5; i++) {
+            service.consommer("login|ip|1.2.3.4", CINQ_PAR_MINUTE);
+        }
+
+        // Act
+        avancer(12);
+
+        // Assert : un seul jeton rechargé
+        assertEquals(0, service.consommer("login|ip|1.2.3.4", CINQ_PAR_MINUTE));
+        assertTrue(service.consommer("login|ip|1.2.3.4", CINQ_PAR_MINUTE) > 0);
+    }
+
+    @Test
+    void consommer_refus_neConsommePasDeJeton() {
+        // Arrange
+        for (int i = 0; i < 5; i++) {
+            service.consommer("login|ip|1.2.3.4", CINQ_PAR_MINUTE);
+        }
+        for (int i = 0; i < 10; i++) {
+            service.consommer("login|ip|1.2.3.4", CINQ_PAR_MINUTE);
+        }
+
+        // Act
+        avancer(12);
+
+        // Assert : les refus n'ont pas repoussé la recharge
+        assertEquals(0, service.consommer("login|ip|1.2.3.4", CINQ_PAR_MINUTE));
+    }
+
+    @Test
+    void consommer_clesDistinctes_ontDesSeauxIndependants() {
+        // Arrange
+        for (int i = 0; i < 5; i++) {
+            service.consommer("login|ip|1.2.3.4", CINQ_PAR_MINUTE);
+        }
+
+        // Act & Assert
+        assertEquals(0, service.consommer("login|ip|5.6.7.8", CINQ_PAR_MINUTE));
+    }
+
+    @Test
+    void consommer_tableSaturee_nouvellesClesPartagentUnSeauDeDebordement() {
+        // Arrange
+        service.consommer("login|ip|a", CINQ_PAR_MINUTE);
+        service.consommer("login|ip|b", CINQ_PAR_MINUTE);
+        service.consommer("login|ip|c", CINQ_PAR_MINUTE);
+
+        // Act : cinq adresses nouvelles épuisent le seau commun
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, service.consommer("login|ip|nouvelle-" + i, CINQ_PAR_MINUTE));
+        }
+
+        // Assert
+        assertTrue(service.consommer("login|ip|encore-une", CINQ_PAR_MINUTE) > 0);
+        assertEquals(4, service.taille());
+    }
+
+    @Test
+    void purger_retireLesSeauxRedevenusPleins() {
+        // Arrange
+        service.consommer("login|ip|a", CINQ_PAR_MINUTE);
+        for (int i = 0; i < 5; i++) {
+            service.consommer("login|ip|b", CINQ_PAR_MINUTE);
+        }
+        avancer(30);
+
+        // Act
+        service.purger();
+
+        // Assert : « a » est plein depuis 12 s, « b » se recharge encore
+        assertEquals(1, service.taille());
+    }
+
+    @Test
+    void lire_formatsAcceptesEtRefuses() {
+        // Act & Assert
+        assertEquals(new Limite(5, Duration.ofMinutes(1)), Limite.lire("5/1m"));
+        assertEquals(new Limite(50, Duration.ofSeconds(1)), Limite.lire(" 50 / 1s "));
+        assertEquals(new Limite(3, Duration.ofHours(1)), Limite.lire("3/1h"));
+        assertThrows(IllegalArgumentException.class, () -> Limite.lire("5 par minute"));
+        assertThrows(IllegalArgumentException.class, () -> Limite.lire("0/1m"));
+    }
+}
@@ -0,0 +1,252 @@
+package fr.studi.bloc3jo2024.service;
+
+import fr.studi.bloc3jo2024.service.OffresChaudesService.Reservation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SimpleDriverDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class OffresChaudesServiceTest {
+
+    private static final long OFFRE = 1L;
+    private static final long DISCIPLINE = 7L;
+
+    private final AtomicLong horloge = new AtomicLong(TimeUnit.HOURS.toMillis(1));
+    private final OffresEpuiseesService offresEpuiseesService = mock(OffresEpuiseesService.class);
+    private SimpleDriverDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private OffresChaudesService service;
+    private ExecutorService acheteurs;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new SimpleDriverDataSource(new org.h2.Driver(),
+                "jdbc:h2:mem:offres-chaudes-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE disciplines (id_discipline BIGINT PRIMARY KEY, "
+                + "nb_place_dispo INT NOT NULL CHECK (nb_place_dispo >= 0), version BIGINT)");
+        jdbcTemplate.execute("CREATE TABLE offres (id_offre BIGINT PRIMARY KEY, quantite INT NOT NULL, "
+                + "statut_offre VARCHAR(20) NOT NULL, version BIGINT, id_discipline BIGINT)");
+        // Seuil de 4 tentatives sur 10 s (tranches de 1 s), lots de 256, 5 s d'attente, 2 écrivains
+        service = new OffresChaudesService(dataSource, offresEpuiseesService, true, 4, 10_000, 10, 256, 5_000, 2, horloge::get);
+        acheteurs = Executors.newCachedThreadPool(); // Un thread par acheteur : tous attendent leur lot en même temps
+    }
+
+    @AfterEach
+    void tearDown() {
+        acheteurs.shutdownNow();
+        service.destroy();
+        jdbcTemplate.execute("SHUTDOWN");
+    }
+
+    private void creer(int stock, int places) {
+        jdbcTemplate.update("INSERT INTO disciplines VALUES (?, ?, 0)", DISCIPLINE, places);
+        jdbcTemplate.update("INSERT INTO offres VALUES (?, ?, 'DISPONIBLE', 0, ?)", OFFRE, stock, DISCIPLINE);
+    }
+
+    private int stock() {
+        return jdbcTemplate.queryForObject("SELECT quantite FROM offres WHERE id_offre = ?", Integer.class, OFFRE);
+    }
+
+    private int places() {
+        return jdbcTemplate.queryForObject("SELECT nb_place_dispo FROM disciplines WHERE id_discipline = ?", Integer.class, DISCIPLINE);
+    }
+
+    private List<Future<Reservation>> acheter(int acheteursSimultanes, CountDownLatch soumis) {
+        List<Future<Reservation>> reservations = new ArrayList<>();
+        for (int i = 0; i < acheteursSimultanes; i++) {
+            reservations.add(acheteurs.submit(() -> {
+                soumis.countDown();
+                return service.reserver(OFFRE, DISCIPLINE, 1, 2);
+            }));
+        }
+        return reservations;
+    }
+
+    private static long compter(List<Future<Reservation>> reservations, Reservation issue) throws Exception {
+        long total = 0;
+        for (Future<Reservation> reservation : reservations) {
+            if (reservation.get(10, TimeUnit.SECONDS) == issue) {
+                total++;
+            }
+        }
+        return total;
+    }
+
+    private static void attendreQue(BooleanSupplier condition) throws InterruptedException {
+        long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < limite, "Condition non atteinte à temps");
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    void reserver_achatsConcurrents_nAccepteQueLeStockDisponible() throws Exception {
+        // Arrange
+        creer(10, 100);
+
+        // Act
+        List<Future<Reservation>> reservations = acheter(40, new CountDownLatch(40));
+
+        // Assert
+        assertEquals(10, compter(reservations, Reservation.ACCEPTEE));
+        assertEquals(30, compter(reservations, Reservation.STOCK_INSUFFISANT));
+        assertEquals(0, stock());
+        assertEquals(80, places()); // 10 achats * 2 places
+        assertEquals("EPUISE", jdbcTemplate.queryForObject("SELECT statut_offre FROM offres WHERE id_offre = ?", String.class, OFFRE));
+        assertTrue(jdbcTemplate.queryForObject("SELECT version FROM offres WHERE id_offre = ?", Long.class, OFFRE) > 0);
+        verify(offresEpuiseesService, atLeastOnce()).signaler(OFFRE, true); // Rupture connue avant la prochaine requête
+    }
+
+    @Test
+    void reserver_placesDeLaDisciplineEpuisees_refuseSansToucherAuStock() {
+        // Arrange
+        creer(10, 3);
+
+        // Act
+        Reservation premiere = service.reserver(OFFRE, DISCIPLINE, 1, 2);
+        Reservation seconde = service.reserver(OFFRE, DISCIPLINE, 1, 2);
+
+        // Assert
+        assertEquals(Reservation.ACCEPTEE, premiere);
+        assertEquals(Reservation.PLACES_INSUFFISANTES, seconde);
+        assertEquals(9, stock());
+        assertEquals(1, places());
+    }
+
+    @Test
+    void reserver_commandesAccumuleesPendantUnLot_sontAppliqueesEnPeuDeMisesAJour() throws Exception {
+        // Arrange : la discipline est verrouillée ailleurs, le premier lot attend et les commandes s'accumulent
+        creer(100, 1000);
+        CountDownLatch soumis = new CountDownLatch(40);
+        List<Future<Reservation>> reservations;
+        try (Connection connexion = dataSource.getConnection(); Statement statement = connexion.createStatement()) {
+            connexion.setAutoCommit(false);
+            statement.executeQuery("SELECT nb_place_dispo FROM disciplines WHERE id_discipline = " + DISCIPLINE + " FOR UPDATE");
+
+            // Act
+            reservations = acheter(40, soumis);
+            assertTrue(soumis.await(10, TimeUnit.SECONDS));
+            Thread.sleep(200);
+            connexion.commit();
+        }
+
+        // Assert
+        assertEquals(40, compter(reservations, Reservation.ACCEPTEE));
+        assertEquals(60, stock());
+        assertEquals(920, places());
+        assertTrue(service.lotsAppliques() < 10, "Lots appliqués : " + service.lotsAppliques());
+    }
+
+    @Test
+    void reserver_transactionAppelanteAnnulee_restitueLaReservation() throws Exception {
+        // Arrange
+        creer(5, 10);
+        TransactionSynchronizationManager.initSynchronization();
+        List<TransactionSynchronization> synchronisations;
+        try {
+            // Act
+            assertEquals(Reservation.ACCEPTEE, service.reserver(OFFRE, DISCIPLINE, 5, 10));
+            synchronisations = TransactionSynchronizationManager.getSynchronizations();
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        assertEquals(0, stock());
+        synchronisations.forEach(synchronisation -> synchronisation.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+
+        // Assert
+        attendreQue(() -> stock() == 5);
+        assertEquals(10, places());
+        assertEquals("DISPONIBLE", jdbcTemplate.queryForObject("SELECT statut_offre FROM offres WHERE id_offre = ?", String.class, OFFRE));
+        verify(offresEpuiseesService, timeout(1_000)).signaler(OFFRE, false); // Réassort après la rupture
+    }
+
+    @Test
+    void reserver_lotDeRestitutionEnEchec_reprendLaRestitutionJusquASonApplication() throws Exception {
+        // Arrange : tout est réservé, puis la discipline devient inaccessible aux lots
+        creer(5, 10);
+        TransactionSynchronizationManager.initSynchronization();
+        List<TransactionSynchronization> synchronisations;
+        try {
+            assertEquals(Reservation.ACCEPTEE, service.reserver(OFFRE, DISCIPLINE, 5, 10));
+            synchronisations = TransactionSynchronizationManager.getSynchronizations();
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        jdbcTemplate.execute("ALTER TABLE disciplines RENAME TO disciplines_indisponibles");
+
+        // Act : la transaction de l'acheteur est annulée alors que les lots échouent
+        synchronisations.forEach(synchronisation -> synchronisation.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        attendreQue(() -> service.restitutionsReprises() > 0);
+        jdbcTemplate.execute("ALTER TABLE disciplines_indisponibles RENAME TO disciplines");
+
+        // Assert : la restitution est reprise puis appliquée
+        attendreQue(() -> stock() == 5);
+        assertEquals(10, places());
+        assertEquals("DISPONIBLE", jdbcTemplate.queryForObject("SELECT statut_offre FROM offres WHERE id_offre = ?", String.class, OFFRE));
+    }
+
+    @Test
+    void reserver_lotBloqueAuDelaDeLAttente_echoueEtRestitueLaReservationAccepteeEnsuite() throws Exception {
+        // Arrange : la discipline est verrouillée par une transaction d'acheteur ; attente de 200 ms
+        creer(5, 10);
+        OffresChaudesService impatient = new OffresChaudesService(dataSource, offresEpuiseesService, true, 4, 10_000, 10, 256, 200, 1, horloge::get);
+        try {
+            try (Connection connexion = dataSource.getConnection(); Statement statement = connexion.createStatement()) {
+                connexion.setAutoCommit(false);
+                statement.executeQuery("SELECT nb_place_dispo FROM disciplines WHERE id_discipline = " + DISCIPLINE + " FOR UPDATE");
+
+                // Act
+                assertThrows(CannotAcquireLockException.class, () -> impatient.reserver(OFFRE, DISCIPLINE, 2, 4));
+                connexion.commit();
+            }
+
+            // Assert : le lot, appliqué après coup, est compensé
+            attendreQue(() -> impatient.lotsAppliques() == 2);
+            assertEquals(5, stock());
+            assertEquals(10, places());
+        } finally {
+            impatient.destroy();
+        }
+    }
+
+    @Test
+    void enregistrerTentative_seuilAtteint_resteChaudeJusquAuRetourSousLaMoitie() {
+        // Act & Assert
+        for (int i = 0; i < 3; i++) {
+            assertFalse(service.enregistrerTentative(OFFRE));
+        }
+        assertTrue(service.enregistrerTentative(OFFRE)); // 4 tentatives sur la fenêtre
+
+        horloge.addAndGet(5_000);
+        assertTrue(service.enregistrerTentative(OFFRE)); // 5
+
+        horloge.addAndGet(5_000);
+        assertTrue(service.enregistrerTentative(OFFRE)); // Les 4 premières sont sorties de la fenêtre : 2, la moitié du seuil
+
+        horloge.addAndGet(11_000);
+        assertFalse(service.enregistrerTentative(OFFRE)); // 1 seule tentative récente
+        assertFalse(service.enregistrerTentative(2L)); // Les autres offres ne sont pas concernées
+    }
+}
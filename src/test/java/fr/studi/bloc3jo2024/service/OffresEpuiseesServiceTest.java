@@ -0,0 +1,196 @@
+package fr.studi.bloc3jo2024.service;
+
+import fr.studi.bloc3jo2024.changements.Changement;
+import fr.studi.bloc3jo2024.changements.TypeChangement;
+import fr.studi.bloc3jo2024.repository.OffreRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class OffresEpuiseesServiceTest {
+
+    private static final int JOURNAL_MAX = 4;
+
+    @Mock
+    private OffreRepository offreRepository;
+
+    private final AtomicLong horloge = new AtomicLong(1_000_000);
+    private OffresEpuiseesService service;
+
+    @BeforeEach
+    void setUp() {
+        // Registre périmé 10 s après le dernier rafraîchissement réussi
+        service = new OffresEpuiseesService(offreRepository, true, 10_000, JOURNAL_MAX, horloge::get);
+    }
+
+    @Test
+    void rafraichir_remplaceLeRegistreParLesOffresEpuiseesEnBase() {
+        // Arrange
+        service.signaler(3L, true);
+        when(offreRepository.findIdsEpuisees()).thenReturn(List.of(1L, 2L));
+        horloge.addAndGet(1);
+
+        // Act
+        service.rafraichir();
+
+        // Assert
+        assertTrue(service.estEpuisee(1L));
+        assertTrue(service.estEpuisee(2L));
+        assertFalse(service.estEpuisee(3L)); // Réassorti depuis : la base fait foi
+        assertEquals(2, service.taille());
+    }
+
+    @Test
+    void rafraichir_signalPendantLaRequete_estConserve() {
+        // Arrange : le réassort de l'offre 1 est validé pendant la requête, qui a pu lire l'état précédent
+        when(offreRepository.findIdsEpuisees()).thenAnswer(invocation -> {
+            service.signaler(1L, false);
+            service.signaler(4L, true);
+            return List.of(1L, 2L);
+        });
+
+        // Act
+        service.rafraichir();
+
+        // Assert
+        assertFalse(service.estEpuisee(1L));
+        assertTrue(service.estEpuisee(2L));
+        assertTrue(service.estEpuisee(4L));
+    }
+
+    @Test
+    void verifierDisponible_offreSignaleeEpuisee_refuseSansAccesALaBase() {
+        // Arrange
+        service.signaler(7L, true);
+
+        // Act & Assert
+        IllegalStateException exception = assertThrows(IllegalStateException.class, () -> service.verifierDisponible(7L));
+        assertEquals("L'offre 7 est épuisée.", exception.getMessage());
+        assertDoesNotThrow(() -> service.verifierDisponible(8L));
+        verifyNoInteractions(offreRepository);
+    }
+
+    @Test
+    void estEpuisee_rafraichissementsEnEchec_neRefusePlusRienApresLaPeremption() {
+        // Arrange
+        service.signaler(7L, true);
+        when(offreRepository.findIdsEpuisees()).thenThrow(new DataAccessResourceFailureException("Base indisponible"));
+
+        // Act
+        horloge.addAndGet(5_000);
+        service.rafraichir();
+        boolean avantPeremption = service.estEpuisee(7L);
+        horloge.addAndGet(6_000);
+        service.rafraichir();
+
+        // Assert
+        assertTrue(avantPeremption);
+        assertFalse(service.estEpuisee(7L));
+    }
+
+    @Test
+    void signaler_rafraichissementsEnEchec_journalBorne() {
+        // Arrange
+        when(offreRepository.findIdsEpuisees()).thenThrow(new DataAccessResourceFailureException("Base indisponible"));
+
+        // Act
+        for (long idOffre = 1; idOffre <= 10; idOffre++) {
+            service.signaler(idOffre, true);
+            horloge.addAndGet(1);
+            service.rafraichir();
+        }
+
+        // Assert
+        assertTrue(service.tailleJournal() <= JOURNAL_MAX);
+        assertTrue(service.estEpuisee(10L)); // Le registre courant reçoit toujours les signaux
+    }
+
+    @Test
+    void rafraichir_journalDebordePendantLaRequete_estIgnorePuisToutEstRecharge() {
+        // Arrange : la requête lit l'état d'avant des ruptures dont les signaux débordent du journal
+        AtomicInteger appels = new AtomicInteger();
+        when(offreRepository.findIdsEpuisees()).thenAnswer(invocation -> {
+            if (appels.incrementAndGet() == 1) {
+                horloge.addAndGet(1);
+                for (long idOffre = 1; idOffre <= JOURNAL_MAX + 1; idOffre++) {
+                    service.signaler(idOffre, true);
+                }
+                return List.of();
+            }
+            return List.of(1L, 2L, 3L, 4L, 5L);
+        });
+
+        // Act
+        service.rafraichir();
+        boolean premiereRuptureConservee = service.estEpuisee(1L);
+        horloge.addAndGet(1);
+        service.rafraichir();
+
+        // Assert
+        assertTrue(premiereRuptureConservee); // Le résultat périmé n'a pas effacé la rupture perdue du journal
+        for (long idOffre = 1; idOffre <= JOURNAL_MAX + 1; idOffre++) {
+            assertTrue(service.estEpuisee(idOffre));
+        }
+        assertEquals(0, service.tailleJournal());
+    }
+
+    @Test
+    void surChangement_offreOuDisciplineModifiee_rafraichitSansAttendre() {
+        // Arrange
+        when(offreRepository.findIdsEpuisees()).thenReturn(List.of(5L));
+
+        // Act
+        service.surChangement(new Changement(TypeChangement.PANIER, "u-1"));
+        service.surChangement(new Changement(TypeChangement.DISCIPLINE, "10"));
+
+        // Assert
+        assertTrue(service.estEpuisee(5L));
+        verify(offreRepository, times(1)).findIdsEpuisees();
+    }
+
+    @Test
+    void rafraichir_resultatPlusAncienQueLeDernierApplique_estIgnore() {
+        // Arrange : un rafraîchissement déclenché par le bus commence et se termine pendant la requête de celui-ci
+        AtomicInteger appels = new AtomicInteger();
+        when(offreRepository.findIdsEpuisees()).thenAnswer(invocation -> {
+            if (appels.incrementAndGet() == 1) {
+                horloge.addAndGet(1);
+                service.rafraichir();
+                return List.of(1L);
+            }
+            return List.of(2L);
+        });
+
+        // Act
+        service.rafraichir();
+
+        // Assert
+        assertFalse(service.estEpuisee(1L));
+        assertTrue(service.estEpuisee(2L));
+    }
+
+    @Test
+    void signaler_registreInactif_nEnregistreRien() {
+        // Arrange
+        OffresEpuiseesService inactif = new OffresEpuiseesService(offreRepository, false, 10_000, JOURNAL_MAX, horloge::get);
+
+        // Act
+        inactif.signaler(7L, true);
+        inactif.rafraichir();
+
+        // Assert
+        assertFalse(inactif.estEpuisee(7L));
+        verifyNoInteractions(offreRepository);
+    }
+}
@@ -0,0 +1,123 @@
+package fr.studi.bloc3jo2024.service;
+
+import fr.studi.bloc3jo2024.purge.VerrouTaches;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Date;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class PartitionsTransactionsServiceTest {
+
+    private static final YearMonth MOIS_COURANT = YearMonth.of(2026, 3);
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private VerrouTaches verrouTaches;
+
+    private PartitionsTransactionsService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new PartitionsTransactionsService(jdbcTemplate, verrouTaches, 2, 12);
+    }
+
+    @Test
+    void creerPartitionsFutures_moisCourantEtMoisAvance_compteLesCreations() {
+        // Arrange : seule la partition de mai 2026 manque
+        when(jdbcTemplate.queryForObject(eq("SELECT creer_partition_transactions(?)"), eq(Boolean.class), any(Date.class)))
+                .thenAnswer(invocation -> invocation.getArgument(2, Date.class).toLocalDate().equals(LocalDate.of(2026, 5, 1)));
+
+        // Act
+        int creees = service.creerPartitionsFutures(MOIS_COURANT);
+
+        // Assert
+        assertThat(creees).isEqualTo(1);
+        verify(jdbcTemplate, times(3)).queryForObject(eq("SELECT creer_partition_transactions(?)"), eq(Boolean.class), any(Date.class));
+        verify(jdbcTemplate).queryForObject(anyString(), eq(Boolean.class), eq(Date.valueOf(LocalDate.of(2026, 3, 1))));
+        verify(jdbcTemplate).queryForObject(anyString(), eq(Boolean.class), eq(Date.valueOf(LocalDate.of(2026, 4, 1))));
+    }
+
+    @Test
+    void archiverPartitionsAnciennes_seulesLesPartitionsHorsRetentionSontArchivees() {
+        // Arrange : limite de rétention = mars 2025
+        when(jdbcTemplate.queryForList(anyString(), eq(String.class)))
+                .thenReturn(List.of("transactions_p202501", "transactions_p202502", "transactions_p202503", "transactions_p202603"));
+        when(jdbcTemplate.queryForObject(eq("SELECT archiver_partition_transactions(?)"), eq(Long.class), any(Date.class)))
+                .thenReturn(10L, 5L);
+
+        // Act
+        long lignes = service.archiverPartitionsAnciennes(MOIS_COURANT);
+
+        // Assert
+        assertThat(lignes).isEqualTo(15);
+        verify(jdbcTemplate).queryForObject(anyString(), eq(Long.class), eq(Date.valueOf(LocalDate.of(2025, 1, 1))));
+        verify(jdbcTemplate).queryForObject(anyString(), eq(Long.class), eq(Date.valueOf(LocalDate.of(2025, 2, 1))));
+        verify(jdbcTemplate, never()).queryForObject(anyString(), eq(Long.class), eq(Date.valueOf(LocalDate.of(2025, 3, 1))));
+    }
+
+    @Test
+    void listerPartitions_ignoreLesTablesHorsConvention() {
+        // Arrange
+        when(jdbcTemplate.queryForList(anyString(), eq(String.class)))
+                .thenReturn(List.of("transactions_p202407", "transactions_pvieux"));
+
+        // Act
+        List<YearMonth> mois = service.listerPartitions();
+
+        // Assert
+        assertThat(mois).containsExactly(YearMonth.of(2024, 7));
+    }
+
+    @Test
+    void maintenir_verrouTenuParUneAutreInstance_neFaitRien() {
+        // Arrange
+        when(verrouTaches.acquerir(eq(PartitionsTransactionsService.VERROU), any(Duration.class))).thenReturn(false);
+
+        // Act
+        service.maintenir();
+
+        // Assert
+        verifyNoInteractions(jdbcTemplate);
+        verify(verrouTaches, never()).liberer(anyString());
+    }
+
+    @Test
+    void maintenir_erreurBase_journaliseeSansPropagerEtVerrouLibere() {
+        // Arrange
+        when(verrouTaches.acquerir(eq(PartitionsTransactionsService.VERROU), any(Duration.class))).thenReturn(true);
+        when(jdbcTemplate.queryForObject(anyString(), eq(Boolean.class), any(Date.class)))
+                .thenThrow(new DataAccessResourceFailureException("base indisponible"));
+
+        // Act & Assert
+        assertThatCode(() -> service.maintenir()).doesNotThrowAnyException();
+        verify(verrouTaches).liberer(PartitionsTransactionsService.VERROU);
+    }
+
+    @Test
+    void nomPartition_suitLaConventionDeLaMigration() {
+        assertThat(PartitionsTransactionsService.nomPartition(YearMonth.of(2024, 8))).isEqualTo("transactions_p202408");
+    }
+}
@@ -0,0 +1,49 @@
+package fr.studi.bloc3jo2024.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe de test unitaire pour {@link QrCodeService}.
+ */
+class QrCodeServiceTest {
+
+    private final QrCodeService qrCodeService = new QrCodeService(2, 4);
+
+    @AfterEach
+    void tearDown() {
+        qrCodeService.arreter();
+    }
+
+    /**
+     * Vérifie que le rendu parallèle conserve l'ordre des textes et produit les mêmes images que le rendu unitaire,
+     * y compris lorsque la file du pool est saturée (rendu dans le thread appelant).
+     */
+    @Test
+    void generateQRCodes_ConserveLOrdreEtLeContenu() {
+        // Arrange
+        List<String> textes = IntStream.range(0, 20).mapToObj(i -> "CLE-" + i).toList();
+
+        // Act
+        List<byte[]> qrCodes = qrCodeService.generateQRCodes(textes);
+
+        // Assert
+        assertEquals(textes.size(), qrCodes.size());
+        for (int i = 0; i < textes.size(); i++) {
+            assertArrayEquals(qrCodeService.generateQRCode(textes.get(i)), qrCodes.get(i));
+        }
+    }
+
+    /**
+     * Vérifie qu'une liste vide ne sollicite pas le pool.
+     */
+    @Test
+    void generateQRCodes_ListeVide_ReturnsEmpty() {
+        assertTrue(qrCodeService.generateQRCodes(List.of()).isEmpty());
+    }
+}
@@ -0,0 +1,85 @@
+package fr.studi.bloc3jo2024.service;
+
+import fr.studi.bloc3jo2024.dto.offres.VenteParOffreDto;
+import fr.studi.bloc3jo2024.entity.enums.TypeOffre;
+import fr.studi.bloc3jo2024.repository.VenteAgregeeRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StatistiqueServiceTest {
+
+    @Mock
+    private VenteAgregeeRepository venteAgregeeRepository;
+
+    @InjectMocks
+    private StatistiqueService statistiqueService;
+
+    private static VenteAgregeeRepository.VenteJourParType vente(LocalDate jour, TypeOffre type, Long nombre) {
+        return new VenteAgregeeRepository.VenteJourParType() {
+            @Override
+            public LocalDate getJour() {
+                return jour;
+            }
+
+            @Override
+            public TypeOffre getTypeOffre() {
+                return type;
+            }
+
+            @Override
+            public Long getNombreVentes() {
+                return nombre;
+            }
+        };
+    }
+
+    @Test
+    void calculerVentesJournalieresParTypeOffre_LitLAgregat() {
+        // Arrange
+        LocalDate jour = LocalDate.of(2024, 7, 26);
+        when(venteAgregeeRepository.sommerVentesParJourEtType()).thenReturn(List.of(
+                vente(jour, TypeOffre.SOLO, 12L), vente(jour, TypeOffre.DUO, 3L)));
+
+        // Act
+        List<VenteParOffreDto> result = statistiqueService.calculerVentesJournalieresParTypeOffre();
+
+        // Assert
+        assertEquals(List.of(new VenteParOffreDto(jour, "SOLO", 12L), new VenteParOffreDto(jour, "DUO", 3L)), result);
+    }
+
+    @Test
+    void calculerVentesParOffrePourJourDonne_FiltreSurLeJour() {
+        // Arrange
+        LocalDate jour = LocalDate.of(2024, 8, 1);
+        when(venteAgregeeRepository.sommerVentesParTypePourJour(jour)).thenReturn(List.of(vente(jour, TypeOffre.FAMILIALE, null)));
+
+        // Act
+        List<VenteParOffreDto> result = statistiqueService.calculerVentesParOffrePourJourDonne(jour);
+
+        // Assert
+        assertEquals(List.of(new VenteParOffreDto(jour, "FAMILIALE", 0L)), result);
+        verify(venteAgregeeRepository, never()).sommerVentesParJourEtType();
+    }
+
+    @Test
+    void calculerVentesJournalieresParTypeOffre_ErreurBase_ReturnsEmpty() {
+        // Arrange
+        when(venteAgregeeRepository.sommerVentesParJourEtType()).thenThrow(new IllegalStateException("base indisponible"));
+
+        // Act
+        List<VenteParOffreDto> result = statistiqueService.calculerVentesJournalieresParTypeOffre();
+
+        // Assert
+        assertTrue(result.isEmpty());
+    }
+}
@@ -1,5 +1,7 @@
 package fr.studi.bloc3jo2024.service;
 
+import fr.studi.bloc3jo2024.changements.BusChangements;
+import fr.studi.bloc3jo2024.changements.TypeChangement;
 import fr.studi.bloc3jo2024.dto.authentification.RegisterRequestDto;
 import fr.studi.bloc3jo2024.entity.*;
 import fr.studi.bloc3jo2024.entity.enums.TypeAuthTokenTemp;
@@ -15,6 +17,7 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 
 import java.time.LocalDate;
 import java.util.Optional;
+import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -31,6 +34,8 @@ class UtilisateurServiceTest {
     @Mock private PasswordEncoder passwordEncoder;
     @Mock private JavaMailSender mailSender;
     @Mock private AuthTokenTemporaireService tokenService;
+    @Mock private CompteursVentesService compteursVentesService;
+    @Mock private BusChangements busChangements;
 
     private AutoCloseable closeable;
 
@@ -39,7 +44,7 @@ class UtilisateurServiceTest {
         closeable = MockitoAnnotations.openMocks(this);
         utilisateurService = new UtilisateurService(
                 utilisateurRepository, roleRepository, paysRepository,
-                adresseService, passwordEncoder, mailSender, tokenService
+                adresseService, passwordEncoder, mailSender, tokenService, compteursVentesService, busChangements
         );
 
         // Mock des URLs de configuration
@@ -84,6 +89,7 @@ class UtilisateurServiceTest {
 
         // Assert
         verify(utilisateurRepository).save(any(Utilisateur.class));
+        verify(compteursVentesService).enregistrerInscription();
         verify(mailSender).send(any(SimpleMailMessage.class));
     }
 
@@ -103,7 +109,8 @@ class UtilisateurServiceTest {
     @Test
     void confirmUser_success_setsVerifiedAndSavesUser() {
         // Arrange
-        Utilisateur utilisateur = Utilisateur.builder().isVerified(false).build();
+        UUID idUtilisateur = UUID.randomUUID();
+        Utilisateur utilisateur = Utilisateur.builder().idUtilisateur(idUtilisateur).isVerified(false).build();
         AuthTokenTemporaire token = AuthTokenTemporaire.builder().utilisateur(utilisateur).build();
 
         when(tokenService.validateToken("valid-token", TypeAuthTokenTemp.VALIDATION_EMAIL)).thenReturn(token);
@@ -115,6 +122,7 @@ class UtilisateurServiceTest {
         assertTrue(utilisateur.isVerified());
         verify(utilisateurRepository).save(utilisateur);
         verify(tokenService).markAsUsed(token);
+        verify(busChangements).publier(TypeChangement.UTILISATEUR, idUtilisateur); // Annoncé aux autres instances
     }
 
     // Test : requestPasswordReset
@@ -14,6 +14,7 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -33,11 +34,9 @@ class BilletCreationServiceImplTest {
     private Panier dummyPanier;
     private Offre dummyOffre1;
     private Offre dummyOffre2;
-    private Billet dummyBilletInitial;
     private Billet dummyBilletFinal;
     private Transaction dummyTransaction;
 
-    private final String dummyCleAchat = "CLE_ACHAT_TEST";
     private final String dummyCleUtilisateur = "CLE_UTILISATEUR_TEST";
     private final String dummyCleFinaleBillet = "CLE_FINALE_TEST";
     private final UUID dummyUtilisateurId = UUID.randomUUID();
@@ -52,11 +51,12 @@ class BilletCreationServiceImplTest {
                 .prenom("Jean")
                 .build();
 
-        dummyOffre1 = Offre.builder().idOffre(10L).typeOffre(TypeOffre.SOLO).build();
-        dummyOffre2 = Offre.builder().idOffre(20L).typeOffre(TypeOffre.DUO).build();
+        dummyOffre1 = Offre.builder().idOffre(10L).typeOffre(TypeOffre.SOLO).capacite(1).build();
+        dummyOffre2 = Offre.builder().idOffre(20L).typeOffre(TypeOffre.DUO).capacite(2).build();
 
-        ContenuPanier dummyContenuPanier1 = ContenuPanier.builder().offre(dummyOffre1).build();
-        ContenuPanier dummyContenuPanier2 = ContenuPanier.builder().offre(dummyOffre2).build();
+        // 2 offres SOLO (2 places) + 1 offre DUO (2 places) = 4 billets attendus
+        ContenuPanier dummyContenuPanier1 = ContenuPanier.builder().offre(dummyOffre1).quantiteCommandee(2).build();
+        ContenuPanier dummyContenuPanier2 = ContenuPanier.builder().offre(dummyOffre2).quantiteCommandee(1).build();
 
         dummyPanier = Panier.builder()
                 .idPanier(1000L)
@@ -79,118 +79,89 @@ class BilletCreationServiceImplTest {
                 .build();
         dummyTransaction.setPaiement(dummyPaiement);
 
-
-        dummyBilletInitial = Billet.builder()
-                .idBillet(1L)
-                .cleFinaleBillet(dummyCleFinaleBillet)
-                .utilisateur(dummyUtilisateur)
-                .offres(Arrays.asList(dummyOffre1, dummyOffre2))
-                .purchaseDate(dummyDateValidation)
-                .build();
-
         dummyBilletFinal = Billet.builder()
                 .idBillet(1L)
                 .cleFinaleBillet(dummyCleFinaleBillet)
                 .utilisateur(dummyUtilisateur)
-                .offres(Arrays.asList(dummyOffre1, dummyOffre2))
+                .offres(List.of(dummyOffre1))
                 .purchaseDate(dummyDateValidation)
                 .qrCodeImage("dummy_qr_code".getBytes())
                 .build();
     }
 
     @Test
-    void genererBilletApresTransactionReussie_Successful() {
-        when(billetService.genererCleAchat()).thenReturn(dummyCleAchat);
-        when(billetService.genererCleFinaleBillet(dummyCleUtilisateur, dummyCleAchat)).thenReturn(dummyCleFinaleBillet);
-        when(billetService.creerEtEnregistrerBillet(eq(dummyUtilisateur), anyList(), eq(dummyCleFinaleBillet), eq(dummyDateValidation)))
-                .thenReturn(dummyBilletInitial);
-        when(billetService.finaliserBilletAvecQrCode(dummyBilletInitial)).thenReturn(dummyBilletFinal);
-
-        Billet resultBillet = billetCreationService.genererBilletApresTransactionReussie(dummyPaiement);
-
-        assertNotNull(resultBillet);
-        assertEquals(dummyBilletFinal, resultBillet);
-
-        verify(billetService, times(1)).genererCleAchat();
-        verify(billetService, times(1)).genererCleFinaleBillet(dummyCleUtilisateur, dummyCleAchat);
-        verify(billetService, times(1)).creerEtEnregistrerBillet(
-                eq(dummyUtilisateur),
-                argThat(offers -> offers.contains(dummyOffre1) && offers.contains(dummyOffre2) && offers.size() == 2),
-                eq(dummyCleFinaleBillet),
-                eq(dummyDateValidation)
+    void genererBilletsApresTransactionReussie_UnBilletParPlace() {
+        List<Billet> billetsEmis = List.of(dummyBilletFinal, dummyBilletFinal, dummyBilletFinal, dummyBilletFinal);
+        when(billetService.emettreBillets(eq(dummyUtilisateur), anyList(), eq(dummyDateValidation))).thenReturn(billetsEmis);
+
+        List<Billet> resultBillets = billetCreationService.genererBilletsApresTransactionReussie(dummyPaiement);
+
+        assertEquals(billetsEmis, resultBillets);
+        // Les places sont listées dans l'ordre des offres : quantité commandée × capacité
+        verify(billetService, times(1)).emettreBillets(
+                dummyUtilisateur,
+                List.of(dummyOffre1, dummyOffre1, dummyOffre2, dummyOffre2),
+                dummyDateValidation
         );
-        verify(billetService, times(1)).finaliserBilletAvecQrCode(dummyBilletInitial);
     }
 
     @Test
-    void genererBilletApresTransactionReussie_NullUtilisateur_ReturnsNull() {
+    void genererBilletsApresTransactionReussie_NullUtilisateur_ReturnsEmpty() {
         dummyPaiement.setUtilisateur(null);
 
-        Billet resultBillet = billetCreationService.genererBilletApresTransactionReussie(dummyPaiement);
+        List<Billet> resultBillets = billetCreationService.genererBilletsApresTransactionReussie(dummyPaiement);
 
-        assertNull(resultBillet);
+        assertTrue(resultBillets.isEmpty());
         verifyNoInteractions(billetService);
     }
 
     @Test
-    void genererBilletApresTransactionReussie_NullPanier_ReturnsNull() {
+    void genererBilletsApresTransactionReussie_NullPanier_ReturnsEmpty() {
         dummyPaiement.setPanier(null);
 
-        Billet resultBillet = billetCreationService.genererBilletApresTransactionReussie(dummyPaiement);
+        List<Billet> resultBillets = billetCreationService.genererBilletsApresTransactionReussie(dummyPaiement);
 
-        assertNull(resultBillet);
+        assertTrue(resultBillets.isEmpty());
         verifyNoInteractions(billetService);
     }
 
     @Test
-    void genererBilletApresTransactionReussie_NullTransaction_ReturnsNull() {
+    void genererBilletsApresTransactionReussie_NullTransaction_ReturnsEmpty() {
         dummyPaiement.setTransaction(null);
 
-        Billet resultBillet = billetCreationService.genererBilletApresTransactionReussie(dummyPaiement);
+        List<Billet> resultBillets = billetCreationService.genererBilletsApresTransactionReussie(dummyPaiement);
 
-        assertNull(resultBillet);
+        assertTrue(resultBillets.isEmpty());
         verifyNoInteractions(billetService);
     }
 
     @Test
-    void genererBilletApresTransactionReussie_FailedTransaction_ReturnsNull() {
+    void genererBilletsApresTransactionReussie_FailedTransaction_ReturnsEmpty() {
         dummyTransaction.setStatutTransaction(StatutTransaction.ECHEC);
 
-        Billet resultBillet = billetCreationService.genererBilletApresTransactionReussie(dummyPaiement);
+        List<Billet> resultBillets = billetCreationService.genererBilletsApresTransactionReussie(dummyPaiement);
 
-        assertNull(resultBillet);
+        assertTrue(resultBillets.isEmpty());
         verifyNoInteractions(billetService);
     }
 
     @Test
-    void genererBilletApresTransactionReussie_EmptyOffersInPanier_ReturnsNull() {
+    void genererBilletsApresTransactionReussie_EmptyOffersInPanier_ReturnsEmpty() {
         dummyPanier.setContenuPaniers(new HashSet<>());
-        when(billetService.genererCleAchat()).thenReturn(dummyCleAchat);
-        when(billetService.genererCleFinaleBillet(dummyCleUtilisateur, dummyCleAchat)).thenReturn(dummyCleFinaleBillet);
-
-        Billet resultBillet = billetCreationService.genererBilletApresTransactionReussie(dummyPaiement);
 
-        assertNull(resultBillet);
+        List<Billet> resultBillets = billetCreationService.genererBilletsApresTransactionReussie(dummyPaiement);
 
-        verify(billetService, times(1)).genererCleAchat();
-        verify(billetService, times(1)).genererCleFinaleBillet(dummyCleUtilisateur, dummyCleAchat);
-        verify(billetService, times(0)).creerEtEnregistrerBillet(any(), anyList(), any(), any());
-        verify(billetService, times(0)).finaliserBilletAvecQrCode(any());
+        assertTrue(resultBillets.isEmpty());
+        verifyNoInteractions(billetService);
     }
 
     @Test
-    void genererBilletApresTransactionReussie_NullContenuPaniers_ReturnsNull() {
+    void genererBilletsApresTransactionReussie_NullContenuPaniers_ReturnsEmpty() {
         dummyPanier.setContenuPaniers(null);
-        when(billetService.genererCleAchat()).thenReturn(dummyCleAchat);
-        when(billetService.genererCleFinaleBillet(dummyCleUtilisateur, dummyCleAchat)).thenReturn(dummyCleFinaleBillet);
 
-        Billet resultBillet = billetCreationService.genererBilletApresTransactionReussie(dummyPaiement);
+        List<Billet> resultBillets = billetCreationService.genererBilletsApresTransactionReussie(dummyPaiement);
 
-        assertNull(resultBillet);
-
-        verify(billetService, times(1)).genererCleAchat();
-        verify(billetService, times(1)).genererCleFinaleBillet(dummyCleUtilisateur, dummyCleAchat);
-        verify(billetService, times(0)).creerEtEnregistrerBillet(any(), anyList(), any(), any());
-        verify(billetService, times(0)).finaliserBilletAvecQrCode(any());
+        assertTrue(resultBillets.isEmpty());
+        verifyNoInteractions(billetService);
     }
-}
\ No newline at end of file
+}
@@ -58,6 +58,23 @@ class DetailUtilisateurServiceImplTest {
         verifyNoMoreInteractions(utilisateur, role, authentification); // Verify no other interactions
     }
 
+    @Test
+    @DisplayName("getAuthorities should return ROLE_SCANNER for SCANNER user")
+    void getAuthorities_scannerUser_shouldReturnRoleScanner() {
+        // Arrange
+        when(utilisateur.getRole()).thenReturn(role);
+        when(role.getTypeRole()).thenReturn(TypeRole.SCANNER);
+
+        // Act
+        Collection<? extends GrantedAuthority> authorities = detailUtilisateurService.getAuthorities();
+
+        // Assert
+        assertEquals(List.of(new SimpleGrantedAuthority("ROLE_SCANNER")), authorities);
+        verify(utilisateur).getRole();
+        verify(role).getTypeRole();
+        verifyNoMoreInteractions(utilisateur, role, authentification);
+    }
+
     @Test
     @DisplayName("getAuthorities should return ROLE_USER for non-ADMIN user")
     void getAuthorities_regularUser_shouldReturnRoleUser() {
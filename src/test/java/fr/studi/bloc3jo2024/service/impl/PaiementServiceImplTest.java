@@ -13,7 +13,9 @@ import fr.studi.bloc3jo2024.repository.PanierRepository;
 import fr.studi.bloc3jo2024.repository.TransactionRepository;
 import fr.studi.bloc3jo2024.repository.UtilisateurRepository;
 import fr.studi.bloc3jo2024.repository.MethodePaiementRepository; // Ajout de l'import
+import fr.studi.bloc3jo2024.repository.VenteAgregeeRepository;
 import fr.studi.bloc3jo2024.service.BilletCreationService;
+import fr.studi.bloc3jo2024.service.CompteursVentesService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -24,6 +26,7 @@ import org.modelmapper.ModelMapper;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -47,6 +50,10 @@ class PaiementServiceImplTest {
     private BilletCreationService billetCreationService;
     @Mock
     private MethodePaiementRepository methodePaiementRepository; // Mocker le nouveau repository
+    @Mock
+    private VenteAgregeeRepository venteAgregeeRepository;
+    @Mock
+    private CompteursVentesService compteursVentesService;
 
     @InjectMocks
     private PaiementServiceImpl paiementService;
@@ -227,8 +234,8 @@ class PaiementServiceImplTest {
     @Test
     void simulerResultatPaiement_Successful() {
         when(paiementRepository.findById(paiementId)).thenReturn(Optional.of(paiement)); // paiement a methodeCarteBancaireEntity
-        when(transactionRepository.findByPaiementIdPaiement(paiementId)).thenReturn(Optional.of(transaction));
-        when(billetCreationService.genererBilletApresTransactionReussie(paiement)).thenReturn(billet);
+        when(transactionRepository.findByPaiementIdPaiementAndDateTransactionBetween(eq(paiementId), any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(Optional.of(transaction));
+        when(billetCreationService.genererBilletsApresTransactionReussie(paiement)).thenReturn(List.of(billet));
 
         PaiementDto paiementDtoSuccessful = new PaiementDto();
         paiementDtoSuccessful.setIdPaiement(paiementId);
@@ -277,14 +284,18 @@ class PaiementServiceImplTest {
         assertEquals(StatutTransaction.REUSSI, resultDto.getPaiement().getTransaction().getStatutTransaction());
         assertEquals(billet.getIdBillet(), resultDto.getBilletId());
         assertEquals(billet.getCleFinaleBillet(), resultDto.getCleFinaleBillet());
+        assertEquals(List.of(billet.getIdBillet()), resultDto.getBilletIds());
+        assertEquals(List.of(billet.getCleFinaleBillet()), resultDto.getClesFinalesBillets());
 
         verify(paiementRepository).save(paiement);
+        verify(venteAgregeeRepository).cumulerVentesPanier(panierId, transaction.getDateTransaction().toLocalDate());
+        verify(compteursVentesService).enregistrerPaiementReussi(List.of(billet));
     }
 
     @Test
     void simulerResultatPaiement_Failed() {
         when(paiementRepository.findById(paiementId)).thenReturn(Optional.of(paiement));
-        when(transactionRepository.findByPaiementIdPaiement(paiementId)).thenReturn(Optional.of(transaction));
+        when(transactionRepository.findByPaiementIdPaiementAndDateTransactionBetween(eq(paiementId), any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(Optional.of(transaction));
 
         PaiementDto paiementDtoFailed = new PaiementDto();
         // ... (configuration similaire à paiementDtoSuccessful mais avec statut REFUSE/ECHEC)
@@ -332,7 +343,41 @@ class PaiementServiceImplTest {
         assertNotNull(resultDto);
         assertEquals(StatutPaiement.REFUSE, resultDto.getPaiement().getStatutPaiement());
         assertNull(resultDto.getBilletId());
-        verify(billetCreationService, never()).genererBilletApresTransactionReussie(any());
+        verify(billetCreationService, never()).genererBilletsApresTransactionReussie(any());
+        verify(venteAgregeeRepository, never()).cumulerVentesPanier(any(), any());
+    }
+
+    @Test
+    void simulerResultatPaiement_DejaReussi_NeCumulePasDeuxFoisLesVentes() {
+        // Arrange
+        transaction.setStatutTransaction(StatutTransaction.REUSSI);
+        when(paiementRepository.findById(paiementId)).thenReturn(Optional.of(paiement));
+        when(transactionRepository.findByPaiementIdPaiementAndDateTransactionBetween(eq(paiementId), any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(Optional.of(transaction));
+        when(billetCreationService.genererBilletsApresTransactionReussie(paiement)).thenReturn(List.of(billet));
+        when(modelMapper.map(any(Paiement.class), eq(PaiementDto.class))).thenReturn(new PaiementDto());
+
+        // Act
+        paiementService.simulerResultatPaiement(paiementId, true, "Rejeu");
+
+        // Assert
+        verify(venteAgregeeRepository, never()).cumulerVentesPanier(any(), any());
+        verifyNoInteractions(compteursVentesService);
+    }
+
+    @Test
+    void simulerResultatPaiement_DejaReussi_RefuseLePassageEnEchec() {
+        // Arrange
+        transaction.setStatutTransaction(StatutTransaction.REUSSI);
+        when(paiementRepository.findById(paiementId)).thenReturn(Optional.of(paiement));
+        when(transactionRepository.findByPaiementIdPaiementAndDateTransactionBetween(eq(paiementId), any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(Optional.of(transaction));
+
+        // Act & Assert
+        IllegalStateException exception = assertThrows(IllegalStateException.class, () ->
+                paiementService.simulerResultatPaiement(paiementId, false, "Rétrofacturation"));
+        assertEquals("Le paiement " + paiementId + " a déjà réussi : son résultat ne peut plus être modifié.", exception.getMessage());
+        assertEquals(StatutTransaction.REUSSI, transaction.getStatutTransaction());
+        verify(paiementRepository, never()).save(any());
+        verifyNoInteractions(venteAgregeeRepository, compteursVentesService, billetCreationService);
     }
 
     @Test
@@ -346,7 +391,7 @@ class PaiementServiceImplTest {
     @Test
     void simulerResultatPaiement_TransactionNotFound_ThrowsResourceNotFoundException() {
         when(paiementRepository.findById(paiementId)).thenReturn(Optional.of(paiement));
-        when(transactionRepository.findByPaiementIdPaiement(paiementId)).thenReturn(Optional.empty());
+        when(transactionRepository.findByPaiementIdPaiementAndDateTransactionBetween(eq(paiementId), any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(Optional.empty());
 
         assertThrows(ResourceNotFoundException.class, () ->
                 paiementService.simulerResultatPaiement(paiementId, true, "Details"));
@@ -355,8 +400,8 @@ class PaiementServiceImplTest {
     @Test
     void simulerResultatPaiement_SuccessfulButBilletCreationReturnsNull() {
         when(paiementRepository.findById(paiementId)).thenReturn(Optional.of(paiement));
-        when(transactionRepository.findByPaiementIdPaiement(paiementId)).thenReturn(Optional.of(transaction));
-        when(billetCreationService.genererBilletApresTransactionReussie(paiement)).thenReturn(null);
+        when(transactionRepository.findByPaiementIdPaiementAndDateTransactionBetween(eq(paiementId), any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(Optional.of(transaction));
+        when(billetCreationService.genererBilletsApresTransactionReussie(paiement)).thenReturn(List.of());
 
         PaiementDto paiementDtoSuccessful = new PaiementDto();
         // ... (configuration similaire à paiementDtoSuccessful)
@@ -404,6 +449,7 @@ class PaiementServiceImplTest {
         assertEquals(StatutPaiement.ACCEPTE, resultDto.getPaiement().getStatutPaiement());
         assertNull(resultDto.getBilletId());
         assertNull(resultDto.getCleFinaleBillet());
+        assertTrue(resultDto.getBilletIds().isEmpty());
     }
 
     @Test
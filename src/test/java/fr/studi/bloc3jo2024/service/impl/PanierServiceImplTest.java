@@ -1,5 +1,7 @@
 package fr.studi.bloc3jo2024.service.impl;
 
+import fr.studi.bloc3jo2024.changements.BusChangements;
+import fr.studi.bloc3jo2024.changements.TypeChangement;
 import fr.studi.bloc3jo2024.dto.panier.AjouterOffrePanierDto;
 import fr.studi.bloc3jo2024.dto.panier.ContenuPanierDto;
 import fr.studi.bloc3jo2024.dto.panier.ModifierContenuPanierDto;
@@ -8,19 +10,31 @@ import fr.studi.bloc3jo2024.entity.*;
 import fr.studi.bloc3jo2024.entity.enums.StatutOffre;
 import fr.studi.bloc3jo2024.entity.enums.StatutPanier;
 import fr.studi.bloc3jo2024.exception.ResourceNotFoundException;
+import fr.studi.bloc3jo2024.metrics.VenteMetrics;
+import fr.studi.bloc3jo2024.purge.PurgeParLots;
 import fr.studi.bloc3jo2024.repository.ContenuPanierRepository;
 import fr.studi.bloc3jo2024.repository.DisciplineRepository;
 import fr.studi.bloc3jo2024.repository.OffreRepository;
 import fr.studi.bloc3jo2024.repository.PanierRepository;
 import fr.studi.bloc3jo2024.repository.UtilisateurRepository;
+import fr.studi.bloc3jo2024.service.CachePaniersService;
+import fr.studi.bloc3jo2024.service.ContentionService;
+import fr.studi.bloc3jo2024.service.OffresChaudesService;
+import fr.studi.bloc3jo2024.service.OffresEpuiseesService;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.modelmapper.ModelMapper;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.*;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -47,6 +61,27 @@ class PanierServiceImplTest {
     @Mock
     private ModelMapper modelMapper;
 
+    @Mock
+    private VenteMetrics venteMetrics;
+
+    @Mock
+    private CachePaniersService cachePaniersService;
+
+    @Mock
+    private ContentionService contentionService;
+
+    @Mock
+    private OffresChaudesService offresChaudesService;
+
+    @Mock
+    private OffresEpuiseesService offresEpuiseesService;
+
+    @Mock
+    private BusChangements busChangements;
+
+    @Mock
+    private PurgeParLots purgeParLots;
+
     @InjectMocks
     private PanierServiceImpl panierService;
 
@@ -67,6 +102,12 @@ class PanierServiceImplTest {
     private static final String OFFRE_DISCIPLINE_NULL = "L'offre avec l'ID %d n'est associée à aucune discipline ou l'objet discipline est nul.";
     private static final String STOCK_INSUFFISANT_FINALISATION = "Stock de l'offre (%d) insuffisant au moment de la finalisation.";
 
+    @BeforeEach
+    void setUp() {
+        // Chaque mutation contrôle ses totaux incrémentaux par un recalcul complet
+        ReflectionTestUtils.setField(panierService, "verifierTotaux", true);
+    }
+
     /**
      * Teste la récupération d'un panier existant pour un utilisateur.
      * Vérifie que le service trouve et retourne le panier correct sans en créer un nouveau.
@@ -79,7 +120,7 @@ class PanierServiceImplTest {
         PanierDto panierDto = PanierDto.builder().idPanier(panierId).idUtilisateur(utilisateurId).statut(StatutPanier.EN_ATTENTE).montantTotal(BigDecimal.ZERO).contenuPaniers(new ArrayList<>()).build();
 
         when(utilisateurRepository.findById(utilisateurId)).thenReturn(Optional.of(utilisateur));
-        when(panierRepository.findByUtilisateur_idUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE))
+        when(panierRepository.findCompletByUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE))
                 .thenReturn(Optional.of(panier));
         when(modelMapper.map(panier, PanierDto.class)).thenReturn(panierDto);
 
@@ -91,9 +132,29 @@ class PanierServiceImplTest {
         assertEquals(panierDto.getIdPanier(), result.getIdPanier());
         assertEquals(panierDto.getStatut(), result.getStatut());
         verify(utilisateurRepository, times(1)).findById(utilisateurId);
-        verify(panierRepository, times(1)).findByUtilisateur_idUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE);
+        verify(panierRepository, times(1)).findCompletByUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE);
         verify(panierRepository, never()).save(any(Panier.class)); // Aucune sauvegarde ne devrait avoir lieu
         verify(modelMapper, times(1)).map(panier, PanierDto.class);
+        verify(cachePaniersService, times(1)).ecrire(panier); // Le panier lu est mis en cache
+    }
+
+    /**
+     * Teste la lecture d'un panier présent dans le cache.
+     * Vérifie qu'aucun repository n'est sollicité.
+     */
+    @Test
+    void getPanierUtilisateur_shouldServeFromCache_withoutRepositoryAccess() {
+        // Arrange
+        PanierDto panierDto = PanierDto.builder().idPanier(panierId).idUtilisateur(utilisateurId).statut(StatutPanier.EN_ATTENTE).montantTotal(BigDecimal.ZERO).contenuPaniers(new ArrayList<>()).build();
+        when(cachePaniersService.lire(utilisateurId)).thenReturn(Optional.of(panierDto));
+
+        // Act
+        PanierDto result = panierService.getPanierUtilisateur(utilisateurIdStr);
+
+        // Assert
+        assertSame(panierDto, result);
+        verifyNoInteractions(utilisateurRepository, panierRepository, contenuPanierRepository, modelMapper);
+        verify(cachePaniersService, never()).ecrire(any());
     }
 
     /**
@@ -128,7 +189,7 @@ class PanierServiceImplTest {
                 .build();
 
         when(utilisateurRepository.findById(utilisateurId)).thenReturn(Optional.of(utilisateur));
-        when(panierRepository.findByUtilisateur_idUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE))
+        when(panierRepository.findCompletByUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE))
                 .thenReturn(Optional.empty());
         when(panierRepository.save(any(Panier.class))).thenReturn(panierSauvegarde);
         when(modelMapper.map(panierSauvegarde, PanierDto.class)).thenReturn(panierDto);
@@ -143,7 +204,7 @@ class PanierServiceImplTest {
         assertEquals(BigDecimal.ZERO, result.getMontantTotal());
         assertTrue(result.getContenuPaniers().isEmpty());
         verify(utilisateurRepository, times(1)).findById(utilisateurId);
-        verify(panierRepository, times(1)).findByUtilisateur_idUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE);
+        verify(panierRepository, times(1)).findCompletByUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE);
         verify(panierRepository, times(1)).save(any(Panier.class)); // Un nouveau panier devrait être sauvegardé
         verify(modelMapper, times(1)).map(panierSauvegarde, PanierDto.class);
     }
@@ -165,7 +226,7 @@ class PanierServiceImplTest {
 
         verify(utilisateurRepository, times(1)).findById(utilisateurId);
         // Aucune autre interaction ne devrait avoir lieu si l'utilisateur n'est pas trouvé
-        verify(panierRepository, never()).findByUtilisateur_idUtilisateurAndStatut(any(), any());
+        verify(panierRepository, never()).findCompletByUtilisateurAndStatut(any(), any());
         verify(panierRepository, never()).save(any(Panier.class));
         verify(modelMapper, never()).map(any(), any());
     }
@@ -184,9 +245,9 @@ class PanierServiceImplTest {
         AjouterOffrePanierDto ajouterOffrePanierDto = new AjouterOffrePanierDto(offreId, 1); // Quantité demandée valide
 
         when(utilisateurRepository.findById(utilisateurId)).thenReturn(Optional.of(utilisateur));
-        when(panierRepository.findByUtilisateur_idUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE))
+        when(panierRepository.findCompletByUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE))
                 .thenReturn(Optional.of(panier));
-        when(offreRepository.findById(offreId)).thenReturn(Optional.of(offre));
+        when(offreRepository.findByIdWithDiscipline(offreId)).thenReturn(Optional.of(offre));
 
         // Act & Assert
         IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
@@ -197,8 +258,8 @@ class PanierServiceImplTest {
 
         // Vérifications : seuls les appels nécessaires pour la validation initiale sont effectués
         verify(utilisateurRepository, times(1)).findById(utilisateurId);
-        verify(panierRepository, times(1)).findByUtilisateur_idUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE);
-        verify(offreRepository, times(1)).findById(offreId);
+        verify(panierRepository, times(1)).findCompletByUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE);
+        verify(offreRepository, times(1)).findByIdWithDiscipline(offreId);
         verify(disciplineRepository, never()).findById(any()); // Pas besoin de la discipline si l'offre n'est pas dispo ou stock insuffisant
         verify(contenuPanierRepository, never()).findById(any());
         verify(contenuPanierRepository, never()).save(any());
@@ -220,9 +281,9 @@ class PanierServiceImplTest {
         AjouterOffrePanierDto ajouterOffrePanierDto = new AjouterOffrePanierDto(offreId, 2); // Quantité demandée = 2
 
         when(utilisateurRepository.findById(utilisateurId)).thenReturn(Optional.of(utilisateur));
-        when(panierRepository.findByUtilisateur_idUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE))
+        when(panierRepository.findCompletByUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE))
                 .thenReturn(Optional.of(panier));
-        when(offreRepository.findById(offreId)).thenReturn(Optional.of(offre));
+        when(offreRepository.findByIdWithDiscipline(offreId)).thenReturn(Optional.of(offre));
 
         // Act & Assert
         IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
@@ -232,13 +293,15 @@ class PanierServiceImplTest {
 
         // Vérifications : seuls les appels nécessaires pour la validation initiale sont effectués
         verify(utilisateurRepository, times(1)).findById(utilisateurId);
-        verify(panierRepository, times(1)).findByUtilisateur_idUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE);
-        verify(offreRepository, times(1)).findById(offreId);
+        verify(panierRepository, times(1)).findCompletByUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE);
+        verify(offreRepository, times(1)).findByIdWithDiscipline(offreId);
         verify(disciplineRepository, never()).findById(any());
         verify(contenuPanierRepository, never()).findById(any());
         verify(contenuPanierRepository, never()).save(any());
         verify(panierRepository, never()).save(any());
         verify(modelMapper, never()).map(any(), any()); // Mapping ne devrait pas être appelé
+        // Le refus pour stock insuffisant est comptabilisé comme tentative de survente
+        verify(venteMetrics).rejetSurvente(VenteMetrics.MOTIF_STOCK_OFFRE, "ajout");
     }
 
 
@@ -281,10 +344,9 @@ class PanierServiceImplTest {
 
 
         when(utilisateurRepository.findById(utilisateurId)).thenReturn(Optional.of(utilisateur));
-        when(panierRepository.findByUtilisateur_idUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE))
+        when(panierRepository.findCompletByUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE))
                 .thenReturn(Optional.of(panier)); // Retourne le panier avec Offre A
-        when(offreRepository.findById(offreB.getIdOffre())).thenReturn(Optional.of(offreB)); // Offre B trouvée
-        when(disciplineRepository.findById(disciplineId)).thenReturn(Optional.of(discipline)); // Discipline trouvée
+        when(offreRepository.findByIdWithDiscipline(offreB.getIdOffre())).thenReturn(Optional.of(offreB)); // Offre B trouvée
 
 
         // Act & Assert
@@ -297,14 +359,15 @@ class PanierServiceImplTest {
 
         // Vérifications : les appels nécessaires pour vérifier les places sont effectués
         verify(utilisateurRepository, times(1)).findById(utilisateurId);
-        verify(panierRepository, times(1)).findByUtilisateur_idUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE);
-        verify(offreRepository, times(1)).findById(offreB.getIdOffre());
-        verify(disciplineRepository, times(1)).findById(disciplineId);
+        verify(panierRepository, times(1)).findCompletByUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE);
+        verify(offreRepository, times(1)).findByIdWithDiscipline(offreB.getIdOffre());
+        verify(disciplineRepository, never()).findById(any()); // Discipline chargée avec l'offre
         // Ces mocks ne devraient jamais être appelés dans ce scénario d'échec
         verify(contenuPanierRepository, never()).findById(any());
         verify(contenuPanierRepository, never()).save(any());
         verify(panierRepository, never()).save(any());
         verify(modelMapper, never()).map(any(Panier.class), eq(PanierDto.class));
+        verify(venteMetrics).rejetSurvente(VenteMetrics.MOTIF_PLACES_DISCIPLINE, "ajout");
     }
 
     /**
@@ -321,9 +384,9 @@ class PanierServiceImplTest {
         AjouterOffrePanierDto ajouterOffrePanierDto = new AjouterOffrePanierDto(offreId, 1);
 
         when(utilisateurRepository.findById(utilisateurId)).thenReturn(Optional.of(utilisateur));
-        when(panierRepository.findByUtilisateur_idUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE))
+        when(panierRepository.findCompletByUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE))
                 .thenReturn(Optional.of(panier));
-        when(offreRepository.findById(offreId)).thenReturn(Optional.of(offre));
+        when(offreRepository.findByIdWithDiscipline(offreId)).thenReturn(Optional.of(offre));
 
         // Act & Assert
         // On s'attend à ce que l'exception soit lancée car la discipline est nulle dans l'offre
@@ -334,8 +397,8 @@ class PanierServiceImplTest {
 
         // Verify only initial checks were made
         verify(utilisateurRepository, times(1)).findById(utilisateurId);
-        verify(panierRepository, times(1)).findByUtilisateur_idUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE);
-        verify(offreRepository, times(1)).findById(offreId);
+        verify(panierRepository, times(1)).findCompletByUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE);
+        verify(offreRepository, times(1)).findByIdWithDiscipline(offreId);
         verify(disciplineRepository, never()).findById(any()); // Pas besoin de la discipline car l'offre.getDiscipline() est null
         verify(contenuPanierRepository, never()).save(any());
         verify(panierRepository, never()).save(any());
@@ -403,10 +466,9 @@ class PanierServiceImplTest {
 
 
         when(utilisateurRepository.findById(utilisateurId)).thenReturn(Optional.of(utilisateur));
-        when(panierRepository.findByUtilisateur_idUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE))
+        when(panierRepository.findCompletByUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE))
                 .thenReturn(Optional.of(panier)); // Retourne le panier existant
-        when(offreRepository.findById(offreId)).thenReturn(Optional.of(offre)); // Offre trouvée
-        when(disciplineRepository.findById(disciplineId)).thenReturn(Optional.of(discipline)); // Discipline trouvée
+        when(offreRepository.findByIdWithDiscipline(offreId)).thenReturn(Optional.of(offre)); // Offre trouvée
 
 
         // Mock pour l'appel save sur le ContenuPanier mis à jour
@@ -444,14 +506,15 @@ class PanierServiceImplTest {
         assertEquals(3, result.getContenuPaniers().get(0).getQuantiteCommandee()); // Vérifie la quantité mise à jour
 
         verify(utilisateurRepository, times(1)).findById(utilisateurId);
-        verify(panierRepository, times(1)).findByUtilisateur_idUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE);
-        verify(offreRepository, times(1)).findById(offreId);
-        verify(disciplineRepository, times(1)).findById(disciplineId);
+        verify(panierRepository, times(1)).findCompletByUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE);
+        verify(offreRepository, times(1)).findByIdWithDiscipline(offreId);
+        verify(disciplineRepository, never()).findById(any()); // Discipline chargée avec l'offre
 
         // Dans ce scénario, on cherche dans le Set en mémoire, pas par findById sur contenuPanierRepository
         verify(contenuPanierRepository, never()).findById(any(ContenuPanierId.class));
         verify(contenuPanierRepository, times(1)).save(contenuPanierModifieSimule); // Save du contenu mis à jour
         verify(panierRepository, times(1)).save(panier); // Save du panier (via recalculerMontantTotal)
+        verify(cachePaniersService, times(1)).ecrire(panier); // Écriture directe dans le cache
         verify(modelMapper, times(1)).map(panier, PanierDto.class); // Mapping final du panier
         // Le mappage du ContenuPanier vers ContenuPanierDto est appelé une fois pour l'élément restant/mis à jour
         verify(modelMapper, times(1)).map(any(ContenuPanier.class), eq(ContenuPanierDto.class));
@@ -471,9 +534,9 @@ class PanierServiceImplTest {
         AjouterOffrePanierDto ajouterOffrePanierDto = new AjouterOffrePanierDto(offreId, 2); // Demande 2 (stock insuffisant)
 
         when(utilisateurRepository.findById(utilisateurId)).thenReturn(Optional.of(utilisateur));
-        when(panierRepository.findByUtilisateur_idUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE))
+        when(panierRepository.findCompletByUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE))
                 .thenReturn(Optional.of(panier));
-        when(offreRepository.findById(offreId)).thenReturn(Optional.of(offre));
+        when(offreRepository.findByIdWithDiscipline(offreId)).thenReturn(Optional.of(offre));
 
         // Act & Assert
         // On s'attend à une exception car le stock est insuffisant
@@ -484,8 +547,8 @@ class PanierServiceImplTest {
 
         // Verify only initial checks were made
         verify(utilisateurRepository, times(1)).findById(utilisateurId);
-        verify(panierRepository, times(1)).findByUtilisateur_idUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE);
-        verify(offreRepository, times(1)).findById(offreId);
+        verify(panierRepository, times(1)).findCompletByUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE);
+        verify(offreRepository, times(1)).findByIdWithDiscipline(offreId);
         verify(disciplineRepository, never()).findById(any()); // Pas besoin de la discipline
         verify(contenuPanierRepository, never()).save(any());
         verify(panierRepository, never()).save(any());
@@ -510,9 +573,9 @@ class PanierServiceImplTest {
         AjouterOffrePanierDto ajouterOffrePanierDto = new AjouterOffrePanierDto(offreId, 1); // Quantité demandée
 
         when(utilisateurRepository.findById(utilisateurId)).thenReturn(Optional.of(utilisateur));
-        when(panierRepository.findByUtilisateur_idUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE))
+        when(panierRepository.findCompletByUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE))
                 .thenReturn(Optional.of(panier)); // Retourne le panier existant
-        when(offreRepository.findById(offreId)).thenReturn(Optional.of(offre)); // Offre trouvée
+        when(offreRepository.findByIdWithDiscipline(offreId)).thenReturn(Optional.of(offre)); // Offre trouvée
 
         // On s'attend à ce que le service lève une IllegalStateException car la discipline est nulle.
         // Utilisez assertThrows au lieu d'attendre un résultat réussi.
@@ -525,8 +588,8 @@ class PanierServiceImplTest {
         // Vérifications : seuls les appels nécessaires pour la validation initiale sont effectués.
         // Aucun appel pour la sauvegarde ou le mappage final ne devrait avoir lieu en cas d'échec.
         verify(utilisateurRepository, times(1)).findById(utilisateurId);
-        verify(panierRepository, times(1)).findByUtilisateur_idUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE);
-        verify(offreRepository, times(1)).findById(offreId);
+        verify(panierRepository, times(1)).findCompletByUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE);
+        verify(offreRepository, times(1)).findByIdWithDiscipline(offreId);
         verify(disciplineRepository, never()).findById(any());
         verify(contenuPanierRepository, never()).save(any()); // Pas de save en cas d'échec
         verify(panierRepository, never()).save(any()); // Pas de save en cas d'échec
@@ -558,10 +621,9 @@ class PanierServiceImplTest {
 
 
         when(utilisateurRepository.findById(utilisateurId)).thenReturn(Optional.of(utilisateur));
-        when(panierRepository.findByUtilisateur_idUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE))
+        when(panierRepository.findCompletByUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE))
                 .thenReturn(Optional.of(panier));
-        when(offreRepository.findById(offreId)).thenReturn(Optional.of(offre));
-        when(disciplineRepository.findById(disciplineId)).thenReturn(Optional.of(offre.getDiscipline())); // Retourne la discipline liée
+        when(offreRepository.findByIdWithDiscipline(offreId)).thenReturn(Optional.of(offre));
         when(contenuPanierRepository.save(any(ContenuPanier.class))).thenReturn(contenuPanier); // Mock save du contenu
         when(panierRepository.save(any(Panier.class))).thenReturn(panierApresRecalcul); // Mock save du panier après recalcul
         when(modelMapper.map(panierApresRecalcul, PanierDto.class)).thenReturn(panierDto); // Mock map du panier final
@@ -587,9 +649,9 @@ class PanierServiceImplTest {
         assertEquals(BigDecimal.valueOf(30), result.getMontantTotal()); // Vérifie le montant total recalculé dans le DTO
 
         verify(utilisateurRepository, times(1)).findById(utilisateurId);
-        verify(panierRepository, times(1)).findByUtilisateur_idUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE);
-        verify(offreRepository, times(1)).findById(offreId);
-        verify(disciplineRepository, times(1)).findById(disciplineId); // Vérification de la discipline
+        verify(panierRepository, times(1)).findCompletByUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE);
+        verify(offreRepository, times(1)).findByIdWithDiscipline(offreId);
+        verify(disciplineRepository, never()).findById(any()); // Discipline chargée avec l'offre
         verify(contenuPanierRepository, times(1)).save(contenuPanier); // Save du contenu
         verify(panierRepository, times(1)).save(any(Panier.class)); // Save du panier (via recalculerMontantTotal)
         verify(modelMapper, times(1)).map(panierApresRecalcul, PanierDto.class); // Mapping final du panier
@@ -606,12 +668,12 @@ class PanierServiceImplTest {
         Offre offre = Offre.builder().idOffre(offreId).prix(BigDecimal.TEN).capacite(1).discipline(Discipline.builder().idDiscipline(disciplineId).nbPlaceDispo(10).build()).build(); // Prix 10, capacité 1
         ContenuPanier contenuPanier = ContenuPanier.builder().offre(offre).quantiteCommandee(1).build(); // Qte initiale 1
 
-        // Utiliser un HashSet mutable
+        // Utiliser un HashSet mutable, rempli après la liaison au panier (le hashCode dépend de l'identifiant du panier)
         Set<ContenuPanier> contenuPaniersSet = new HashSet<>();
-        contenuPaniersSet.add(contenuPanier);
 
         Panier panier = Panier.builder().idPanier(panierId).utilisateur(utilisateur).statut(StatutPanier.EN_ATTENTE).montantTotal(BigDecimal.TEN).contenuPaniers(contenuPaniersSet).build(); // Total initial 10
         contenuPanier.setPanier(panier); // Lier le contenu au panier
+        contenuPaniersSet.add(contenuPanier);
 
         ModifierContenuPanierDto modifierDto = new ModifierContenuPanierDto(offreId, 0); // Nouvelle quantité 0
 
@@ -620,10 +682,10 @@ class PanierServiceImplTest {
         when(utilisateurRepository.findById(utilisateurId)).thenReturn(Optional.of(utilisateur));
 
         // getPanierUtilisateurEntity est appelée deux fois. Les deux appels devraient trouver le panier existant.
-        when(panierRepository.findByUtilisateur_idUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE))
+        when(panierRepository.findCompletByUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE))
                 .thenReturn(Optional.of(panier), Optional.of(panier)); // Retourne Optional.of(panier) pour le 1er ET le 2ème appel
 
-        when(offreRepository.findById(offreId)).thenReturn(Optional.of(offre)); // Offre trouvée pour la validation initiale
+        when(offreRepository.findByIdWithDiscipline(offreId)).thenReturn(Optional.of(offre)); // Offre trouvée pour la validation initiale
         // Mock la suppression par ID composite
         doNothing().when(contenuPanierRepository).deleteById(any(ContenuPanierId.class));
         when(panierRepository.save(any(Panier.class))).thenReturn(panier); // Mock save du panier après suppression/recalcul
@@ -637,8 +699,8 @@ class PanierServiceImplTest {
         assertEquals(BigDecimal.ZERO, result.getMontantTotal()); // Vérifie le montant total
         assertTrue(result.getContenuPaniers().isEmpty()); // Vérifie que la liste de contenus dans le DTO est vide
 
-        // panierRepository.findByUtilisateur_idUtilisateurAndStatut est appelé deux fois.
-        verify(panierRepository, times(2)).findByUtilisateur_idUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE); // Attendre 2 appels
+        // panierRepository.findCompletByUtilisateurAndStatut est appelé deux fois.
+        verify(panierRepository, times(2)).findCompletByUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE); // Attendre 2 appels
         verify(contenuPanierRepository, times(1)).deleteById(new ContenuPanierId(panierId, offreId));
         verify(contenuPanierRepository, never()).save(any()); // Pas de save si on supprime
         verify(panierRepository, times(1)).save(panier); // Save du panier (via recalculerMontantTotal)
@@ -690,10 +752,9 @@ class PanierServiceImplTest {
         // Capacité de la discipline = 3 places. L'ajout devrait échouer.
 
         when(utilisateurRepository.findById(utilisateurId)).thenReturn(Optional.of(utilisateur));
-        when(panierRepository.findByUtilisateur_idUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE))
+        when(panierRepository.findCompletByUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE))
                 .thenReturn(Optional.of(panier));
-        when(offreRepository.findById(offreA.getIdOffre())).thenReturn(Optional.of(offreA)); // Offre A trouvée
-        when(disciplineRepository.findById(disciplineId)).thenReturn(Optional.of(discipline)); // Discipline trouvée
+        when(offreRepository.findByIdWithDiscipline(offreA.getIdOffre())).thenReturn(Optional.of(offreA)); // Offre A trouvée
 
         // Act & Assert
         // On s'attend à ce que la modification échoue car 4 places (nouvelle qté) + 1 place (autre item) = 5 places > 3 places dispo.
@@ -707,9 +768,9 @@ class PanierServiceImplTest {
 
         // Vérifications : les appels nécessaires pour vérifier les places sont effectués
         verify(utilisateurRepository, times(1)).findById(utilisateurId);
-        verify(panierRepository, times(1)).findByUtilisateur_idUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE);
-        verify(offreRepository, times(1)).findById(offreA.getIdOffre());
-        verify(disciplineRepository, times(1)).findById(disciplineId);
+        verify(panierRepository, times(1)).findCompletByUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE);
+        verify(offreRepository, times(1)).findByIdWithDiscipline(offreA.getIdOffre());
+        verify(disciplineRepository, never()).findById(any()); // Discipline chargée avec l'offre
         // Ces mocks ne devraient jamais être appelés dans ce scénario d'échec
         verify(contenuPanierRepository, never()).save(any()); // Pas de save si échec
         verify(panierRepository, never()).save(any()); // Pas de save si échec
@@ -734,9 +795,9 @@ class PanierServiceImplTest {
 
 
         when(utilisateurRepository.findById(utilisateurId)).thenReturn(Optional.of(utilisateur));
-        when(panierRepository.findByUtilisateur_idUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE))
+        when(panierRepository.findCompletByUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE))
                 .thenReturn(Optional.of(panier));
-        when(offreRepository.findById(offreId)).thenReturn(Optional.of(offre));
+        when(offreRepository.findByIdWithDiscipline(offreId)).thenReturn(Optional.of(offre));
 
         // Act & Assert
         ResourceNotFoundException exception = assertThrows(ResourceNotFoundException.class,
@@ -748,8 +809,8 @@ class PanierServiceImplTest {
 
         // Vérifications : les appels nécessaires pour la validation initiale sont effectués
         verify(utilisateurRepository, times(1)).findById(utilisateurId);
-        verify(panierRepository, times(1)).findByUtilisateur_idUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE);
-        verify(offreRepository, times(1)).findById(offreId);
+        verify(panierRepository, times(1)).findCompletByUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE);
+        verify(offreRepository, times(1)).findByIdWithDiscipline(offreId);
         verify(disciplineRepository, never()).findById(any()); // Pas besoin de la discipline si l'offre n'est pas dans le panier
         verify(contenuPanierRepository, never()).findById(any());
         verify(contenuPanierRepository, never()).save(any());
@@ -771,14 +832,14 @@ class PanierServiceImplTest {
         ContenuPanier contenuASupprimer = ContenuPanier.builder().offre(offreASupprimer).quantiteCommandee(2).build(); // Qte 2, Total 20
         ContenuPanier contenuAutre = ContenuPanier.builder().offre(offreAutre).quantiteCommandee(1).build(); // Qte 1, Total 20
 
-        // Utiliser un HashSet mutable
+        // Utiliser un HashSet mutable, rempli après la liaison au panier (le hashCode dépend de l'identifiant du panier)
         Set<ContenuPanier> contenuPaniersSet = new HashSet<>();
-        contenuPaniersSet.add(contenuASupprimer);
-        contenuPaniersSet.add(contenuAutre);
 
         Panier panier = Panier.builder().idPanier(panierId).utilisateur(utilisateur).statut(StatutPanier.EN_ATTENTE).montantTotal(BigDecimal.valueOf(40)).contenuPaniers(contenuPaniersSet).build(); // Total initial 40
         contenuASupprimer.setPanier(panier);
         contenuAutre.setPanier(panier);
+        contenuPaniersSet.add(contenuASupprimer);
+        contenuPaniersSet.add(contenuAutre);
 
         // Simuler le PanierDto retourné AVEC l'élément supprimé absent et le bon montant total
         // Le mock de ModelMapper.map(panier, PanierDto.class) retournera CE DTO.
@@ -812,7 +873,7 @@ class PanierServiceImplTest {
                 });
 
         when(utilisateurRepository.findById(utilisateurId)).thenReturn(Optional.of(utilisateur));
-        when(panierRepository.findByUtilisateur_idUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE))
+        when(panierRepository.findCompletByUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE))
                 .thenReturn(Optional.of(panier));
 
         // Mock la suppression par ID composite
@@ -835,7 +896,7 @@ class PanierServiceImplTest {
         // Vérifiez l'interaction avec le repository : la suppression doit avoir été appelée.
         verify(contenuPanierRepository, times(1)).deleteById(new ContenuPanierId(panierId, offreId));
         verify(utilisateurRepository, times(1)).findById(utilisateurId);
-        verify(panierRepository, times(1)).findByUtilisateur_idUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE);
+        verify(panierRepository, times(1)).findCompletByUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE);
         verify(contenuPanierRepository, never()).save(any()); // Pas de save si on supprime
         verify(panierRepository, times(1)).save(panier); // Save du panier (via recalculerMontantTotal)
         verify(modelMapper, times(1)).map(panier, PanierDto.class); // Mapping final du panier (avec le DTO mocké)
@@ -893,7 +954,7 @@ class PanierServiceImplTest {
                 });
 
         when(utilisateurRepository.findById(utilisateurId)).thenReturn(Optional.of(utilisateur));
-        when(panierRepository.findByUtilisateur_idUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE))
+        when(panierRepository.findCompletByUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE))
                 .thenReturn(Optional.of(panier));
 
         when(modelMapper.map(panier, PanierDto.class)).thenReturn(panierDto);
@@ -912,7 +973,7 @@ class PanierServiceImplTest {
 
         // Vérifications : aucune suppression ni sauvegarde ne devrait avoir lieu
         verify(utilisateurRepository, times(1)).findById(utilisateurId);
-        verify(panierRepository, times(1)).findByUtilisateur_idUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE);
+        verify(panierRepository, times(1)).findCompletByUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE);
         verify(offreRepository, never()).findById(any()); // Offre non recherchée
         verify(contenuPanierRepository, never()).deleteById(any()); // Vérifie qu'aucune suppression n'a lieu
         verify(contenuPanierRepository, never()).delete(any()); // Au cas où delete(entity) serait appelé
@@ -923,7 +984,7 @@ class PanierServiceImplTest {
 
     /**
      * Teste la suppression d'une offre de tous les paniers.
-     * Vérifie que la méthode de repository appropriée est appelée.
+     * Vérifie que les montants des paniers sont corrigés avant la suppression des lignes.
      */
     @Test
     void supprimerOffreDeTousLesPaniers_shouldCallRepositoryMethod() {
@@ -937,8 +998,11 @@ class PanierServiceImplTest {
         panierService.supprimerOffreDeTousLesPaniers(offre);
 
         // Assert
-        // Vérifie que la méthode de suppression par offre a été appelée
-        verify(contenuPanierRepository, times(1)).deleteByOffre(offre);
+        // Les montants sont corrigés tant que les lignes existent, puis les lignes sont supprimées
+        InOrder ordre = inOrder(panierRepository, contenuPanierRepository);
+        ordre.verify(panierRepository).retirerOffreDesMontants(offreId);
+        ordre.verify(contenuPanierRepository).deleteByOffre(offre);
+        verify(cachePaniersService, times(1)).vider(); // Les paniers touchés ne sont pas connus
     }
 
     /**
@@ -969,9 +1033,8 @@ class PanierServiceImplTest {
         cp2.setPanier(panier);
 
         when(utilisateurRepository.findById(utilisateurId)).thenReturn(Optional.of(utilisateur));
-        when(panierRepository.findByUtilisateur_idUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE))
+        when(panierRepository.findCompletByUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE))
                 .thenReturn(Optional.of(panier));
-        when(disciplineRepository.findById(disciplineId)).thenReturn(Optional.of(discipline));
 
         // Mock la décrémentation des places (retourne 1 ligne affectée pour succès)
         when(disciplineRepository.decrementerPlaces(disciplineId, 4)).thenReturn(1); // Offre 1 (Qte 2 * Cap 2)
@@ -1023,6 +1086,8 @@ class PanierServiceImplTest {
 
         // Vérifie que le panier final a été sauvegardé avec le nouveau statut
         verify(panierRepository, times(1)).save(panier); // Le panier en mémoire a été mis à jour avant save
+        verify(cachePaniersService, times(1)).ecrire(panier); // L'instantané PAYE remplace le panier en cache
+        verify(busChangements).publier(TypeChangement.PANIER, utilisateurId); // Les autres instances oublient le panier
 
         verify(modelMapper, times(1)).map(panier, PanierDto.class); // Mapping final du panier
         verify(modelMapper, times(2)).map(any(ContenuPanier.class), eq(ContenuPanierDto.class)); // Mapping des contenus pour le DTO final
@@ -1041,7 +1106,7 @@ class PanierServiceImplTest {
 
 
         when(utilisateurRepository.findById(utilisateurId)).thenReturn(Optional.of(utilisateur));
-        when(panierRepository.findByUtilisateur_idUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE))
+        when(panierRepository.findCompletByUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE))
                 .thenReturn(Optional.of(panier)); // Le service trouve ce panier PAYE
 
         // Act & Assert
@@ -1073,7 +1138,7 @@ class PanierServiceImplTest {
         Panier panier = Panier.builder().idPanier(panierId).utilisateur(utilisateur).statut(StatutPanier.EN_ATTENTE).montantTotal(BigDecimal.ZERO).contenuPaniers(contenuSet).build();
 
         when(utilisateurRepository.findById(utilisateurId)).thenReturn(Optional.of(utilisateur));
-        when(panierRepository.findByUtilisateur_idUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE))
+        when(panierRepository.findCompletByUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE))
                 .thenReturn(Optional.of(panier));
 
         // Act & Assert
@@ -1115,9 +1180,8 @@ class PanierServiceImplTest {
         cp.setPanier(panier);
 
         when(utilisateurRepository.findById(utilisateurId)).thenReturn(Optional.of(utilisateur));
-        when(panierRepository.findByUtilisateur_idUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE))
+        when(panierRepository.findCompletByUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE))
                 .thenReturn(Optional.of(panier));
-        when(disciplineRepository.findById(disciplineId)).thenReturn(Optional.of(discipline));
 
         // Mock la décrémentation des places pour simuler l'échec (retourne 0 lignes affectées)
         // On essaie de décrémenter 2 places (Qte 1 * Cap 2), alors que nbPlaceDispo est 1.
@@ -1164,9 +1228,8 @@ class PanierServiceImplTest {
         cp.setPanier(panier);
 
         when(utilisateurRepository.findById(utilisateurId)).thenReturn(Optional.of(utilisateur));
-        when(panierRepository.findByUtilisateur_idUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE))
+        when(panierRepository.findCompletByUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE))
                 .thenReturn(Optional.of(panier));
-        when(disciplineRepository.findById(disciplineId)).thenReturn(Optional.of(discipline));
 
         // Mock la décrémentation des places pour simuler le succès (suffisamment de places dans la discipline)
         // On essaie de décrémenter 4 places (Qte 2 * Cap 2), nbPlaceDispo est 10. Succès.
@@ -1185,4 +1248,293 @@ class PanierServiceImplTest {
         verify(panierRepository, never()).save(any(Panier.class)); // Pas de save panier final si échec
         verify(modelMapper, never()).map(any(), any()); // Mapping ne devrait pas être appelé
     }
-}
\ No newline at end of file
+
+    /**
+     * Teste la finalisation d'un achat sur une offre disputée.
+     * Vérifie que l'offre est relue sous verrou et que le stock est décrémenté sur l'état relu.
+     */
+    @Test
+    void finaliserAchat_shouldLockOffre_whenOffreIsDisputed() {
+        // Arrange
+        Utilisateur utilisateur = Utilisateur.builder().idUtilisateur(utilisateurId).build();
+        Discipline discipline = Discipline.builder().idDiscipline(disciplineId).nbPlaceDispo(10).build();
+        Offre offreChargee = Offre.builder().idOffre(offreId).capacite(1).quantite(5).prix(BigDecimal.TEN).discipline(discipline).statutOffre(StatutOffre.DISPONIBLE).build();
+        Offre offreVerrouillee = Offre.builder().idOffre(offreId).capacite(1).quantite(3).prix(BigDecimal.TEN).discipline(discipline).statutOffre(StatutOffre.DISPONIBLE).build(); // Stock déjà entamé par un autre achat
+        ContenuPanier cp = ContenuPanier.builder().offre(offreChargee).quantiteCommandee(2).build();
+        Set<ContenuPanier> contenuSet = new HashSet<>();
+        Panier panier = Panier.builder().idPanier(panierId).utilisateur(utilisateur).statut(StatutPanier.EN_ATTENTE).montantTotal(BigDecimal.valueOf(20)).contenuPaniers(contenuSet).build();
+        cp.setPanier(panier);
+        contenuSet.add(cp);
+
+        when(utilisateurRepository.findById(utilisateurId)).thenReturn(Optional.of(utilisateur));
+        when(panierRepository.findCompletByUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE)).thenReturn(Optional.of(panier));
+        when(disciplineRepository.decrementerPlaces(disciplineId, 2)).thenReturn(1);
+        when(contentionService.estDisputee(any(), any())).thenAnswer(i -> i.getArgument(0) == Offre.class); // Seule l'offre est disputée
+        when(offreRepository.findByIdPourMiseAJour(offreId)).thenReturn(Optional.of(offreVerrouillee));
+        when(panierRepository.save(any(Panier.class))).thenAnswer(i -> i.getArguments()[0]);
+        when(modelMapper.map(any(Panier.class), eq(PanierDto.class))).thenReturn(PanierDto.builder().idPanier(panierId).build());
+
+        // Act
+        panierService.finaliserAchat(utilisateurIdStr);
+
+        // Assert
+        assertEquals(1, offreVerrouillee.getQuantite()); // 3 - 2, sur l'état relu sous verrou
+        assertEquals(5, offreChargee.getQuantite());
+        verify(offreRepository).save(same(offreVerrouillee));
+        verify(offreRepository, never()).save(same(offreChargee)); // Égalité par identifiant : on compare les instances
+    }
+
+    /**
+     * Teste la finalisation d'un achat sur une offre chaude.
+     * Vérifie que stock et places sont réservés par la file de l'offre, sans écriture de l'offre ni de la discipline.
+     */
+    @Test
+    void finaliserAchat_shouldReserveThroughQueue_whenOffreIsHot() {
+        // Arrange
+        Panier panier = panierAvecUneOffre(5);
+        when(offresChaudesService.enregistrerTentative(offreId)).thenReturn(true);
+        when(offresChaudesService.reserver(offreId, disciplineId, 2, 4)).thenReturn(OffresChaudesService.Reservation.ACCEPTEE);
+        when(panierRepository.save(any(Panier.class))).thenAnswer(i -> i.getArguments()[0]);
+        when(modelMapper.map(any(Panier.class), eq(PanierDto.class))).thenReturn(PanierDto.builder().idPanier(panierId).statut(StatutPanier.PAYE).build());
+
+        // Act
+        PanierDto result = panierService.finaliserAchat(utilisateurIdStr);
+
+        // Assert
+        assertEquals(StatutPanier.PAYE, result.getStatut());
+        assertEquals(StatutPanier.PAYE, panier.getStatut());
+        verify(offresChaudesService).reserver(offreId, disciplineId, 2, 4); // Qte 2 * Cap 2
+        verify(disciplineRepository, never()).decrementerPlaces(any(), anyInt());
+        verify(offreRepository, never()).save(any(Offre.class));
+    }
+
+    /**
+     * Teste la finalisation d'un panier mêlant une offre ordinaire et une offre chaude de la même discipline.
+     * Vérifie que l'offre chaude est réservée avant que la transaction ne verrouille la discipline en la décrémentant :
+     * l'écrivain de la file, qui verrouille aussi la discipline, n'attend jamais l'acheteur qui l'attend.
+     */
+    @Test
+    void finaliserAchat_shouldReserveHotOffreBeforeLockingDiscipline_whenCartMixesHotAndOrdinaryOffres() {
+        // Arrange
+        Long offreChaudeId = 99L;
+        Utilisateur utilisateur = Utilisateur.builder().idUtilisateur(utilisateurId).build();
+        Discipline discipline = Discipline.builder().idDiscipline(disciplineId).nbPlaceDispo(10).nomDiscipline("Natation").build();
+        Offre ordinaire = Offre.builder().idOffre(offreId).capacite(1).quantite(5).prix(BigDecimal.TEN).discipline(discipline).statutOffre(StatutOffre.DISPONIBLE).build();
+        Offre chaude = Offre.builder().idOffre(offreChaudeId).capacite(2).quantite(5).prix(BigDecimal.TEN).discipline(discipline).statutOffre(StatutOffre.DISPONIBLE).build();
+        Set<ContenuPanier> contenuSet = new LinkedHashSet<>(); // La ligne ordinaire est parcourue en premier
+        Panier panier = Panier.builder().idPanier(panierId).utilisateur(utilisateur).statut(StatutPanier.EN_ATTENTE).montantTotal(BigDecimal.valueOf(30)).contenuPaniers(contenuSet).build();
+        ContenuPanier ligneOrdinaire = ContenuPanier.builder().panier(panier).offre(ordinaire).quantiteCommandee(1).build();
+        ContenuPanier ligneChaude = ContenuPanier.builder().panier(panier).offre(chaude).quantiteCommandee(1).build();
+        contenuSet.add(ligneOrdinaire);
+        contenuSet.add(ligneChaude);
+
+        when(utilisateurRepository.findById(utilisateurId)).thenReturn(Optional.of(utilisateur));
+        when(panierRepository.findCompletByUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE)).thenReturn(Optional.of(panier));
+        when(offresChaudesService.enregistrerTentative(anyLong())).thenAnswer(i -> offreChaudeId.equals(i.getArgument(0)));
+        when(offresChaudesService.reserver(offreChaudeId, disciplineId, 1, 2)).thenReturn(OffresChaudesService.Reservation.ACCEPTEE);
+        when(disciplineRepository.decrementerPlaces(disciplineId, 1)).thenReturn(1);
+        when(panierRepository.save(any(Panier.class))).thenAnswer(i -> i.getArguments()[0]);
+        when(modelMapper.map(any(Panier.class), eq(PanierDto.class))).thenReturn(PanierDto.builder().idPanier(panierId).build());
+
+        // Act
+        panierService.finaliserAchat(utilisateurIdStr);
+
+        // Assert
+        InOrder ordre = inOrder(offresChaudesService, disciplineRepository);
+        ordre.verify(offresChaudesService).reserver(offreChaudeId, disciplineId, 1, 2);
+        ordre.verify(disciplineRepository).decrementerPlaces(disciplineId, 1);
+        assertEquals(4, ordinaire.getQuantite());
+        assertEquals(StatutPanier.PAYE, panier.getStatut());
+    }
+
+    /**
+     * Teste la finalisation d'un achat sur une offre chaude épuisée par les achats concurrents.
+     * Vérifie que le refus de la file devient l'exception de stock insuffisant habituelle.
+     */
+    @Test
+    void finaliserAchat_shouldThrowIllegalStateException_whenHotOffreSoldOut() {
+        // Arrange
+        panierAvecUneOffre(5);
+        when(offresChaudesService.enregistrerTentative(offreId)).thenReturn(true);
+        when(offresChaudesService.reserver(offreId, disciplineId, 2, 4)).thenReturn(OffresChaudesService.Reservation.STOCK_INSUFFISANT);
+
+        // Act & Assert
+        IllegalStateException exception = assertThrows(IllegalStateException.class,
+                () -> panierService.finaliserAchat(utilisateurIdStr));
+        assertEquals(String.format(STOCK_INSUFFISANT_FINALISATION, offreId), exception.getMessage());
+        verify(venteMetrics).rejetSurvente(VenteMetrics.MOTIF_STOCK_OFFRE, "finalisation");
+        verify(panierRepository, never()).save(any(Panier.class));
+    }
+
+    /**
+     * Teste la finalisation d'un achat qui prend les derniers exemplaires d'une offre.
+     * Vérifie que la rupture est signalée au registre des offres épuisées, après le commit.
+     */
+    @Test
+    void finaliserAchat_shouldSignalSoldOutAfterCommit_whenLastUnitsAreBought() {
+        // Arrange
+        panierAvecUneOffre(2);
+        when(disciplineRepository.decrementerPlaces(disciplineId, 4)).thenReturn(1);
+        when(panierRepository.save(any(Panier.class))).thenAnswer(i -> i.getArguments()[0]);
+        when(modelMapper.map(any(Panier.class), eq(PanierDto.class))).thenReturn(PanierDto.builder().idPanier(panierId).build());
+
+        // Act
+        panierService.finaliserAchat(utilisateurIdStr);
+
+        // Assert
+        verify(offresEpuiseesService).signalerApresCommit(offreId, true);
+        verify(offresEpuiseesService, never()).signaler(any(), anyBoolean());
+        verify(busChangements).publier(TypeChangement.OFFRE, offreId);
+    }
+
+    /**
+     * Teste la finalisation d'un panier détaché par la décrémentation des places (contexte vidé).
+     * Vérifie que le cache reçoit la copie gérée retournée par save, seule à porter la version du paiement :
+     * une lecture concurrente commencée avant le paiement ne peut plus la remplacer.
+     */
+    @Test
+    void finaliserAchat_shouldCacheManagedPanier_whenDecrementDetachesIt() {
+        // Arrange
+        Panier detache = panierAvecUneOffre(5);
+        detache.setVersion(3L);
+        when(disciplineRepository.decrementerPlaces(disciplineId, 4)).thenReturn(1);
+        Panier gere = Panier.builder().idPanier(panierId).version(4L).utilisateur(detache.getUtilisateur())
+                .statut(StatutPanier.PAYE).montantTotal(BigDecimal.valueOf(20)).contenuPaniers(detache.getContenuPaniers()).build();
+        when(panierRepository.save(same(detache))).thenReturn(gere);
+        when(modelMapper.map(any(Panier.class), eq(PanierDto.class))).thenReturn(PanierDto.builder().idPanier(panierId).statut(StatutPanier.PAYE).build());
+
+        // Act
+        panierService.finaliserAchat(utilisateurIdStr);
+
+        // Assert
+        verify(cachePaniersService).ecrire(same(gere));
+        verify(cachePaniersService, never()).ecrire(same(detache));
+        verify(modelMapper).map(same(gere), eq(PanierDto.class));
+    }
+
+    /**
+     * Teste l'ajout au panier d'une offre dont le stock est à zéro.
+     * Vérifie que la rupture est signalée au registre : les ajouts suivants sont refusés avant toute transaction.
+     */
+    @Test
+    void ajouterOffreAuPanier_shouldSignalSoldOut_whenStockIsEmpty() {
+        // Arrange
+        Utilisateur utilisateur = Utilisateur.builder().idUtilisateur(utilisateurId).build();
+        Panier panier = Panier.builder().idPanier(panierId).utilisateur(utilisateur).statut(StatutPanier.EN_ATTENTE).montantTotal(BigDecimal.ZERO).contenuPaniers(new HashSet<>()).build();
+        Offre offre = Offre.builder().idOffre(offreId).statutOffre(StatutOffre.DISPONIBLE).quantite(0).build();
+        when(utilisateurRepository.findById(utilisateurId)).thenReturn(Optional.of(utilisateur));
+        when(panierRepository.findCompletByUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE)).thenReturn(Optional.of(panier));
+        when(offreRepository.findByIdWithDiscipline(offreId)).thenReturn(Optional.of(offre));
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class,
+                () -> panierService.ajouterOffreAuPanier(utilisateurIdStr, new AjouterOffrePanierDto(offreId, 1)));
+        verify(offresEpuiseesService).signaler(offreId, true);
+    }
+
+    /** Panier EN_ATTENTE contenant 2 exemplaires d'une offre de capacité 2, chargé pour l'utilisateur de test. */
+    private Panier panierAvecUneOffre(int stock) {
+        Utilisateur utilisateur = Utilisateur.builder().idUtilisateur(utilisateurId).build();
+        Discipline discipline = Discipline.builder().idDiscipline(disciplineId).nbPlaceDispo(10).nomDiscipline("Natation").build();
+        Offre offre = Offre.builder().idOffre(offreId).capacite(2).quantite(stock).prix(BigDecimal.TEN).discipline(discipline).statutOffre(StatutOffre.DISPONIBLE).build();
+        ContenuPanier cp = ContenuPanier.builder().offre(offre).quantiteCommandee(2).build();
+        Set<ContenuPanier> contenuSet = new HashSet<>();
+        Panier panier = Panier.builder().idPanier(panierId).utilisateur(utilisateur).statut(StatutPanier.EN_ATTENTE).montantTotal(BigDecimal.valueOf(20)).contenuPaniers(contenuSet).build();
+        cp.setPanier(panier);
+        contenuSet.add(cp);
+
+        when(utilisateurRepository.findById(utilisateurId)).thenReturn(Optional.of(utilisateur));
+        when(panierRepository.findCompletByUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE)).thenReturn(Optional.of(panier));
+        return panier;
+    }
+
+    /**
+     * Teste la modification d'un panier disputé dont la version a changé depuis son chargement.
+     * Vérifie que le conflit est levé avant toute écriture, pour que le réessai reparte d'un état frais.
+     */
+    @Test
+    void viderPanier_shouldThrowOptimisticLockingFailure_whenDisputedPanierChangedSinceLoad() {
+        // Arrange
+        Utilisateur utilisateur = Utilisateur.builder().idUtilisateur(utilisateurId).build();
+        Panier panier = Panier.builder().idPanier(panierId).utilisateur(utilisateur).statut(StatutPanier.EN_ATTENTE).montantTotal(BigDecimal.ZERO).contenuPaniers(new HashSet<>()).version(4L).build();
+
+        when(utilisateurRepository.findById(utilisateurId)).thenReturn(Optional.of(utilisateur));
+        when(panierRepository.findCompletByUtilisateurAndStatut(utilisateurId, StatutPanier.EN_ATTENTE)).thenReturn(Optional.of(panier));
+        when(contentionService.estDisputee(Panier.class, panierId)).thenReturn(true);
+        when(panierRepository.verrouillerEtLireVersion(panierId)).thenReturn(5L);
+
+        // Act & Assert
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> panierService.viderPanier(utilisateurIdStr));
+        verify(contenuPanierRepository, never()).deleteByPanier(any());
+        verify(cachePaniersService, never()).ecrire(any());
+    }
+
+    /**
+     * Teste le report d'un changement de prix sur les totaux des paniers en cours.
+     */
+    @Test
+    void reporterChangementPrix_shouldApplyPriceDifferenceToOpenCarts() {
+        // Arrange
+        Offre offre = Offre.builder().idOffre(offreId).prix(BigDecimal.valueOf(65)).build();
+
+        // Act
+        panierService.reporterChangementPrix(offre, BigDecimal.valueOf(50));
+
+        // Assert
+        verify(panierRepository).reporterChangementPrix(offreId, BigDecimal.valueOf(15));
+        verify(cachePaniersService).vider();
+    }
+
+    /**
+     * Teste qu'un prix inchangé (à l'échelle près) ne touche aucun panier.
+     */
+    @Test
+    void reporterChangementPrix_shouldDoNothing_whenPriceUnchanged() {
+        // Arrange
+        Offre offre = Offre.builder().idOffre(offreId).prix(new BigDecimal("50.00")).build();
+
+        // Act
+        panierService.reporterChangementPrix(offre, BigDecimal.valueOf(50));
+
+        // Assert
+        verify(panierRepository, never()).reporterChangementPrix(anyLong(), any());
+        verifyNoInteractions(cachePaniersService);
+    }
+
+    /**
+     * Teste la purge des paniers abandonnés : suppression par lots, caches vidés ici et sur les autres instances.
+     */
+    @Test
+    void purgerPaniersAbandonnes_shouldPurgeInactiveCartsByBatchesAndClearCaches() {
+        // Arrange
+        ReflectionTestUtils.setField(panierService, "inactiviteJoursPaniersAbandonnes", 30);
+        when(purgeParLots.executer(eq("paniers-abandonnes"), anyString(), any(LocalDateTime.class))).thenReturn(12L);
+
+        // Act
+        long supprimes = panierService.purgerPaniersAbandonnes();
+
+        // Assert
+        assertEquals(12L, supprimes);
+        ArgumentCaptor<LocalDateTime> limite = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(purgeParLots).executer(eq("paniers-abandonnes"), contains("FOR UPDATE SKIP LOCKED"), limite.capture());
+        assertTrue(limite.getValue().isBefore(LocalDateTime.now().minusDays(29)));
+        verify(cachePaniersService).vider();
+        verify(busChangements).publier(TypeChangement.PANIER, null);
+    }
+
+    /**
+     * Teste qu'une purge sans panier supprimé ne touche pas aux caches.
+     */
+    @Test
+    void purgerPaniersAbandonnes_shouldKeepCaches_whenNothingPurged() {
+        // Arrange
+        when(purgeParLots.executer(anyString(), anyString(), any(LocalDateTime.class))).thenReturn(0L);
+
+        // Act
+        long supprimes = panierService.purgerPaniersAbandonnes();
+
+        // Assert
+        assertEquals(0L, supprimes);
+        verifyNoInteractions(cachePaniersService, busChangements);
+    }
+}
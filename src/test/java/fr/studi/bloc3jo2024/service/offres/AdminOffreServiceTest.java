@@ -1,5 +1,7 @@
 package fr.studi.bloc3jo2024.service.offres;
 
+import fr.studi.bloc3jo2024.changements.BusChangements;
+import fr.studi.bloc3jo2024.changements.TypeChangement;
 import fr.studi.bloc3jo2024.dto.offres.CreerOffreDto;
 import fr.studi.bloc3jo2024.dto.offres.MettreAJourOffreDto;
 import fr.studi.bloc3jo2024.dto.offres.OffreAdminDto;
@@ -10,6 +12,10 @@ import fr.studi.bloc3jo2024.entity.enums.TypeOffre;
 import fr.studi.bloc3jo2024.exception.ResourceNotFoundException;
 import fr.studi.bloc3jo2024.repository.DisciplineRepository;
 import fr.studi.bloc3jo2024.repository.OffreRepository;
+import fr.studi.bloc3jo2024.service.CachePaniersService;
+import fr.studi.bloc3jo2024.service.CompteursVentesService;
+import fr.studi.bloc3jo2024.service.ContentionService;
+import fr.studi.bloc3jo2024.service.OffresEpuiseesService;
 import fr.studi.bloc3jo2024.service.PanierService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -29,6 +35,7 @@ import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 
@@ -56,6 +63,24 @@ class AdminOffreServiceTest {
     @Mock
     private PanierService panierService;
 
+    @Mock
+    private CompteursVentesService compteursVentesService;
+
+    @Mock
+    private CachePaniersService cachePaniersService;
+
+    @Mock
+    private ContentionService contentionService;
+
+    @Mock
+    private OffresEpuiseesService offresEpuiseesService;
+
+    @Mock
+    private BusChangements busChangements;
+
+    @Mock
+    private ExpirationOffresService expirationOffresService;
+
     private Discipline disciplineExistante;
     private Offre offreExistante;
     private Offre offreAutre;
@@ -155,6 +180,7 @@ class AdminOffreServiceTest {
         // Vérifier les interactions
         verify(disciplineRepository).findById(creerOffreDto.getIdDiscipline());
         verify(offreRepository).save(any(Offre.class));
+        verify(expirationOffresService).rechargerApresCommit(); // Échéance de la nouvelle offre planifiée
 
         // Vérifier les appels au ModelMapper DANS LE SERVICE
         // 1. creerOffreDto -> nouvelle instance de Offre
@@ -226,7 +252,27 @@ class AdminOffreServiceTest {
 
         verify(modelMapper).map(eq(mettreAJourOffreDto), eq(offreExistante)); // DTO -> Entité
         verify(offreRepository).save(eq(offreExistante));
+        verify(cachePaniersService).vider();
+        verify(panierService).reporterChangementPrix(offreExistante, new BigDecimal("50.00")); // Ancien prix
         verify(modelMapper).map(eq(offreExistante), eq(OffreAdminDto.class)); // Entité mise à jour -> DTO
+        verify(offresEpuiseesService).signalerApresCommit(offreIdAMettreAJour, true); // La discipline de test n'a aucune place
+    }
+
+    @Test
+    void mettreAJourOffre_OffreDisputee_LitLOffreSousVerrou() {
+        // Arrange
+        Long idOffre = offreExistante.getIdOffre();
+        when(contentionService.estDisputee(Offre.class, idOffre)).thenReturn(true);
+        when(offreRepository.findByIdPourMiseAJour(idOffre)).thenReturn(Optional.of(offreExistante));
+        when(disciplineRepository.findById(mettreAJourOffreDto.getIdDiscipline())).thenReturn(Optional.of(disciplineExistante));
+        when(offreRepository.save(any(Offre.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        adminOffreService.mettreAJourOffre(idOffre, mettreAJourOffreDto);
+
+        // Assert
+        verify(offreRepository, never()).findById(any());
+        verify(offreRepository).save(offreExistante);
     }
 
     // ... (autres tests, en s'assurant que la pagination est gérée pour obtenirToutesLesOffres)
@@ -251,7 +297,27 @@ class AdminOffreServiceTest {
     }
 
 
-    // ... (les tests pour getNombreDeVentesParOffre, supprimerOffre et les exceptions)
+    @Test
+    void getNombreDeVentesParOffre_LitLesCompteursSansRequete() {
+        when(compteursVentesService.getBilletsParOffre()).thenReturn(Map.of(1L, 12L, 2L, 0L));
+
+        Map<Long, Long> ventes = adminOffreService.getNombreDeVentesParOffre();
+
+        assertEquals(Map.of(1L, 12L, 2L, 0L), ventes);
+        verifyNoInteractions(offreRepository);
+    }
+
+    @Test
+    void getVentesParTypeOffre_LitLesCompteursSansRequete() {
+        when(compteursVentesService.getBilletsParType()).thenReturn(Map.of(TypeOffre.SOLO.name(), 5L));
+
+        Map<String, Long> ventes = adminOffreService.getVentesParTypeOffre();
+
+        assertEquals(Map.of("SOLO", 5L), ventes);
+        verifyNoInteractions(offreRepository);
+    }
+
+    // ... (les tests pour supprimerOffre et les exceptions)
     @Test
     void supprimerOffre_ExistingId_CallsDeleteAndNotifyPanierService() {
         Long offreIdASupprimer = offreExistante.getIdOffre();
@@ -263,6 +329,8 @@ class AdminOffreServiceTest {
         verify(offreRepository).findById(offreIdASupprimer);
         verify(panierService).supprimerOffreDeTousLesPaniers(eq(offreExistante));
         verify(offreRepository).delete(eq(offreExistante));
+        verify(offresEpuiseesService).signalerApresCommit(offreIdASupprimer, false); // Retirée du registre des offres épuisées
+        verify(busChangements).publier(TypeChangement.OFFRE, offreIdASupprimer); // Annoncée aux autres instances
     }
 
     @Test
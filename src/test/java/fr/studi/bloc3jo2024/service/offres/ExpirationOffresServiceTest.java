@@ -0,0 +1,186 @@
+package fr.studi.bloc3jo2024.service.offres;
+
+import fr.studi.bloc3jo2024.changements.Changement;
+import fr.studi.bloc3jo2024.changements.TypeChangement;
+import fr.studi.bloc3jo2024.entity.enums.StatutOffre;
+import fr.studi.bloc3jo2024.repository.OffreRepository;
+import fr.studi.bloc3jo2024.repository.OffreRepository.EcheanceOffre;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ExpirationOffresServiceTest {
+
+    private static final long HORIZON_MS = 60_000;
+
+    @Mock
+    private OffreRepository offreRepository;
+
+    private final AtomicLong horloge = new AtomicLong(1_700_000_000_000L);
+    private ExpirationOffresService service;
+
+    private record Echeance(Long idOffre, LocalDateTime echeance) implements EcheanceOffre {
+
+        @Override
+        public Long getIdOffre() {
+            return idOffre;
+        }
+
+        @Override
+        public LocalDateTime getEcheance() {
+            return echeance;
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        // Horizon d'une minute, lots de 2, 100 échéances au plus, 5 s avant nouvel essai, sans minuterie
+        service = new ExpirationOffresService(offreRepository, TransactionOperations.withoutTransaction(), true,
+                HORIZON_MS, 2, 100, 5_000, horloge::get, null);
+    }
+
+    private Echeance echeance(long idOffre, long dansMs) {
+        return new Echeance(idOffre, LocalDateTime.ofInstant(Instant.ofEpochMilli(horloge.get() + dansMs), ZoneId.systemDefault()));
+    }
+
+    private void echeancesEnBase(List<EcheanceOffre> parOffre, List<EcheanceOffre> parDiscipline) {
+        when(offreRepository.findEcheancesParDateExpiration(eq(StatutOffre.DISPONIBLE), any(), any())).thenReturn(parOffre);
+        when(offreRepository.findEcheancesParDateDiscipline(eq(StatutOffre.DISPONIBLE), any(), any())).thenReturn(parDiscipline);
+    }
+
+    @Test
+    void recharger_offreEcheanceParSaDateEtParSaDiscipline_retientLaPlusProche() {
+        // Arrange
+        echeancesEnBase(List.of(echeance(1L, 10_000)), List.of(echeance(1L, 5_000), echeance(2L, 20_000)));
+
+        // Act
+        service.recharger();
+
+        // Assert
+        assertEquals(2, service.enAttente());
+        assertEquals(horloge.get() + 5_000, service.prochaineEcheance());
+    }
+
+    @Test
+    void expirerEcheances_nExpireQueLesEcheancesAtteintes_parLots() {
+        // Arrange : trois échéances passées (rattrapage au démarrage) et une à venir
+        echeancesEnBase(List.of(echeance(1L, -3_000), echeance(2L, -2_000), echeance(3L, -1_000)),
+                List.of(echeance(4L, 30_000)));
+        when(offreRepository.expirerOffresEchues(any(), any())).thenReturn(2, 1);
+        service.recharger();
+
+        // Act
+        int expirees = service.expirerEcheances();
+
+        // Assert
+        assertEquals(3, expirees);
+        verify(offreRepository).expirerOffresEchues(eq(List.of(1L, 2L)), any());
+        verify(offreRepository).expirerOffresEchues(eq(List.of(3L)), any());
+        assertEquals(1, service.enAttente());
+        assertEquals(horloge.get() + 30_000, service.prochaineEcheance());
+    }
+
+    @Test
+    void expirerEcheances_echecEnBase_remetLeLotEnFileJusquALaReprise() {
+        // Arrange
+        echeancesEnBase(List.of(echeance(1L, 0)), List.of());
+        when(offreRepository.expirerOffresEchues(any(), any()))
+                .thenThrow(new DataAccessResourceFailureException("Base indisponible"))
+                .thenReturn(1);
+        service.recharger();
+
+        // Act
+        int premierEssai = service.expirerEcheances();
+        horloge.addAndGet(1_000);
+        int avantReprise = service.expirerEcheances();
+        horloge.addAndGet(5_000);
+        int apresReprise = service.expirerEcheances();
+
+        // Assert
+        assertEquals(0, premierEssai);
+        assertEquals(0, avantReprise);
+        assertEquals(1, apresReprise);
+        verify(offreRepository, times(2)).expirerOffresEchues(eq(List.of(1L)), any());
+        assertEquals(0, service.enAttente());
+    }
+
+    @Test
+    void recharger_listeTronquee_ignoreLesEcheancesAuDelaDeLaDerniereChargee() {
+        // Arrange : 2 échéances au plus ; au-delà de la seconde, d'autres offres peuvent échoir avant l'offre 3
+        ExpirationOffresService borne = new ExpirationOffresService(offreRepository,
+                TransactionOperations.withoutTransaction(), true, HORIZON_MS, 2, 2, 5_000, horloge::get, null);
+        echeancesEnBase(List.of(echeance(1L, 1_000), echeance(2L, 2_000)), List.of(echeance(3L, 3_000)));
+
+        // Act
+        borne.recharger();
+
+        // Assert
+        assertEquals(2, borne.enAttente());
+    }
+
+    @Test
+    void minuterie_expireLOffreASonEcheanceSansAttendreLeRechargement() {
+        // Arrange
+        ExpirationOffresService minute = new ExpirationOffresService(offreRepository,
+                TransactionOperations.withoutTransaction(), true, HORIZON_MS, 2, 100, 5_000,
+                System::currentTimeMillis, Executors.newSingleThreadScheduledExecutor());
+        horloge.set(System.currentTimeMillis());
+        echeancesEnBase(List.of(echeance(1L, 100)), List.of());
+        when(offreRepository.expirerOffresEchues(any(), any())).thenReturn(1);
+
+        try {
+            // Act
+            minute.recharger();
+
+            // Assert
+            verify(offreRepository, timeout(2_000)).expirerOffresEchues(eq(List.of(1L)), any());
+        } finally {
+            minute.destroy();
+        }
+    }
+
+    @Test
+    void surChangement_offreOuDiscipline_rechargeLaFile() {
+        // Arrange
+        echeancesEnBase(List.of(echeance(1L, 1_000)), List.of());
+
+        // Act
+        service.surChangement(new Changement(TypeChangement.PANIER, "u-1"));
+        service.surChangement(new Changement(TypeChangement.OFFRE, "1"));
+
+        // Assert
+        assertEquals(1, service.enAttente());
+        verify(offreRepository, times(1)).findEcheancesParDateExpiration(eq(StatutOffre.DISPONIBLE), any(), any());
+    }
+
+    @Test
+    void recharger_moteurInactif_nInterrogePasLaBase() {
+        // Arrange
+        ExpirationOffresService inactif = new ExpirationOffresService(offreRepository,
+                TransactionOperations.withoutTransaction(), false, HORIZON_MS, 2, 100, 5_000, horloge::get, null);
+
+        // Act
+        inactif.recharger();
+
+        // Assert
+        assertEquals(0, inactif.enAttente());
+        verifyNoInteractions(offreRepository);
+    }
+}
@@ -134,6 +134,7 @@ CREATE TABLE paniers (
                          montant_total DECIMAL(38,2) NOT NULL,
                          statut_panier VARCHAR(255) NOT NULL,
                          date_ajout TIMESTAMP(6) NOT NULL,
+                         date_modification TIMESTAMP(6),
                          id_utilisateur_uuid UUID NOT NULL,
                          version BIGINT,
                          FOREIGN KEY (id_utilisateur_uuid) REFERENCES utilisateurs(id_utilisateur_uuid)